@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.accounting.ledger.test
+
+import java.sql.Date
+import java.sql.Timestamp
+
+import org.apache.ofbiz.accounting.ledger.GlAccountDayTotalServices
+import org.apache.ofbiz.base.util.UtilDateTime
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.entity.condition.EntityCondition
+import org.apache.ofbiz.entity.condition.EntityOperator
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class GlAccountDayTotalTests extends OFBizTestCase {
+
+    GlAccountDayTotalTests(String name) {
+        super(name)
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp()
+        delegator.createOrStore(delegator.makeValue('SystemProperty', [systemResourceId: 'accounting',
+                systemPropertyId: 'accounting.gl.day.totals.enabled', systemPropertyValue: 'true']))
+        Map serviceResult = dispatcher.runSync('rebuildGlAccountDayTotals', [userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delegator.removeByAnd('SystemProperty', [systemResourceId: 'accounting', systemPropertyId: 'accounting.gl.day.totals.enabled'])
+        super.tearDown()
+    }
+
+    /**
+     * Rebuilds the totals of the days, they must be the sums of the posted entries.
+     */
+    void testRebuildMatchesEntries() {
+        Map serviceResult = dispatcher.runSync('checkGlAccountDayTotals', [userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert serviceResult.differences == []
+    }
+
+    /**
+     * Posts a transaction, its entries must be added to the totals of its day.
+     */
+    void testPostingAddsToDayTotals() {
+        Timestamp now = UtilDateTime.nowTimestamp()
+        BigDecimal debitsBefore = getDayTotal('111100', now, 'postedDebits')
+        BigDecimal creditsBefore = getDayTotal('400000', now, 'postedCredits')
+
+        Map serviceResult = dispatcher.runSync('quickCreateAcctgTransAndEntries', [organizationPartyId: 'Company',
+                acctgTransTypeId: 'INTERNAL_ACCTG_TRANS', glFiscalTypeId: 'ACTUAL', transactionDate: now, amount: 125.00,
+                debitGlAccountId: '111100', creditGlAccountId: '400000', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        serviceResult = dispatcher.runSync('postAcctgTrans', [acctgTransId: serviceResult.acctgTransId, userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+
+        assert getDayTotal('111100', now, 'postedDebits') == debitsBefore + 125.00
+        assert getDayTotal('400000', now, 'postedCredits') == creditsBefore + 125.00
+        serviceResult = dispatcher.runSync('checkGlAccountDayTotals', [userLogin: userLogin])
+        assert serviceResult.differences == []
+    }
+
+    /**
+     * Reads the sums of the entries of a period not starting at the start of a day, with and without the totals of the days,
+     * they must be the same.
+     */
+    void testPostedEntrySums() {
+        List<EntityCondition> conditions = [EntityCondition.makeCondition('organizationPartyId', EntityOperator.EQUALS, 'Company'),
+                EntityCondition.makeCondition('glFiscalTypeId', EntityOperator.EQUALS, 'ACTUAL')]
+        Timestamp fromDate = new Timestamp(UtilDateTime.getDayStart(UtilDateTime.nowTimestamp(), -3650).time + 3600000)
+        Timestamp thruDate = UtilDateTime.nowTimestamp()
+        List fromDayTotals = GlAccountDayTotalServices.getPostedEntrySums(delegator, conditions, fromDate, thruDate, true)
+
+        delegator.removeByAnd('SystemProperty', [systemResourceId: 'accounting', systemPropertyId: 'accounting.gl.day.totals.enabled'])
+        List fromEntries = GlAccountDayTotalServices.getPostedEntrySums(delegator, conditions, fromDate, thruDate, true)
+
+        assert describe(fromDayTotals) == describe(fromEntries)
+    }
+
+    private BigDecimal getDayTotal(String glAccountId, Timestamp day, String fieldName) {
+        GenericValue dayTotal = from('GlAccountDayTotal').where(organizationPartyId: 'Company', glAccountId: glAccountId,
+                glFiscalTypeId: 'ACTUAL', acctgTransTypeId: 'INTERNAL_ACCTG_TRANS',
+                transactionDate: new Date(UtilDateTime.getDayStart(day).getTime())).queryOne()
+        return dayTotal ? dayTotal.getBigDecimal(fieldName) : BigDecimal.ZERO
+    }
+
+    private static List describe(List entrySums) {
+        return entrySums.collect { "${it.glAccountId}:${it.debitCreditFlag}:${it.amount.stripTrailingZeros().toPlainString()}" }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.accounting.ledger.test
+
+import org.apache.ofbiz.base.util.UtilDateTime
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class GlPostingTests extends OFBizTestCase {
+
+    GlPostingTests(String name) {
+        super(name)
+    }
+
+    /**
+     * Creates a transaction with entries having only a GL account type, one of them with a negative amount, the GL accounts
+     * must be found from the defaults of the organization and the negative entry must be inverted.
+     */
+    void testCreateAcctgTransAndEntries() {
+        List<GenericValue> acctgTransEntries = [
+                delegator.makeValue('AcctgTransEntry', [organizationPartyId: 'Company', glAccountTypeId: 'ACCOUNTS_RECEIVABLE',
+                        debitCreditFlag: 'D', origAmount: 50.00]),
+                delegator.makeValue('AcctgTransEntry', [organizationPartyId: 'Company', glAccountTypeId: 'SALES_ACCOUNT',
+                        debitCreditFlag: 'C', origAmount: 80.00]),
+                delegator.makeValue('AcctgTransEntry', [organizationPartyId: 'Company', glAccountTypeId: 'SALES_ACCOUNT',
+                        debitCreditFlag: 'C', origAmount: -30.00]),
+                delegator.makeValue('AcctgTransEntry', [organizationPartyId: 'DemoCustomer', glAccountTypeId: 'SALES_ACCOUNT',
+                        debitCreditFlag: 'C', origAmount: 10.00])]
+        Map serviceResult = dispatcher.runSync('createAcctgTransAndEntries', [acctgTransTypeId: 'INTERNAL_ACCTG_TRANS',
+                glFiscalTypeId: 'ACTUAL', transactionDate: UtilDateTime.nowTimestamp(), acctgTransEntries: acctgTransEntries,
+                userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+
+        List<GenericValue> entries = from('AcctgTransEntry').where('acctgTransId', serviceResult.acctgTransId)
+                .orderBy('acctgTransEntrySeqId').queryList()
+        // the entry of a party not being an internal organization is ignored
+        assert entries.collect { it.acctgTransEntrySeqId } == ['00001', '00002', '00003']
+        assert entries.collect { it.glAccountId } == ['120000', '400000', '400000']
+        assert entries.collect { it.debitCreditFlag } == ['D', 'C', 'D']
+        assert entries.collect { it.amount } == [50.00, 80.00, 30.00]
+        assert entries.every { it.currencyUomId == 'USD' && it.reconcileStatusId == 'AES_NOT_RECONCILED' && it.createdStamp }
+    }
+
+    /**
+     * Looks up the GL account of a product sold with an invoice item type without mapping, the sales account must be used.
+     */
+    void testGetGlAccountFromAccountType() {
+        Map serviceResult = dispatcher.runSync('getGlAccountFromAccountType', [organizationPartyId: 'Company',
+                acctgTransTypeId: 'SALES_INVOICE', glAccountTypeId: 'ACCOUNTS_RECEIVABLE', debitCreditFlag: 'D',
+                userLogin: userLogin])
+        assert serviceResult.glAccountId == '120000'
+        serviceResult = dispatcher.runSync('getGlAccountFromAccountType', [organizationPartyId: 'Company',
+                acctgTransTypeId: 'SALES_INVOICE', glAccountTypeId: 'GLPOSTING_TEST_TYPE', debitCreditFlag: 'C',
+                invoiceId: 'GLPOSTING_TEST', productId: 'GZ-1000', userLogin: userLogin])
+        assert serviceResult.glAccountId == '400000'
+    }
+}
@@ -18,6 +18,7 @@
 */
 package org.apache.ofbiz.accounting.reports
 
+import org.apache.ofbiz.accounting.ledger.GlAccountDayTotalServices
 import org.apache.ofbiz.accounting.util.UtilAccounting
 import org.apache.ofbiz.base.util.UtilDateTime
 import org.apache.ofbiz.base.util.UtilMisc
@@ -145,27 +146,23 @@ class AccountEntrySum {
 }
 
 /**
- * Retrieve a collection of AccountEntrySum objects corresponding to the AcctgTransEntrySums entities query controlled
- * by the given conditions.
+ * Retrieve a collection of AccountEntrySum objects corresponding to the sums of the posted entries of the current
+ * period controlled by the given conditions.
  *
  * @param conditions The list of conditions to be ANDed together and form the WHERE clause for the query of
- * AcctgTransEntrySums.
+ * AcctgTransEntrySums, or of the GlAccountDayTotalSums when the totals of the days are maintained.
  *
  * @return A collection of AccountEntrySum objects for the conditions.
  */
 Closure<List<AccountEntrySum>> getAccountEntrySumsForCondition = { Collection<EntityExpr> conditions ->
-    from('AcctgTransEntrySums')
-            .where(conditions)
-            .orderBy('glAccountId')
-            .select('glAccountId', 'accountName', 'accountCode', 'debitCreditFlag', 'amount')
-            .queryList()
+    GlAccountDayTotalServices.getPostedEntrySums(delegator, conditions as List, fromDate, thruDate, false)
             .collect { entrySum ->
                 new AccountEntrySum(
                         glAccountId: entrySum.glAccountId,
                         accountName: entrySum.accountName,
                         accountCode: entrySum.accountCode,
                         debitCreditFlag: entrySum.debitCreditFlag,
-                        amount: entrySum.getBigDecimal('amount')
+                        amount: entrySum.amount
                 )
             }
 }
@@ -182,11 +179,8 @@ Closure<List<AccountEntrySum>> getAccountEntrySumsForClassIds = { Collection<Str
     List conditions = [
             EntityCondition.makeCondition('glAccountClassId', EntityOperator.IN, accountClassIds),
             EntityCondition.makeCondition('organizationPartyId', EntityOperator.IN, partyIds),
-            EntityCondition.makeCondition('isPosted', EntityOperator.EQUALS, 'Y'),
             EntityCondition.makeCondition('glFiscalTypeId', EntityOperator.EQUALS, glFiscalTypeId),
-            EntityCondition.makeCondition('acctgTransTypeId', EntityOperator.NOT_EQUAL, 'PERIOD_CLOSING'),
-            EntityCondition.makeCondition('transactionDate', EntityOperator.GREATER_THAN_EQUAL_TO, fromDate),
-            EntityCondition.makeCondition('transactionDate', EntityOperator.LESS_THAN, thruDate)
+            EntityCondition.makeCondition('acctgTransTypeId', EntityOperator.NOT_EQUAL, 'PERIOD_CLOSING')
     ]
 
     getAccountEntrySumsForCondition(conditions)
@@ -18,6 +18,7 @@
 */
 package org.apache.ofbiz.accounting.reports
 
+import org.apache.ofbiz.accounting.ledger.GlAccountDayTotalServices
 import org.apache.ofbiz.base.util.UtilDateTime
 import org.apache.ofbiz.base.util.UtilMisc
 import org.apache.ofbiz.entity.GenericValue
@@ -62,11 +63,8 @@ List depreciationAccountClassIds = UtilAccounting.getDescendantGlAccountClassIds
 
 List mainAndExprs = []
 mainAndExprs.add(EntityCondition.makeCondition('organizationPartyId', EntityOperator.IN, partyIds))
-mainAndExprs.add(EntityCondition.makeCondition('isPosted', EntityOperator.EQUALS, 'Y'))
 mainAndExprs.add(EntityCondition.makeCondition('glFiscalTypeId', EntityOperator.EQUALS, glFiscalTypeId))
 mainAndExprs.add(EntityCondition.makeCondition('acctgTransTypeId', EntityOperator.NOT_EQUAL, 'PERIOD_CLOSING'))
-mainAndExprs.add(EntityCondition.makeCondition('transactionDate', EntityOperator.GREATER_THAN_EQUAL_TO, fromDate))
-mainAndExprs.add(EntityCondition.makeCondition('transactionDate', EntityOperator.LESS_THAN, thruDate))
 
 List balanceTotalList = []
 
@@ -77,8 +75,7 @@ transactionTotals = []
 balanceTotal = BigDecimal.ZERO
 List revenueAndExprs = mainAndExprs as LinkedList
 revenueAndExprs.add(EntityCondition.makeCondition('glAccountClassId', EntityOperator.IN, revenueAccountClassIds))
-transactionTotals = select('glAccountId', 'accountName', 'accountCode', 'debitCreditFlag', 'amount')
-        .from('AcctgTransEntrySums').where(revenueAndExprs).orderBy('glAccountId').queryList()
+transactionTotals = GlAccountDayTotalServices.getPostedEntrySums(delegator, revenueAndExprs, fromDate, thruDate, false)
 if (transactionTotals) {
     Map transactionTotalsMap = [:]
     balanceTotalCredit = BigDecimal.ZERO
@@ -121,8 +118,7 @@ transactionTotals = []
 balanceTotal = BigDecimal.ZERO
 List contraRevenueAndExprs = mainAndExprs as LinkedList
 contraRevenueAndExprs.add(EntityCondition.makeCondition('glAccountClassId', EntityOperator.IN, contraRevenueAccountClassIds))
-transactionTotals = select('glAccountId', 'accountName', 'accountCode', 'debitCreditFlag', 'amount')
-        .from('AcctgTransEntrySums').where(contraRevenueAndExprs).orderBy('glAccountId').queryList()
+transactionTotals = GlAccountDayTotalServices.getPostedEntrySums(delegator, contraRevenueAndExprs, fromDate, thruDate, false)
 if (transactionTotals) {
     Map transactionTotalsMap = [:]
     balanceTotalCredit = BigDecimal.ZERO
@@ -164,8 +160,7 @@ transactionTotals = []
 balanceTotal = BigDecimal.ZERO
 List expenseAndExprs = mainAndExprs as LinkedList
 expenseAndExprs.add(EntityCondition.makeCondition('glAccountClassId', EntityOperator.IN, expenseAccountClassIds))
-transactionTotals = select('glAccountId', 'accountName', 'accountCode', 'debitCreditFlag', 'amount')
-        .from('AcctgTransEntrySums').where(expenseAndExprs).queryList()
+transactionTotals = GlAccountDayTotalServices.getPostedEntrySums(delegator, expenseAndExprs, fromDate, thruDate, false)
 if (transactionTotals) {
     Map transactionTotalsMap = [:]
     balanceTotalCredit = BigDecimal.ZERO
@@ -208,8 +203,7 @@ transactionTotals = []
 balanceTotal = BigDecimal.ZERO
 List cogsExpenseAndExprs = mainAndExprs as LinkedList
 cogsExpenseAndExprs.add(EntityCondition.makeCondition('glAccountClassId', EntityOperator.IN, cogsExpenseAccountClassIds))
-transactionTotals = select('glAccountId', 'accountName', 'accountCode', 'debitCreditFlag', 'amount')
-        .from('AcctgTransEntrySums').where(cogsExpenseAndExprs).orderBy('glAccountId').queryList()
+transactionTotals = GlAccountDayTotalServices.getPostedEntrySums(delegator, cogsExpenseAndExprs, fromDate, thruDate, false)
 if (transactionTotals) {
     Map transactionTotalsMap = [:]
     balanceTotalCredit = BigDecimal.ZERO
@@ -251,8 +245,7 @@ transactionTotals = []
 balanceTotal = BigDecimal.ZERO
 List sgaExpenseAndExprs = mainAndExprs as LinkedList
 sgaExpenseAndExprs.add(EntityCondition.makeCondition('glAccountClassId', EntityOperator.IN, sgaExpenseAccountClassIds))
-transactionTotals = select('glAccountId', 'accountName', 'accountCode', 'debitCreditFlag', 'amount')
-        .from('AcctgTransEntrySums').where(sgaExpenseAndExprs).orderBy('glAccountId').queryList()
+transactionTotals = GlAccountDayTotalServices.getPostedEntrySums(delegator, sgaExpenseAndExprs, fromDate, thruDate, false)
 if (transactionTotals) {
     Map transactionTotalsMap = [:]
     balanceTotalCredit = BigDecimal.ZERO
@@ -293,8 +286,7 @@ transactionTotals = []
 balanceTotal = BigDecimal.ZERO
 List depreciationAndExprs = mainAndExprs as LinkedList
 depreciationAndExprs.add(EntityCondition.makeCondition('glAccountClassId', EntityOperator.IN, depreciationAccountClassIds))
-transactionTotals = select('glAccountId', 'accountName', 'accountCode', 'debitCreditFlag', 'amount')
-        .from('AcctgTransEntrySums').where(depreciationAndExprs).orderBy('glAccountId').queryList()
+transactionTotals = GlAccountDayTotalServices.getPostedEntrySums(delegator, depreciationAndExprs, fromDate, thruDate, false)
 if (transactionTotals) {
     Map transactionTotalsMap = [:]
     balanceTotalCredit = BigDecimal.ZERO
@@ -335,8 +327,7 @@ transactionTotals = []
 balanceTotal = BigDecimal.ZERO
 List incomeAndExprs = mainAndExprs as LinkedList
 incomeAndExprs.add(EntityCondition.makeCondition('glAccountClassId', EntityOperator.IN, incomeAccountClassIds))
-transactionTotals = select('glAccountId', 'accountName', 'accountCode', 'debitCreditFlag', 'amount')
-        .from('AcctgTransEntrySums').where(incomeAndExprs).orderBy('glAccountId').queryList()
+transactionTotals = GlAccountDayTotalServices.getPostedEntrySums(delegator, incomeAndExprs, fromDate, thruDate, false)
 if (transactionTotals) {
     Map transactionTotalsMap = [:]
     balanceTotalCredit = BigDecimal.ZERO
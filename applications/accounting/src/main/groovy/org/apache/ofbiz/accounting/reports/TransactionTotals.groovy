@@ -18,6 +18,7 @@
 */
 package org.apache.ofbiz.accounting.reports
 
+import org.apache.ofbiz.accounting.ledger.GlAccountDayTotalServices
 import org.apache.ofbiz.accounting.util.UtilAccounting
 import org.apache.ofbiz.base.util.UtilDateTime
 import org.apache.ofbiz.base.util.UtilMisc
@@ -51,13 +52,26 @@ postedTotalDebit = BigDecimal.ZERO
 postedTotalCredit = BigDecimal.ZERO
 andExprs = []
 andExprs.add(EntityCondition.makeCondition('organizationPartyId', EntityOperator.IN, partyIds))
-andExprs.add(EntityCondition.makeCondition('isPosted', EntityOperator.EQUALS, 'Y'))
 andExprs.add(EntityCondition.makeCondition('glFiscalTypeId', EntityOperator.EQUALS, glFiscalTypeId))
-andExprs.add(EntityCondition.makeCondition('transactionDate', EntityOperator.GREATER_THAN_EQUAL_TO, fromDate))
-andExprs.add(EntityCondition.makeCondition('transactionDate', EntityOperator.LESS_THAN_EQUAL_TO, thruDate))
-List postedTransactionTotals = select('glAccountId', 'accountName', 'accountCode', 'debitCreditFlag', 'amount')
-        .from('AcctgTransEntrySums').where(andExprs).orderBy('glAccountId').queryList()
+List postedTransactionTotals = GlAccountDayTotalServices.getPostedEntrySums(delegator, andExprs, fromDate, thruDate, true)
 if (postedTransactionTotals) {
+    // Get the opening balances at the end of the last closed time period and the transactions since then of all the accounts at once
+    Map lastTimePeriodHistories = [:]
+    Map openingTransactionTotals = [:]
+    if (lastClosedDate) {
+        from('GlAccountAndHistory')
+                .where('organizationPartyId', parameters.get('ApplicationDecorator|organizationPartyId'),
+                        'customTimePeriodId', lastClosedTimePeriod.customTimePeriodId)
+                .queryList()
+                .each { lastTimePeriodHistories.putIfAbsent(it.glAccountId, it) }
+        List mainAndExprs = []
+        mainAndExprs.add(EntityCondition.makeCondition('organizationPartyId', EntityOperator.IN, partyIds))
+        mainAndExprs.add(EntityCondition.makeCondition('glFiscalTypeId', EntityOperator.EQUALS, glFiscalTypeId))
+        mainAndExprs.add(EntityCondition.makeCondition('acctgTransTypeId', EntityOperator.NOT_EQUAL, 'PERIOD_CLOSING'))
+        GlAccountDayTotalServices.getPostedEntrySums(delegator, mainAndExprs, lastClosedDate, fromDate, false).each { transactionTotal ->
+            openingTransactionTotals.get(transactionTotal.glAccountId, []).add(transactionTotal)
+        }
+    }
     Map postedTransactionTotalsMap = [:]
     postedTransactionTotals.each { postedTransactionTotal ->
         Map accountMap = (Map)postedTransactionTotalsMap.get(postedTransactionTotal.glAccountId)
@@ -67,19 +81,14 @@ if (postedTransactionTotals) {
                 // Get the opening balances at the end of the last closed time period
                 if (UtilAccounting.isAssetAccount(glAccount) || UtilAccounting.isLiabilityAccount(glAccount)
                         || UtilAccounting.isEquityAccount(glAccount)) {
-                    if (lastClosedTimePeriod) {
-                        lastTimePeriodHistory = from('GlAccountAndHistory')
-                                .where('organizationPartyId', parameters.get('ApplicationDecorator|organizationPartyId'),
-                                        'glAccountId', postedTransactionTotal.glAccountId, 'customTimePeriodId',
-                                        lastClosedTimePeriod.customTimePeriodId).queryFirst()
-                        if (lastTimePeriodHistory) {
-                            accountMap = UtilMisc.toMap('glAccountId', lastTimePeriodHistory.glAccountId,
-                                    'accountCode', lastTimePeriodHistory.accountCode, 'accountName', lastTimePeriodHistory.accountName,
-                                    'balance', lastTimePeriodHistory.getBigDecimal('endingBalance'),
-                                    'openingD', lastTimePeriodHistory.getBigDecimal('postedDebits'),
-                                    'openingC', lastTimePeriodHistory.getBigDecimal('postedCredits'),
-                                    'D', BigDecimal.ZERO, 'C', BigDecimal.ZERO)
-                        }
+                    lastTimePeriodHistory = lastTimePeriodHistories.get(postedTransactionTotal.glAccountId)
+                    if (lastTimePeriodHistory) {
+                        accountMap = UtilMisc.toMap('glAccountId', lastTimePeriodHistory.glAccountId,
+                                'accountCode', lastTimePeriodHistory.accountCode, 'accountName', lastTimePeriodHistory.accountName,
+                                'balance', lastTimePeriodHistory.getBigDecimal('endingBalance'),
+                                'openingD', lastTimePeriodHistory.getBigDecimal('postedDebits'),
+                                'openingC', lastTimePeriodHistory.getBigDecimal('postedCredits'),
+                                'D', BigDecimal.ZERO, 'C', BigDecimal.ZERO)
                     }
                 }
             }
@@ -91,56 +100,21 @@ if (postedTransactionTotals) {
                 accountMap.put('C', BigDecimal.ZERO)
                 accountMap.put('balance', BigDecimal.ZERO)
             }
-            //
-            List mainAndExprs = []
-            mainAndExprs.add(EntityCondition.makeCondition('organizationPartyId', EntityOperator.IN, partyIds))
-            mainAndExprs.add(EntityCondition.makeCondition('isPosted', EntityOperator.EQUALS, 'Y'))
-            mainAndExprs.add(EntityCondition.makeCondition('glAccountId', EntityOperator.EQUALS, postedTransactionTotal.glAccountId))
-            mainAndExprs.add(EntityCondition.makeCondition('glFiscalTypeId', EntityOperator.EQUALS, glFiscalTypeId))
-            mainAndExprs.add(EntityCondition.makeCondition('acctgTransTypeId', EntityOperator.NOT_EQUAL, 'PERIOD_CLOSING'))
-            mainAndExprs.add(EntityCondition.makeCondition('transactionDate', EntityOperator.GREATER_THAN_EQUAL_TO, lastClosedDate))
-            mainAndExprs.add(EntityCondition.makeCondition('transactionDate', EntityOperator.LESS_THAN, fromDate))
-            transactionTotals = select('glAccountId', 'accountName', 'accountCode', 'debitCreditFlag', 'amount')
-                    .from('AcctgTransEntrySums').where(mainAndExprs).orderBy('glAccountId').queryList()
-            transactionTotals.each { transactionTotal ->
+            openingTransactionTotals.get(postedTransactionTotal.glAccountId)?.each { transactionTotal ->
                 UtilMisc.addToBigDecimalInMap(accountMap, 'opening' + transactionTotal.debitCreditFlag, transactionTotal.amount)
             }
         }
         UtilMisc.addToBigDecimalInMap(accountMap, postedTransactionTotal.debitCreditFlag, postedTransactionTotal.amount)
+        // Posted grand totals for Debits and Credits
+        if (postedTransactionTotal.debitCreditFlag == 'D') {
+            postedTotalDebit = postedTotalDebit.add(postedTransactionTotal.amount)
+        } else {
+            postedTotalCredit = postedTotalCredit.add(postedTransactionTotal.amount)
+        }
         postedTransactionTotalsMap.put(postedTransactionTotal.glAccountId, accountMap)
     }
     postedTotals = postedTransactionTotalsMap.values().asList()
 }
-// Posted grand total for Debits
-andExprs = []
-andExprs.add(EntityCondition.makeCondition('organizationPartyId', EntityOperator.IN, partyIds))
-andExprs.add(EntityCondition.makeCondition('isPosted', EntityOperator.EQUALS, 'Y'))
-andExprs.add(EntityCondition.makeCondition('glFiscalTypeId', EntityOperator.EQUALS, glFiscalTypeId))
-andExprs.add(EntityCondition.makeCondition('debitCreditFlag', EntityOperator.EQUALS, 'D'))
-andExprs.add(EntityCondition.makeCondition('transactionDate', EntityOperator.GREATER_THAN_EQUAL_TO, fromDate))
-andExprs.add(EntityCondition.makeCondition('transactionDate', EntityOperator.LESS_THAN_EQUAL_TO, thruDate))
-List postedDebitTransactionTotals = select('amount').from('AcctgTransEntrySums').where(andExprs).queryList()
-if (postedDebitTransactionTotals) {
-    postedDebitTransactionTotal = postedDebitTransactionTotals.first()
-    if (postedDebitTransactionTotal && postedDebitTransactionTotal.amount) {
-        postedTotalDebit = postedDebitTransactionTotal.amount
-    }
-}
-// Posted grand total for Credits
-andExprs = []
-andExprs.add(EntityCondition.makeCondition('organizationPartyId', EntityOperator.IN, partyIds))
-andExprs.add(EntityCondition.makeCondition('isPosted', EntityOperator.EQUALS, 'Y'))
-andExprs.add(EntityCondition.makeCondition('glFiscalTypeId', EntityOperator.EQUALS, glFiscalTypeId))
-andExprs.add(EntityCondition.makeCondition('debitCreditFlag', EntityOperator.EQUALS, 'C'))
-andExprs.add(EntityCondition.makeCondition('transactionDate', EntityOperator.GREATER_THAN_EQUAL_TO, fromDate))
-andExprs.add(EntityCondition.makeCondition('transactionDate', EntityOperator.LESS_THAN_EQUAL_TO, thruDate))
-List postedCreditTransactionTotals = select('amount').from('AcctgTransEntrySums').where(andExprs).queryList()
-if (postedCreditTransactionTotals) {
-    postedCreditTransactionTotal = postedCreditTransactionTotals.first()
-    if (postedCreditTransactionTotal && postedCreditTransactionTotal.amount) {
-        postedTotalCredit = postedCreditTransactionTotal.amount
-    }
-}
 postedTotals.add(['D': postedTotalDebit, 'C': postedTotalCredit])
 context.postedTransactionTotals = postedTotals
 
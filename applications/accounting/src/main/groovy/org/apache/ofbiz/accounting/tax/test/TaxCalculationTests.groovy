@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.accounting.tax.test
+
+import org.apache.ofbiz.accounting.tax.TaxAuthorityRateCache
+import org.apache.ofbiz.base.util.Debug
+import org.apache.ofbiz.base.util.UtilDateTime
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class TaxCalculationTests extends OFBizTestCase {
+
+    private static final String MODULE = TaxCalculationTests.getName()
+    private static final List<String> PRODUCT_IDS = ['GZ-1000', 'GZ-2644', 'WG-1111', 'WG-5569']
+
+    TaxCalculationTests(String name) {
+        super(name)
+    }
+
+    /**
+     * Calculates the taxes of a cart in Utah with the rates read from the database and from the cache,
+     * the adjustments must be the same.
+     */
+    void testCachedRates() {
+        TaxAuthorityRateCache.clear(delegator)
+        long start = System.nanoTime()
+        Map coldResult = calcTax()
+        long coldTime = System.nanoTime() - start
+
+        int runs = 10
+        Map warmResult = null
+        start = System.nanoTime()
+        for (int i = 0; i < runs; i++) {
+            warmResult = calcTax()
+        }
+        long warmTime = (System.nanoTime() - start).intdiv(runs)
+        Debug.logInfo("Tax calculation of ${PRODUCT_IDS.size()} items: ${coldTime.intdiv(1000)}us with the rates read, "
+                + "${warmTime.intdiv(1000)}us with the rates cached", MODULE)
+
+        assert describe(coldResult) == describe(warmResult)
+        assert coldResult.itemAdjustments.any { !it.isEmpty() }
+    }
+
+    /**
+     * Adds a rate to a tax authority, the rate must be used by the next tax calculation.
+     */
+    void testRateChangeInvalidatesCache() {
+        calcTax()
+        GenericValue rate = delegator.makeValue('TaxAuthorityRateProduct', [taxAuthorityRateSeqId: 'TAXCALC_TEST',
+                taxAuthGeoId: 'UT', taxAuthPartyId: 'UT_TAXMAN', taxAuthorityRateTypeId: 'SALES_TAX',
+                taxPercentage: 2.0, taxShipping: 'N', taxPromotions: 'N', fromDate: UtilDateTime.nowTimestamp(),
+                description: 'Tax calculation test rate'])
+        rate.create()
+        try {
+            Map result = calcTax()
+            assert result.itemAdjustments.every { List adjustments ->
+                adjustments.any { it.taxAuthorityRateSeqId == 'TAXCALC_TEST' }
+            }
+        } finally {
+            rate.remove()
+        }
+        Map result = calcTax()
+        assert result.itemAdjustments.every { List adjustments ->
+            adjustments.every { it.taxAuthorityRateSeqId != 'TAXCALC_TEST' }
+        }
+    }
+
+    private Map calcTax() {
+        List<GenericValue> products = PRODUCT_IDS.collect { from('Product').where('productId', it).cache().queryOne() }
+        List<BigDecimal> prices = PRODUCT_IDS.collect { 30.00 }
+        Map serviceResult = dispatcher.runSync('calcTax', [
+                productStoreId: '9000',
+                billToPartyId: 'DemoCustomer',
+                itemProductList: products,
+                itemAmountList: prices.collect { it * 2 },
+                itemPriceList: prices,
+                itemQuantityList: prices.collect { 2.0 },
+                itemShippingList: prices.collect { 0.0 },
+                orderShippingAmount: 10.00,
+                shippingAddress: delegator.makeValue('PostalAddress', [countryGeoId: 'USA', stateProvinceGeoId: 'UT'])])
+        assert ServiceUtil.isSuccess(serviceResult)
+        return serviceResult
+    }
+
+    private static List describe(Map result) {
+        return result.itemAdjustments.collect { List adjustments ->
+            adjustments.collect { "${it.taxAuthorityRateSeqId}:${it.amount}:${it.overrideGlAccountId}:${it.customerReferenceId}" }
+        } + [result.orderAdjustments.collect { "${it.taxAuthorityRateSeqId}:${it.amount}" }]
+    }
+}
@@ -19,16 +19,29 @@
 package org.apache.ofbiz.accounting.ledger;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilFormatOut;
 import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.GenericServiceException;
 import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.service.ModelService;
 import org.apache.ofbiz.service.ServiceUtil;
 
 public class GeneralLedgerServices {
@@ -77,4 +90,181 @@ public class GeneralLedgerServices {
         }
         return totalAmountPercentage;
     }
+
+    /**
+     * Verifies and posts a set of AcctgTransEntries: the entries of the internal organizations are completed, their GL
+     * accounts being found from the mappings of the organizations, then the AcctgTrans is created and all its entries are
+     * inserted in one batch.
+     * @param dctx the dispatch context
+     * @param context the AcctgTrans fields and the acctgTransEntries
+     * @return the acctgTransId, if a transaction was created
+     */
+    public static Map<String, Object> createAcctgTransAndEntries(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        LocalDispatcher dispatcher = dctx.getDispatcher();
+        GenericValue userLogin = (GenericValue) context.get("userLogin");
+        List<Map<String, Object>> acctgTransEntries = UtilGenerics.cast(context.get("acctgTransEntries"));
+        Map<String, GlAccountMappings> mappings = new HashMap<>();
+        Map<String, GenericValue> partyAcctgPreferences = new HashMap<>();
+        List<Map<String, Object>> normalizedAcctgTransEntries = new LinkedList<>();
+        try {
+            Map<String, Object> createAcctgTransParams = dctx.makeValidContext("createAcctgTrans", ModelService.IN_PARAM, context);
+            // first loop through and make sure all the entries are valid
+            for (Map<String, Object> acctgTransEntry : acctgTransEntries) {
+                String organizationPartyId = (String) acctgTransEntry.get("organizationPartyId");
+                // the organization party must be an internal organization
+                GenericValue partyRole = EntityQuery.use(delegator).from("PartyRole")
+                        .where("partyId", organizationPartyId, "roleTypeId", "INTERNAL_ORGANIZATIO")
+                        .cache()
+                        .queryOne();
+                if (partyRole == null) {
+                    Debug.logWarning("The party with id [" + organizationPartyId + "] is not an internal organization; "
+                            + "the following accounting transaction will be ignored: " + acctgTransEntry, MODULE);
+                    continue;
+                }
+                if (!partyAcctgPreferences.containsKey(organizationPartyId)) {
+                    Map<String, Object> result = dispatcher.runSync("getPartyAccountingPreferences",
+                            UtilMisc.toMap("organizationPartyId", organizationPartyId, "userLogin", userLogin));
+                    if (ServiceUtil.isError(result)) {
+                        return ServiceUtil.returnError(ServiceUtil.getErrorMessage(result));
+                    }
+                    partyAcctgPreferences.put(organizationPartyId, (GenericValue) result.get("partyAccountingPreference"));
+                }
+                GenericValue partyAcctgPreference = partyAcctgPreferences.get(organizationPartyId);
+                String baseCurrencyUomId = partyAcctgPreference == null ? null : partyAcctgPreference.getString("baseCurrencyUomId");
+                if (partyAcctgPreference != null && "N".equals(partyAcctgPreference.getString("enableAccounting"))) {
+                    Debug.logWarning("The internal organization with id [" + organizationPartyId + "] has no PartyAcctgPreference "
+                            + "setting; the following accounting transaction will be ignored: " + acctgTransEntry, MODULE);
+                    return ServiceUtil.returnSuccess();
+                }
+                // if the amount field is empty, then determine it from the origAmount and origCurrencyUomId fields:
+                // if origCurrencyUomId is different from the base currency of the organization, then the amount value will be converted
+                if (acctgTransEntry.get("amount") == null && acctgTransEntry.get("origAmount") != null) {
+                    if (UtilValidate.isEmpty(acctgTransEntry.get("origCurrencyUomId"))) {
+                        acctgTransEntry.put("origCurrencyUomId", baseCurrencyUomId);
+                    }
+                    acctgTransEntry.put("currencyUomId", baseCurrencyUomId);
+                    if (!Objects.equals(acctgTransEntry.get("origCurrencyUomId"), baseCurrencyUomId)) {
+                        Map<String, Object> convertUomInMap = UtilMisc.toMap("originalValue", acctgTransEntry.get("origAmount"),
+                                "uomId", acctgTransEntry.get("origCurrencyUomId"), "uomIdTo", baseCurrencyUomId);
+                        if (createAcctgTransParams.get("transactionDate") != null) {
+                            convertUomInMap.put("asOfDate", createAcctgTransParams.get("transactionDate"));
+                        }
+                        Map<String, Object> result = dispatcher.runSync("convertUom", convertUomInMap);
+                        if (ServiceUtil.isError(result)) {
+                            return ServiceUtil.returnError(ServiceUtil.getErrorMessage(result));
+                        }
+                        acctgTransEntry.put("amount", result.get("convertedValue"));
+                    } else {
+                        acctgTransEntry.put("amount", acctgTransEntry.get("origAmount"));
+                    }
+                }
+                // if the glAccountId is empty, but we have a glAccountTypeId, then we will determine the
+                // correct glAccountId from the gl setup settings
+                if (UtilValidate.isEmpty(acctgTransEntry.get("glAccountId"))) {
+                    Map<String, Object> mappingParams = UtilMisc.toMap("acctgTransTypeId", context.get("acctgTransTypeId"),
+                            "glAccountTypeId", acctgTransEntry.get("glAccountTypeId"),
+                            "debitCreditFlag", acctgTransEntry.get("debitCreditFlag"), "productId", acctgTransEntry.get("productId"),
+                            "partyId", context.get("partyId"), "roleTypeId", context.get("roleTypeId"),
+                            "invoiceId", context.get("invoiceId"), "paymentId", context.get("paymentId"));
+                    GlAccountMappings organizationMappings = mappings.computeIfAbsent(organizationPartyId,
+                            k -> new GlAccountMappings(delegator, k));
+                    acctgTransEntry.put("glAccountId", organizationMappings.getGlAccountId(mappingParams));
+                }
+                if (acctgTransEntry.get("origAmount") == null) {
+                    acctgTransEntry.put("origAmount", acctgTransEntry.get("amount"));
+                }
+                if (acctgTransEntry.get("glAccountTypeId") != null && EntityQuery.use(delegator).from("GlAccountType")
+                        .where("glAccountTypeId", acctgTransEntry.get("glAccountTypeId")).cache().queryOne() == null) {
+                    acctgTransEntry.put("glAccountTypeId", null);
+                }
+                normalizedAcctgTransEntries.add(acctgTransEntry);
+            }
+            if (normalizedAcctgTransEntries.isEmpty()) {
+                Debug.logWarning("Cannot process an accounting transactions with empty list of entries.", MODULE);
+                return ServiceUtil.returnSuccess();
+            }
+
+            // now do the posting. First, create the AcctgTrans entity
+            if (createAcctgTransParams.get("transactionDate") == null) {
+                createAcctgTransParams.put("transactionDate", UtilDateTime.nowTimestamp());
+            }
+            Map<String, Object> result = dispatcher.runSync("createAcctgTrans", createAcctgTransParams);
+            if (ServiceUtil.isError(result)) {
+                return ServiceUtil.returnError(ServiceUtil.getErrorMessage(result));
+            }
+            String acctgTransId = (String) result.get("acctgTransId");
+
+            // Next, create the AcctgTransEntry entities as createAcctgTransEntry does, in one batch
+            List<GenericValue> toCreate = new LinkedList<>();
+            Timestamp now = UtilDateTime.nowTimestamp();
+            Timestamp txStamp = TransactionUtil.getTransactionStartStamp();
+            for (Map<String, Object> acctgTransEntry : normalizedAcctgTransEntries) {
+                // if any amount is negative, then get the absolute (positive) value of that amount, and flip the Debit/Credit flag
+                BigDecimal origAmount = toBigDecimal(acctgTransEntry.get("origAmount"));
+                if (origAmount != null && origAmount.signum() < 0) {
+                    acctgTransEntry.put("origAmount", origAmount.negate());
+                    BigDecimal amount = toBigDecimal(acctgTransEntry.get("amount"));
+                    acctgTransEntry.put("amount", amount == null ? null : amount.negate());
+                    if ("D".equals(acctgTransEntry.get("debitCreditFlag"))) {
+                        acctgTransEntry.put("debitCreditFlag", "C");
+                    } else if ("C".equals(acctgTransEntry.get("debitCreditFlag"))) {
+                        acctgTransEntry.put("debitCreditFlag", "D");
+                    }
+                }
+                GenericValue newEntity = delegator.makeValue("AcctgTransEntry");
+                newEntity.setNonPKFields(dctx.makeValidContext("createAcctgTransEntry", ModelService.IN_PARAM, acctgTransEntry));
+                newEntity.set("acctgTransId", acctgTransId);
+                newEntity.set("acctgTransEntrySeqId", UtilFormatOut.formatPaddedNumber(toCreate.size() + 1, 5));
+                // if not explicitly provided, set the currency of the entry from PartyAcctgPreference
+                if (UtilValidate.isEmpty(acctgTransEntry.get("currencyUomId"))) {
+                    GenericValue partyAcctgPreference = partyAcctgPreferences.get(newEntity.getString("organizationPartyId"));
+                    newEntity.set("currencyUomId", partyAcctgPreference == null ? null : partyAcctgPreference.get("baseCurrencyUomId"));
+                }
+                if (newEntity.get("acctgTransEntryTypeId") == null) {
+                    newEntity.set("acctgTransEntryTypeId", "_NA_");
+                }
+                // by default, set the reconciled status of this new entry to not reconciled
+                newEntity.set("reconcileStatusId", "AES_NOT_RECONCILED");
+                // the batch insert does not set the stamps
+                newEntity.set(ModelEntity.STAMP_FIELD, now);
+                newEntity.set(ModelEntity.STAMP_TX_FIELD, txStamp);
+                newEntity.set(ModelEntity.CREATE_STAMP_FIELD, now);
+                newEntity.set(ModelEntity.CREATE_STAMP_TX_FIELD, txStamp);
+                toCreate.add(newEntity);
+            }
+            delegator.createAllByBatchProcess(toCreate);
+            result = ServiceUtil.returnSuccess();
+            result.put("acctgTransId", acctgTransId);
+            return result;
+        } catch (GenericEntityException | GenericServiceException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+    }
+
+    private static BigDecimal toBigDecimal(Object amount) {
+        if (amount == null || amount instanceof BigDecimal) {
+            return (BigDecimal) amount;
+        }
+        return new BigDecimal(amount.toString());
+    }
+
+    /**
+     * Looks up a GlAccountId from GlAccountTypeId, see {@link GlAccountMappings#getGlAccountId(Map)}.
+     * @param dctx the dispatch context
+     * @param context the organizationPartyId and the fields of the entry
+     * @return the glAccountId, if one is mapped
+     */
+    public static Map<String, Object> getGlAccountFromAccountType(DispatchContext dctx, Map<String, ? extends Object> context) {
+        GlAccountMappings mappings = new GlAccountMappings(dctx.getDelegator(), (String) context.get("organizationPartyId"));
+        try {
+            Map<String, Object> result = ServiceUtil.returnSuccess();
+            result.put("glAccountId", mappings.getGlAccountId(context));
+            return result;
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+    }
 }
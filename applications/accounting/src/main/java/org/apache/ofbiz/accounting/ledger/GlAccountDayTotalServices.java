@@ -0,0 +1,431 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.accounting.ledger;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+/**
+ * Maintains the GlAccountDayTotal records, the debits and credits posted to a GL account by an organization for a day,
+ * and reads the totals of the posted entries of a period from them.
+ * <p>When <code>accounting.gl.day.totals.enabled</code> is <code>true</code> in accounting.properties, the entries of an
+ * accounting transaction are added to the totals of their day when the transaction is posted, and the financial reports
+ * sum the totals of the days of the period, the entries of the first and last days being read only when the period does
+ * not start or end at the start of a day.</p>
+ */
+public class GlAccountDayTotalServices {
+
+    private static final String MODULE = GlAccountDayTotalServices.class.getName();
+    private static final String NA = "_NA_";
+
+    /**
+     * Are the GlAccountDayTotal records maintained and used by the financial reports
+     * @param delegator the delegator
+     * @return <code>true</code> if the totals of the days are maintained when the transactions are posted
+     */
+    public static boolean isEnabled(Delegator delegator) {
+        return "true".equals(EntityUtilProperties.getPropertyValue("accounting", "accounting.gl.day.totals.enabled", "false", delegator));
+    }
+
+    /**
+     * Gets the sums of the posted entries of the GL accounts, as the AcctgTransEntrySums view does, from the totals of the days
+     * when they are maintained.
+     * @param delegator the delegator
+     * @param conditions the conditions on the organizationPartyId, glAccountId, glAccountClassId, glFiscalTypeId or
+     *        acctgTransTypeId of the entries
+     * @param fromDate the date the transactions are posted from, may be null
+     * @param thruDate the date the transactions are posted before
+     * @param includeThruDate are the transactions of the thruDate included
+     * @return a list of maps with the glAccountId, accountName, accountCode, debitCreditFlag and amount of the entries,
+     *         ordered by glAccountId
+     * @throws GenericEntityException if the sums cannot be read
+     */
+    public static List<Map<String, Object>> getPostedEntrySums(Delegator delegator, List<EntityCondition> conditions,
+            Timestamp fromDate, Timestamp thruDate, boolean includeThruDate) throws GenericEntityException {
+        Map<String, Map<String, Object>> entrySums = new TreeMap<>();
+        if (!isEnabled(delegator)) {
+            addEntrySums(delegator, conditions, fromDate, thruDate, includeThruDate, entrySums);
+            return new LinkedList<>(entrySums.values());
+        }
+        // the totals are read for the whole days of the period, the entries for the start of the first and last days
+        Timestamp daysFromDate = fromDate;
+        if (fromDate != null && !fromDate.equals(UtilDateTime.getDayStart(fromDate))) {
+            daysFromDate = UtilDateTime.getNextDayStart(fromDate);
+        }
+        Timestamp daysThruDate = UtilDateTime.getDayStart(thruDate);
+        if (daysFromDate != null && !daysFromDate.before(daysThruDate)) {
+            addEntrySums(delegator, conditions, fromDate, thruDate, includeThruDate, entrySums);
+            return new LinkedList<>(entrySums.values());
+        }
+        if (fromDate != null && fromDate.before(daysFromDate)) {
+            addEntrySums(delegator, conditions, fromDate, daysFromDate, false, entrySums);
+        }
+        List<EntityCondition> dayConditions = new LinkedList<>(conditions);
+        if (daysFromDate != null) {
+            dayConditions.add(EntityCondition.makeCondition("transactionDate", EntityOperator.GREATER_THAN_EQUAL_TO,
+                    new Date(daysFromDate.getTime())));
+        }
+        dayConditions.add(EntityCondition.makeCondition("transactionDate", EntityOperator.LESS_THAN, new Date(daysThruDate.getTime())));
+        List<GenericValue> dayTotals = EntityQuery.use(delegator)
+                .select("glAccountId", "accountName", "accountCode", "postedDebits", "postedCredits")
+                .from("GlAccountDayTotalSums")
+                .where(dayConditions)
+                .queryList();
+        for (GenericValue dayTotal : dayTotals) {
+            // an account with only debits or only credits has no sum for the other side, as in AcctgTransEntrySums
+            if (dayTotal.getBigDecimal("postedDebits").signum() != 0) {
+                addEntrySum(entrySums, dayTotal, "D", dayTotal.getBigDecimal("postedDebits"));
+            }
+            if (dayTotal.getBigDecimal("postedCredits").signum() != 0) {
+                addEntrySum(entrySums, dayTotal, "C", dayTotal.getBigDecimal("postedCredits"));
+            }
+        }
+        if (includeThruDate || daysThruDate.before(thruDate)) {
+            addEntrySums(delegator, conditions, daysThruDate, thruDate, includeThruDate, entrySums);
+        }
+        return new LinkedList<>(entrySums.values());
+    }
+
+    private static void addEntrySums(Delegator delegator, List<EntityCondition> conditions, Timestamp fromDate, Timestamp thruDate,
+            boolean includeThruDate, Map<String, Map<String, Object>> entrySums) throws GenericEntityException {
+        List<EntityCondition> entryConditions = new LinkedList<>(conditions);
+        entryConditions.add(EntityCondition.makeCondition("isPosted", EntityOperator.EQUALS, "Y"));
+        if (fromDate != null) {
+            entryConditions.add(EntityCondition.makeCondition("transactionDate", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate));
+        }
+        entryConditions.add(EntityCondition.makeCondition("transactionDate",
+                includeThruDate ? EntityOperator.LESS_THAN_EQUAL_TO : EntityOperator.LESS_THAN, thruDate));
+        List<GenericValue> sums = EntityQuery.use(delegator)
+                .select("glAccountId", "accountName", "accountCode", "debitCreditFlag", "amount")
+                .from("AcctgTransEntrySums")
+                .where(entryConditions)
+                .queryList();
+        for (GenericValue sum : sums) {
+            addEntrySum(entrySums, sum, sum.getString("debitCreditFlag"), sum.getBigDecimal("amount"));
+        }
+    }
+
+    private static void addEntrySum(Map<String, Map<String, Object>> entrySums, GenericValue sum, String debitCreditFlag,
+            BigDecimal amount) {
+        if (amount == null) {
+            return;
+        }
+        Map<String, Object> entrySum = entrySums.computeIfAbsent(sum.getString("glAccountId") + "::" + debitCreditFlag,
+                k -> UtilMisc.toMap("glAccountId", sum.get("glAccountId"), "accountName", sum.get("accountName"),
+                        "accountCode", sum.get("accountCode"), "debitCreditFlag", debitCreditFlag, "amount", BigDecimal.ZERO));
+        entrySum.put("amount", ((BigDecimal) entrySum.get("amount")).add(amount));
+    }
+
+    /**
+     * Gets the total of the entries of a GL account posted with the ACTUAL fiscal type before a date, for
+     * computeGlAccountBalanceForTimePeriod
+     * @param delegator the delegator
+     * @param organizationPartyId the organization
+     * @param glAccountId the GL account
+     * @param debitCreditFlag D for the debits, C for the credits
+     * @param thruDate the date the transactions are posted before
+     * @return the total, zero if there is no entry
+     * @throws GenericEntityException if the total cannot be read
+     */
+    public static BigDecimal getPostedTotal(Delegator delegator, String organizationPartyId, String glAccountId, String debitCreditFlag,
+            Timestamp thruDate) throws GenericEntityException {
+        List<EntityCondition> conditions = UtilMisc.toList(
+                EntityCondition.makeCondition("organizationPartyId", EntityOperator.EQUALS, organizationPartyId),
+                EntityCondition.makeCondition("glAccountId", EntityOperator.EQUALS, glAccountId),
+                EntityCondition.makeCondition("glFiscalTypeId", EntityOperator.EQUALS, "ACTUAL"));
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map<String, Object> entrySum : getPostedEntrySums(delegator, conditions, null, thruDate, false)) {
+            if (debitCreditFlag.equals(entrySum.get("debitCreditFlag"))) {
+                total = total.add((BigDecimal) entrySum.get("amount"));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Adds the entries of a posted accounting transaction to the totals of its day, triggered via SECA on postAcctgTrans
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> addAcctgTransToGlAccountDayTotals(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String acctgTransId = (String) context.get("acctgTransId");
+        if (!isEnabled(delegator)) {
+            return ServiceUtil.returnSuccess();
+        }
+        try {
+            GenericValue acctgTrans = EntityQuery.use(delegator).from("AcctgTrans").where("acctgTransId", acctgTransId).queryOne();
+            if (acctgTrans == null || !"Y".equals(acctgTrans.getString("isPosted"))) {
+                return ServiceUtil.returnSuccess();
+            }
+            Map<GenericPK, GenericValue> dayTotals = new HashMap<>();
+            for (GenericValue acctgTransEntry : acctgTrans.getRelated("AcctgTransEntry", null, null, false)) {
+                addEntry(delegator, dayTotals, acctgTrans, acctgTransEntry);
+            }
+            for (GenericValue dayTotal : dayTotals.values()) {
+                // lock the total with an update before reading it, so that the concurrent postings add their entries in turn
+                EntityCondition pkCondition = EntityCondition.makeCondition(dayTotal.getPrimaryKey().getAllFields());
+                Map<String, Object> lockFields = UtilMisc.toMap("glAccountId", dayTotal.get("glAccountId"));
+                if (delegator.storeByCondition("GlAccountDayTotal", lockFields, pkCondition) == 0) {
+                    GenericValue emptyDayTotal = delegator.makeValue("GlAccountDayTotal", dayTotal.getPrimaryKey());
+                    emptyDayTotal.set("postedDebits", BigDecimal.ZERO);
+                    emptyDayTotal.set("postedCredits", BigDecimal.ZERO);
+                    try {
+                        // in its own transaction, so that a concurrent creation does not fail the current one
+                        TransactionUtil.doNewTransaction(() -> delegator.create(emptyDayTotal), "Error creating the GL account day total", 0, false);
+                    } catch (GenericEntityException e) {
+                        Debug.logInfo("The GL account day total " + dayTotal.getPrimaryKey() + " has been created by another transaction: "
+                                + e.getMessage(), MODULE);
+                    }
+                    if (delegator.storeByCondition("GlAccountDayTotal", lockFields, pkCondition) == 0) {
+                        throw new GenericEntityException("Unable to create the GL account day total " + dayTotal.getPrimaryKey());
+                    }
+                }
+                GenericValue storedDayTotal = EntityQuery.use(delegator).from("GlAccountDayTotal").where(pkCondition).queryOne();
+                storedDayTotal.set("postedDebits", storedDayTotal.getBigDecimal("postedDebits").add(dayTotal.getBigDecimal("postedDebits")));
+                storedDayTotal.set("postedCredits", storedDayTotal.getBigDecimal("postedCredits").add(dayTotal.getBigDecimal("postedCredits")));
+                storedDayTotal.store();
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error adding the accounting transaction " + acctgTransId + " to the GL account totals", MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    private static void addEntry(Delegator delegator, Map<GenericPK, GenericValue> dayTotals, GenericValue acctgTrans,
+            GenericValue acctgTransEntry) {
+        String organizationPartyId = acctgTransEntry.getString("organizationPartyId");
+        String glAccountId = acctgTransEntry.getString("glAccountId");
+        BigDecimal amount = acctgTransEntry.getBigDecimal("amount");
+        Timestamp transactionDate = acctgTrans.getTimestamp("transactionDate");
+        if (UtilValidate.isEmpty(organizationPartyId) || UtilValidate.isEmpty(glAccountId) || amount == null || transactionDate == null) {
+            return;
+        }
+        GenericValue dayTotal = delegator.makeValue("GlAccountDayTotal", UtilMisc.toMap(
+                "organizationPartyId", organizationPartyId,
+                "glAccountId", glAccountId,
+                "glFiscalTypeId", UtilValidate.isNotEmpty(acctgTrans.getString("glFiscalTypeId")) ? acctgTrans.get("glFiscalTypeId") : NA,
+                "acctgTransTypeId", UtilValidate.isNotEmpty(acctgTrans.getString("acctgTransTypeId")) ? acctgTrans.get("acctgTransTypeId") : NA,
+                "transactionDate", new Date(UtilDateTime.getDayStart(transactionDate).getTime())));
+        GenericValue total = dayTotals.get(dayTotal.getPrimaryKey());
+        if (total == null) {
+            dayTotal.set("postedDebits", BigDecimal.ZERO);
+            dayTotal.set("postedCredits", BigDecimal.ZERO);
+            dayTotals.put(dayTotal.getPrimaryKey(), dayTotal);
+            total = dayTotal;
+        }
+        if ("D".equals(acctgTransEntry.getString("debitCreditFlag"))) {
+            total.set("postedDebits", total.getBigDecimal("postedDebits").add(amount));
+        } else if ("C".equals(acctgTransEntry.getString("debitCreditFlag"))) {
+            total.set("postedCredits", total.getBigDecimal("postedCredits").add(amount));
+        }
+    }
+
+    /**
+     * Calculates the totals of the days of a month from the posted entries
+     * @param delegator the delegator
+     * @param monthStart the start of the month
+     * @return the GlAccountDayTotal records of the month, by primary key
+     * @throws GenericEntityException if the entries cannot be read
+     */
+    private static Map<GenericPK, GenericValue> calculateMonthTotals(Delegator delegator, Timestamp monthStart) throws GenericEntityException {
+        Map<GenericPK, GenericValue> dayTotals = new HashMap<>();
+        Map<String, GenericValue> acctgTransById = new HashMap<>();
+        try (EntityListIterator eli = EntityQuery.use(delegator)
+                .from("AcctgTrans")
+                .where(EntityCondition.makeCondition("isPosted", EntityOperator.EQUALS, "Y"),
+                        EntityCondition.makeCondition("transactionDate", EntityOperator.GREATER_THAN_EQUAL_TO, monthStart),
+                        EntityCondition.makeCondition("transactionDate", EntityOperator.LESS_THAN, UtilDateTime.getMonthStart(monthStart, 0, 1)))
+                .queryIterator()) {
+            GenericValue acctgTrans;
+            while ((acctgTrans = eli.next()) != null) {
+                acctgTransById.put(acctgTrans.getString("acctgTransId"), acctgTrans);
+            }
+        }
+        List<String> acctgTransIds = new LinkedList<>(acctgTransById.keySet());
+        for (int i = 0; i < acctgTransIds.size(); i += 1000) {
+            List<GenericValue> acctgTransEntries = EntityQuery.use(delegator).from("AcctgTransEntry")
+                    .where(EntityCondition.makeCondition("acctgTransId", EntityOperator.IN,
+                            acctgTransIds.subList(i, Math.min(i + 1000, acctgTransIds.size()))))
+                    .queryList();
+            for (GenericValue acctgTransEntry : acctgTransEntries) {
+                addEntry(delegator, dayTotals, acctgTransById.get(acctgTransEntry.getString("acctgTransId")), acctgTransEntry);
+            }
+        }
+        return dayTotals;
+    }
+
+    private static Map<GenericPK, GenericValue> getMonthTotals(Delegator delegator, Timestamp monthStart) throws GenericEntityException {
+        Map<GenericPK, GenericValue> dayTotals = new HashMap<>();
+        List<GenericValue> values = EntityQuery.use(delegator).from("GlAccountDayTotal")
+                .where(EntityCondition.makeCondition("transactionDate", EntityOperator.GREATER_THAN_EQUAL_TO, new Date(monthStart.getTime())),
+                        EntityCondition.makeCondition("transactionDate", EntityOperator.LESS_THAN,
+                                new Date(UtilDateTime.getMonthStart(monthStart, 0, 1).getTime())))
+                .queryList();
+        for (GenericValue value : values) {
+            dayTotals.put(value.getPrimaryKey(), value);
+        }
+        return dayTotals;
+    }
+
+    private static List<Timestamp> getMonthStarts(Delegator delegator) throws GenericEntityException {
+        List<Timestamp> monthStarts = new LinkedList<>();
+        GenericValue firstAcctgTrans = EntityQuery.use(delegator).select("transactionDate").from("AcctgTrans")
+                .where(EntityCondition.makeCondition("transactionDate", EntityOperator.NOT_EQUAL, null))
+                .orderBy("transactionDate").queryFirst();
+        GenericValue lastAcctgTrans = EntityQuery.use(delegator).select("transactionDate").from("AcctgTrans")
+                .where(EntityCondition.makeCondition("transactionDate", EntityOperator.NOT_EQUAL, null))
+                .orderBy("-transactionDate").queryFirst();
+        GenericValue firstDayTotal = EntityQuery.use(delegator).select("transactionDate").from("GlAccountDayTotal")
+                .orderBy("transactionDate").queryFirst();
+        GenericValue lastDayTotal = EntityQuery.use(delegator).select("transactionDate").from("GlAccountDayTotal")
+                .orderBy("-transactionDate").queryFirst();
+        Timestamp firstDate = null;
+        Timestamp lastDate = null;
+        for (GenericValue first : UtilMisc.toList(firstAcctgTrans, firstDayTotal)) {
+            if (first != null) {
+                Timestamp date = new Timestamp(((java.util.Date) first.get("transactionDate")).getTime());
+                firstDate = firstDate == null || date.before(firstDate) ? date : firstDate;
+            }
+        }
+        for (GenericValue last : UtilMisc.toList(lastAcctgTrans, lastDayTotal)) {
+            if (last != null) {
+                Timestamp date = new Timestamp(((java.util.Date) last.get("transactionDate")).getTime());
+                lastDate = lastDate == null || date.after(lastDate) ? date : lastDate;
+            }
+        }
+        if (firstDate == null) {
+            return monthStarts;
+        }
+        for (Timestamp monthStart = UtilDateTime.getMonthStart(firstDate); !monthStart.after(lastDate);
+                monthStart = UtilDateTime.getMonthStart(monthStart, 0, 1)) {
+            monthStarts.add(monthStart);
+        }
+        return monthStarts;
+    }
+
+    /**
+     * Calculates and stores the totals of the days from all the posted entries, month by month, to run once before enabling
+     * <code>accounting.gl.day.totals.enabled</code> and after changes made to posted transactions.
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution, with the number of months rebuilt
+     */
+    public static Map<String, Object> rebuildGlAccountDayTotals(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        long startTime = System.currentTimeMillis();
+        int monthCount = 0;
+        try {
+            for (Timestamp monthStart : getMonthStarts(delegator)) {
+                TransactionUtil.doNewTransaction(() -> {
+                    Map<GenericPK, GenericValue> dayTotals = calculateMonthTotals(delegator, monthStart);
+                    delegator.removeByCondition("GlAccountDayTotal", EntityCondition.makeCondition(
+                            EntityCondition.makeCondition("transactionDate", EntityOperator.GREATER_THAN_EQUAL_TO,
+                                    new Date(monthStart.getTime())),
+                            EntityOperator.AND,
+                            EntityCondition.makeCondition("transactionDate", EntityOperator.LESS_THAN,
+                                    new Date(UtilDateTime.getMonthStart(monthStart, 0, 1).getTime()))));
+                    delegator.storeAll(new LinkedList<>(dayTotals.values()));
+                    return null;
+                }, "Error rebuilding the GL account totals of the month " + monthStart, 7200, true);
+                monthCount++;
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        Debug.logInfo("Rebuilt the GL account totals of " + monthCount + " months in " + (System.currentTimeMillis() - startTime) / 1000.0
+                + "s", MODULE);
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("monthCount", monthCount);
+        return result;
+    }
+
+    /**
+     * Compares the stored totals of the days with the totals calculated from the posted entries, month by month.
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution, with the differences found
+     */
+    public static Map<String, Object> checkGlAccountDayTotals(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        List<Map<String, Object>> differences = new LinkedList<>();
+        try {
+            for (Timestamp monthStart : getMonthStarts(delegator)) {
+                Map<GenericPK, GenericValue> calculatedTotals = calculateMonthTotals(delegator, monthStart);
+                Map<GenericPK, GenericValue> storedTotals = getMonthTotals(delegator, monthStart);
+                for (Map.Entry<GenericPK, GenericValue> calculated : calculatedTotals.entrySet()) {
+                    addDifference(differences, calculated.getKey(), storedTotals.remove(calculated.getKey()), calculated.getValue());
+                }
+                for (Map.Entry<GenericPK, GenericValue> stored : storedTotals.entrySet()) {
+                    addDifference(differences, stored.getKey(), stored.getValue(), null);
+                }
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        if (!differences.isEmpty()) {
+            Debug.logWarning(differences.size() + " GL account totals differ from the posted entries, run rebuildGlAccountDayTotals", MODULE);
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("differences", differences);
+        return result;
+    }
+
+    private static void addDifference(List<Map<String, Object>> differences, GenericPK key, GenericValue stored, GenericValue calculated) {
+        BigDecimal storedDebits = stored != null ? stored.getBigDecimal("postedDebits") : BigDecimal.ZERO;
+        BigDecimal storedCredits = stored != null ? stored.getBigDecimal("postedCredits") : BigDecimal.ZERO;
+        BigDecimal entryDebits = calculated != null ? calculated.getBigDecimal("postedDebits") : BigDecimal.ZERO;
+        BigDecimal entryCredits = calculated != null ? calculated.getBigDecimal("postedCredits") : BigDecimal.ZERO;
+        if (storedDebits.compareTo(entryDebits) != 0 || storedCredits.compareTo(entryCredits) != 0) {
+            Map<String, Object> difference = new HashMap<>(key.getAllFields());
+            difference.put("postedDebits", storedDebits);
+            difference.put("postedCredits", storedCredits);
+            difference.put("entryDebits", entryDebits);
+            difference.put("entryCredits", entryCredits);
+            differences.add(difference);
+        }
+    }
+}
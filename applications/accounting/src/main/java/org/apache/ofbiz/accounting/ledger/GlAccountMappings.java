@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.accounting.ledger;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+/**
+ * GL account mappings of an organization, used to find the GL account of the accounting transaction entries having only
+ * a GL account type.
+ * <p>The mappings of the organization (GlAccountTypeDefault, PartyGlAccount, ProductCategoryGlAccount, ...) are read once,
+ * from the entity cache, and the mappings of the products when first needed, so that all the entries of a transaction, or
+ * of several transactions, are resolved with a few lookups in memory. The resolution follows the getGlAccountFromAccountType
+ * service.</p>
+ */
+public final class GlAccountMappings {
+
+    private final Delegator delegator;
+    private final String organizationPartyId;
+    private final Map<String, Map<String, String>> tables = new HashMap<>();
+    private final Map<String, Map<String, String>> productGlAccounts = new HashMap<>();
+    private final Map<String, List<String>> productCategoryIds = new HashMap<>();
+
+    public GlAccountMappings(Delegator delegator, String organizationPartyId) {
+        this.delegator = delegator;
+        this.organizationPartyId = organizationPartyId;
+    }
+
+    /**
+     * Gets the GL account of an entry from the mappings of the organization.
+     * @param parameters the acctgTransTypeId, glAccountTypeId, debitCreditFlag, productId, partyId, roleTypeId, invoiceId,
+     *        paymentId and fixedAssetId of the entry, as given to the getGlAccountFromAccountType service
+     * @return the glAccountId, or <code>null</code> if the entry has no mapping
+     * @throws GenericEntityException if the mappings cannot be read
+     */
+    public String getGlAccountId(Map<String, ? extends Object> parameters) throws GenericEntityException {
+        String acctgTransTypeId = (String) parameters.get("acctgTransTypeId");
+        String glAccountTypeId = (String) parameters.get("glAccountTypeId");
+        String debitCreditFlag = (String) parameters.get("debitCreditFlag");
+        String productId = (String) parameters.get("productId");
+        String partyId = (String) parameters.get("partyId");
+        String roleTypeId = (String) parameters.get("roleTypeId");
+        String invoiceId = (String) parameters.get("invoiceId");
+        String paymentId = (String) parameters.get("paymentId");
+        String fixedAssetId = (String) parameters.get("fixedAssetId");
+
+        // if this is an inventory variance then the glAccountTypeId contains the varianceReasonId
+        if ("ITEM_VARIANCE".equals(acctgTransTypeId)) {
+            String glAccountId = getTable("VarianceReasonGlAccount", "varianceReasonId").get(glAccountTypeId);
+            if (glAccountId != null) {
+                return glAccountId;
+            }
+        }
+        // fixed asset depreciation
+        if ("DEPRECIATION".equals(acctgTransTypeId) && UtilValidate.isNotEmpty(fixedAssetId)) {
+            GenericValue fixedAssetTypeGlAccount = getFixedAssetTypeGlAccount(fixedAssetId);
+            if (fixedAssetTypeGlAccount != null) {
+                if (fixedAssetTypeGlAccount.get("accDepGlAccountId") != null && "C".equals(debitCreditFlag)) {
+                    return fixedAssetTypeGlAccount.getString("accDepGlAccountId");
+                }
+                if (fixedAssetTypeGlAccount.get("depGlAccountId") != null && "D".equals(debitCreditFlag)) {
+                    return fixedAssetTypeGlAccount.getString("depGlAccountId");
+                }
+            }
+        }
+        // check first if there is a party specific account mapping defined for the account type
+        if (UtilValidate.isNotEmpty(glAccountTypeId) && UtilValidate.isNotEmpty(partyId) && UtilValidate.isNotEmpty(roleTypeId)) {
+            String glAccountId = getTable("PartyGlAccount", "partyId", "roleTypeId", "glAccountTypeId")
+                    .get(partyId + "::" + roleTypeId + "::" + glAccountTypeId);
+            if (glAccountId != null) {
+                return glAccountId;
+            }
+        }
+        if ((("OUTGOING_PAYMENT".equals(acctgTransTypeId) && "C".equals(debitCreditFlag))
+                || ("INCOMING_PAYMENT".equals(acctgTransTypeId) && "D".equals(debitCreditFlag)))
+                && UtilValidate.isNotEmpty(paymentId)) {
+            return getPaymentGlAccountId(paymentId);
+        }
+        String glAccountId = null;
+        if (UtilValidate.isNotEmpty(productId)) {
+            glAccountId = getProductGlAccounts(productId).get(glAccountTypeId);
+            if (glAccountId == null) {
+                // look if the product is member of any ProductCategory in ProductCategoryGlAccount
+                Map<String, String> productCategoryGlAccounts = getTable("ProductCategoryGlAccount", "productCategoryId", "glAccountTypeId");
+                for (String productCategoryId : getProductCategoryIds(productId)) {
+                    String categoryGlAccountId = productCategoryGlAccounts.get(productCategoryId + "::" + glAccountTypeId);
+                    if (categoryGlAccountId != null) {
+                        return categoryGlAccountId;
+                    }
+                }
+            }
+        }
+        if ((("PURCHASE_INVOICE".equals(acctgTransTypeId) && "D".equals(debitCreditFlag))
+                || ("CUST_RTN_INVOICE".equals(acctgTransTypeId) && "D".equals(debitCreditFlag))
+                || ("SALES_INVOICE".equals(acctgTransTypeId) && "C".equals(debitCreditFlag)))
+                && UtilValidate.isNotEmpty(invoiceId) && UtilValidate.isNotEmpty(glAccountTypeId)) {
+            return getInvoiceItemGlAccountId(acctgTransTypeId, glAccountTypeId, productId);
+        }
+        // if nothing found or if no such parameters were passed, try GlAccountTypeDefault
+        if (glAccountId == null) {
+            glAccountId = getTable("GlAccountTypeDefault", "glAccountTypeId").get(glAccountTypeId);
+        }
+        return glAccountId;
+    }
+
+    private String getPaymentGlAccountId(String paymentId) throws GenericEntityException {
+        GenericValue payment = EntityQuery.use(delegator).from("Payment").where("paymentId", paymentId).queryOne();
+        if (payment == null) {
+            return null;
+        }
+        GenericValue paymentMethod = payment.getRelatedOne("PaymentMethod", false);
+        if (paymentMethod != null && paymentMethod.get("glAccountId") != null) {
+            return paymentMethod.getString("glAccountId");
+        }
+        if ("CREDIT_CARD".equals(payment.getString("paymentMethodTypeId"))) {
+            GenericValue creditCard = payment.getRelatedOne("CreditCard", false);
+            if (creditCard != null) {
+                String glAccountId = getTable("CreditCardTypeGlAccount", "cardType").get(creditCard.getString("cardType"));
+                if (glAccountId != null) {
+                    return glAccountId;
+                }
+            }
+        }
+        return getTable("PaymentMethodTypeGlAccount", "paymentMethodTypeId").get(payment.getString("paymentMethodTypeId"));
+    }
+
+    private String getInvoiceItemGlAccountId(String acctgTransTypeId, String invoiceItemTypeId, String productId)
+            throws GenericEntityException {
+        String glAccountId = getTable("InvoiceItemTypeGlAccount", "invoiceItemTypeId").get(invoiceItemTypeId);
+        if (glAccountId != null) {
+            return glAccountId;
+        }
+        GenericValue invoiceItemType = EntityQuery.use(delegator).from("InvoiceItemType")
+                .where("invoiceItemTypeId", invoiceItemTypeId)
+                .cache()
+                .queryOne();
+        if (invoiceItemType != null && invoiceItemType.get("defaultGlAccountId") != null) {
+            return invoiceItemType.getString("defaultGlAccountId");
+        }
+        if (UtilValidate.isNotEmpty(productId)) {
+            String glAccountTypeId;
+            switch (acctgTransTypeId) {
+            case "PURCHASE_INVOICE":
+                glAccountTypeId = "UNINVOICED_SHIP_RCPT";
+                break;
+            case "CUST_RTN_INVOICE":
+                glAccountTypeId = "SALES_RETURNS";
+                break;
+            default:
+                glAccountTypeId = "SALES_ACCOUNT";
+                break;
+            }
+            return getTable("GlAccountTypeDefault", "glAccountTypeId").get(glAccountTypeId);
+        }
+        return null;
+    }
+
+    private GenericValue getFixedAssetTypeGlAccount(String fixedAssetId) throws GenericEntityException {
+        List<GenericValue> fixedAssetTypeGlAccounts = EntityQuery.use(delegator).from("FixedAssetTypeGlAccount")
+                .where("fixedAssetId", fixedAssetId)
+                .queryList();
+        if (fixedAssetTypeGlAccounts.isEmpty()) {
+            GenericValue fixedAsset = EntityQuery.use(delegator).from("FixedAsset").where("fixedAssetId", fixedAssetId).queryOne();
+            fixedAssetTypeGlAccounts = EntityQuery.use(delegator).from("FixedAssetTypeGlAccount")
+                    .where(EntityCondition.makeCondition("fixedAssetId", "_NA_"),
+                            EntityCondition.makeCondition(EntityCondition.makeCondition("fixedAssetTypeId",
+                                    fixedAsset == null ? null : fixedAsset.getString("fixedAssetTypeId")),
+                                    EntityOperator.OR,
+                                    EntityCondition.makeCondition("fixedAssetTypeId", "_NA_")))
+                    .queryList();
+        }
+        return fixedAssetTypeGlAccounts.isEmpty() ? null : fixedAssetTypeGlAccounts.get(0);
+    }
+
+    private Map<String, String> getProductGlAccounts(String productId) throws GenericEntityException {
+        Map<String, String> glAccounts = productGlAccounts.get(productId);
+        if (glAccounts == null) {
+            glAccounts = new HashMap<>();
+            List<GenericValue> values = EntityQuery.use(delegator).from("ProductGlAccount")
+                    .where("productId", productId, "organizationPartyId", organizationPartyId)
+                    .cache()
+                    .queryList();
+            for (GenericValue value : values) {
+                glAccounts.put(value.getString("glAccountTypeId"), value.getString("glAccountId"));
+            }
+            productGlAccounts.put(productId, glAccounts);
+        }
+        return glAccounts;
+    }
+
+    private List<String> getProductCategoryIds(String productId) throws GenericEntityException {
+        List<String> categoryIds = productCategoryIds.get(productId);
+        if (categoryIds == null) {
+            categoryIds = new LinkedList<>();
+            List<GenericValue> members = EntityQuery.use(delegator).from("ProductCategoryMember")
+                    .where("productId", productId)
+                    .orderBy("-fromDate")
+                    .filterByDate()
+                    .queryList();
+            for (GenericValue member : members) {
+                categoryIds.add(member.getString("productCategoryId"));
+            }
+            productCategoryIds.put(productId, categoryIds);
+        }
+        return categoryIds;
+    }
+
+    /**
+     * Gets the glAccountId of the records of a mapping entity for the organization, by the values of the other primary key
+     * fields joined with "::".
+     */
+    private Map<String, String> getTable(String entityName, String... keyFields) throws GenericEntityException {
+        Map<String, String> table = tables.get(entityName);
+        if (table == null) {
+            table = new HashMap<>();
+            List<GenericValue> values = EntityQuery.use(delegator).from(entityName)
+                    .where("organizationPartyId", organizationPartyId)
+                    .cache()
+                    .queryList();
+            for (GenericValue value : values) {
+                StringBuilder key = new StringBuilder();
+                for (String keyField : keyFields) {
+                    if (key.length() > 0) {
+                        key.append("::");
+                    }
+                    key.append(value.getString(keyField));
+                }
+                table.put(key.toString(), value.getString("glAccountId"));
+            }
+            tables.put(entityName, table);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.accounting.tax;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityDerivedCache;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
+
+/**
+ * Rate table of the tax authorities: the TaxAuthorityRateProduct records of each tax authority, with all their validity
+ * dates, read once and shared by the tax calculations, the records valid for a store at a date being then selected in memory.
+ * <p>The rates are dropped by an entity ECA once a transaction changing the TaxAuthorityRateProduct records is completed.</p>
+ */
+public final class TaxAuthorityRateCache {
+
+    private static final String MODULE = TaxAuthorityRateCache.class.getName();
+    private static final EntityDerivedCache<List<GenericValue>> RATES = new EntityDerivedCache<>("accounting.tax.rate.product",
+            "tax authority rates");
+
+    /** Order of the rates as read by the tax calculation: minItemPrice, minPurchase and fromDate, the empty amounts last. */
+    private static final Comparator<GenericValue> RATE_ORDER = Comparator
+            .comparing((GenericValue rate) -> rate.getBigDecimal("minItemPrice"), Comparator.nullsLast(Comparator.<BigDecimal>naturalOrder()))
+            .thenComparing(rate -> rate.getBigDecimal("minPurchase"), Comparator.nullsLast(Comparator.<BigDecimal>naturalOrder()))
+            .thenComparing(rate -> rate.getTimestamp("fromDate"), Comparator.nullsLast(Comparator.<Timestamp>naturalOrder()));
+
+    private TaxAuthorityRateCache() { }
+
+    /**
+     * Gets the rates of tax authorities, with the rates of the _NA_ tax authority applying everywhere.
+     * @param delegator the delegator
+     * @param taxAuthorities the TaxAuthority records
+     * @param productStoreId the store the rates must be defined for, or <code>null</code> for the rates of all the stores only
+     * @param moment the date the rates must be valid at
+     * @return the TaxAuthorityRateProduct records, ordered by minItemPrice, minPurchase and fromDate
+     * @throws GenericEntityException if the rates cannot be read
+     */
+    public static List<GenericValue> getRates(Delegator delegator, Collection<GenericValue> taxAuthorities, String productStoreId,
+            Timestamp moment) throws GenericEntityException {
+        List<GenericValue> rates = new ArrayList<>(getAuthorityRates(delegator, "_NA_", "_NA_"));
+        for (GenericValue taxAuthority : taxAuthorities) {
+            rates.addAll(getAuthorityRates(delegator, taxAuthority.getString("taxAuthGeoId"), taxAuthority.getString("taxAuthPartyId")));
+        }
+        rates = EntityUtil.filterByDate(rates, moment);
+        rates.removeIf(rate -> rate.get("productStoreId") != null && !rate.getString("productStoreId").equals(productStoreId));
+        rates.sort(RATE_ORDER);
+        return rates;
+    }
+
+    private static List<GenericValue> getAuthorityRates(Delegator delegator, String taxAuthGeoId, String taxAuthPartyId)
+            throws GenericEntityException {
+        return RATES.get(delegator, taxAuthGeoId + "::" + taxAuthPartyId, () -> {
+            List<GenericValue> values = EntityQuery.use(delegator).from("TaxAuthorityRateProduct")
+                    .where("taxAuthGeoId", taxAuthGeoId, "taxAuthPartyId", taxAuthPartyId)
+                    .queryList();
+            for (GenericValue value : values) {
+                value.setImmutable();
+            }
+            return Collections.unmodifiableList(values);
+        });
+    }
+
+    /**
+     * Drops the rates of a delegator once the current transaction is completed, or right now if there is no transaction.
+     * @param delegator the delegator
+     */
+    public static void clear(Delegator delegator) {
+        RATES.clear(delegator);
+    }
+}
@@ -20,7 +20,6 @@ package org.apache.ofbiz.accounting.tax;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.sql.Timestamp;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -30,7 +29,6 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.ofbiz.base.util.Debug;
-import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilNumber;
@@ -44,7 +42,6 @@ import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.party.contact.ContactMechWorker;
-import org.apache.ofbiz.product.product.ProductWorker;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.ServiceUtil;
 
@@ -122,8 +119,10 @@ public class TaxAuthorityServices {
                             + productStoreId + "] for tax calculation; the store settings may need to be corrected.");
                 }
 
-                List<GenericValue> taxAdustmentList = getTaxAdjustments(delegator, product, productStore, null,
-                        billToPartyId, taxAuthoritySet, basePrice, quantity, amount, shippingPrice, ZERO_BASE);
+                TaxCalculation calculation = new TaxCalculation(delegator, productStore, null, billToPartyId, taxAuthoritySet,
+                        UtilMisc.toList(product));
+                List<GenericValue> taxAdustmentList = getTaxAdjustments(calculation, product, basePrice, quantity, amount,
+                        shippingPrice, ZERO_BASE);
                 if (taxAdustmentList.isEmpty()) {
                     // this is something that happens every so often for different products and
                     // such, so don't blow up on it...
@@ -234,8 +233,11 @@ public class TaxAuthorityServices {
         // without knowing the TaxAuthority parties, just find all TaxAuthories for the
         // set of IDs...
         Set<GenericValue> taxAuthoritySet = new HashSet<>();
+        TaxCalculation calculation;
         try {
             getTaxAuthorities(delegator, shippingAddress, taxAuthoritySet);
+            // read the rates of the tax authorities and the tax categories of all the products at once
+            calculation = new TaxCalculation(delegator, productStore, payToPartyId, billToPartyId, taxAuthoritySet, itemProductList);
         } catch (GenericEntityException e) {
             Debug.logError(e, "Data error getting tax settings: " + e.toString(), MODULE);
             return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "AccountingTaxSettingError", UtilMisc
@@ -258,8 +260,8 @@ public class TaxAuthorityServices {
 
             totalPrice = totalPrice.add(itemAmount);
 
-            List<GenericValue> taxList = getTaxAdjustments(delegator, product, productStore, payToPartyId,
-                    billToPartyId, taxAuthoritySet, itemPrice, itemQuantity, itemAmount, shippingAmount, ZERO_BASE);
+            List<GenericValue> taxList = getTaxAdjustments(calculation, product, itemPrice, itemQuantity, itemAmount,
+                    shippingAmount, ZERO_BASE);
 
             // this is an add and not an addAll because we want a List of Lists of
             // GenericValues, one List of Adjustments per item
@@ -281,14 +283,14 @@ public class TaxAuthorityServices {
 
         if (orderShippingAmount != null && orderShippingAmount.compareTo(BigDecimal.ZERO) > 0) {
             for (GenericValue prod : productWeight.keySet()) {
-                List<GenericValue> taxList = getTaxAdjustments(delegator, prod, productStore, payToPartyId, billToPartyId,
-                        taxAuthoritySet, ZERO_BASE, ZERO_BASE, ZERO_BASE, orderShippingAmount, null, productWeight.get(prod));
+                List<GenericValue> taxList = getTaxAdjustments(calculation, prod, ZERO_BASE, ZERO_BASE, ZERO_BASE,
+                        orderShippingAmount, null, productWeight.get(prod));
                 orderAdjustments.addAll(taxList);
             }
         }
         if (orderPromotionsAmount != null && orderPromotionsAmount.compareTo(BigDecimal.ZERO) != 0) {
-            List<GenericValue> taxList = getTaxAdjustments(delegator, null, productStore, payToPartyId, billToPartyId,
-                    taxAuthoritySet, ZERO_BASE, ZERO_BASE, ZERO_BASE, null, orderPromotionsAmount);
+            List<GenericValue> taxList = getTaxAdjustments(calculation, null, ZERO_BASE, ZERO_BASE, ZERO_BASE, null,
+                    orderPromotionsAmount);
             orderAdjustments.addAll(taxList);
         }
 
@@ -299,6 +301,18 @@ public class TaxAuthorityServices {
         return result;
     }
 
+    /**
+     * Drops the rates read by the tax calculation once the current transaction is committed, triggered via ECA when the
+     * TaxAuthorityRateProduct records change.
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> clearTaxAuthorityRateCache(DispatchContext dctx, Map<String, ? extends Object> context) {
+        TaxAuthorityRateCache.clear(dctx.getDelegator());
+        return ServiceUtil.returnSuccess();
+    }
+
     private static void getTaxAuthorities(Delegator delegator, GenericValue shippingAddress,
                                           Set<GenericValue> taxAuthoritySet) throws GenericEntityException {
         Map<String, String> geoIdByTypeMap = new HashMap<>();
@@ -331,104 +345,31 @@ public class TaxAuthorityServices {
         taxAuthoritySet.addAll(taxAuthorityRawList);
     }
 
-    private static List<GenericValue> getTaxAdjustments(Delegator delegator, GenericValue product,
-                                                        GenericValue productStore,
-                                                        String payToPartyId, String billToPartyId, Set<GenericValue> taxAuthoritySet,
+    private static List<GenericValue> getTaxAdjustments(TaxCalculation calculation, GenericValue product,
                                                         BigDecimal itemPrice, BigDecimal itemQuantity, BigDecimal itemAmount,
                                                         BigDecimal shippingAmount, BigDecimal orderPromotionsAmount) {
-        return getTaxAdjustments(delegator, product, productStore, payToPartyId, billToPartyId,
-                taxAuthoritySet, itemPrice, itemQuantity, itemAmount, shippingAmount,
+        return getTaxAdjustments(calculation, product, itemPrice, itemQuantity, itemAmount, shippingAmount,
                 orderPromotionsAmount, null);
     }
 
-    private static List<GenericValue> getTaxAdjustments(Delegator delegator, GenericValue product,
-            GenericValue productStore,
-            String payToPartyId, String billToPartyId, Set<GenericValue> taxAuthoritySet,
+    private static List<GenericValue> getTaxAdjustments(TaxCalculation calculation, GenericValue product,
             BigDecimal itemPrice, BigDecimal itemQuantity, BigDecimal itemAmount,
             BigDecimal shippingAmount, BigDecimal orderPromotionsAmount, BigDecimal weight) {
-        Timestamp nowTimestamp = UtilDateTime.nowTimestamp();
+        Delegator delegator = calculation.getDelegator();
+        String billToPartyId = calculation.getBillToPartyId();
         List<GenericValue> adjustments = new LinkedList<>();
         if (weight == null) {
             weight = BigDecimal.ONE;
         }
 
-        if (payToPartyId == null) {
-            if (productStore != null) {
-                payToPartyId = productStore.getString("payToPartyId");
-            }
-        }
-
-        // store expr
-        EntityCondition storeCond = null;
-        if (productStore != null) {
-            storeCond = EntityCondition.makeCondition(
-                    EntityCondition.makeCondition("productStoreId", EntityOperator.EQUALS, productStore.get(
-                            "productStoreId")),
-                    EntityOperator.OR,
-                    EntityCondition.makeCondition("productStoreId", EntityOperator.EQUALS, null));
-        } else {
-            storeCond = EntityCondition.makeCondition("productStoreId", EntityOperator.EQUALS, null);
-        }
-
-        // build the TaxAuthority expressions (taxAuthGeoId, taxAuthPartyId)
-        List<EntityCondition> taxAuthCondOrList = new LinkedList<>();
-        // start with the _NA_ TaxAuthority...
-        taxAuthCondOrList.add(EntityCondition.makeCondition(
-                EntityCondition.makeCondition("taxAuthPartyId", EntityOperator.EQUALS, "_NA_"),
-                EntityOperator.AND,
-                EntityCondition.makeCondition("taxAuthGeoId", EntityOperator.EQUALS, "_NA_")));
-
-        for (GenericValue taxAuthority : taxAuthoritySet) {
-            EntityCondition taxAuthCond = EntityCondition.makeCondition(
-                    EntityCondition.makeCondition("taxAuthPartyId", EntityOperator.EQUALS, taxAuthority.getString(
-                            "taxAuthPartyId")),
-                    EntityOperator.AND,
-                    EntityCondition.makeCondition("taxAuthGeoId", EntityOperator.EQUALS, taxAuthority.getString(
-                            "taxAuthGeoId")));
-            taxAuthCondOrList.add(taxAuthCond);
-        }
-        EntityCondition taxAuthoritiesCond = EntityCondition.makeCondition(taxAuthCondOrList, EntityOperator.OR);
-
         try {
-            EntityCondition productCategoryCond;
-            productCategoryCond = setProductCategoryCond(delegator, product);
-
-            if (product == null && shippingAmount != null) {
-                EntityCondition taxShippingCond = EntityCondition.makeCondition(
-                        EntityCondition.makeCondition("taxShipping", EntityOperator.EQUALS, null),
-                        EntityOperator.OR,
-                        EntityCondition.makeCondition("taxShipping", EntityOperator.EQUALS, "Y"));
-
-                productCategoryCond = EntityCondition.makeCondition(productCategoryCond, EntityOperator.OR,
-                        taxShippingCond);
-            }
-
-            if (product == null && orderPromotionsAmount != null) {
-                EntityCondition taxOrderPromotionsCond = EntityCondition.makeCondition(
-                        EntityCondition.makeCondition("taxPromotions", EntityOperator.EQUALS, null),
-                        EntityOperator.OR,
-                        EntityCondition.makeCondition("taxPromotions", EntityOperator.EQUALS, "Y"));
-
-                productCategoryCond = EntityCondition.makeCondition(productCategoryCond, EntityOperator.OR,
-                        taxOrderPromotionsCond);
-            }
-
-            // build the main condition clause
-            List<EntityCondition> mainExprs = UtilMisc.toList(storeCond, taxAuthoritiesCond, productCategoryCond);
-            mainExprs.add(EntityCondition.makeCondition(EntityCondition.makeCondition("minItemPrice",
-                    EntityOperator.EQUALS, null), EntityOperator.OR, EntityCondition.makeCondition("minItemPrice",
-                            EntityOperator.LESS_THAN_EQUAL_TO, itemPrice)));
-            mainExprs.add(EntityCondition.makeCondition(EntityCondition.makeCondition("minPurchase",
-                    EntityOperator.EQUALS, null), EntityOperator.OR, EntityCondition.makeCondition("minPurchase",
-                            EntityOperator.LESS_THAN_EQUAL_TO, itemAmount)));
-            EntityCondition mainCondition = EntityCondition.makeCondition(mainExprs, EntityOperator.AND);
-
-            // finally ready... do the rate query
-            List<GenericValue> lookupList = EntityQuery.use(delegator).from("TaxAuthorityRateProduct")
-                    .where(mainCondition).orderBy("minItemPrice", "minPurchase", "fromDate").filterByDate().queryList();
+            // the rates of the tax authorities are selected in memory, from the rate table read once for all the items
+            List<GenericValue> lookupList = calculation.selectRates(product, itemPrice, itemAmount, shippingAmount != null,
+                    orderPromotionsAmount != null);
 
             if (lookupList.isEmpty()) {
-                Debug.logWarning("In TaxAuthority Product Rate no records were found for condition:" + mainCondition.toString(), MODULE);
+                Debug.logWarning("In TaxAuthority Product Rate no records were found for product [" + (product != null
+                        ? product.getString("productId") : null) + "], itemPrice [" + itemPrice + "], itemAmount [" + itemAmount + "]", MODULE);
                 return adjustments;
             }
 
@@ -469,12 +410,8 @@ public class TaxAuthorityServices {
 
                 // get glAccountId from TaxAuthorityGlAccount entity using the payToPartyId as
                 // the organizationPartyId
-                GenericValue taxAuthorityGlAccount = EntityQuery.use(delegator).from("TaxAuthorityGlAccount")
-                        .where("taxAuthPartyId", taxAuthPartyId, "taxAuthGeoId", taxAuthGeoId, "organizationPartyId", payToPartyId).queryOne();
-                String taxAuthGlAccountId = null;
-                if (taxAuthorityGlAccount != null) {
-                    taxAuthGlAccountId = taxAuthorityGlAccount.getString("glAccountId");
-                } else {
+                String taxAuthGlAccountId = calculation.getGlAccountId(taxAuthGeoId, taxAuthPartyId);
+                if (taxAuthGlAccountId == null) {
                     // TODO: what to do if no TaxAuthorityGlAccount found? Use some default, or is that done elsewhere later on?
                     Debug.logVerbose("what to do if no TaxAuthorityGlAccount found?", MODULE);
                 }
@@ -483,13 +420,7 @@ public class TaxAuthorityServices {
                 if (product != null && taxAuthPartyId != null && taxAuthGeoId != null) {
                     // find a ProductPrice for the productId and taxAuth* values, and see if it has
                     // a priceWithTax value
-                    productPrice = getProductPrice(delegator, product, productStore, taxAuthGeoId, taxAuthPartyId);
-                    if (productPrice == null) {
-                        GenericValue virtualProduct = ProductWorker.getParentProduct(product.getString("productId"), delegator);
-                        if (virtualProduct != null) {
-                            productPrice = getProductPrice(delegator, virtualProduct, productStore, taxAuthGeoId, taxAuthPartyId);
-                        }
-                    }
+                    productPrice = calculation.getProductPrice(product, taxAuthGeoId, taxAuthPartyId);
                 }
                 GenericValue taxAdjValue = delegator.makeValue("OrderAdjustment");
 
@@ -548,20 +479,7 @@ public class TaxAuthorityServices {
                 // check to see if this party has a tax ID for this, and if the party is tax
                 // exempt in the primary (most-local) jurisdiction
                 if (UtilValidate.isNotEmpty(billToPartyId) && UtilValidate.isNotEmpty(taxAuthGeoId)) {
-                    // see if partyId is a member of any groups, if so honor their tax exemptions
-                    // look for PartyRelationship with partyRelationshipTypeId=GROUP_ROLLUP, the
-                    // partyIdTo is the group member, so the partyIdFrom is the groupPartyId
-                    Set<String> billToPartyIdSet = new HashSet<>();
-                    billToPartyIdSet.add(billToPartyId);
-                    List<GenericValue> partyRelationshipList = EntityQuery.use(delegator).from("PartyRelationship")
-                            .where("partyIdTo", billToPartyId, "partyRelationshipTypeId", "GROUP_ROLLUP")
-                            .cache().filterByDate().queryList();
-
-                    for (GenericValue partyRelationship : partyRelationshipList) {
-                        billToPartyIdSet.add(partyRelationship.getString("partyIdFrom"));
-                    }
-                    handlePartyTaxExempt(taxAdjValue, billToPartyIdSet, taxAuthGeoId, taxAuthPartyId, taxAmount,
-                            nowTimestamp, delegator);
+                    calculation.applyPartyTaxExemption(taxAdjValue, taxAuthGeoId, taxAuthPartyId, taxAmount);
                 } else {
                     Debug.logInfo("NOTE: A tax calculation was done without a billToPartyId or taxAuthGeoId, so no tax exemptions or tax IDs "
                             + "considered; billToPartyId=[" + billToPartyId + "] taxAuthGeoId=[" + taxAuthGeoId + "]", MODULE);
@@ -644,129 +562,4 @@ public class TaxAuthorityServices {
 
         return adjustments;
     }
-
-    /**
-     * @param delegator
-     * @param product
-     * @param productStore
-     * @param taxAuthGeoId
-     * @param taxAuthPartyId
-     * @return productPrice
-     * @throws GenericEntityException
-     */
-    private static GenericValue getProductPrice(Delegator delegator, GenericValue product, GenericValue productStore, String taxAuthGeoId,
-            String taxAuthPartyId) throws GenericEntityException {
-        if (productStore != null && UtilValidate.isNotEmpty(productStore.getString("primaryStoreGroupId"))) {
-            return EntityQuery.use(delegator).from("ProductPrice")
-                    .where("productId", product.get("productId"),
-                            "taxAuthPartyId", taxAuthPartyId,
-                            "taxAuthGeoId", taxAuthGeoId,
-                            "productPricePurposeId", "PURCHASE",
-                            "productStoreGroupId", productStore.get("primaryStoreGroupId"))
-                    .orderBy("-fromDate").filterByDate().queryFirst();
-        } else {
-            // Purchase order case
-            return EntityQuery.use(delegator).from("ProductPrice")
-                    .where("productId", product.get("productId"),
-                            "taxAuthPartyId", taxAuthPartyId,
-                            "taxAuthGeoId", taxAuthGeoId,
-                            "productPricePurposeId", "PURCHASE")
-                    .orderBy("-fromDate").filterByDate().queryFirst();
-        }
-    }
-
-    /**
-     * Private helper method which determines, based on the state of the product, how the ProdCondition should be set for the main condition.
-     * @param delegator
-     * @param product which may be null
-     * @return non-null Condition
-     * @throws GenericEntityException
-     */
-    private static EntityCondition setProductCategoryCond(Delegator delegator, GenericValue product)
-            throws GenericEntityException {
-
-        if (product == null) {
-            return EntityCondition.makeCondition("productCategoryId", EntityOperator.EQUALS, null);
-        }
-
-        // find the tax categories associated with the product and filter by
-        // those, with an IN clause or some such
-        // if this product is variant, find the virtual product id and consider
-        // also the categories of the virtual
-        // question: get all categories, or just a special type? for now let's
-        // do all categories...
-        String virtualProductId = null;
-        if ("Y".equals(product.getString("isVariant"))) {
-            virtualProductId = ProductWorker.getVariantVirtualId(product);
-        }
-        Set<String> productCategoryIdSet = new HashSet<>();
-        EntityCondition productIdCond = null;
-        if (virtualProductId != null) {
-            productIdCond = EntityCondition.makeCondition(
-                    EntityCondition.makeCondition("productId", EntityOperator.EQUALS, product.getString("productId")),
-                    EntityOperator.OR,
-                    EntityCondition.makeCondition("productId", EntityOperator.EQUALS, virtualProductId));
-
-        } else {
-            productIdCond = EntityCondition.makeCondition("productId", EntityOperator.EQUALS,
-                    product.getString("productId"));
-        }
-        List<GenericValue> pcmList = EntityQuery.use(delegator).select("productCategoryId", "fromDate", "thruDate")
-                .from("ProductCategoryMember").where(productIdCond).cache().filterByDate().queryList();
-        for (GenericValue pcm : pcmList) {
-            productCategoryIdSet.add(pcm.getString("productCategoryId"));
-        }
-
-        if (productCategoryIdSet.isEmpty()) {
-            return EntityCondition.makeCondition("productCategoryId", EntityOperator.EQUALS, null);
-        }
-        return EntityCondition.makeCondition(
-                EntityCondition.makeCondition("productCategoryId", EntityOperator.EQUALS, null), EntityOperator.OR,
-                EntityCondition.makeCondition("productCategoryId", EntityOperator.IN, productCategoryIdSet));
-
-    }
-
-    private static void handlePartyTaxExempt(GenericValue adjValue, Set<String> billToPartyIdSet, String taxAuthGeoId,
-            String taxAuthPartyId, BigDecimal taxAmount, Timestamp nowTimestamp, Delegator delegator)
-            throws GenericEntityException {
-        Debug.logInfo("Checking for tax exemption : " + taxAuthGeoId + " / " + taxAuthPartyId, MODULE);
-        List<EntityCondition> ptiConditionList = UtilMisc.<EntityCondition>toList(
-                EntityCondition.makeCondition("partyId", EntityOperator.IN, billToPartyIdSet),
-                EntityCondition.makeCondition("taxAuthGeoId", EntityOperator.EQUALS, taxAuthGeoId),
-                EntityCondition.makeCondition("taxAuthPartyId", EntityOperator.EQUALS, taxAuthPartyId));
-        ptiConditionList.add(EntityCondition.makeCondition("fromDate", EntityOperator.LESS_THAN_EQUAL_TO,
-                nowTimestamp));
-        ptiConditionList.add(EntityCondition.makeCondition(EntityCondition.makeCondition("thruDate",
-                EntityOperator.EQUALS, null), EntityOperator.OR, EntityCondition.makeCondition("thruDate",
-                        EntityOperator.GREATER_THAN, nowTimestamp)));
-        EntityCondition ptiCondition = EntityCondition.makeCondition(ptiConditionList, EntityOperator.AND);
-        // sort by -fromDate to get the newest (largest) first, just in case there is
-        // more than one, we only want the most recent valid one, should only be one per
-        // jurisdiction...
-        GenericValue partyTaxInfo = EntityQuery.use(delegator).from("PartyTaxAuthInfo").where(ptiCondition).orderBy(
-                "-fromDate").queryFirst();
-
-        boolean foundExemption = false;
-        if (partyTaxInfo != null) {
-            adjValue.set("customerReferenceId", partyTaxInfo.get("partyTaxId"));
-            if ("Y".equals(partyTaxInfo.getString("isExempt"))) {
-                adjValue.set("amount", BigDecimal.ZERO);
-                adjValue.set("exemptAmount", taxAmount);
-                foundExemption = true;
-            }
-        }
-
-        // if no exceptions were found for the current; try the parent
-        if (!foundExemption) {
-            // try the "parent" TaxAuthority
-            GenericValue taxAuthorityAssoc = EntityQuery.use(delegator).from("TaxAuthorityAssoc")
-                    .where("toTaxAuthGeoId", taxAuthGeoId, "toTaxAuthPartyId", taxAuthPartyId,
-                            "taxAuthorityAssocTypeId", "EXEMPT_INHER")
-                    .orderBy("-fromDate").filterByDate().queryFirst();
-            if (taxAuthorityAssoc != null) {
-                handlePartyTaxExempt(adjValue, billToPartyIdSet, taxAuthorityAssoc.getString("taxAuthGeoId"),
-                        taxAuthorityAssoc.getString("taxAuthPartyId"), taxAmount, nowTimestamp, delegator);
-            }
-        }
-    }
 }
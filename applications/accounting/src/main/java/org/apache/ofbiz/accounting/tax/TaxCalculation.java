@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.accounting.tax;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.product.product.ProductWorker;
+
+/**
+ * Data of a tax calculation for a set of items: the rates of the tax authorities of the shipping address, the tax categories
+ * of all the products read at once, and the GL accounts, prices with tax and party exemptions of each tax authority read
+ * once for all the items.
+ */
+final class TaxCalculation {
+
+    private static final String MODULE = TaxCalculation.class.getName();
+
+    private final Delegator delegator;
+    private final GenericValue productStore;
+    private final String payToPartyId;
+    private final String billToPartyId;
+    private final Timestamp nowTimestamp = UtilDateTime.nowTimestamp();
+    private final List<GenericValue> rates;
+    private final Map<String, Set<String>> productCategoryIds = new HashMap<>();
+    private final Map<String, String> glAccountIds = new HashMap<>();
+    private final Map<String, GenericValue> productPrices = new HashMap<>();
+    private final Map<String, List<GenericValue>> partyTaxInfos = new HashMap<>();
+    private Set<String> billToPartyIdSet;
+
+    TaxCalculation(Delegator delegator, GenericValue productStore, String payToPartyId, String billToPartyId,
+            Collection<GenericValue> taxAuthorities, Collection<GenericValue> products) throws GenericEntityException {
+        this.delegator = delegator;
+        this.productStore = productStore;
+        this.payToPartyId = payToPartyId == null && productStore != null ? productStore.getString("payToPartyId") : payToPartyId;
+        this.billToPartyId = billToPartyId;
+        this.rates = TaxAuthorityRateCache.getRates(delegator, taxAuthorities,
+                productStore != null ? productStore.getString("productStoreId") : null, nowTimestamp);
+        loadProductCategories(products);
+    }
+
+    Delegator getDelegator() {
+        return delegator;
+    }
+
+    String getBillToPartyId() {
+        return billToPartyId;
+    }
+
+    /**
+     * Reads the categories of the products, and of the virtual products of the variants, with a single query.
+     */
+    private void loadProductCategories(Collection<GenericValue> products) throws GenericEntityException {
+        Map<String, List<String>> memberProductIds = new LinkedHashMap<>();
+        for (GenericValue product : products) {
+            if (product == null || memberProductIds.containsKey(product.getString("productId"))) {
+                continue;
+            }
+            List<String> productIds = UtilMisc.toList(product.getString("productId"));
+            if ("Y".equals(product.getString("isVariant"))) {
+                String virtualProductId = ProductWorker.getVariantVirtualId(product);
+                if (virtualProductId != null) {
+                    productIds.add(virtualProductId);
+                }
+            }
+            memberProductIds.put(product.getString("productId"), productIds);
+        }
+        if (memberProductIds.isEmpty()) {
+            return;
+        }
+        // sorted so that the same products give the same cached query
+        Set<String> allProductIds = new TreeSet<>();
+        memberProductIds.values().forEach(allProductIds::addAll);
+        Map<String, Set<String>> categoriesByMember = new HashMap<>();
+        List<GenericValue> pcmList = EntityQuery.use(delegator).select("productId", "productCategoryId", "fromDate", "thruDate")
+                .from("ProductCategoryMember")
+                .where(EntityCondition.makeCondition("productId", EntityOperator.IN, allProductIds))
+                .cache()
+                .filterByDate(nowTimestamp)
+                .queryList();
+        for (GenericValue pcm : pcmList) {
+            categoriesByMember.computeIfAbsent(pcm.getString("productId"), k -> new HashSet<>()).add(pcm.getString("productCategoryId"));
+        }
+        memberProductIds.forEach((productId, productIds) -> {
+            Set<String> categoryIds = new HashSet<>();
+            for (String memberProductId : productIds) {
+                categoryIds.addAll(categoriesByMember.getOrDefault(memberProductId, new HashSet<>()));
+            }
+            productCategoryIds.put(productId, categoryIds);
+        });
+    }
+
+    private Set<String> getProductCategoryIds(GenericValue product) throws GenericEntityException {
+        if (!productCategoryIds.containsKey(product.getString("productId"))) {
+            loadProductCategories(UtilMisc.toList(product));
+        }
+        return productCategoryIds.get(product.getString("productId"));
+    }
+
+    /**
+     * Selects the rates applying to an item, or to the shipping or promotions of the order when there is no product.
+     * @param product the product of the item, may be null
+     * @param itemPrice the unit price of the item
+     * @param itemAmount the amount of the item
+     * @param shipping is the shipping taxed
+     * @param promotions are the promotions taxed
+     * @return the TaxAuthorityRateProduct records, ordered by minItemPrice, minPurchase and fromDate
+     * @throws GenericEntityException if the categories of the product cannot be read
+     */
+    List<GenericValue> selectRates(GenericValue product, BigDecimal itemPrice, BigDecimal itemAmount, boolean shipping, boolean promotions)
+            throws GenericEntityException {
+        Set<String> categoryIds = product != null ? getProductCategoryIds(product) : new HashSet<>();
+        List<GenericValue> selectedRates = new LinkedList<>();
+        for (GenericValue rate : rates) {
+            String productCategoryId = rate.getString("productCategoryId");
+            boolean categoryMatches = productCategoryId == null || categoryIds.contains(productCategoryId);
+            if (product == null && shipping) {
+                categoryMatches |= rate.get("taxShipping") == null || "Y".equals(rate.getString("taxShipping"));
+            }
+            if (product == null && promotions) {
+                categoryMatches |= rate.get("taxPromotions") == null || "Y".equals(rate.getString("taxPromotions"));
+            }
+            if (categoryMatches && isAtLeast(itemPrice, rate.getBigDecimal("minItemPrice"))
+                    && isAtLeast(itemAmount, rate.getBigDecimal("minPurchase"))) {
+                selectedRates.add(rate);
+            }
+        }
+        return selectedRates;
+    }
+
+    private static boolean isAtLeast(BigDecimal amount, BigDecimal minimum) {
+        return minimum == null || (amount != null && minimum.compareTo(amount) <= 0);
+    }
+
+    /**
+     * Gets the GL account of a tax authority for the organization the taxes are paid to
+     * @param taxAuthGeoId the tax authority geo
+     * @param taxAuthPartyId the tax authority party
+     * @return the glAccountId of the TaxAuthorityGlAccount, or <code>null</code>
+     * @throws GenericEntityException if the account cannot be read
+     */
+    String getGlAccountId(String taxAuthGeoId, String taxAuthPartyId) throws GenericEntityException {
+        String key = taxAuthGeoId + "::" + taxAuthPartyId;
+        if (!glAccountIds.containsKey(key)) {
+            GenericValue taxAuthorityGlAccount = EntityQuery.use(delegator).from("TaxAuthorityGlAccount")
+                    .where("taxAuthPartyId", taxAuthPartyId, "taxAuthGeoId", taxAuthGeoId, "organizationPartyId", payToPartyId).queryOne();
+            glAccountIds.put(key, taxAuthorityGlAccount != null ? taxAuthorityGlAccount.getString("glAccountId") : null);
+        }
+        return glAccountIds.get(key);
+    }
+
+    /**
+     * Gets the purchase price of a product for a tax authority, or of its virtual product
+     * @param product the product
+     * @param taxAuthGeoId the tax authority geo
+     * @param taxAuthPartyId the tax authority party
+     * @return the ProductPrice record, or <code>null</code>
+     * @throws GenericEntityException if the price cannot be read
+     */
+    GenericValue getProductPrice(GenericValue product, String taxAuthGeoId, String taxAuthPartyId) throws GenericEntityException {
+        String key = product.getString("productId") + "::" + taxAuthGeoId + "::" + taxAuthPartyId;
+        if (!productPrices.containsKey(key)) {
+            GenericValue productPrice = findProductPrice(product.getString("productId"), taxAuthGeoId, taxAuthPartyId);
+            if (productPrice == null) {
+                GenericValue virtualProduct = ProductWorker.getParentProduct(product.getString("productId"), delegator);
+                if (virtualProduct != null) {
+                    productPrice = findProductPrice(virtualProduct.getString("productId"), taxAuthGeoId, taxAuthPartyId);
+                }
+            }
+            productPrices.put(key, productPrice);
+        }
+        return productPrices.get(key);
+    }
+
+    private GenericValue findProductPrice(String productId, String taxAuthGeoId, String taxAuthPartyId) throws GenericEntityException {
+        if (productStore != null && UtilValidate.isNotEmpty(productStore.getString("primaryStoreGroupId"))) {
+            return EntityQuery.use(delegator).from("ProductPrice")
+                    .where("productId", productId,
+                            "taxAuthPartyId", taxAuthPartyId,
+                            "taxAuthGeoId", taxAuthGeoId,
+                            "productPricePurposeId", "PURCHASE",
+                            "productStoreGroupId", productStore.get("primaryStoreGroupId"))
+                    .orderBy("-fromDate").filterByDate(nowTimestamp).queryFirst();
+        }
+        // Purchase order case
+        return EntityQuery.use(delegator).from("ProductPrice")
+                .where("productId", productId,
+                        "taxAuthPartyId", taxAuthPartyId,
+                        "taxAuthGeoId", taxAuthGeoId,
+                        "productPricePurposeId", "PURCHASE")
+                .orderBy("-fromDate").filterByDate(nowTimestamp).queryFirst();
+    }
+
+    /**
+     * Sets the tax id of the bill to party, or of the groups it belongs to, for a tax authority or its parents in the
+     * EXEMPT_INHER associations, and the exemption of the tax amount when the party is tax exempt.
+     * @param adjValue the tax adjustment
+     * @param taxAuthGeoId the tax authority geo
+     * @param taxAuthPartyId the tax authority party
+     * @param taxAmount the tax amount
+     * @throws GenericEntityException if the tax information cannot be read
+     */
+    void applyPartyTaxExemption(GenericValue adjValue, String taxAuthGeoId, String taxAuthPartyId, BigDecimal taxAmount)
+            throws GenericEntityException {
+        String key = taxAuthGeoId + "::" + taxAuthPartyId;
+        List<GenericValue> taxInfos = partyTaxInfos.get(key);
+        if (taxInfos == null) {
+            taxInfos = new LinkedList<>();
+            findPartyTaxInfos(taxAuthGeoId, taxAuthPartyId, taxInfos);
+            partyTaxInfos.put(key, taxInfos);
+        }
+        for (GenericValue partyTaxInfo : taxInfos) {
+            adjValue.set("customerReferenceId", partyTaxInfo.get("partyTaxId"));
+            if ("Y".equals(partyTaxInfo.getString("isExempt"))) {
+                adjValue.set("amount", BigDecimal.ZERO);
+                adjValue.set("exemptAmount", taxAmount);
+            }
+        }
+    }
+
+    private void findPartyTaxInfos(String taxAuthGeoId, String taxAuthPartyId, List<GenericValue> taxInfos) throws GenericEntityException {
+        if (billToPartyIdSet == null) {
+            // see if partyId is a member of any groups, if so honor their tax exemptions
+            // look for PartyRelationship with partyRelationshipTypeId=GROUP_ROLLUP, the
+            // partyIdTo is the group member, so the partyIdFrom is the groupPartyId
+            billToPartyIdSet = new HashSet<>();
+            billToPartyIdSet.add(billToPartyId);
+            List<GenericValue> partyRelationshipList = EntityQuery.use(delegator).from("PartyRelationship")
+                    .where("partyIdTo", billToPartyId, "partyRelationshipTypeId", "GROUP_ROLLUP")
+                    .cache().filterByDate().queryList();
+            for (GenericValue partyRelationship : partyRelationshipList) {
+                billToPartyIdSet.add(partyRelationship.getString("partyIdFrom"));
+            }
+        }
+        Debug.logInfo("Checking for tax exemption : " + taxAuthGeoId + " / " + taxAuthPartyId, MODULE);
+        List<EntityCondition> ptiConditionList = UtilMisc.<EntityCondition>toList(
+                EntityCondition.makeCondition("partyId", EntityOperator.IN, billToPartyIdSet),
+                EntityCondition.makeCondition("taxAuthGeoId", EntityOperator.EQUALS, taxAuthGeoId),
+                EntityCondition.makeCondition("taxAuthPartyId", EntityOperator.EQUALS, taxAuthPartyId));
+        ptiConditionList.add(EntityCondition.makeCondition("fromDate", EntityOperator.LESS_THAN_EQUAL_TO,
+                nowTimestamp));
+        ptiConditionList.add(EntityCondition.makeCondition(EntityCondition.makeCondition("thruDate",
+                EntityOperator.EQUALS, null), EntityOperator.OR, EntityCondition.makeCondition("thruDate",
+                        EntityOperator.GREATER_THAN, nowTimestamp)));
+        EntityCondition ptiCondition = EntityCondition.makeCondition(ptiConditionList, EntityOperator.AND);
+        // sort by -fromDate to get the newest (largest) first, just in case there is
+        // more than one, we only want the most recent valid one, should only be one per
+        // jurisdiction...
+        GenericValue partyTaxInfo = EntityQuery.use(delegator).from("PartyTaxAuthInfo").where(ptiCondition).orderBy(
+                "-fromDate").queryFirst();
+        if (partyTaxInfo != null) {
+            taxInfos.add(partyTaxInfo);
+            if ("Y".equals(partyTaxInfo.getString("isExempt"))) {
+                return;
+            }
+        }
+
+        // if no exceptions were found for the current; try the parent
+        GenericValue taxAuthorityAssoc = EntityQuery.use(delegator).from("TaxAuthorityAssoc")
+                .where("toTaxAuthGeoId", taxAuthGeoId, "toTaxAuthPartyId", taxAuthPartyId,
+                        "taxAuthorityAssocTypeId", "EXEMPT_INHER")
+                .orderBy("-fromDate").filterByDate(nowTimestamp).queryFirst();
+        if (taxAuthorityAssoc != null) {
+            findPartyTaxInfos(taxAuthorityAssoc.getString("taxAuthGeoId"), taxAuthorityAssoc.getString("taxAuthPartyId"), taxInfos);
+        }
+    }
+}
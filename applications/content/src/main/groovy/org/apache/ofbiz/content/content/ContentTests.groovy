@@ -19,6 +19,8 @@
 package org.apache.ofbiz.content.content
 
 import org.apache.ofbiz.base.util.UtilDateTime
+import org.apache.ofbiz.base.util.UtilProperties
+import org.apache.ofbiz.common.KeywordSearchIndex
 import org.apache.ofbiz.entity.GenericValue
 import org.apache.ofbiz.service.ServiceUtil
 import org.apache.ofbiz.service.testtools.OFBizTestCase
@@ -186,4 +188,57 @@ class ContentTests extends OFBizTestCase {
         assert serviceResult.view
     }
 
+    void testRenderContentAsTextCache() {
+        String enabled = UtilProperties.getPropertyValue('content', 'render.cache.enabled')
+        UtilProperties.setPropertyValueInMemory('content', 'render.cache.enabled', 'true')
+        try {
+            delegator.create('DataResource', [dataResourceId: 'TEST_RENDER_CACHE', dataResourceTypeId: 'ELECTRONIC_TEXT',
+                    mimeTypeId: 'text/plain'])
+            delegator.create('ElectronicText', [dataResourceId: 'TEST_RENDER_CACHE', textData: 'First text'])
+            delegator.create('Content', [contentId: 'TEST_RENDER_CACHE', contentTypeId: 'DOCUMENT',
+                    dataResourceId: 'TEST_RENDER_CACHE'])
+            String key = ContentRenderCache.makeKey(delegator, 'TEST_RENDER_CACHE', Locale.ENGLISH, 'text/plain', null, null, [:])
+
+            assert ContentWorker.renderContentAsText(dispatcher, 'TEST_RENDER_CACHE', [:], Locale.ENGLISH, 'text/plain', true) == 'First text'
+            assert ContentRenderCache.get(key) == 'First text'
+
+            // the ElectronicText ECA evicts the text rendered from it
+            GenericValue electronicText = from('ElectronicText').where('dataResourceId', 'TEST_RENDER_CACHE').queryOne()
+            electronicText.textData = 'Second text'
+            electronicText.store()
+            assert !ContentRenderCache.get(key)
+            assert ContentWorker.renderContentAsText(dispatcher, 'TEST_RENDER_CACHE', [:], Locale.ENGLISH, 'text/plain', true) == 'Second text'
+
+            // the Content ECA evicts the text rendered from it
+            GenericValue content = from('Content').where('contentId', 'TEST_RENDER_CACHE').queryOne()
+            content.description = 'Render cache test'
+            content.store()
+            assert !ContentRenderCache.get(key)
+        } finally {
+            UtilProperties.setPropertyValueInMemory('content', 'render.cache.enabled', enabled)
+        }
+    }
+
+    void testKeywordSearchIndexEca() {
+        String enabled = UtilProperties.getPropertyValue('keywordsearch', 'index.embedded.enabled')
+        UtilProperties.setPropertyValueInMemory('keywordsearch', 'index.embedded.enabled', 'true')
+        try {
+            List<Set<String>> keywordGroups = [['keywordindextest'] as Set]
+            assert !KeywordSearchIndex.search(delegator, 'ContentKeyword', 'contentId', keywordGroups)
+
+            // the ContentKeyword ECAs update the index loaded by the first search
+            Map serviceResult = dispatcher.runSync('createContentKeyword', [contentId: 'TEST_CONTENT4', keyword: 'keywordindextest',
+                    relevancyWeight: 1L, userLogin: userLogin])
+            assert ServiceUtil.isSuccess(serviceResult)
+            assert KeywordSearchIndex.search(delegator, 'ContentKeyword', 'contentId', keywordGroups).keySet() == ['TEST_CONTENT4'] as Set
+
+            serviceResult = dispatcher.runSync('deleteContentKeyword', [contentId: 'TEST_CONTENT4', keyword: 'keywordindextest',
+                    userLogin: userLogin])
+            assert ServiceUtil.isSuccess(serviceResult)
+            assert !KeywordSearchIndex.search(delegator, 'ContentKeyword', 'contentId', keywordGroups)
+        } finally {
+            UtilProperties.setPropertyValueInMemory('keywordsearch', 'index.embedded.enabled', enabled)
+        }
+    }
+
 }
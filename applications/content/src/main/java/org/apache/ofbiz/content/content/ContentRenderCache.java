@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.content.content;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.base.util.cache.CacheListener;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.util.EntityDerivedCache;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+
+/**
+ * Cache of the text rendered by <code>ContentWorker.renderContentAsText</code>, by content, locale, mime type, party,
+ * role and the values of the template context keys listed by <code>render.cache.context.keys</code> in content.properties.
+ * <p>While a content is rendered the ids of the Content and DataResource records read by the rendering, including the
+ * decorators, the sub-contents and the templates, are recorded with the rendered text. When one of these Content,
+ * DataResource or ElectronicText records, or the ContentAssoc records of one of these contents, are changed an entity
+ * ECA evicts the texts depending on it once the transaction is completed.</p>
+ * <p>The cache is used when <code>render.cache.enabled</code> is <code>true</code> in content.properties, for the
+ * renderings using the entity cache, without web analytics, and not running a service of the content.</p>
+ */
+public final class ContentRenderCache {
+
+    private static final String MODULE = ContentRenderCache.class.getName();
+    private static final UtilCache<String, String> RENDERED_TEXTS = UtilCache.createUtilCache("content.rendered.text", 0, 0);
+    /** The keys of the rendered texts by Content or DataResource they depend on */
+    private static final Map<String, Set<String>> DEPENDENT_KEYS = new ConcurrentHashMap<>();
+    /** The Content and DataResource records each rendered text depends on, removed with the text from the cache */
+    private static final Map<String, Set<String>> KEY_DEPENDENCIES = new ConcurrentHashMap<>();
+    /** Incremented by each eviction, a text rendered during an eviction is not cached */
+    private static final AtomicLong VERSION = new AtomicLong();
+    private static final ThreadLocal<Deque<Recording>> RECORDINGS = ThreadLocal.withInitial(ArrayDeque::new);
+
+    static {
+        RENDERED_TEXTS.addListener(new DependencyCleaner());
+    }
+
+    private ContentRenderCache() { }
+
+    /**
+     * Is the rendered text cache used by ContentWorker
+     * @param delegator the delegator
+     * @return <code>true</code> if the rendered texts must be cached
+     */
+    public static boolean isEnabled(Delegator delegator) {
+        return "true".equals(EntityUtilProperties.getPropertyValue("content", "render.cache.enabled", "false", delegator));
+    }
+
+    /**
+     * Makes the key of a rendered text.
+     * @param delegator the delegator
+     * @param contentId the content to render
+     * @param locale the locale of the rendering
+     * @param mimeTypeId the mime type of the rendering
+     * @param partyId the party of the rendering
+     * @param roleTypeId the role of the party
+     * @param templateContext the template context, the values of the keys of render.cache.context.keys are part of the key
+     * @return the key
+     */
+    public static String makeKey(Delegator delegator, String contentId, Locale locale, String mimeTypeId, String partyId, String roleTypeId,
+            Map<String, Object> templateContext) {
+        StringBuilder key = new StringBuilder(delegator.getDelegatorName()).append("::").append(contentId).append("::").append(locale)
+                .append("::").append(mimeTypeId).append("::").append(partyId).append("::").append(roleTypeId);
+        String contextKeys = EntityUtilProperties.getPropertyValue("content", "render.cache.context.keys", "", delegator);
+        for (String contextKey : StringUtil.split(contextKeys, ",")) {
+            key.append("::").append(templateContext != null ? templateContext.get(contextKey.trim()) : null);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Gets a rendered text.
+     * @param key the key of the text
+     * @return the text, <code>null</code> if it is not in the cache
+     */
+    public static String get(String key) {
+        return RENDERED_TEXTS.get(key);
+    }
+
+    /**
+     * Starts recording the contents and data resources read by a rendering of the current thread.
+     * @return the version of the cache, to pass to {@link #put}
+     */
+    public static long startRecording() {
+        RECORDINGS.get().push(new Recording());
+        return VERSION.get();
+    }
+
+    /**
+     * Stops the recording started last by the current thread and caches the rendered text, unless the rendering ran a
+     * service or the cache had an eviction since the start of the recording.
+     * The contents and data resources recorded are added to the enclosing recording if any.
+     * @param delegator the delegator
+     * @param key the key of the text
+     * @param text the rendered text, <code>null</code> if the rendering failed
+     * @param version the version returned by {@link #startRecording}
+     */
+    public static void put(Delegator delegator, String key, String text, long version) {
+        Deque<Recording> recordings = RECORDINGS.get();
+        Recording recording = recordings.pop();
+        Recording enclosing = recordings.peek();
+        if (enclosing != null) {
+            enclosing.dependencies.addAll(recording.dependencies);
+            enclosing.cacheable &= recording.cacheable;
+        }
+        if (text == null || !recording.cacheable) {
+            return;
+        }
+        String prefix = delegator.getDelegatorName() + ":";
+        Set<String> dependencies = new HashSet<>();
+        for (String dependency : recording.dependencies) {
+            dependencies.add(prefix + dependency);
+        }
+        synchronized (KEY_DEPENDENCIES) {
+            Set<String> previousDependencies = KEY_DEPENDENCIES.put(key, dependencies);
+            if (previousDependencies != null) {
+                previousDependencies.removeAll(dependencies);
+                removeDependentKey(key, previousDependencies);
+            }
+            for (String dependency : dependencies) {
+                DEPENDENT_KEYS.computeIfAbsent(dependency, k -> ConcurrentHashMap.newKeySet()).add(key);
+            }
+            RENDERED_TEXTS.put(key, text);
+        }
+        if (VERSION.get() != version) {
+            // a dependency may have been changed after being read
+            RENDERED_TEXTS.remove(key);
+        }
+    }
+
+    /**
+     * Records that the rendering of the current thread reads a content.
+     * @param contentId the content
+     */
+    public static void noteContent(String contentId) {
+        note("Content:", contentId);
+    }
+
+    /**
+     * Records that the rendering of the current thread reads a data resource, or its text.
+     * @param dataResourceId the data resource
+     */
+    public static void noteDataResource(String dataResourceId) {
+        note("DataResource:", dataResourceId);
+    }
+
+    /**
+     * Records that the rendering of the current thread runs a service, its text is then not cached.
+     */
+    public static void noteUncacheable() {
+        Recording recording = RECORDINGS.get().peek();
+        if (recording != null) {
+            recording.cacheable = false;
+        }
+    }
+
+    private static void note(String entityName, String id) {
+        Recording recording = RECORDINGS.get().peek();
+        if (recording != null && id != null) {
+            recording.dependencies.add(entityName + id);
+        }
+    }
+
+    /**
+     * Evicts the texts depending on a content once the current transaction is completed, or right now if there is no
+     * transaction.
+     * @param delegator the delegator
+     * @param contentId the content changed
+     */
+    public static void contentChanged(Delegator delegator, String contentId) {
+        evictAfterTransaction(delegator, "Content:", contentId);
+    }
+
+    /**
+     * Evicts the texts depending on a data resource or its text once the current transaction is completed, or right now
+     * if there is no transaction.
+     * @param delegator the delegator
+     * @param dataResourceId the data resource changed
+     */
+    public static void dataResourceChanged(Delegator delegator, String dataResourceId) {
+        evictAfterTransaction(delegator, "DataResource:", dataResourceId);
+    }
+
+    /**
+     * Evicts all the rendered texts.
+     */
+    public static void clear() {
+        VERSION.incrementAndGet();
+        RENDERED_TEXTS.clear();
+        DEPENDENT_KEYS.clear();
+        KEY_DEPENDENCIES.clear();
+    }
+
+    private static void evictAfterTransaction(Delegator delegator, String entityName, String id) {
+        if (id == null) {
+            return;
+        }
+        String dependency = delegator.getDelegatorName() + ":" + entityName + id;
+        EntityDerivedCache.afterTransaction(() -> evict(dependency), "evict the texts rendered from " + entityName + id);
+    }
+
+    private static void evict(String dependency) {
+        VERSION.incrementAndGet();
+        Set<String> keys = DEPENDENT_KEYS.remove(dependency);
+        if (keys != null) {
+            for (String key : keys) {
+                RENDERED_TEXTS.remove(key);
+            }
+        }
+    }
+
+    private static void removeDependentKey(String key, Set<String> dependencies) {
+        for (String dependency : dependencies) {
+            DEPENDENT_KEYS.computeIfPresent(dependency, (k, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    /** Removes the dependencies of the texts leaving the cache, whether evicted, expired, collected or over the size limit */
+    private static final class DependencyCleaner implements CacheListener<String, String> {
+        @Override
+        public void noteKeyRemoval(UtilCache<String, String> cache, String key, String oldValue) {
+            synchronized (KEY_DEPENDENCIES) {
+                // the text may have been cached again since it was removed
+                if (!cache.containsKey(key)) {
+                    Set<String> dependencies = KEY_DEPENDENCIES.remove(key);
+                    if (dependencies != null) {
+                        removeDependentKey(key, dependencies);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void noteKeyAddition(UtilCache<String, String> cache, String key, String newValue) {
+        }
+
+        @Override
+        public void noteKeyUpdate(UtilCache<String, String> cache, String key, String newValue, String oldValue) {
+        }
+    }
+
+    private static final class Recording {
+        private final Set<String> dependencies = new HashSet<>();
+        private boolean cacheable = true;
+    }
+}
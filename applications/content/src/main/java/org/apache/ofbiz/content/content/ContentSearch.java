@@ -34,6 +34,7 @@ import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.common.KeywordSearchIndex;
 import org.apache.ofbiz.common.KeywordSearchUtil;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -127,6 +128,8 @@ public class ContentSearch {
         private List<Set<String>> keywordFixedOrSetAndList = new LinkedList<>();
         private Set<String> orKeywordFixedSet = new HashSet<>();
         private Set<String> andKeywordFixedSet = new HashSet<>();
+        /** The scores of the contents found by the embedded keyword index, null when the keywords are joined in the query */
+        private Map<String, Double> keywordScores = null;
         private List<GenericValue> contentSearchConstraintList = new LinkedList<>();
         private ResultSortOrder resultSortOrder = null;
         private Integer resultOffset = null;
@@ -202,7 +205,7 @@ public class ContentSearch {
             // do the query
             ArrayList<String> contentIds = null;
             try (EntityListIterator eli = this.doQuery(delegator)) {
-                contentIds = this.makeContentIdList(eli);
+                contentIds = this.isRankedByKeywordScore() ? this.makeRankedContentIdList(eli) : this.makeContentIdList(eli);
             } catch (GenericEntityException e) {
                 Debug.logError(e, "Error closing ContentSearch EntityListIterator");
             }
@@ -246,6 +249,17 @@ public class ContentSearch {
                 }
             }
 
+            // search the keywords in the embedded index when it is enabled, instead of joining a keyword record per keyword
+            List<Set<String>> keywordGroups = new LinkedList<>(keywordFixedOrSetAndList);
+            for (String keyword: andKeywordFixedSet) {
+                keywordGroups.add(UtilMisc.toSet(keyword));
+            }
+            keywordScores = KeywordSearchIndex.search(delegator, "ContentKeyword", "contentId", keywordGroups);
+            if (keywordScores != null) {
+                entityConditionList.add(EntityCondition.makeCondition("contentId", EntityOperator.IN, keywordScores.keySet()));
+                return;
+            }
+
             boolean doingBothAndOr = (keywordFixedOrSetAndList.size() > 1) || (!keywordFixedOrSetAndList.isEmpty() && !andKeywordFixedSet.isEmpty());
 
             Debug.logInfo("Finished initial setup of keywords, doingBothAndOr=" + doingBothAndOr + ", andKeywordFixedSet="
@@ -331,7 +345,7 @@ public class ContentSearch {
                         .where(whereCondition)
                         .cursorScrollInsensitive()
                         .distinct()
-                        .maxRows(maxResults)
+                        .maxRows(this.isRankedByKeywordScore() ? 0 : maxResults)
                         .queryIterator();
             } catch (GenericEntityException e) {
                 Debug.logError(e, "Error in content search", MODULE);
@@ -429,6 +443,41 @@ public class ContentSearch {
             return contentIds;
         }
 
+        // the contents found by the embedded keyword index are sorted by relevancy on their score, not in the query
+        private boolean isRankedByKeywordScore() {
+            return keywordScores != null && resultSortOrder instanceof SortKeywordRelevancy;
+        }
+
+        // the contents found by the query in the order of their keyword score, with the offset and maximum applied
+        private ArrayList<String> makeRankedContentIdList(EntityListIterator eli) {
+            ArrayList<String> contentIds = new ArrayList<>(maxResults == null ? 100 : maxResults);
+            if (eli == null) {
+                Debug.logWarning("The eli is null, returning zero results", MODULE);
+                return contentIds;
+            }
+            try {
+                Set<String> foundContentIds = new HashSet<>();
+                GenericValue searchResult;
+                while ((searchResult = eli.next()) != null) {
+                    foundContentIds.add(searchResult.getString("contentId"));
+                }
+                int skipped = resultOffset != null && resultOffset > 1 ? resultOffset - 1 : 0;
+                int total = 0;
+                for (String contentId : keywordScores.keySet()) {
+                    if (foundContentIds.contains(contentId)) {
+                        total++;
+                        if (total > skipped && (maxResults == null || contentIds.size() < maxResults)) {
+                            contentIds.add(contentId);
+                        }
+                    }
+                }
+                this.totalResults = total;
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "Error getting results from the content search query", MODULE);
+            }
+            return contentIds;
+        }
+
         /**
          * Save search result info.
          * @param numResults the num results
@@ -914,7 +963,7 @@ public class ContentSearch {
 
         @Override
         public void setSortOrder(ContentSearchContext contentSearchContext) {
-            if (contentSearchContext.includedKeywordSearch) {
+            if (contentSearchContext.includedKeywordSearch && contentSearchContext.keywordScores == null) {
                 // we have to check this in order to be sure that there is a totalRelevancy to sort by...
                 contentSearchContext.orderByList.add("-totalRelevancy");
                 contentSearchContext.fieldsToSelect.add("totalRelevancy");
@@ -39,6 +39,7 @@ import org.apache.ofbiz.base.util.UtilHttp;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.common.KeywordSearchIndex;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
@@ -634,4 +635,29 @@ public class ContentServices {
         return result;
     }
 
+    /**
+     * Evicts the rendered texts depending on a content or on a data resource, triggered by the Content, ContentAssoc
+     * and DataResource ECAs
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> clearContentRenderCache(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        ContentRenderCache.contentChanged(delegator, (String) context.get("contentId"));
+        ContentRenderCache.dataResourceChanged(delegator, (String) context.get("dataResourceId"));
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Reads again the keywords of a content in the embedded keyword index, triggered by the ContentKeyword ECAs
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> updateContentKeywordSearchIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+        KeywordSearchIndex.keywordsChanged(dctx.getDelegator(), "ContentKeyword", (String) context.get("contentId"));
+        return ServiceUtil.returnSuccess();
+    }
+
 }
@@ -207,6 +207,7 @@ public class ContentWorker implements org.apache.ofbiz.widget.content.ContentWor
             DispatchContext dctx = dispatcher.getDispatchContext();
             ModelService service = dctx.getModelService(serviceName);
             if (service != null) {
+                ContentRenderCache.noteUncacheable();
                 //put all requestParameters into templateContext to use them as IN service parameters
                 Map<String, Object> tempTemplateContext = new HashMap<>();
                 tempTemplateContext.putAll(UtilGenerics.cast(templateContext.get("requestParameters")));
@@ -229,6 +230,7 @@ public class ContentWorker implements org.apache.ofbiz.widget.content.ContentWor
         }
 
         String contentId = content.getString("contentId");
+        ContentRenderCache.noteContent(contentId);
 
         if (templateContext == null) {
             templateContext = new HashMap<>();
@@ -368,17 +370,42 @@ public class ContentWorker implements org.apache.ofbiz.widget.content.ContentWor
     public static String renderContentAsText(LocalDispatcher dispatcher, String contentId, Appendable out, Map<String, Object> templateContext,
             Locale locale, String mimeTypeId, String partyId, String roleTypeId, boolean cache, List<GenericValue> webAnalytics)
             throws GeneralException, IOException {
-        Delegator delegator = dispatcher.getDelegator();
-        GenericValue content = ContentWorker.findContentForRendering(delegator, contentId, locale, partyId, roleTypeId, cache);
-        ContentWorker.renderContentAsText(dispatcher, content, out, templateContext, locale, mimeTypeId, cache, webAnalytics);
+        renderContentAsTextCached(dispatcher, contentId, out, templateContext, locale, mimeTypeId, partyId, roleTypeId, cache, webAnalytics);
         return out.toString();
     }
 
     public static void renderContentAsText(LocalDispatcher dispatcher, String contentId, Appendable out, Map<String, Object> templateContext,
             Locale locale, String mimeTypeId, String partyId, String roleTypeId, boolean cache) throws GeneralException, IOException {
+        renderContentAsTextCached(dispatcher, contentId, out, templateContext, locale, mimeTypeId, partyId, roleTypeId, cache, null);
+    }
+
+    // renders a content through the ContentRenderCache, except for the contents decorating another one whose text depends on it
+    private static void renderContentAsTextCached(LocalDispatcher dispatcher, String contentId, Appendable out, Map<String, Object>
+            templateContext, Locale locale, String mimeTypeId, String partyId, String roleTypeId, boolean cache, List<GenericValue> webAnalytics)
+            throws GeneralException, IOException {
         Delegator delegator = dispatcher.getDelegator();
-        GenericValue content = ContentWorker.findContentForRendering(delegator, contentId, locale, partyId, roleTypeId, cache);
-        ContentWorker.renderContentAsText(dispatcher, content, out, templateContext, locale, mimeTypeId, cache, null);
+        if (!cache || UtilValidate.isNotEmpty(webAnalytics) || (templateContext != null && templateContext.get("decoratedContent") != null)
+                || !ContentRenderCache.isEnabled(delegator)) {
+            GenericValue content = ContentWorker.findContentForRendering(delegator, contentId, locale, partyId, roleTypeId, cache);
+            ContentWorker.renderContentAsText(dispatcher, content, out, templateContext, locale, mimeTypeId, cache, webAnalytics);
+            return;
+        }
+        String key = ContentRenderCache.makeKey(delegator, contentId, locale, mimeTypeId, partyId, roleTypeId, templateContext);
+        String rendered = ContentRenderCache.get(key);
+        if (rendered == null) {
+            long version = ContentRenderCache.startRecording();
+            try {
+                // the alternate contents of other locales and roles are found from the associations of this content
+                ContentRenderCache.noteContent(contentId);
+                Writer writer = new StringWriter();
+                GenericValue content = ContentWorker.findContentForRendering(delegator, contentId, locale, partyId, roleTypeId, cache);
+                ContentWorker.renderContentAsText(dispatcher, content, writer, templateContext, locale, mimeTypeId, cache, null);
+                rendered = writer.toString();
+            } finally {
+                ContentRenderCache.put(delegator, key, rendered, version);
+            }
+        }
+        out.append(rendered);
     }
 
     public static String renderSubContentAsText(LocalDispatcher dispatcher, String contentId, String mapKey, Map<String, Object> templateContext,
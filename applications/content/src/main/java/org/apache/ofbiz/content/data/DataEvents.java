@@ -200,6 +200,22 @@ public class DataEvents {
             https = "true";
         }
 
+        // files and binary objects are streamed without being loaded in memory
+        try {
+            if (DataResourceWorker.streamDataResourceToBrowser(request, response, dataResource, mimeType, dataName, contextRoot)) {
+                return "success";
+            }
+        } catch (GeneralException e) {
+            Debug.logError(e, "Error getting DataResource stream", MODULE);
+            request.setAttribute("_ERROR_MESSAGE_", e.getMessage());
+            return response.isCommitted() ? "io-error" : "error";
+        } catch (IOException e) {
+            Debug.logError(e, "Unable to write content to browser", MODULE);
+            request.setAttribute("_ERROR_MESSAGE_", e.getMessage());
+            // the output stream may have been already used, see below
+            return "io-error";
+        }
+
         // get the data RESOURCE stream and content length
         Map<String, Object> resourceData;
         try {
@@ -301,6 +317,9 @@ public class DataEvents {
                 mimeType = "application/octet-stream";
             }
 
+            if (DataResourceWorker.streamDataResourceToBrowser(request, response, dataResource, mimeType, null, application.getRealPath("/"))) {
+                return "success";
+            }
             if (mimeType != null) {
                 response.setContentType(mimeType);
             }
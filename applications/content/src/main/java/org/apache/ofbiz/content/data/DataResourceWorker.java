@@ -25,6 +25,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.net.URL;
@@ -33,6 +34,8 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -73,10 +76,15 @@ import org.apache.ofbiz.base.util.collections.MapStack;
 import org.apache.ofbiz.base.util.template.FreeMarkerWorker;
 import org.apache.ofbiz.base.util.template.XslTransform;
 import org.apache.ofbiz.common.email.NotificationServices;
+import org.apache.ofbiz.content.content.ContentRenderCache;
 import org.apache.ofbiz.content.content.UploadContentAndImage;
 import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericDataSourceException;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
+import org.apache.ofbiz.entity.jdbc.SQLProcessor;
+import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelReader;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityUtilProperties;
@@ -645,6 +653,7 @@ public class DataResourceWorker implements org.apache.ofbiz.widget.content.DataR
         if (dataResourceId == null) {
             throw new GeneralException("Cannot clear dataResource related cache for a null dataResourceId");
         }
+        ContentRenderCache.dataResourceChanged(delegator, dataResourceId);
 
         GenericValue dataResource = EntityQuery.use(delegator).from("DataResource").where("dataResourceId", dataResourceId).cache().queryOne();
         if (dataResource != null) {
@@ -680,6 +689,7 @@ public class DataResourceWorker implements org.apache.ofbiz.widget.content.DataR
         if (dataResourceId == null) {
             throw new GeneralException("Cannot lookup data RESOURCE with for a null dataResourceId");
         }
+        ContentRenderCache.noteDataResource(dataResourceId);
         if (templateContext == null) {
             templateContext = new HashMap<>();
         }
@@ -1081,6 +1091,121 @@ public class DataResourceWorker implements org.apache.ofbiz.widget.content.DataR
     // Data Resource Streaming
     // ----------------------------
 
+    /**
+     * Streams the data of a file or binary object DataResource to the browser without loading it in memory.
+     * <p>A file is streamed by {@link UtilHttp#streamFileToBrowser}, with the support of the conditional and range
+     * requests. A binary object is read from the database through the binary stream of the JDBC result set and copied to
+     * the response, its <code>lastUpdatedStamp</code> answers the conditional requests.</p>
+     * @param request     the request
+     * @param response    the response to write to
+     * @param dataResource the data resource to stream
+     * @param contentType the content type to pass to the browser
+     * @param fileName    the fileName to tell the browser we are downloading, can be <code>null</code>
+     * @param contextRoot the root of the web application, for the CONTEXT_FILE data resources
+     * @return <code>false</code> if the data resource is neither a file nor a binary object, nothing has then been written,
+     * it must be streamed from {@link #getDataResourceStream}
+     * @throws GeneralException when the data cannot be found, nothing has then been written
+     * @throws IOException when the data cannot be read or written, the response may then have been committed
+     */
+    public static boolean streamDataResourceToBrowser(HttpServletRequest request, HttpServletResponse response, GenericValue dataResource,
+            String contentType, String fileName, String contextRoot) throws GeneralException, IOException {
+        String dataResourceTypeId = dataResource.getString("dataResourceTypeId");
+        String dataResourceId = dataResource.getString("dataResourceId");
+        if (dataResourceTypeId == null) {
+            return false;
+        }
+        if (dataResourceTypeId.endsWith("_FILE") || dataResourceTypeId.endsWith("_FILE_BIN")) {
+            String objectInfo = dataResource.getString("objectInfo");
+            if (UtilValidate.isEmpty(objectInfo)) {
+                throw new GeneralException("No objectInfo found for FILE type [" + dataResourceTypeId + "]; cannot stream");
+            }
+            File file;
+            try {
+                file = getContentFile(dataResourceTypeId, objectInfo, contextRoot);
+            } catch (FileNotFoundException e) {
+                // a missing file is reported like the other missing data, nothing has been written
+                throw new GeneralException(e.getMessage(), e);
+            }
+            if (!file.isFile()) {
+                throw new GeneralException("No file found: " + file.getAbsolutePath());
+            }
+            UtilHttp.streamFileToBrowser(request, response, file, contentType, fileName);
+            return true;
+        }
+        switch (dataResourceTypeId) {
+        case "IMAGE_OBJECT":
+            streamObjectToBrowser(request, response, dataResource.getDelegator(), "ImageDataResource", "imageData", dataResourceId,
+                    contentType, fileName);
+            return true;
+        case "VIDEO_OBJECT":
+            streamObjectToBrowser(request, response, dataResource.getDelegator(), "VideoDataResource", "videoData", dataResourceId,
+                    contentType, fileName);
+            return true;
+        case "AUDIO_OBJECT":
+            streamObjectToBrowser(request, response, dataResource.getDelegator(), "AudioDataResource", "audioData", dataResourceId,
+                    contentType, fileName);
+            return true;
+        case "OTHER_OBJECT":
+            streamObjectToBrowser(request, response, dataResource.getDelegator(), "OtherDataResource", "dataResourceContent",
+                    dataResourceId, contentType, fileName);
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static void streamObjectToBrowser(HttpServletRequest request, HttpServletResponse response, Delegator delegator,
+            String entityName, String fieldName, String dataResourceId, String contentType, String fileName)
+            throws GeneralException, IOException {
+        ModelEntity modelEntity = delegator.getModelEntity(entityName);
+        GenericHelperInfo helperInfo = delegator.getGroupHelperInfo(delegator.getEntityGroupName(entityName));
+        // the stamp is read first, some drivers read the columns of a row in order
+        String sql = "SELECT " + modelEntity.getField(ModelEntity.STAMP_FIELD).getColName() + ", "
+                + modelEntity.getField(fieldName).getColName() + " FROM " + modelEntity.getTableName(helperInfo.getHelperBaseName())
+                + " WHERE " + modelEntity.getField("dataResourceId").getColName() + " = ?";
+        try (SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo)) {
+            sqlP.prepareStatement(sql);
+            sqlP.setValue(dataResourceId);
+            ResultSet resultSet = sqlP.executeQuery();
+            if (!resultSet.next()) {
+                throw new GeneralException("No " + entityName + " found for DataResource ID: " + dataResourceId);
+            }
+            Timestamp lastUpdatedStamp = resultSet.getTimestamp(1);
+            if (lastUpdatedStamp == null) {
+                UtilHttp.setResponseBrowserProxyNoCache(response);
+            } else {
+                String eTag = "\"" + Integer.toHexString(dataResourceId.hashCode()) + "-" + Long.toHexString(lastUpdatedStamp.getTime()) + "\"";
+                if (UtilHttp.checkNotModified(request, response, eTag, lastUpdatedStamp.getTime())) {
+                    return;
+                }
+            }
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+            if (fileName != null) {
+                UtilHttp.setContentDisposition(response, fileName);
+            }
+            if ("HEAD".equals(request.getMethod())) {
+                return;
+            }
+            try (InputStream in = resultSet.getBinaryStream(2)) {
+                if (in == null) {
+                    throw new GeneralException("No data found in " + entityName + " for DataResource ID: " + dataResourceId);
+                }
+                // the length is unknown without reading the data, the response is chunked
+                OutputStream out = response.getOutputStream();
+                byte[] buffer = new byte[EntityUtilProperties.getPropertyAsInteger("content", "stream.buffersize", 8192)];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                out.flush();
+            }
+        } catch (SQLException e) {
+            throw new GenericDataSourceException("Error reading the data of " + entityName + " for DataResource ID: " + dataResourceId, e);
+        }
+    }
+
     /**
      * getDataResourceStream - gets an InputStream and Content-Length of a DataResource
      * @param dataResource
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.manufacturing.bom.test
+
+import java.sql.Timestamp
+
+import org.apache.ofbiz.base.util.UtilDateTime
+import org.apache.ofbiz.base.util.cache.UtilCache
+import org.apache.ofbiz.manufacturing.bom.BOMNode
+import org.apache.ofbiz.manufacturing.bom.BOMStructureCache
+import org.apache.ofbiz.manufacturing.bom.BOMTree
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class BomStructureCacheTests extends OFBizTestCase {
+
+    private static final int LEVELS = 10
+    private static final int COMPONENTS = 2
+
+    BomStructureCacheTests(String name) {
+        super(name)
+    }
+
+    /**
+     * Explodes a synthetic bill of materials of 10 levels, in which each product is made of the 2 products of the next level,
+     * from the bill of materials structures in the cache and compares it with the tree read from the database.
+     */
+    void testCachedExplosion() {
+        createDeepBom(UtilDateTime.nowTimestamp())
+
+        BOMStructureCache.clear(delegator)
+        List expectedExplosion = explodeFromDatabase(bomProductId(0, 0), 0, BigDecimal.ONE)
+        assert expectedExplosion.size() >= (Math.pow(COMPONENTS, LEVELS + 1) as int) - 1
+        assert explode() == expectedExplosion
+        assert cachedStructureKeys()
+        // the second explosion reads the structures from the cache
+        assert explode() == expectedExplosion
+    }
+
+    /**
+     * Checks the cached structures are dropped when a ProductAssoc record is created.
+     */
+    void testDroppedAfterProductAssocChange() {
+        Timestamp fromDate = UtilDateTime.nowTimestamp()
+        createDeepBom(fromDate)
+        List explosion = explode()
+        assert cachedStructureKeys()
+
+        delegator.create('ProductAssoc', [productId: bomProductId(LEVELS, 0), productIdTo: bomProductId(LEVELS, 1),
+                                          productAssocTypeId: 'MANUF_COMPONENT', fromDate: fromDate, quantity: 1])
+        assert !cachedStructureKeys()
+        // the changed product is a component of each product of the level before the last one
+        List changedExplosion = explode()
+        assert changedExplosion.size() == explosion.size() + (Math.pow(COMPONENTS, LEVELS - 1) as int)
+        assert changedExplosion == explodeFromDatabase(bomProductId(0, 0), 0, BigDecimal.ONE)
+    }
+
+    void testGetManufacturingComponentsFromCache() {
+        createDeepBom(UtilDateTime.nowTimestamp())
+        Map serviceResult = dispatcher.runSync('getManufacturingComponents', [productId: bomProductId(0, 0), quantity: BigDecimal.TEN,
+                                                                             excludeWIPs: false, userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        List<BOMNode> components = serviceResult.components
+        assert components*.product*.productId == (0..<COMPONENTS).collect { bomProductId(1, it) }
+        assert components.every { it.quantity == 20 }
+    }
+
+    private List explode() {
+        Map serviceResult = dispatcher.runSync('getBOMTree', [productId: bomProductId(0, 0), bomType: 'MANUF_COMPONENT',
+                                                              type: BOMTree.EXPLOSION, quantity: BigDecimal.ONE, userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        List<BOMNode> nodes = []
+        serviceResult.tree.print(nodes)
+        return nodes.collect { [it.product.productId, it.depth, it.quantity] }
+    }
+
+    // the same nodes as the explosion of BOMTree, read without cache
+    private List explodeFromDatabase(String productId, int depth, BigDecimal quantity) {
+        List nodes = [[productId, depth, quantity]]
+        from('ProductAssoc').where(productId: productId, productAssocTypeId: 'MANUF_COMPONENT').orderBy('sequenceNum', 'productIdTo')
+                .filterByDate().queryList().each {
+                    nodes.addAll(explodeFromDatabase(it.productIdTo, depth + 1, quantity * it.quantity))
+                }
+        return nodes
+    }
+
+    private List<String> cachedStructureKeys() {
+        return UtilCache.findCache('manufacturing.bom.structure').getCacheLineKeys().findAll { it.startsWith("${delegator.delegatorName}::") }
+    }
+
+    private void createDeepBom(Timestamp fromDate) {
+        if (from('Product').where(productId: bomProductId(0, 0)).queryOne()) {
+            return
+        }
+        for (int level = 0; level <= LEVELS; level++) {
+            for (int i = 0; i < COMPONENTS; i++) {
+                delegator.create('Product', [productId: bomProductId(level, i), productTypeId: 'FINISHED_GOOD',
+                                             internalName: "Bom test level ${level}" as String])
+            }
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            for (int i = 0; i < COMPONENTS; i++) {
+                for (int j = 0; j < COMPONENTS; j++) {
+                    delegator.create('ProductAssoc', [productId: bomProductId(level, i), productIdTo: bomProductId(level + 1, j),
+                                                      productAssocTypeId: 'MANUF_COMPONENT', sequenceNum: j as Long, fromDate: fromDate,
+                                                      quantity: 2])
+                }
+            }
+        }
+    }
+
+    private static String bomProductId(int level, int index) {
+        return "BOM_TEST_${level}_${index}"
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.manufacturing.mrp.test
+
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class MrpTests extends OFBizTestCase {
+
+    MrpTests(String name) {
+        super(name)
+    }
+
+    void testParallelMrpGivesSameResults() {
+        List serialRun = runMrp('SERIAL_TEST', false)
+        List parallelRun = runMrp('PARALLEL_TEST', true)
+        assert serialRun[0]
+        assert serialRun == parallelRun
+    }
+
+    /**
+     * Runs the MRP and returns its events and proposed requirements, without the dates that depend on the time of the run
+     */
+    private List runMrp(String mrpName, boolean parallel) {
+        Map serviceResult = dispatcher.runSync('executeMrp', [facilityId: 'WebStoreWarehouse', mrpName: mrpName,
+                                                              parallel: parallel, userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        List events = from('MrpEvent').queryList().collect {
+            [it.productId, it.mrpEventTypeId, it.quantity, it.isLate, it.facilityId]
+        }.sort { it.toString() }
+        List requirements = from('Requirement').where(description: 'MRP_' + mrpName).queryList().collect {
+            [it.productId, it.requirementTypeId, it.quantity, it.facilityId]
+        }.sort { it.toString() }
+        return [events, requirements]
+    }
+}
@@ -86,7 +86,7 @@ public class BOMNode {
     }
 
     public BOMNode(String productId, Delegator delegator, LocalDispatcher dispatcher, GenericValue userLogin) throws GenericEntityException {
-        this(EntityQuery.use(delegator).from("Product").where("productId", productId).queryOne(), dispatcher, userLogin);
+        this(EntityQuery.use(delegator).from("Product").where("productId", productId).cache().queryOne(), dispatcher, userLogin);
     }
 
     /**
@@ -104,19 +104,11 @@ public class BOMNode {
         // If the date is null, set it to today.
         if (inDate == null) inDate = new Date();
         bomTypeId = partBomTypeId;
-        List<GenericValue> rows = EntityQuery.use(delegator).from("ProductAssoc")
-                .where("productId", product.get("productId"),
-                        "productAssocTypeId", partBomTypeId)
-                .orderBy("sequenceNum", "productIdTo")
-                .filterByDate(inDate).queryList();
+        List<GenericValue> rows = BOMStructureCache.getComponents(delegator, product.getString("productId"), partBomTypeId, inDate);
         if ((UtilValidate.isEmpty(rows)) && substitutedNode != null) {
             // If no child is found and this is a substituted node
             // we try to search for substituted node's children.
-            rows = EntityQuery.use(delegator).from("ProductAssoc")
-                    .where("productId", substitutedNode.getProduct().get("productId"),
-                            "productAssocTypeId", partBomTypeId)
-                    .orderBy("sequenceNum")
-                    .filterByDate(inDate).queryList();
+            rows = BOMStructureCache.getComponents(delegator, substitutedNode.getProduct().getString("productId"), partBomTypeId, inDate);
         }
         children = new LinkedList<>();
         children.addAll(rows);
@@ -234,39 +226,27 @@ public class BOMNode {
             // If the part is VIRTUAL and
             // productFeatures and productPartRules are not null
             // we have to substitute the part with the right part's variant
-            List<GenericValue> productPartRules = EntityQuery.use(delegator).from("ProductManufacturingRule")
-                    .where("productId", productIdForRules,
-                            "productIdFor", node.get("productId"),
-                            "productIdIn", node.get("productIdTo"))
-                    .filterByDate(inDate).queryList();
+            List<GenericValue> componentRules = BOMStructureCache.getManufacturingRules(delegator, node.getString("productIdTo"), inDate);
+            List<GenericValue> productPartRules = EntityUtil.filterByAnd(componentRules, UtilMisc.toMap("productId", productIdForRules,
+                    "productIdFor", node.get("productId")));
             if (substitutedNode != null) {
-                productPartRules.addAll(EntityQuery.use(delegator).from("ProductManufacturingRule")
-                        .where("productId", productIdForRules,
-                                "productIdFor", substitutedNode.getProduct().get("productId"),
-                                "productIdIn", node.get("productIdTo"))
-                        .filterByDate(inDate).queryList());
+                productPartRules.addAll(EntityUtil.filterByAnd(componentRules, UtilMisc.toMap("productId", productIdForRules,
+                        "productIdFor", substitutedNode.getProduct().get("productId"))));
             }
             newNode = substituteNode(oneChildNode, productFeatures, productPartRules);
             if (newNode.equals(oneChildNode)) {
                 // If no substitution has been done (no valid rule applied),
                 // we try to search for a generic link-rule
-                List<GenericValue> genericLinkRules = EntityQuery.use(delegator).from("ProductManufacturingRule")
-                        .where("productIdFor", node.get("productId"),
-                                "productIdIn", node.get("productIdTo"))
-                        .filterByDate(inDate).queryList();
+                List<GenericValue> genericLinkRules = EntityUtil.filterByAnd(componentRules, UtilMisc.toMap("productIdFor",
+                        node.get("productId")));
                 if (substitutedNode != null) {
-                    genericLinkRules.addAll(EntityQuery.use(delegator).from("ProductManufacturingRule")
-                            .where("productIdFor", substitutedNode.getProduct().get("productId"),
-                                    "productIdIn", node.get("productIdTo"))
-                            .filterByDate(inDate).queryList());
+                    genericLinkRules.addAll(EntityUtil.filterByAnd(componentRules, UtilMisc.toMap("productIdFor",
+                            substitutedNode.getProduct().get("productId"))));
                 }
                 newNode = substituteNode(oneChildNode, productFeatures, genericLinkRules);
                 // If no substitution has been done (no valid rule applied),
                 // we try to search for a generic node-rule
-                List<GenericValue> genericNodeRules = EntityQuery.use(delegator).from("ProductManufacturingRule")
-                        .where("productIdIn", node.get("productIdTo"))
-                        .orderBy("ruleSeqId")
-                        .filterByDate(inDate).queryList();
+                List<GenericValue> genericNodeRules = componentRules;
                 newNode = null;
                 newNode = substituteNode(oneChildNode, productFeatures, genericNodeRules);
                 // If no substitution has been done (no valid rule applied),
@@ -339,19 +319,11 @@ public class BOMNode {
         if (inDate == null) inDate = new Date();
 
         bomTypeId = partBomTypeId;
-        List<GenericValue> rows = EntityQuery.use(delegator).from("ProductAssoc")
-                .where("productIdTo", product.get("productId"),
-                        "productAssocTypeId", partBomTypeId)
-                .orderBy("sequenceNum")
-                .filterByDate(inDate).queryList();
+        List<GenericValue> rows = BOMStructureCache.getParents(delegator, product.getString("productId"), partBomTypeId, inDate);
         if ((UtilValidate.isEmpty(rows)) && substitutedNode != null) {
             // If no parent is found and this is a substituted node
             // we try to search for substituted node's parents.
-            rows = EntityQuery.use(delegator).from("ProductAssoc")
-                    .where("productIdTo", substitutedNode.getProduct().get("productId"),
-                            "productAssocTypeId", partBomTypeId)
-                    .orderBy("sequenceNum")
-                    .filterByDate(inDate).queryList();
+            rows = BOMStructureCache.getParents(delegator, substitutedNode.getProduct().getString("productId"), partBomTypeId, inDate);
         }
         children = new LinkedList<>();
         children.addAll(rows);
@@ -342,6 +342,17 @@ public class BOMServices {
         return result;
     }
 
+    /** Drops the bill of materials structures read by {@link BOMTree} once the current transaction is committed,
+     * triggered via ECA when the ProductAssoc or ProductManufacturingRule records change.
+     * @param dctx the distach context
+     * @param context the context
+     * @return returns success
+     */
+    public static Map<String, Object> clearBOMStructureCache(DispatchContext dctx, Map<String, ? extends Object> context) {
+        BOMStructureCache.clear(dctx.getDelegator());
+        return ServiceUtil.returnSuccess();
+    }
+
     /** It reads the product's bill of materials,
      * if necessary configures it, and it returns its (possibly configured) components in
      * a List of {@link BOMNode}).
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.manufacturing.bom;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityDerivedCache;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
+
+/**
+ * Structure of the bills of materials used by {@link BOMTree} and {@link BOMNode}: the ProductAssoc records from and to a
+ * product for a bom type, and the ProductManufacturingRule records of a component, with all their validity dates.
+ * <p>A product structure is read once and shared by all the trees it appears in, the records valid at the date of a tree
+ * are then selected in memory, so a sub-assembly used by many products is not read again for each of them.</p>
+ * <p>The structures are dropped by an entity ECA once a transaction changing the ProductAssoc or ProductManufacturingRule
+ * records is completed.</p>
+ */
+public final class BOMStructureCache {
+
+    private static final String MODULE = BOMStructureCache.class.getName();
+    private static final EntityDerivedCache<List<GenericValue>> STRUCTURES = new EntityDerivedCache<>("manufacturing.bom.structure",
+            "bill of materials structures");
+
+    private BOMStructureCache() { }
+
+    /**
+     * Gets the components of a product.
+     * @param delegator the delegator
+     * @param productId the product
+     * @param bomTypeId the ProductAssoc type
+     * @param inDate the date the components must be valid at
+     * @return the ProductAssoc records from the product valid at the date, ordered by sequenceNum and productIdTo
+     * @throws GenericEntityException if the records cannot be read
+     */
+    public static List<GenericValue> getComponents(Delegator delegator, String productId, String bomTypeId, Date inDate)
+            throws GenericEntityException {
+        return EntityUtil.filterByDate(getStructure(delegator, "components::" + bomTypeId + "::" + productId,
+                () -> EntityQuery.use(delegator).from("ProductAssoc")
+                        .where("productId", productId, "productAssocTypeId", bomTypeId)
+                        .orderBy("sequenceNum", "productIdTo")
+                        .queryList()), inDate);
+    }
+
+    /**
+     * Gets the products a product is a component of.
+     * @param delegator the delegator
+     * @param productIdTo the component
+     * @param bomTypeId the ProductAssoc type
+     * @param inDate the date the ProductAssoc records must be valid at
+     * @return the ProductAssoc records to the product valid at the date, ordered by sequenceNum and productId
+     * @throws GenericEntityException if the records cannot be read
+     */
+    public static List<GenericValue> getParents(Delegator delegator, String productIdTo, String bomTypeId, Date inDate)
+            throws GenericEntityException {
+        return EntityUtil.filterByDate(getStructure(delegator, "parents::" + bomTypeId + "::" + productIdTo,
+                () -> EntityQuery.use(delegator).from("ProductAssoc")
+                        .where("productIdTo", productIdTo, "productAssocTypeId", bomTypeId)
+                        .orderBy("sequenceNum", "productId")
+                        .queryList()), inDate);
+    }
+
+    /**
+     * Gets the configuration rules of a component.
+     * @param delegator the delegator
+     * @param productIdIn the component
+     * @param inDate the date the rules must be valid at
+     * @return the ProductManufacturingRule records of the component valid at the date, ordered by ruleSeqId
+     * @throws GenericEntityException if the records cannot be read
+     */
+    public static List<GenericValue> getManufacturingRules(Delegator delegator, String productIdIn, Date inDate) throws GenericEntityException {
+        return EntityUtil.filterByDate(getStructure(delegator, "rules::" + productIdIn,
+                () -> EntityQuery.use(delegator).from("ProductManufacturingRule")
+                        .where("productIdIn", productIdIn)
+                        .orderBy("ruleSeqId")
+                        .queryList()), inDate);
+    }
+
+    private static List<GenericValue> getStructure(Delegator delegator, String name, EntityDerivedCache.Loader<List<GenericValue>> loader)
+            throws GenericEntityException {
+        return STRUCTURES.get(delegator, name, () -> {
+            List<GenericValue> values = loader.load();
+            for (GenericValue value : values) {
+                value.setImmutable();
+            }
+            return Collections.unmodifiableList(values);
+        });
+    }
+
+    /**
+     * Drops the structures of a delegator once the current transaction is completed, or right now if there is no transaction.
+     * @param delegator the delegator
+     */
+    public static void clear(Delegator delegator) {
+        STRUCTURES.clear(delegator);
+    }
+}
@@ -25,7 +25,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -95,7 +94,7 @@ public class BOMTree {
         this.dispatcher = dispatcher;
         this.bomTypeId = bomTypeId;
 
-        inputProduct = EntityQuery.use(delegator).from("Product").where("productId", productId).queryOne();
+        inputProduct = EntityQuery.use(delegator).from("Product").where("productId", productId).cache().queryOne();
 
         String productIdForRules = productId;
         // The selected product features are loaded
@@ -116,7 +115,7 @@ public class BOMTree {
         // from Product entity
         GenericValue product = EntityQuery.use(delegator).from("Product")
                 .where("productId", (manufacturedAsProduct != null ? manufacturedAsProduct.getString("productIdTo") : productId))
-                .queryOne();
+                .cache().queryOne();
         if (product == null) return;
         BOMNode originalNode = new BOMNode(product, dispatcher, userLogin);
         originalNode.setTree(this);
@@ -124,9 +123,8 @@ public class BOMTree {
         // the bill of materials of its virtual product (if the current
         // product is variant).
         if (!hasBom(product, inDate)) {
-            List<GenericValue> virtualProducts = product.getRelated("AssocProductAssoc", UtilMisc.toMap("productAssocTypeId",
-                    "PRODUCT_VARIANT"), null, false);
-            virtualProducts = EntityUtil.filterByDate(virtualProducts, inDate);
+            List<GenericValue> virtualProducts = BOMStructureCache.getParents(delegator, product.getString("productId"), "PRODUCT_VARIANT",
+                    inDate);
             GenericValue virtualProduct = EntityUtil.getFirst(virtualProducts);
             if (virtualProduct != null) {
                 // If the virtual product is manufactured as a different product,
@@ -136,7 +134,7 @@ public class BOMTree {
                 product = EntityQuery.use(delegator).from("Product")
                         .where("productId", (manufacturedAsProduct != null ? manufacturedAsProduct.getString("productIdTo")
                                 : virtualProduct.get("productId")))
-                        .queryOne();
+                        .cache().queryOne();
             }
         }
         if (product == null) return;
@@ -168,17 +166,11 @@ public class BOMTree {
     }
 
     private GenericValue manufacturedAsProduct(String productId, Date inDate) throws GenericEntityException {
-        return EntityQuery.use(delegator).from("ProductAssoc")
-                .where("productId", productId,
-                        "productAssocTypeId", "PRODUCT_MANUFACTURED")
-                .filterByDate(inDate).queryFirst();
+        return EntityUtil.getFirst(BOMStructureCache.getComponents(delegator, productId, "PRODUCT_MANUFACTURED", inDate));
     }
 
     private boolean hasBom(GenericValue product, Date inDate) throws GenericEntityException {
-        List<GenericValue> children = product.getRelated("MainProductAssoc", UtilMisc.toMap("productAssocTypeId", bomTypeId),
-                null, false);
-        children = EntityUtil.filterByDate(children, inDate);
-        return UtilValidate.isNotEmpty(children);
+        return UtilValidate.isNotEmpty(BOMStructureCache.getComponents(delegator, product.getString("productId"), bomTypeId, inDate));
     }
 
     /** It tells if the current (in-memory) tree representing
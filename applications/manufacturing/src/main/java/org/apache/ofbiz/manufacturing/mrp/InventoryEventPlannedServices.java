@@ -67,13 +67,32 @@ public class InventoryEventPlannedServices {
             String eventName, boolean isLate, Delegator delegator) throws GenericEntityException {
         GenericValue mrpEvent = null;
         mrpEvent = EntityQuery.use(delegator).from("MrpEvent").where(mrpEventKeyMap).queryOne();
+        if (mrpEvent == null) {
+            mergeMrpEvent(null, mrpEventKeyMap, newQuantity, facilityId, eventName, isLate, delegator).create();
+        } else {
+            mergeMrpEvent(mrpEvent, mrpEventKeyMap, newQuantity, facilityId, eventName, isLate, delegator).store();
+        }
+    }
+
+    /**
+     * Make a new MrpEvent, or add the event quantity to an existing one, without writing it.
+     * @param mrpEvent the existing MrpEvent with the same key, or null
+     * @param mrpEventKeyMap the key of the MrpEvent
+     * @param newQuantity the event quantity
+     * @param facilityId the facility of a new MrpEvent
+     * @param eventName the name of the event, appended to the name of an existing MrpEvent
+     * @param isLate if the event is late
+     * @param delegator the delegator
+     * @return the new or updated MrpEvent
+     */
+    public static GenericValue mergeMrpEvent(GenericValue mrpEvent, Map<String, Object> mrpEventKeyMap, BigDecimal newQuantity,
+            String facilityId, String eventName, boolean isLate, Delegator delegator) {
         if (mrpEvent == null) {
             mrpEvent = delegator.makeValue("MrpEvent", mrpEventKeyMap);
             mrpEvent.put("quantity", newQuantity.doubleValue());
             mrpEvent.put("eventName", eventName);
             mrpEvent.put("facilityId", facilityId);
             mrpEvent.put("isLate", (isLate ? "Y" : "N"));
-            mrpEvent.create();
         } else {
             BigDecimal qties = newQuantity.add(mrpEvent.getBigDecimal("quantity"));
             mrpEvent.put("quantity", qties.doubleValue());
@@ -84,7 +103,7 @@ public class InventoryEventPlannedServices {
             if (isLate) {
                 mrpEvent.put("isLate", "Y");
             }
-            mrpEvent.store();
         }
+        return mrpEvent;
     }
 }
@@ -0,0 +1,452 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+
+package org.apache.ofbiz.manufacturing.mrp;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.apache.ofbiz.manufacturing.bom.BOMNode;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.service.ServiceUtil;
+
+/**
+ * Nets the products of a bill of material level for {@link MrpServices#executeMrp} called with <code>parallel</code> set.
+ * <p>The MrpEvent, ProductFacility and quantity on hand of the products of the level are read with a few queries and the
+ * products are netted in parallel: a product only adds requirements to its components, which are in the next levels.
+ * The requirements are then created and the MrpEvent records written in the order of the serial run, so that both runs
+ * give the same requirements and events.</p>
+ */
+final class MrpLevelPlanner {
+
+    private static final String MODULE = MrpLevelPlanner.class.getName();
+    private static final String RESOURCE = "ManufacturingUiLabels";
+    private static final int CHUNK_SIZE = 500;
+    // the netting of a product runs services and queries: blocking work kept out of the fork join pool, on a number of
+    // threads bounded to the number of processors as each one holds a database connection
+    private static final ScheduledExecutorService EXECUTOR = ExecutionPool.getScheduledExecutor(new ThreadGroup(MODULE), "OFBiz-mrp",
+            Runtime.getRuntime().availableProcessors(), 60, false);
+
+    private final DispatchContext dctx;
+    private final Delegator delegator;
+    private final LocalDispatcher dispatcher;
+    private final GenericValue userLogin;
+    private final Locale locale;
+    private final String mrpId;
+    private final String mrpName;
+    private final String facilityId;
+    private final String manufacturingFacilityId;
+    private final Timestamp now;
+
+    MrpLevelPlanner(DispatchContext dctx, Map<String, ? extends Object> context, String mrpId, String facilityId,
+            String manufacturingFacilityId, Timestamp now) {
+        this.dctx = dctx;
+        this.delegator = dctx.getDelegator();
+        this.dispatcher = dctx.getDispatcher();
+        this.userLogin = (GenericValue) context.get("userLogin");
+        this.locale = (Locale) context.get("locale");
+        this.mrpName = (String) context.get("mrpName");
+        this.mrpId = mrpId;
+        this.facilityId = facilityId;
+        this.manufacturingFacilityId = manufacturingFacilityId;
+        this.now = now;
+    }
+
+    /**
+     * Nets the products of a level.
+     * @param bomLevel the bill of material level
+     * @param levelEvents the MrpEventView records of the level, ordered by product and event date
+     * @return an error message, or <code>null</code> if the level has been netted
+     */
+    String planLevel(long bomLevel, List<GenericValue> levelEvents) {
+        Map<String, List<GenericValue>> eventsByProductId = new LinkedHashMap<>();
+        for (GenericValue event : levelEvents) {
+            eventsByProductId.computeIfAbsent(event.getString("productId"), k -> new ArrayList<>()).add(event);
+        }
+        List<String> productIds = new ArrayList<>(eventsByProductId.keySet());
+        Map<String, GenericValue> products;
+        Map<String, GenericValue> productFacilities;
+        Map<String, BigDecimal> quantitiesOnHand;
+        try {
+            products = findByProductIds("Product", EntityCondition.makeCondition("productId", EntityOperator.NOT_EQUAL, null), productIds);
+            productFacilities = findByProductIds("ProductFacility", EntityCondition.makeCondition("facilityId", facilityId), productIds);
+            quantitiesOnHand = findQuantitiesOnHand(productIds);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCannotFindProductForEvent", locale);
+        }
+
+        // the plans are taken as they are done so that the first failure cancels the netting of the other products
+        CompletionService<ProductPlan> completionService = new ExecutorCompletionService<>(EXECUTOR);
+        Map<Future<ProductPlan>, Integer> futures = new HashMap<>();
+        for (String productId : productIds) {
+            futures.put(completionService.submit(() -> planProduct(eventsByProductId.get(productId), products.get(productId),
+                    productFacilities.get(productId), quantitiesOnHand.getOrDefault(productId, BigDecimal.ZERO))), futures.size());
+        }
+        ProductPlan[] plans = new ProductPlan[futures.size()];
+        try {
+            for (int i = 0; i < plans.length; i++) {
+                Future<ProductPlan> future = completionService.take();
+                ProductPlan plan = future.get();
+                if (plan.errorMessage != null) {
+                    cancel(futures.keySet());
+                    return plan.errorMessage;
+                }
+                plans[futures.get(future)] = plan;
+            }
+        } catch (ExecutionException | InterruptedException e) {
+            cancel(futures.keySet());
+            Debug.logError(e, "Error netting the products of the bom level " + bomLevel, MODULE);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return UtilProperties.getMessage(RESOURCE, "ManufacturingMrpErrorForBomLevel", UtilMisc.toMap("bomLevel", Long.toString(bomLevel),
+                    "errorString", e.getMessage()), locale);
+        }
+        return writePlans(Arrays.asList(plans));
+    }
+
+    // the level fails, the products not netted yet are not needed
+    private static void cancel(Collection<Future<ProductPlan>> futures) {
+        for (Future<ProductPlan> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private Map<String, GenericValue> findByProductIds(String entityName, EntityCondition condition, List<String> productIds)
+            throws GenericEntityException {
+        Map<String, GenericValue> valuesByProductId = new HashMap<>();
+        for (int i = 0; i < productIds.size(); i += CHUNK_SIZE) {
+            List<String> chunk = productIds.subList(i, Math.min(i + CHUNK_SIZE, productIds.size()));
+            for (GenericValue value : EntityQuery.use(delegator).from(entityName)
+                    .where(condition, EntityCondition.makeCondition("productId", EntityOperator.IN, chunk)).queryList()) {
+                valuesByProductId.put(value.getString("productId"), value);
+            }
+        }
+        return valuesByProductId;
+    }
+
+    /**
+     * Same totals as the getInventoryAvailableByFacility service used by {@link MrpServices#findProductMrpQoh}.
+     */
+    private Map<String, BigDecimal> findQuantitiesOnHand(List<String> productIds) throws GenericEntityException {
+        boolean useSummary = "true".equals(EntityUtilProperties.getPropertyValue("catalog", "inventory.summary.enabled", "false", delegator));
+        Map<String, BigDecimal> quantitiesOnHand = new HashMap<>();
+        for (int i = 0; i < productIds.size(); i += CHUNK_SIZE) {
+            List<String> chunk = productIds.subList(i, Math.min(i + CHUNK_SIZE, productIds.size()));
+            EntityCondition condition = EntityCondition.makeCondition(EntityCondition.makeCondition("facilityId", facilityId),
+                    EntityCondition.makeCondition("productId", EntityOperator.IN, chunk));
+            List<GenericValue> values;
+            if (useSummary) {
+                values = EntityQuery.use(delegator).from("ProductFacilityInventory").where(condition).queryList();
+            } else {
+                values = EntityQuery.use(delegator).select("productId", "statusId", "inventoryItemTypeId", "quantityOnHandTotal")
+                        .from("InventoryItem").where(condition).queryList();
+            }
+            for (GenericValue value : values) {
+                String statusId = value.getString("statusId");
+                if (!useSummary && UtilValidate.isNotEmpty(statusId) && !"INV_AVAILABLE".equals(statusId) && !"INV_NS_RETURNED".equals(statusId)
+                        && !"SERIALIZED_INV_ITEM".equals(value.getString("inventoryItemTypeId"))) {
+                    continue;
+                }
+                BigDecimal quantityOnHand = value.getBigDecimal("quantityOnHandTotal");
+                if (quantityOnHand != null) {
+                    quantitiesOnHand.merge(value.getString("productId"), quantityOnHand, BigDecimal::add);
+                }
+            }
+        }
+        return quantitiesOnHand;
+    }
+
+    /**
+     * Nets a product like the loop of {@link MrpServices#executeMrp}, recording the MrpEvent changes instead of writing them.
+     */
+    private ProductPlan planProduct(List<GenericValue> events, GenericValue product, GenericValue productFacility, BigDecimal quantityOnHand) {
+        ProductPlan plan = new ProductPlan();
+        if (product == null) {
+            plan.errorMessage = UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCannotFindProductForEvent", locale);
+            return plan;
+        }
+        String productId = product.getString("productId");
+        GenericValue firstEvent = events.get(0);
+        BigDecimal firstEventQuantity = firstEvent.getBigDecimal("quantity");
+        BigDecimal positiveEventQuantity = firstEventQuantity.compareTo(BigDecimal.ZERO) > 0 ? firstEventQuantity : firstEventQuantity.negate();
+        BigDecimal stockTmp = quantityOnHand;
+        plan.addEvent(UtilMisc.toMap("mrpId", mrpId, "productId", productId, "mrpEventTypeId", "INITIAL_QOH", "eventDate", now), stockTmp,
+                facilityId, null, false);
+        int daysToShip = 0;
+        BigDecimal reorderQuantity;
+        BigDecimal minimumStock;
+        if (productFacility != null) {
+            reorderQuantity = (productFacility.getBigDecimal("reorderQuantity") != null ? productFacility.getBigDecimal("reorderQuantity")
+                    : BigDecimal.ONE.negate());
+            minimumStock = (productFacility.getBigDecimal("minimumStock") != null ? productFacility.getBigDecimal("minimumStock")
+                    : BigDecimal.ZERO);
+            if ("SALES_ORDER_SHIP".equals(firstEvent.getString("mrpEventTypeId"))) {
+                daysToShip = (productFacility.getLong("daysToShip") != null ? productFacility.getLong("daysToShip").intValue() : 0);
+            }
+        } else {
+            minimumStock = BigDecimal.ZERO;
+            reorderQuantity = BigDecimal.ONE.negate();
+        }
+        Map<String, Object> serviceResponse = getManufacturingComponents(productId, positiveEventQuantity, plan);
+        if (serviceResponse == null) {
+            return plan;
+        }
+        List<BOMNode> components = UtilGenerics.cast(serviceResponse.get("components"));
+        boolean isBuilt = UtilValidate.isNotEmpty(components) && components.get(0).getParentNode().isManufactured();
+
+        for (int i = 0; i < events.size(); i++) {
+            GenericValue event = events.get(i);
+            boolean isLastEvent = i == events.size() - 1;
+            BigDecimal eventQuantity = event.getBigDecimal("quantity");
+            stockTmp = stockTmp.add(eventQuantity);
+            if (stockTmp.compareTo(minimumStock) >= 0 || (eventQuantity.compareTo(BigDecimal.ZERO) >= 0 && !isLastEvent)) {
+                continue;
+            }
+            BigDecimal qtyToStock = minimumStock.subtract(stockTmp);
+            Timestamp eventDate = event.getTimestamp("eventDate");
+            // to be just before the requirement
+            eventDate.setTime(eventDate.getTime() - 1);
+            ProposedOrder proposedOrder = new ProposedOrder(product, facilityId, manufacturingFacilityId, isBuilt, eventDate, qtyToStock);
+            proposedOrder.setMrpName(mrpName);
+            proposedOrder.calculateQuantityToSupply(reorderQuantity, minimumStock, null);
+
+            serviceResponse = getManufacturingComponents(productId, proposedOrder.getQuantity(), plan);
+            if (serviceResponse == null) {
+                return plan;
+            }
+            components = UtilGenerics.cast(serviceResponse.get("components"));
+            String routingId = (String) serviceResponse.get("workEffortId");
+            GenericValue routing = null;
+            if (routingId != null) {
+                try {
+                    routing = EntityQuery.use(delegator).from("WorkEffort").where("workEffortId", routingId).queryOne();
+                } catch (GenericEntityException e) {
+                    plan.errorMessage = UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCannotFindProductForEvent", locale);
+                    return plan;
+                }
+            }
+            isBuilt = UtilValidate.isNotEmpty(components) && components.get(0).getParentNode().isManufactured();
+
+            Map<String, Object> routingTaskStartDate = proposedOrder.calculateStartDate(daysToShip, routing, delegator, dispatcher, userLogin);
+            if (isBuilt) {
+                addBomComponents(plan, productId, proposedOrder.getRequirementStartDate(), routingTaskStartDate, components);
+            }
+            boolean createRequirement = productFacility != null && proposedOrder.prepareRequirement(dctx, userLogin);
+            if (productFacility == null && !isBuilt) {
+                plan.addError(productId, "No ProductFacility record for [" + facilityId + "]; no requirement created.");
+            }
+            plan.addProposedOrder(proposedOrder, createRequirement, UtilMisc.toMap("productId", productId, "mrpId", mrpId,
+                    "eventDate", eventDate, "mrpEventTypeId", (isBuilt ? "PROP_MANUF_O_RECP" : "PROP_PUR_O_RECP")),
+                    proposedOrder.getRequirementStartDate().compareTo(now) < 0);
+            stockTmp = stockTmp.add(proposedOrder.getQuantity());
+        }
+        return plan;
+    }
+
+    private Map<String, Object> getManufacturingComponents(String productId, BigDecimal quantity, ProductPlan plan) {
+        try {
+            Map<String, Object> serviceResponse = dispatcher.runSync("getManufacturingComponents", UtilMisc.<String, Object>toMap("productId",
+                    productId, "quantity", quantity, "excludeWIPs", Boolean.FALSE, "userLogin", userLogin));
+            if (ServiceUtil.isError(serviceResponse)) {
+                plan.errorMessage = ServiceUtil.getErrorMessage(serviceResponse);
+                return null;
+            }
+            return serviceResponse;
+        } catch (GenericServiceException e) {
+            plan.errorMessage = UtilProperties.getMessage(RESOURCE, "ManufacturingMrpErrorExplodingProduct", UtilMisc.toMap("productId",
+                    productId), locale);
+            return null;
+        }
+    }
+
+    /**
+     * Same requirements as {@link MrpServices#processBomComponent}.
+     */
+    private void addBomComponents(ProductPlan plan, String productId, Timestamp startDate, Map<String, Object> routingTaskStartDate,
+            List<BOMNode> components) {
+        if (UtilValidate.isEmpty(components)) {
+            return;
+        }
+        for (BOMNode node : components) {
+            GenericValue productComponent = node.getProductAssoc();
+            String routingTask = productComponent.getString("routingWorkEffortId");
+            Timestamp eventDate = (routingTask == null || !routingTaskStartDate.containsKey(routingTask)) ? startDate
+                    : (Timestamp) routingTaskStartDate.get(routingTask);
+            if (EntityUtil.isValueActive(productComponent, eventDate)) {
+                plan.addEvent(UtilMisc.toMap("productId", node.getProduct().getString("productId"), "mrpId", mrpId, "eventDate", eventDate,
+                        "mrpEventTypeId", "MRP_REQUIREMENT"), node.getQuantity().negate(), null, productId + ": " + eventDate, false);
+            }
+        }
+    }
+
+    /**
+     * Creates the requirements and writes the MrpEvent changes of the products, in the order of the products.
+     */
+    private String writePlans(List<ProductPlan> plans) {
+        Set<String> productIds = new HashSet<>();
+        for (ProductPlan plan : plans) {
+            for (EventChange change : plan.changes) {
+                productIds.add((String) change.keyMap.get("productId"));
+            }
+        }
+        Map<GenericPK, GenericValue> mrpEvents = new HashMap<>();
+        try {
+            List<String> productIdList = new ArrayList<>(productIds);
+            for (int i = 0; i < productIdList.size(); i += CHUNK_SIZE) {
+                List<String> chunk = productIdList.subList(i, Math.min(i + CHUNK_SIZE, productIdList.size()));
+                for (GenericValue mrpEvent : EntityQuery.use(delegator).from("MrpEvent").where(EntityCondition.makeCondition("mrpId", mrpId),
+                        EntityCondition.makeCondition("productId", EntityOperator.IN, chunk)).queryList()) {
+                    mrpEvents.put(mrpEvent.getPrimaryKey(), mrpEvent);
+                }
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return UtilProperties.getMessage(RESOURCE, "ManufacturingMrpEventFindError", locale);
+        }
+
+        Set<GenericPK> createdKeys = new LinkedHashSet<>();
+        Set<GenericPK> changedKeys = new LinkedHashSet<>();
+        for (ProductPlan plan : plans) {
+            for (EventChange change : plan.changes) {
+                String eventName = change.eventName;
+                if (change.proposedOrder != null) {
+                    String requirementId = change.createRequirement ? change.proposedOrder.createRequirement(dctx, userLogin) : null;
+                    eventName = UtilValidate.isNotEmpty(requirementId)
+                            ? "*" + requirementId + " (" + change.proposedOrder.getRequirementStartDate() + ")*" : null;
+                }
+                GenericPK key = delegator.makePK("MrpEvent", change.keyMap);
+                GenericValue mrpEvent = mrpEvents.get(key);
+                if (mrpEvent == null) {
+                    createdKeys.add(key);
+                } else {
+                    changedKeys.add(key);
+                }
+                if (change.error) {
+                    // like logMrpError, replaces the name of the error event
+                    if (mrpEvent == null) {
+                        mrpEvent = delegator.makeValue("MrpEvent", change.keyMap);
+                    }
+                    mrpEvent.put("eventName", eventName);
+                } else {
+                    mrpEvent = InventoryEventPlannedServices.mergeMrpEvent(mrpEvent, change.keyMap, change.quantity, change.facilityId, eventName,
+                            change.isLate, delegator);
+                }
+                mrpEvents.put(key, mrpEvent);
+            }
+        }
+        changedKeys.removeAll(createdKeys);
+
+        List<GenericValue> createdEvents = new ArrayList<>(createdKeys.size());
+        createdKeys.forEach(key -> createdEvents.add(mrpEvents.get(key)));
+        List<GenericValue> changedEvents = new ArrayList<>(changedKeys.size());
+        changedKeys.forEach(key -> changedEvents.add(mrpEvents.get(key)));
+        try {
+            if (!createdEvents.isEmpty()) {
+                delegator.createAllByBatchProcess(createdEvents);
+            }
+            delegator.storeAll(changedEvents);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCreateOrUpdateEvent", UtilMisc.toMap("parameters",
+                    UtilMisc.toMap("mrpId", mrpId)), locale);
+        }
+        return null;
+    }
+
+    /**
+     * The MrpEvent changes of a product, in the order of the serial run.
+     */
+    private final class ProductPlan {
+        private final List<EventChange> changes = new ArrayList<>();
+        private String errorMessage;
+
+        private void addEvent(Map<String, Object> keyMap, BigDecimal quantity, String eventFacilityId, String eventName, boolean isLate) {
+            changes.add(new EventChange(keyMap, quantity, eventFacilityId, eventName, isLate, false, null, false));
+        }
+
+        private void addError(String productId, String message) {
+            changes.add(new EventChange(UtilMisc.toMap("productId", productId, "mrpId", mrpId, "eventDate", now, "mrpEventTypeId", "ERROR"),
+                    null, null, message, false, true, null, false));
+        }
+
+        private void addProposedOrder(ProposedOrder proposedOrder, boolean createRequirement, Map<String, Object> keyMap, boolean isLate) {
+            changes.add(new EventChange(keyMap, proposedOrder.getQuantity(), null, null, isLate, false, proposedOrder, createRequirement));
+        }
+    }
+
+    private static final class EventChange {
+        private final Map<String, Object> keyMap;
+        private final BigDecimal quantity;
+        private final String facilityId;
+        private final String eventName;
+        private final boolean isLate;
+        /** An error event, only its name is set */
+        private final boolean error;
+        /** The proposed order of a proposed receipt event, its requirement id is part of the event name */
+        private final ProposedOrder proposedOrder;
+        private final boolean createRequirement;
+
+        private EventChange(Map<String, Object> keyMap, BigDecimal quantity, String facilityId, String eventName, boolean isLate, boolean error,
+                ProposedOrder proposedOrder, boolean createRequirement) {
+            this.keyMap = keyMap;
+            this.quantity = quantity;
+            this.facilityId = facilityId;
+            this.eventName = eventName;
+            this.isLate = isLate;
+            this.error = error;
+            this.proposedOrder = proposedOrder;
+            this.createRequirement = createRequirement;
+        }
+    }
+}
@@ -608,7 +608,8 @@ public class MrpServices {
      * <ul>
      * <li>PreConditions : none</li>
      * <li>Result : The date when we must order or begin to build the products and subproducts we need are calculated</li>
-     * <li>INPUT : parameters to get from the context: <ul><li>String mrpName</li></ul></li>
+     * <li>INPUT : parameters to get from the context: <ul><li>String mrpName</li><li>Boolean parallel: nets the products of each bom level
+     * in parallel with {@link MrpLevelPlanner}</li></ul></li>
      * <li>OUTPUT : Result to put in the map : <ul><li>none</li></ul></li>
      * </ul>
      * @param ctx     The DispatchContext that this service is operating in.
@@ -700,6 +701,10 @@ public class MrpServices {
             return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpErrorRunningInitMrpEvents", UtilMisc.toMap(
                     "errorString", e.getMessage()), locale));
         }
+        MrpLevelPlanner levelPlanner = null;
+        if (Boolean.TRUE.equals(context.get("parallel"))) {
+            levelPlanner = new MrpLevelPlanner(ctx, context, mrpId, facilityId, manufacturingFacilityId, now);
+        }
         long bomLevel = 0;
         do {
             // Find all products in MrpEventView, ordered by bom and eventDate
@@ -725,159 +730,169 @@ public class MrpServices {
             if (UtilValidate.isNotEmpty(listInventoryEventForMRP)) {
                 bomLevelWithNoEvent = 0;
 
-                oldProductId = "";
-                int eventCount = 0;
-                for (GenericValue inventoryEventForMRP : listInventoryEventForMRP) {
-                    eventCount++;
-
-                    productId = inventoryEventForMRP.getString("productId");
-                    boolean isLastEvent = (eventCount == listInventoryEventForMRP.size()
-                            || !productId.equals(listInventoryEventForMRP.get(eventCount).getString("productId")));
-                    eventQuantity = inventoryEventForMRP.getBigDecimal("quantity");
-
-                    if (!productId.equals(oldProductId)) {
-                        BigDecimal positiveEventQuantity = eventQuantity.compareTo(BigDecimal.ZERO) > 0 ? eventQuantity : eventQuantity.negate();
-                        // It's a new product, so it's necessary to  read the MrpQoh
-                        try {
-                            product = inventoryEventForMRP.getRelatedOne("Product", true);
-                            productFacility = EntityUtil.getFirst(product.getRelated("ProductFacility", UtilMisc.toMap("facilityId", facilityId),
-                                    null, true));
-                        } catch (GenericEntityException e) {
-                            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCannotFindProductForEvent", locale));
-                        }
-                        stockTmp = findProductMrpQoh(mrpId, product, facilityId, dispatcher, delegator);
-                        try {
-                            InventoryEventPlannedServices.createOrUpdateMrpEvent(UtilMisc.<String, Object>toMap("mrpId", mrpId,
-                                    "productId", product.getString("productId"),
-                                    "mrpEventTypeId", "INITIAL_QOH", "eventDate", now),
-                                    stockTmp, facilityId, null, false, delegator);
-                        } catch (GenericEntityException e) {
-                            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCreateOrUpdateEvent",
-                                    UtilMisc.toMap("parameters", parameters), locale));
-                        }
-                        // days to ship is only relevant for sales order to plan for preparatory days to ship.  Otherwise MRP will push event dates
-                        // for manufacturing parts
-                        // as well and cause problems
-                        daysToShip = 0;
-                        if (productFacility != null) {
-                            reorderQuantity = (productFacility.getBigDecimal("reorderQuantity") != null ? productFacility.getBigDecimal(
-                                    "reorderQuantity") : BigDecimal.ONE.negate());
-                            minimumStock = (productFacility.getBigDecimal("minimumStock") != null ? productFacility.getBigDecimal("minimumStock")
-                                    : BigDecimal.ZERO);
-                            if ("SALES_ORDER_SHIP".equals(inventoryEventForMRP.getString("mrpEventTypeId"))) {
-                                daysToShip = (productFacility.getLong("daysToShip") != null ? productFacility.getLong("daysToShip").intValue() : 0);
+                if (levelPlanner != null) {
+                    String errorMessage = levelPlanner.planLevel(bomLevel, listInventoryEventForMRP);
+                    if (errorMessage != null) {
+                        return ServiceUtil.returnError(errorMessage);
+                    }
+                } else {
+                    oldProductId = "";
+                    int eventCount = 0;
+                    for (GenericValue inventoryEventForMRP : listInventoryEventForMRP) {
+                        eventCount++;
+
+                        productId = inventoryEventForMRP.getString("productId");
+                        boolean isLastEvent = (eventCount == listInventoryEventForMRP.size()
+                                || !productId.equals(listInventoryEventForMRP.get(eventCount).getString("productId")));
+                        eventQuantity = inventoryEventForMRP.getBigDecimal("quantity");
+
+                        if (!productId.equals(oldProductId)) {
+                            BigDecimal positiveEventQuantity = eventQuantity.compareTo(BigDecimal.ZERO) > 0 ? eventQuantity : eventQuantity.negate();
+                            // It's a new product, so it's necessary to  read the MrpQoh
+                            try {
+                                product = inventoryEventForMRP.getRelatedOne("Product", true);
+                                productFacility = EntityUtil.getFirst(product.getRelated("ProductFacility", UtilMisc.toMap("facilityId", facilityId),
+                                        null, true));
+                            } catch (GenericEntityException e) {
+                                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCannotFindProductForEvent",
+                                        locale));
                             }
-                        } else {
-                            minimumStock = BigDecimal.ZERO;
-                            reorderQuantity = BigDecimal.ONE.negate();
-                        }
-                        // -----------------------------------------------------
-                        // The components are also loaded thru the configurator
-                        Map<String, Object> serviceResponse = null;
-                        try {
-                            serviceResponse = dispatcher.runSync("getManufacturingComponents", UtilMisc.<String, Object>toMap("productId",
-                                    product.getString("productId"), "quantity", positiveEventQuantity, "excludeWIPs", Boolean.FALSE, "userLogin",
-                                    userLogin));
-                            if (ServiceUtil.isError(serviceResponse)) {
-                                return ServiceUtil.returnError(ServiceUtil.getErrorMessage(serviceResponse));
+                            stockTmp = findProductMrpQoh(mrpId, product, facilityId, dispatcher, delegator);
+                            try {
+                                InventoryEventPlannedServices.createOrUpdateMrpEvent(UtilMisc.<String, Object>toMap("mrpId", mrpId,
+                                        "productId", product.getString("productId"),
+                                        "mrpEventTypeId", "INITIAL_QOH", "eventDate", now),
+                                        stockTmp, facilityId, null, false, delegator);
+                            } catch (GenericEntityException e) {
+                                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCreateOrUpdateEvent",
+                                        UtilMisc.toMap("parameters", parameters), locale));
                             }
-                        } catch (GenericServiceException e) {
-                            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpErrorExplodingProduct",
-                                    UtilMisc.toMap("productId", product.getString("productId")), locale));
-                        }
-                        components = UtilGenerics.cast(serviceResponse.get("components"));
-                        if (UtilValidate.isNotEmpty(components)) {
-                            BOMNode node = (components.get(0)).getParentNode();
-                            isBuilt = node.isManufactured();
-                        } else {
-                            isBuilt = false;
-                        }
-                        // #####################################################
+                            // days to ship is only relevant for sales order to plan for preparatory days to ship.  Otherwise MRP will push event
+                            // dates for manufacturing parts
+                            // as well and cause problems
+                            daysToShip = 0;
+                            if (productFacility != null) {
+                                reorderQuantity = (productFacility.getBigDecimal("reorderQuantity") != null ? productFacility.getBigDecimal(
+                                        "reorderQuantity") : BigDecimal.ONE.negate());
+                                minimumStock = (productFacility.getBigDecimal("minimumStock") != null ? productFacility.getBigDecimal("minimumStock")
+                                        : BigDecimal.ZERO);
+                                if ("SALES_ORDER_SHIP".equals(inventoryEventForMRP.getString("mrpEventTypeId"))) {
+                                    daysToShip = (productFacility.getLong("daysToShip") != null ? productFacility.getLong("daysToShip").intValue()
+                                            : 0);
+                                }
+                            } else {
+                                minimumStock = BigDecimal.ZERO;
+                                reorderQuantity = BigDecimal.ONE.negate();
+                            }
+                            // -----------------------------------------------------
+                            // The components are also loaded thru the configurator
+                            Map<String, Object> serviceResponse = null;
+                            try {
+                                serviceResponse = dispatcher.runSync("getManufacturingComponents", UtilMisc.<String, Object>toMap("productId",
+                                        product.getString("productId"), "quantity", positiveEventQuantity, "excludeWIPs", Boolean.FALSE, "userLogin",
+                                        userLogin));
+                                if (ServiceUtil.isError(serviceResponse)) {
+                                    return ServiceUtil.returnError(ServiceUtil.getErrorMessage(serviceResponse));
+                                }
+                            } catch (GenericServiceException e) {
+                                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpErrorExplodingProduct",
+                                        UtilMisc.toMap("productId", product.getString("productId")), locale));
+                            }
+                            components = UtilGenerics.cast(serviceResponse.get("components"));
+                            if (UtilValidate.isNotEmpty(components)) {
+                                BOMNode node = (components.get(0)).getParentNode();
+                                isBuilt = node.isManufactured();
+                            } else {
+                                isBuilt = false;
+                            }
+                            // #####################################################
 
-                        oldProductId = productId;
-                    }
+                            oldProductId = productId;
+                        }
 
-                    stockTmp = stockTmp.add(eventQuantity);
-                    if (stockTmp.compareTo(minimumStock) < 0 && (eventQuantity.compareTo(BigDecimal.ZERO) < 0 || isLastEvent)) { // No need to
-                        // create a supply event/requirement if the current event is not a demand and there are other events to process
-                        BigDecimal qtyToStock = minimumStock.subtract(stockTmp);
-                        //need to buy or build the product as we have not enough stock
-                        eventDate = inventoryEventForMRP.getTimestamp("eventDate");
-                        // to be just before the requirement
-                        eventDate.setTime(eventDate.getTime() - 1);
-                        ProposedOrder proposedOrder = new ProposedOrder(product, facilityId, manufacturingFacilityId, isBuilt, eventDate, qtyToStock);
-                        proposedOrder.setMrpName(mrpName);
-                        // calculate the ProposedOrder quantity and update the quantity object property.
-                        proposedOrder.calculateQuantityToSupply(reorderQuantity, minimumStock, iteratorListInventoryEventForMRP);
-
-                        // -----------------------------------------------------
-                        // The components are also loaded thru the configurator
-                        Map<String, Object> serviceResponse = null;
-                        try {
-                            serviceResponse = dispatcher.runSync("getManufacturingComponents", UtilMisc.<String, Object>toMap("productId",
-                                    product.getString("productId"), "quantity", proposedOrder.getQuantity(), "excludeWIPs", Boolean.FALSE,
-                                    "userLogin", userLogin));
-                            if (ServiceUtil.isError(serviceResponse)) {
-                                return ServiceUtil.returnError(ServiceUtil.getErrorMessage(serviceResponse));
+                        stockTmp = stockTmp.add(eventQuantity);
+                        if (stockTmp.compareTo(minimumStock) < 0 && (eventQuantity.compareTo(BigDecimal.ZERO) < 0 || isLastEvent)) { // No need to
+                            // create a supply event/requirement if the current event is not a demand and there are other events to process
+                            BigDecimal qtyToStock = minimumStock.subtract(stockTmp);
+                            //need to buy or build the product as we have not enough stock
+                            eventDate = inventoryEventForMRP.getTimestamp("eventDate");
+                            // to be just before the requirement
+                            eventDate.setTime(eventDate.getTime() - 1);
+                            ProposedOrder proposedOrder = new ProposedOrder(product, facilityId, manufacturingFacilityId, isBuilt, eventDate,
+                                    qtyToStock);
+                            proposedOrder.setMrpName(mrpName);
+                            // calculate the ProposedOrder quantity and update the quantity object property.
+                            proposedOrder.calculateQuantityToSupply(reorderQuantity, minimumStock, iteratorListInventoryEventForMRP);
+
+                            // -----------------------------------------------------
+                            // The components are also loaded thru the configurator
+                            Map<String, Object> serviceResponse = null;
+                            try {
+                                serviceResponse = dispatcher.runSync("getManufacturingComponents", UtilMisc.<String, Object>toMap("productId",
+                                        product.getString("productId"), "quantity", proposedOrder.getQuantity(), "excludeWIPs", Boolean.FALSE,
+                                        "userLogin", userLogin));
+                                if (ServiceUtil.isError(serviceResponse)) {
+                                    return ServiceUtil.returnError(ServiceUtil.getErrorMessage(serviceResponse));
+                                }
+                            } catch (GenericServiceException e) {
+                                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpErrorExplodingProduct",
+                                        UtilMisc.toMap("productId", product.getString("productId")), locale));
                             }
-                        } catch (GenericServiceException e) {
-                            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpErrorExplodingProduct",
-                                    UtilMisc.toMap("productId", product.getString("productId")), locale));
-                        }
-                        components = UtilGenerics.cast(serviceResponse.get("components"));
-                        String routingId = (String) serviceResponse.get("workEffortId");
-                        if (routingId != null) {
+                            components = UtilGenerics.cast(serviceResponse.get("components"));
+                            String routingId = (String) serviceResponse.get("workEffortId");
+                            if (routingId != null) {
+                                try {
+                                    routing = EntityQuery.use(delegator).from("WorkEffort").where("workEffortId", routingId).queryOne();
+                                } catch (GenericEntityException e) {
+                                    return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCannotFindProductForEvent",
+                                            locale));
+                                }
+                            } else {
+                                routing = null;
+                            }
+                            if (UtilValidate.isNotEmpty(components)) {
+                                BOMNode node = (components.get(0)).getParentNode();
+                                isBuilt = node.isManufactured();
+                            } else {
+                                isBuilt = false;
+                            }
+                            // #####################################################
+
+                            // calculate the ProposedOrder requirementStartDate and update the requirementStartDate object property.
+                            Map<String, Object> routingTaskStartDate = proposedOrder.calculateStartDate(daysToShip, routing, delegator, dispatcher,
+                                    userLogin);
+                            if (isBuilt) {
+                                // process the product components
+                                processBomComponent(mrpId, product, proposedOrder.getQuantity(), proposedOrder.getRequirementStartDate(),
+                                        routingTaskStartDate, components);
+                            }
+                            // create the  ProposedOrder (only if the product is warehouse managed), and the MrpEvent associated
+                            String requirementId = null;
+                            if (productFacility != null) {
+                                requirementId = proposedOrder.create(ctx, userLogin);
+                            }
+                            if (UtilValidate.isEmpty(productFacility) && !isBuilt) {
+                                logMrpError(mrpId, productId, now, "No ProductFacility record for [" + facilityId + "]; no requirement created.",
+                                        delegator);
+                            }
+                            String eventName = null;
+                            if (UtilValidate.isNotEmpty(requirementId)) {
+                                eventName = "*" + requirementId + " (" + proposedOrder.getRequirementStartDate() + ")*";
+                            }
+                            Map<String, Object> eventMap = UtilMisc.<String, Object>toMap("productId", product.getString("productId"),
+                                    "mrpId", mrpId,
+                                    "eventDate", eventDate,
+                                    "mrpEventTypeId", (isBuilt ? "PROP_MANUF_O_RECP" : "PROP_PUR_O_RECP"));
                             try {
-                                routing = EntityQuery.use(delegator).from("WorkEffort").where("workEffortId", routingId).queryOne();
+                                InventoryEventPlannedServices.createOrUpdateMrpEvent(eventMap, proposedOrder.getQuantity(), null,
+                                        eventName, (proposedOrder.getRequirementStartDate().compareTo(now) < 0), delegator);
                             } catch (GenericEntityException e) {
-                                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCannotFindProductForEvent",
-                                        locale));
+                                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCreateOrUpdateEvent",
+                                        UtilMisc.toMap("parameters", parameters), locale));
                             }
-                        } else {
-                            routing = null;
-                        }
-                        if (UtilValidate.isNotEmpty(components)) {
-                            BOMNode node = (components.get(0)).getParentNode();
-                            isBuilt = node.isManufactured();
-                        } else {
-                            isBuilt = false;
-                        }
-                        // #####################################################
-
-                        // calculate the ProposedOrder requirementStartDate and update the requirementStartDate object property.
-                        Map<String, Object> routingTaskStartDate = proposedOrder.calculateStartDate(daysToShip, routing, delegator, dispatcher,
-                                userLogin);
-                        if (isBuilt) {
-                            // process the product components
-                            processBomComponent(mrpId, product, proposedOrder.getQuantity(), proposedOrder.getRequirementStartDate(),
-                                    routingTaskStartDate, components);
-                        }
-                        // create the  ProposedOrder (only if the product is warehouse managed), and the MrpEvent associated
-                        String requirementId = null;
-                        if (productFacility != null) {
-                            requirementId = proposedOrder.create(ctx, userLogin);
-                        }
-                        if (UtilValidate.isEmpty(productFacility) && !isBuilt) {
-                            logMrpError(mrpId, productId, now, "No ProductFacility record for [" + facilityId + "]; no requirement created.",
-                                    delegator);
-                        }
-                        String eventName = null;
-                        if (UtilValidate.isNotEmpty(requirementId)) {
-                            eventName = "*" + requirementId + " (" + proposedOrder.getRequirementStartDate() + ")*";
-                        }
-                        Map<String, Object> eventMap = UtilMisc.<String, Object>toMap("productId", product.getString("productId"),
-                                "mrpId", mrpId,
-                                "eventDate", eventDate,
-                                "mrpEventTypeId", (isBuilt ? "PROP_MANUF_O_RECP" : "PROP_PUR_O_RECP"));
-                        try {
-                            InventoryEventPlannedServices.createOrUpdateMrpEvent(eventMap, proposedOrder.getQuantity(), null,
-                                    eventName, (proposedOrder.getRequirementStartDate().compareTo(now) < 0), delegator);
-                        } catch (GenericEntityException e) {
-                            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ManufacturingMrpCreateOrUpdateEvent",
-                                    UtilMisc.toMap("parameters", parameters), locale));
+                            //
+                            stockTmp = stockTmp.add(proposedOrder.getQuantity());
                         }
-                        //
-                        stockTmp = stockTmp.add(proposedOrder.getQuantity());
                     }
                 }
             } else {
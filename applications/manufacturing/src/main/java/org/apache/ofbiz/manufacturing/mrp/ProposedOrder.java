@@ -233,14 +233,26 @@ public class ProposedOrder {
      * @return String the requirementId
      **/
     public String create(DispatchContext ctx, GenericValue userLogin) {
+        if (!prepareRequirement(ctx, userLogin)) {
+            return null;
+        }
+        return createRequirement(ctx, userLogin);
+    }
+
+    /**
+     * prepare the creation of the Requirement: for the built product, calculate the requirementStartDate from the manufacturing
+     * bill of material and update the requirementStartDate property.
+     * @param ctx The DispatchContext used to explode the bill of material.
+     * @return false if no Requirement is created for the product (Work In Process products)
+     **/
+    public boolean prepareRequirement(DispatchContext ctx, GenericValue userLogin) {
         if ("WIP".equals(product.getString("productTypeId"))) {
             // No requirements for Work In Process products
-            return null;
+            return false;
         }
-        LocalDispatcher dispatcher = ctx.getDispatcher();
-        Delegator delegator = ctx.getDelegator();
-        Map<String, Object> parameters = UtilMisc.<String, Object>toMap("userLogin", userLogin);
         if (isBuilt) {
+            LocalDispatcher dispatcher = ctx.getDispatcher();
+            Delegator delegator = ctx.getDelegator();
             try {
                 List<BOMNode> bom = new LinkedList<>();
                 BOMTree tree = new BOMTree(productId, "MANUF_COMPONENT", null, BOMTree.EXPLOSION_MANUFACTURING, delegator,
@@ -252,6 +264,17 @@ public class ProposedOrder {
                 Debug.logError(e, "Error : computing the requirement start date. " + e.getMessage(), MODULE);
             }
         }
+        return true;
+    }
+
+    /**
+     * create the Requirement of a prepared ProposedOrder calling the createRequirement service.
+     * @param ctx The DispatchContext used to call service to create the Requirement Entity record.
+     * @return String the requirementId
+     **/
+    public String createRequirement(DispatchContext ctx, GenericValue userLogin) {
+        LocalDispatcher dispatcher = ctx.getDispatcher();
+        Map<String, Object> parameters = UtilMisc.<String, Object>toMap("userLogin", userLogin);
         parameters.put("productId", productId);
         parameters.put("statusId", "REQ_PROPOSED");
         parameters.put("facilityId", (isBuilt ? manufacturingFacilityId : facilityId));
@@ -20,6 +20,10 @@ package org.apache.ofbiz.order.order
 
 import java.sql.Timestamp
 
+import org.apache.ofbiz.entity.condition.EntityCondition
+import org.apache.ofbiz.entity.condition.EntityOperator
+import org.apache.ofbiz.order.order.OrderHeaderTotalServices
+
 module = 'FindOrders.groovy'
 
 // get the order types
@@ -165,6 +169,16 @@ if (paramList) {
 orderList = request.getAttribute('orderList')
 context.orderList = orderList
 
+// read the totals of the listed orders at once when they are maintained, instead of reading the items of each order
+if (orderList && OrderHeaderTotalServices.isEnabled(delegator)) {
+    orderHeaderTotals = [:]
+    from('OrderHeaderTotal')
+            .where(EntityCondition.makeCondition('orderId', EntityOperator.IN, orderList.collect { it.orderId }))
+            .queryList()
+            .each { orderHeaderTotals[it.orderId] = it }
+    context.orderHeaderTotals = orderHeaderTotals
+}
+
 orderListSize = request.getAttribute('orderListSize')
 context.orderListSize = orderListSize
 
@@ -178,3 +192,8 @@ context.lowIndex = lowIndex
 
 highIndex = request.getAttribute('highIndex')
 context.highIndex = highIndex
+
+// the last order of the page, the next page starts after it when the orders are searched with the order search index
+context.lastOrderDate = request.getAttribute('lastOrderDate')?.toString()
+context.lastOrderId = request.getAttribute('lastOrderId')
+context.orderListSizeApproximate = request.getAttribute('orderListSizeApproximate')
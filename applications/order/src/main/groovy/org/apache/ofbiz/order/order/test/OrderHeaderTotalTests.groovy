@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.order.order.test
+
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.order.order.OrderReadHelper
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class OrderHeaderTotalTests extends OFBizTestCase {
+
+    OrderHeaderTotalTests(String name) {
+        super(name)
+    }
+
+    void testOrderTotalsAreCalculatedOnce() {
+        OrderReadHelper orh = new OrderReadHelper(delegator, 'TEST_DEMO10090')
+        BigDecimal itemsSubTotal = orh.getOrderItemsSubTotal()
+        assert itemsSubTotal.is(orh.getOrderItemsSubTotal())
+        assert orh.getOrderGrandTotal().is(orh.getOrderGrandTotal())
+        assert orh.getTotalOrderItemsQuantity().is(orh.getTotalOrderItemsQuantity())
+        assert orh.getOrderTotals().itemsSubTotal == itemsSubTotal
+    }
+
+    void testUpdateOrderHeaderTotal() {
+        Map serviceResult = dispatcher.runSync('updateOrderHeaderTotal', [orderId: 'TEST_DEMO10090', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+
+        Map<String, BigDecimal> totals = new OrderReadHelper(delegator, 'TEST_DEMO10090').getOrderTotals()
+        GenericValue orderHeaderTotal = from('OrderHeaderTotal').where('orderId', 'TEST_DEMO10090').queryOne()
+        assert orderHeaderTotal
+        assert orderHeaderTotal.getBigDecimal('grandTotal').compareTo(totals.grandTotal) == 0
+        assert orderHeaderTotal.getBigDecimal('itemsSubTotal').compareTo(totals.itemsSubTotal) == 0
+        assert orderHeaderTotal.getBigDecimal('itemsQuantity').compareTo(totals.itemsQuantity) == 0
+        assert orderHeaderTotal.getBigDecimal('returnedQuantity').compareTo(totals.returnedQuantity) == 0
+        assert orderHeaderTotal.getBigDecimal('backorderQuantity').compareTo(totals.backorderQuantity) == 0
+        assert orderHeaderTotal.surveyCount == new OrderReadHelper(delegator, 'TEST_DEMO10090').hasSurvey()
+    }
+
+    void testRebuildOrderHeaderTotals() {
+        Map serviceResult = dispatcher.runSync('rebuildOrderHeaderTotals', [userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert serviceResult.orderCount > 0
+        assert from('OrderHeaderTotal').where('orderId', 'TEST_DEMO10091').queryOne()
+    }
+}
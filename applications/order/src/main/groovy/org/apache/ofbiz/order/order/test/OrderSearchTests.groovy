@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.order.order.test
+
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class OrderSearchTests extends OFBizTestCase {
+
+    OrderSearchTests(String name) {
+        super(name)
+    }
+
+    void testUpdateOrderSearchIndex() {
+        Map serviceResult = dispatcher.runSync('updateOrderSearchIndex', [orderId: 'TEST_DEMO10090', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+
+        List<GenericValue> searchValues = from('OrderSearchValue').where(orderId: 'TEST_DEMO10090').queryList()
+        assert searchValues.find { it.searchField == 'productId' && it.searchValue == 'GZ-2644' }
+        assert searchValues.find { it.searchField == 'partyRole' && it.searchValue == 'TestDemoCustomer::BILL_TO_CUSTOMER' }
+
+        // updating again does not duplicate the values
+        serviceResult = dispatcher.runSync('updateOrderSearchIndex', [orderId: 'TEST_DEMO10090', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert from('OrderSearchValue').where(orderId: 'TEST_DEMO10090').queryCount() == searchValues.size()
+    }
+
+    void testFindOrdersWithIndex() {
+        Map serviceResult = dispatcher.runSync('rebuildOrderSearchIndex', [userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+
+        Map searchCtx = [productId: 'GZ-2644', partyId: 'TestDemoCustomer', roleTypeId: ['BILL_TO_CUSTOMER'], viewSize: 100,
+                         userLogin: userLogin]
+        Map joinResult = dispatcher.runSync('findOrders', searchCtx)
+        assert ServiceUtil.isSuccess(joinResult)
+
+        GenericValue indexEnabled = delegator.makeValue('SystemProperty', [systemResourceId: 'order',
+                systemPropertyId: 'order.search.index.enabled', systemPropertyValue: 'true'])
+        delegator.createOrStore(indexEnabled)
+        try {
+            Map indexResult = dispatcher.runSync('findOrders', searchCtx)
+            assert ServiceUtil.isSuccess(indexResult)
+            assert indexResult.orderList*.orderId == joinResult.orderList*.orderId
+            assert indexResult.orderListSize == joinResult.orderListSize
+            assert indexResult.orderList*.orderId.contains('TEST_DEMO10090')
+
+            // the page after the last order of the previous one
+            Map firstPage = dispatcher.runSync('findOrders', searchCtx + [viewSize: 1])
+            Map secondPage = dispatcher.runSync('findOrders', searchCtx + [viewSize: 1, viewIndex: 2,
+                    lastOrderDate: firstPage.lastOrderDate, lastOrderId: firstPage.lastOrderId])
+            assert ServiceUtil.isSuccess(secondPage)
+            if (joinResult.orderList.size() > 1) {
+                assert secondPage.orderList*.orderId == [joinResult.orderList[1].orderId]
+            }
+        } finally {
+            delegator.removeValue(indexEnabled)
+        }
+    }
+}
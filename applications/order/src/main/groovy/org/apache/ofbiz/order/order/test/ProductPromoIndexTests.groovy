@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.order.order.test
+
+import org.apache.ofbiz.order.shoppingcart.ShoppingCart
+import org.apache.ofbiz.order.shoppingcart.product.ProductPromoIndex
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class ProductPromoIndexTests extends OFBizTestCase {
+
+    ProductPromoIndexTests(String name) {
+        super(name)
+    }
+
+    private ProductPromoIndex getIndex(String productPromoId) {
+        return ProductPromoIndex.getInstance(from('ProductPromo').where(productPromoId: productPromoId).queryOne())
+    }
+
+    private ShoppingCart makeCart() {
+        ShoppingCart cart = new ShoppingCart(delegator, '9000', Locale.getDefault(), 'USD')
+        cart.setOrderType('SALES_ORDER')
+        cart.setUserLogin(userLogin, dispatcher)
+        return cart
+    }
+
+    private void addItem(ShoppingCart cart, String productId) {
+        cart.addOrIncreaseItem(productId, null, BigDecimal.ONE, null, null, null, null, null, null, null, 'DemoCatalog', null, null,
+                null, null, dispatcher)
+    }
+
+    // the demo promotions only have the old enumerations, without custom method
+    void testProductScopedEnumPromotions() {
+        // PPIP_PRODUCT_QUANT condition and PROMO_PROD_DISC action on the products of category 200
+        assert getIndex('9013').isProductScoped()
+        // PPIP_PRODUCT_TOTAL condition and PROMO_GWP action, the gift is not a product line of the condition
+        assert !getIndex('9018').isProductScoped()
+        // PPIP_ORDER_TOTAL condition
+        assert !getIndex('9000').isProductScoped()
+        assert getIndex('9000').hasOrderTotalCondition()
+        // PPIP_GEO_ID condition and PROMO_SHIP_CHARGE action
+        assert !getIndex('9022').isProductScoped()
+    }
+
+    void testTestRunReusedForSameProductLines() {
+        ProductPromoIndex index = getIndex('9013')
+        ShoppingCart cart = makeCart()
+        // WG-5569 is in category 201, a sub category of 200
+        addItem(cart, 'WG-5569')
+        ProductPromoIndex.CartState cartState = index.getCartState(cart, null, 1)
+        ProductPromoIndex.TestRun testRun = new ProductPromoIndex.TestRun(index, cartState, cart)
+
+        // a line of another product does not change the result of the promotion
+        addItem(cart, 'SV-1001')
+        assert testRun.isRunOn(index.getCartState(cart, null, 1))
+
+        // a changed quantity of a product of the promotion does
+        addItem(cart, 'WG-5569')
+        assert !testRun.isRunOn(index.getCartState(cart, null, 1))
+    }
+
+    void testNoTestRunForCartScopedPromotion() {
+        ShoppingCart cart = makeCart()
+        addItem(cart, 'WG-5569')
+        assert getIndex('9000').getCartState(cart, null, 1) == null
+    }
+
+}
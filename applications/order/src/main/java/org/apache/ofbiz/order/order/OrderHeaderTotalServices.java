@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.order;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+/**
+ * Maintains the OrderHeaderTotal records, the totals of an order as calculated by {@link OrderReadHelper#getOrderTotals()},
+ * so that the order lists can show them without reading the items, adjustments and returns of each order.
+ * <p>When <code>order.totals.rollup.enabled</code> is <code>true</code> in order.properties, the entity ECAs on the
+ * OrderItem, OrderAdjustment, ReturnItem, OrderItemShipGrpInvRes and SurveyResponse records queue the order, and its totals are calculated once after the
+ * transaction is committed, whatever the number of records changed.</p>
+ */
+public class OrderHeaderTotalServices {
+
+    private static final String MODULE = OrderHeaderTotalServices.class.getName();
+
+    /**
+     * Is the OrderHeaderTotal records maintained
+     * @param delegator the delegator
+     * @return <code>true</code> if the order totals are maintained from the ECAs
+     */
+    public static boolean isEnabled(Delegator delegator) {
+        return "true".equals(EntityUtilProperties.getPropertyValue("order", "order.totals.rollup.enabled", "false", delegator));
+    }
+
+    /**
+     * Queues the update of the totals of an order after the current transaction is committed, triggered via ECA
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> queueOrderHeaderTotalUpdate(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String orderId = (String) context.get("orderId");
+        if (UtilValidate.isEmpty(orderId) || !isEnabled(dctx.getDelegator())) {
+            return ServiceUtil.returnSuccess();
+        }
+        OrderUpdateQueue.queue(dctx.getDispatcher(), "updateOrderHeaderTotal", orderId);
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Calculates and stores the totals of an order
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> updateOrderHeaderTotal(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String orderId = (String) context.get("orderId");
+        try {
+            updateTotals(delegator, orderId);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error updating the totals of order " + orderId, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    private static void updateTotals(Delegator delegator, String orderId) throws GenericEntityException {
+        GenericValue orderHeader = EntityQuery.use(delegator).from("OrderHeader").where("orderId", orderId).queryOne();
+        if (orderHeader == null) {
+            delegator.removeByAnd("OrderHeaderTotal", UtilMisc.toMap("orderId", orderId));
+            return;
+        }
+        OrderReadHelper orh = new OrderReadHelper(orderHeader);
+        GenericValue orderHeaderTotal = delegator.makeValue("OrderHeaderTotal", UtilMisc.toMap("orderId", orderId));
+        orderHeaderTotal.setNonPKFields(orh.getOrderTotals());
+        orderHeaderTotal.set("surveyCount", (long) orh.hasSurvey());
+        delegator.createOrStore(orderHeaderTotal);
+    }
+
+    /**
+     * Calculates and stores the totals of all the orders, to run once before enabling <code>order.totals.rollup.enabled</code>
+     * and after changes made without entity ECA.
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution, with the number of orders updated
+     */
+    public static Map<String, Object> rebuildOrderHeaderTotals(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        long startTime = System.currentTimeMillis();
+        List<String> orderIds = new LinkedList<>();
+        try {
+            TransactionUtil.doNewTransaction(() -> {
+                try (EntityListIterator eli = EntityQuery.use(delegator).select("orderId").from("OrderHeader").queryIterator()) {
+                    GenericValue orderHeader;
+                    while ((orderHeader = eli.next()) != null) {
+                        orderIds.add(orderHeader.getString("orderId"));
+                    }
+                }
+                return null;
+            }, "Error reading the orders to update their totals", 7200, true);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        int orderCount = 0;
+        for (String orderId : orderIds) {
+            try {
+                TransactionUtil.doNewTransaction(() -> {
+                    updateTotals(delegator, orderId);
+                    return null;
+                }, "Error updating the totals of order " + orderId, 0, true);
+                orderCount++;
+            } catch (GenericEntityException e) {
+                Debug.logError(e, MODULE);
+            }
+        }
+        Debug.logInfo("Updated the totals of " + orderCount + " orders in " + (System.currentTimeMillis() - startTime) / 1000.0 + "s", MODULE);
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("orderCount", orderCount);
+        return result;
+    }
+}
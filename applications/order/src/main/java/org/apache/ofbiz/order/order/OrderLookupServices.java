@@ -20,6 +20,7 @@
 package org.apache.ofbiz.order.order;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -46,7 +47,9 @@ import org.apache.ofbiz.entity.condition.EntityExpr;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.model.DynamicViewEntity;
 import org.apache.ofbiz.entity.model.ModelKeyMap;
+import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
 import org.apache.ofbiz.security.Security;
 import org.apache.ofbiz.service.DispatchContext;
 import org.apache.ofbiz.service.GenericServiceException;
@@ -76,6 +79,8 @@ public class OrderLookupServices {
         if (showAll == null) {
             showAll = "N";
         }
+        // search the values of the related entities from the order search index instead of joining them
+        boolean useIndex = OrderSearchServices.canSearch(delegator, context);
 
         // list of fields to select (initial list)
         Set<String> fieldsToSelect = new LinkedHashSet<>();
@@ -280,19 +285,30 @@ public class OrderLookupServices {
         if (UtilValidate.isNotEmpty(shipmentMethod)) {
             String carrierPartyId = shipmentMethod.substring(0, shipmentMethod.indexOf('@'));
             String shippingMethodTypeId = shipmentMethod.substring(shipmentMethod.indexOf('@') + 1);
-            dve.addMemberEntity("OISG", "OrderItemShipGroup");
-            dve.addAlias("OISG", "shipmentMethodTypeId");
-            dve.addAlias("OISG", "carrierPartyId");
-            dve.addViewLink("OH", "OISG", Boolean.FALSE, UtilMisc.toList(new ModelKeyMap("orderId", "orderId")));
+            if (!useIndex) {
+                dve.addMemberEntity("OISG", "OrderItemShipGroup");
+                dve.addAlias("OISG", "shipmentMethodTypeId");
+                dve.addAlias("OISG", "carrierPartyId");
+                dve.addViewLink("OH", "OISG", Boolean.FALSE, UtilMisc.toList(new ModelKeyMap("orderId", "orderId")));
+            }
 
             if (UtilValidate.isNotEmpty(carrierPartyId)) {
                 paramList.add("carrierPartyId=" + carrierPartyId);
-                conditions.add(makeExpr("carrierPartyId", carrierPartyId));
             }
-
             if (UtilValidate.isNotEmpty(shippingMethodTypeId)) {
                 paramList.add("shippingMethodTypeId=" + shippingMethodTypeId);
-                conditions.add(makeExpr("shipmentMethodTypeId", shippingMethodTypeId));
+            }
+            if (useIndex && UtilValidate.isNotEmpty(carrierPartyId) && UtilValidate.isNotEmpty(shippingMethodTypeId)) {
+                // both must be found in the same ship group
+                conditions.add(OrderSearchServices.makeCondition(delegator, "shipmentMethod", EntityCondition.makeCondition("searchValue",
+                        OrderSearchServices.makeShipmentMethodValue(carrierPartyId, shippingMethodTypeId))));
+            } else {
+                if (UtilValidate.isNotEmpty(carrierPartyId)) {
+                    conditions.add(makeSearchExpr(delegator, useIndex, "carrierPartyId", carrierPartyId));
+                }
+                if (UtilValidate.isNotEmpty(shippingMethodTypeId)) {
+                    conditions.add(makeSearchExpr(delegator, useIndex, "shipmentMethodTypeId", shippingMethodTypeId));
+                }
             }
         }
         // PaymentGatewayResponse
@@ -319,20 +335,41 @@ public class OrderLookupServices {
         }
 
         // add the role data to the view
-        if (roleTypeList != null || partyId != null) {
+        if (useIndex) {
+            if (UtilValidate.isNotEmpty(partyId) && UtilValidate.isNotEmpty(roleTypeList)) {
+                // the party must have one of the roles in the order
+                paramList.add("partyId=" + partyId);
+                List<String> partyRoles = new LinkedList<>();
+                for (String roleTypeId : roleTypeList) {
+                    paramList.add("roleTypeId=" + roleTypeId);
+                    partyRoles.add(OrderSearchServices.makePartyRoleValue(partyId, roleTypeId));
+                }
+                conditions.add(OrderSearchServices.makeCondition(delegator, "partyRole",
+                        EntityCondition.makeCondition("searchValue", EntityOperator.IN, partyRoles)));
+            } else if (UtilValidate.isNotEmpty(partyId)) {
+                paramList.add("partyId=" + partyId);
+                conditions.add(makeSearchExpr(delegator, true, "partyId", partyId));
+            } else if (UtilValidate.isNotEmpty(roleTypeList)) {
+                for (String roleTypeId : roleTypeList) {
+                    paramList.add("roleTypeId=" + roleTypeId);
+                }
+                conditions.add(OrderSearchServices.makeCondition(delegator, "roleTypeId",
+                        EntityCondition.makeCondition("searchValue", EntityOperator.IN, roleTypeList)));
+            }
+        } else if (roleTypeList != null || partyId != null) {
             dve.addMemberEntity("OT", "OrderRole");
             dve.addAlias("OT", "partyId");
             dve.addAlias("OT", "roleTypeId");
             dve.addViewLink("OH", "OT", Boolean.FALSE, UtilMisc.toList(new ModelKeyMap("orderId", "orderId")));
         }
 
-        if (UtilValidate.isNotEmpty(partyId)) {
+        if (!useIndex && UtilValidate.isNotEmpty(partyId)) {
             paramList.add("partyId=" + partyId);
             fieldsToSelect.add("partyId");
             conditions.add(makeExpr("partyId", partyId));
         }
 
-        if (roleTypeList != null) {
+        if (!useIndex && roleTypeList != null) {
             fieldsToSelect.add("roleTypeId");
             List<EntityExpr> orExprs = new LinkedList<>();
             for (String roleTypeId : roleTypeList) {
@@ -353,8 +390,8 @@ public class OrderLookupServices {
         String goodIdentificationIdValue = (String) context.get("goodIdentificationIdValue");
         boolean hasGoodIdentification = UtilValidate.isNotEmpty(goodIdentificationTypeId) && UtilValidate.isNotEmpty(goodIdentificationIdValue);
 
-        if (correspondingPoId != null || subscriptionId != null || productId != null || budgetId != null || quoteId != null
-                || hasGoodIdentification) {
+        if (!useIndex && (correspondingPoId != null || subscriptionId != null || productId != null || budgetId != null || quoteId != null
+                || hasGoodIdentification)) {
             dve.addMemberEntity("OI", "OrderItem");
             dve.addAlias("OI", "correspondingPoId");
             dve.addAlias("OI", "subscriptionId");
@@ -377,18 +414,18 @@ public class OrderLookupServices {
 
         if (UtilValidate.isNotEmpty(correspondingPoId)) {
             paramList.add("correspondingPoId=" + correspondingPoId);
-            conditions.add(makeExpr("correspondingPoId", correspondingPoId));
+            conditions.add(makeSearchExpr(delegator, useIndex, "correspondingPoId", correspondingPoId));
         }
 
         if (UtilValidate.isNotEmpty(subscriptionId)) {
             paramList.add("subscriptionId=" + subscriptionId);
-            conditions.add(makeExpr("subscriptionId", subscriptionId));
+            conditions.add(makeSearchExpr(delegator, useIndex, "subscriptionId", subscriptionId));
         }
 
         if (UtilValidate.isNotEmpty(productId)) {
             paramList.add("productId=" + productId);
             if (productId.startsWith("%") || productId.startsWith("*") || productId.endsWith("%") || productId.endsWith("*")) {
-                conditions.add(makeExpr("productId", productId));
+                conditions.add(makeSearchExpr(delegator, useIndex, "productId", productId));
             } else {
                 GenericValue product = null;
                 try {
@@ -399,8 +436,8 @@ public class OrderLookupServices {
                 if (product != null) {
                     String isVirtual = product.getString("isVirtual");
                     if (isVirtual != null && "Y".equals(isVirtual)) {
-                        List<EntityExpr> orExprs = new LinkedList<>();
-                        orExprs.add(EntityCondition.makeCondition("productId", EntityOperator.EQUALS, productId));
+                        List<String> productIds = new LinkedList<>();
+                        productIds.add(productId);
 
                         Map<String, Object> varLookup = null;
                         List<GenericValue> variants = null;
@@ -416,12 +453,12 @@ public class OrderLookupServices {
                         }
                         if (variants != null) {
                             for (GenericValue v : variants) {
-                                orExprs.add(EntityCondition.makeCondition("productId", EntityOperator.EQUALS, v.getString("productIdTo")));
+                                productIds.add(v.getString("productIdTo"));
                             }
                         }
-                        conditions.add(EntityCondition.makeCondition(orExprs, EntityOperator.OR));
+                        conditions.add(makeSearchCondition(delegator, useIndex, "productId", EntityOperator.IN, productIds));
                     } else {
-                        conditions.add(EntityCondition.makeCondition("productId", EntityOperator.EQUALS, productId));
+                        conditions.add(makeSearchCondition(delegator, useIndex, "productId", EntityOperator.EQUALS, productId));
                     }
                 } else {
                     String failMsg = UtilProperties.getMessage("OrderErrorUiLabels", "OrderFindOrderProductInvalid",
@@ -433,12 +470,12 @@ public class OrderLookupServices {
 
         if (UtilValidate.isNotEmpty(budgetId)) {
             paramList.add("budgetId=" + budgetId);
-            conditions.add(makeExpr("budgetId", budgetId));
+            conditions.add(makeSearchExpr(delegator, useIndex, "budgetId", budgetId));
         }
 
         if (UtilValidate.isNotEmpty(quoteId)) {
             paramList.add("quoteId=" + quoteId);
-            conditions.add(makeExpr("quoteId", quoteId));
+            conditions.add(makeSearchExpr(delegator, useIndex, "quoteId", quoteId));
         }
 
         // payment preference fields
@@ -450,9 +487,9 @@ public class OrderLookupServices {
 
         if (UtilValidate.isNotEmpty(paymentStatusId)) {
             paramList.add("paymentStatusId=" + paymentStatusId);
-            conditions.add(makeExpr("paymentStatusId", paymentStatusId));
+            conditions.add(makeSearchExpr(delegator, useIndex, "paymentStatusId", paymentStatusId));
         }
-        if (finAccountId != null || cardNumber != null || accountNumber != null || paymentStatusId != null) {
+        if (!useIndex && (finAccountId != null || cardNumber != null || accountNumber != null || paymentStatusId != null)) {
             dve.addMemberEntity("OP", "OrderPaymentPreference");
             dve.addAlias("OP", "finAccountId");
             dve.addAlias("OP", "paymentMethodId");
@@ -469,7 +506,7 @@ public class OrderLookupServices {
         // search by fin account ID
         if (UtilValidate.isNotEmpty(finAccountId)) {
             paramList.add("finAccountId=" + finAccountId);
-            conditions.add(makeExpr("finAccountId", finAccountId));
+            conditions.add(makeSearchExpr(delegator, useIndex, "finAccountId", finAccountId));
         }
 
         // search by card number
@@ -498,7 +535,7 @@ public class OrderLookupServices {
         String serialNumber = (String) context.get("serialNumber");
         String shipmentId = (String) context.get("shipmentId");
 
-        if (shipmentId != null || inventoryItemId != null || softIdentifier != null || serialNumber != null) {
+        if (!useIndex && (shipmentId != null || inventoryItemId != null || softIdentifier != null || serialNumber != null)) {
             dve.addMemberEntity("II", "ItemIssuance");
             dve.addAlias("II", "shipmentId");
             dve.addAlias("II", "inventoryItemId");
@@ -514,7 +551,7 @@ public class OrderLookupServices {
 
         if (UtilValidate.isNotEmpty(inventoryItemId)) {
             paramList.add("inventoryItemId=" + inventoryItemId);
-            conditions.add(makeExpr("inventoryItemId", inventoryItemId));
+            conditions.add(makeSearchExpr(delegator, useIndex, "inventoryItemId", inventoryItemId));
         }
 
         if (UtilValidate.isNotEmpty(softIdentifier)) {
@@ -529,7 +566,7 @@ public class OrderLookupServices {
 
         if (UtilValidate.isNotEmpty(shipmentId)) {
             paramList.add("shipmentId=" + shipmentId);
-            conditions.add(makeExpr("shipmentId", shipmentId));
+            conditions.add(makeSearchExpr(delegator, useIndex, "shipmentId", shipmentId));
         }
 
         // back order checking
@@ -591,12 +628,60 @@ public class OrderLookupServices {
 
         List<GenericValue> orderList = new LinkedList<>();
         int orderCount = 0;
+        boolean orderCountApproximate = false;
+        Timestamp lastOrderDate = (Timestamp) context.get("lastOrderDate");
+        String lastOrderId = (String) context.get("lastOrderId");
 
         // get the index for the partial list
         int lowIndex = 0;
         int highIndex = 0;
 
-        if (cond != null) {
+        if (cond != null && useIndex) {
+            // the orders are selected without join, so without duplicate to remove
+            int offset = (viewIndex - 1) * viewSize;
+            EntityCondition pageCond = cond;
+            if (lastOrderDate != null && UtilValidate.isNotEmpty(lastOrderId)) {
+                // start the page after the last order of the previous page instead of skipping the orders before it
+                pageCond = EntityCondition.makeCondition(cond, EntityOperator.AND, EntityCondition.makeCondition(
+                        EntityCondition.makeCondition("orderDate", EntityOperator.LESS_THAN, lastOrderDate),
+                        EntityOperator.OR,
+                        EntityCondition.makeCondition(EntityCondition.makeCondition("orderDate", lastOrderDate),
+                                EntityOperator.AND, EntityCondition.makeCondition("orderId", EntityOperator.LESS_THAN, lastOrderId))));
+                offset = 0;
+            }
+            int countLimit = EntityUtilProperties.getPropertyAsInteger("order", "order.search.count.limit", 10000);
+            try {
+                try (EntityListIterator eli = EntityQuery.use(delegator)
+                        .select(fieldsToSelect)
+                        .from("OrderHeader")
+                        .where(pageCond)
+                        .orderBy(orderBy)
+                        .maxRows(offset + viewSize)
+                        .queryIterator()) {
+                    orderList = eli.getPartialList(offset + 1, viewSize);
+                }
+                // count the orders up to the limit only, the pages after it are still reached from the last order
+                try (EntityListIterator eli = EntityQuery.use(delegator)
+                        .select("orderId")
+                        .from("OrderHeader")
+                        .where(cond)
+                        .maxRows(countLimit)
+                        .queryIterator()) {
+                    while (eli.next() != null) {
+                        orderCount++;
+                    }
+                }
+            } catch (GenericEntityException e) {
+                Debug.logError(e.getMessage(), MODULE);
+                return ServiceUtil.returnError(e.getMessage());
+            }
+            lowIndex = (viewIndex - 1) * viewSize + 1;
+            highIndex = lowIndex + orderList.size() - 1;
+            orderCountApproximate = orderCount >= countLimit;
+            if (orderCount < highIndex) {
+                orderCount = highIndex;
+            }
+        } else if (cond != null) {
             PagedList<GenericValue> pagedOrderList = null;
             try {
                 // do the lookup
@@ -637,6 +722,12 @@ public class OrderLookupServices {
         result.put("paramList", (paramString != null ? paramString : ""));
         result.put("orderList", orderList);
         result.put("orderListSize", orderCount);
+        result.put("orderListSizeApproximate", orderCountApproximate);
+        if (!orderList.isEmpty()) {
+            GenericValue lastOrder = orderList.get(orderList.size() - 1);
+            result.put("lastOrderDate", lastOrder.getTimestamp("orderDate"));
+            result.put("lastOrderId", lastOrder.getString("orderId"));
+        }
 
         return result;
     }
@@ -716,6 +807,21 @@ public class OrderLookupServices {
         result.put("filterPartiallyReceivedPOsList", filterPartiallyReceivedPOs);
     }
 
+    private static EntityCondition makeSearchExpr(Delegator delegator, boolean useIndex, String fieldName, String value) {
+        if (useIndex) {
+            return OrderSearchServices.makeCondition(delegator, fieldName, makeExpr("searchValue", value));
+        }
+        return makeExpr(fieldName, value);
+    }
+
+    private static EntityCondition makeSearchCondition(Delegator delegator, boolean useIndex, String fieldName, EntityComparisonOperator<?, ?> op,
+            Object value) {
+        if (useIndex) {
+            return OrderSearchServices.makeCondition(delegator, fieldName, EntityCondition.makeCondition("searchValue", op, value));
+        }
+        return EntityCondition.makeCondition(fieldName, op, value);
+    }
+
     protected static EntityExpr makeExpr(String fieldName, String value) {
         return makeExpr(fieldName, value, false);
     }
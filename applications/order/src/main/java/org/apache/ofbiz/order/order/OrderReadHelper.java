@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilDateTime;
@@ -87,6 +88,8 @@ public class OrderReadHelper {
     private Map<String, GenericValue> orderAttributeMap = null;
     private List<GenericValue> orderItemAttributes = null;
     private BigDecimal totalPrice = null;
+    // the totals calculated from the order items, adjustments and return items read by this helper, by total name
+    private Map<String, BigDecimal> totals = new HashMap<>();
     protected OrderReadHelper() { }
 
     /**
@@ -1000,7 +1003,8 @@ public class OrderReadHelper {
      * @return the shipping total
      */
     public BigDecimal getShippingTotal() {
-        return OrderReadHelper.calcOrderAdjustments(getOrderHeaderAdjustments(), getOrderItemsSubTotal(), false, false, true);
+        return getTotal("shippingTotal", () -> OrderReadHelper.calcOrderAdjustments(getOrderHeaderAdjustments(), getOrderItemsSubTotal(),
+                false, false, true));
     }
 
     /**
@@ -1008,7 +1012,8 @@ public class OrderReadHelper {
      * @return the header tax total
      */
     public BigDecimal getHeaderTaxTotal() {
-        return OrderReadHelper.calcOrderAdjustments(getOrderHeaderAdjustments(), getOrderItemsSubTotal(), false, true, false);
+        return getTotal("headerTaxTotal", () -> OrderReadHelper.calcOrderAdjustments(getOrderHeaderAdjustments(), getOrderItemsSubTotal(),
+                false, true, false));
     }
 
     /**
@@ -1016,7 +1021,7 @@ public class OrderReadHelper {
      * @return the tax total
      */
     public BigDecimal getTaxTotal() {
-        return OrderReadHelper.calcOrderAdjustments(getAdjustments(), getOrderItemsSubTotal(), false, true, false);
+        return getTotal("taxTotal", () -> OrderReadHelper.calcOrderAdjustments(getAdjustments(), getOrderItemsSubTotal(), false, true, false));
     }
 
     /**
@@ -1179,6 +1184,10 @@ public class OrderReadHelper {
      * @return the shippable total
      */
     public BigDecimal getShippableTotal(String shipGroupSeqId) {
+        return getTotal("shippableTotal::" + shipGroupSeqId, () -> calcShippableTotal(shipGroupSeqId));
+    }
+
+    private BigDecimal calcShippableTotal(String shipGroupSeqId) {
         BigDecimal shippableTotal = ZERO;
         List<GenericValue> validItems = getValidOrderItems(shipGroupSeqId);
         if (validItems != null) {
@@ -1596,6 +1605,36 @@ public class OrderReadHelper {
         return totalPrice;
     }
 
+    /**
+     * Gets the main totals of the order, calculated once by this helper.
+     * @return the items sub total, adjustments, shipping, tax and grand totals, the items, backordered and returned quantities and
+     *         the returned total
+     */
+    public Map<String, BigDecimal> getOrderTotals() {
+        Map<String, BigDecimal> orderTotals = new HashMap<>();
+        orderTotals.put("itemsSubTotal", getOrderItemsSubTotal());
+        orderTotals.put("adjustmentsTotal", getOrderAdjustmentsTotal());
+        orderTotals.put("shippingTotal", getShippingTotal());
+        orderTotals.put("taxTotal", getTaxTotal());
+        orderTotals.put("grandTotal", getOrderGrandTotal());
+        orderTotals.put("itemsQuantity", getTotalOrderItemsQuantity());
+        orderTotals.put("backorderQuantity", getOrderBackorderQuantity());
+        orderTotals.put("returnedQuantity", getOrderReturnedQuantity());
+        orderTotals.put("returnedTotal", getOrderReturnedTotal());
+        return orderTotals;
+    }
+
+    private BigDecimal getTotal(String name, Supplier<BigDecimal> calculation) {
+        BigDecimal total = totals.get(name);
+        if (total == null) {
+            total = calculation.get();
+            if (total != null) {
+                totals.put(name, total);
+            }
+        }
+        return total;
+    }
+
     /**
      * Gets the amount open on the order that is not covered by the relevant OrderPaymentPreferences.
      * This works by adding up the amount allocated to each unprocessed OrderPaymentPreference and the
@@ -1688,7 +1727,7 @@ public class OrderReadHelper {
      * @return the order adjustments total
      */
     public BigDecimal getOrderAdjustmentsTotal() {
-        return getOrderAdjustmentsTotal(getValidOrderItems(), getAdjustments());
+        return getTotal("orderAdjustmentsTotal", () -> getOrderAdjustmentsTotal(getValidOrderItems(), getAdjustments()));
     }
 
     /**
@@ -2178,6 +2217,10 @@ public class OrderReadHelper {
      * @return the order returned quantity
      */
     public BigDecimal getOrderReturnedQuantity() {
+        return getTotal("orderReturnedQuantity", this::calcOrderReturnedQuantity);
+    }
+
+    private BigDecimal calcOrderReturnedQuantity() {
         List<GenericValue> returnedItemsBase = getOrderReturnItems();
         List<GenericValue> returnedItems = new ArrayList<>(returnedItemsBase.size());
 
@@ -2214,6 +2257,10 @@ public class OrderReadHelper {
      * @return the order returned total by type bd
      */
     public BigDecimal getOrderReturnedTotalByTypeBd(String returnTypeId, boolean includeAll) {
+        return getTotal("orderReturnedTotal::" + returnTypeId + "::" + includeAll, () -> calcOrderReturnedTotalByType(returnTypeId, includeAll));
+    }
+
+    private BigDecimal calcOrderReturnedTotalByType(String returnTypeId, boolean includeAll) {
         List<GenericValue> returnedItemsBase = getOrderReturnItems();
         if (returnTypeId != null) {
             returnedItemsBase = EntityUtil.filterByAnd(returnedItemsBase, UtilMisc.toMap("returnTypeId", returnTypeId));
@@ -2294,6 +2341,10 @@ public class OrderReadHelper {
      * @return the order non returned tax and shipping
      */
     public BigDecimal getOrderNonReturnedTaxAndShipping() {
+        return getTotal("orderNonReturnedTaxAndShipping", this::calcOrderNonReturnedTaxAndShipping);
+    }
+
+    private BigDecimal calcOrderNonReturnedTaxAndShipping() {
         // first make a Map of orderItemSeqId key, returnQuantity value
         List<GenericValue> returnedItemsBase = getOrderReturnItems();
         List<GenericValue> returnedItems = new ArrayList<>(returnedItemsBase.size());
@@ -2629,6 +2680,10 @@ public class OrderReadHelper {
      * @return the total order items quantity
      */
     public BigDecimal getTotalOrderItemsQuantity() {
+        return getTotal("totalOrderItemsQuantity", this::calcTotalOrderItemsQuantity);
+    }
+
+    private BigDecimal calcTotalOrderItemsQuantity() {
         List<GenericValue> orderItems = getValidOrderItems();
         BigDecimal totalItems = ZERO;
 
@@ -2661,7 +2716,7 @@ public class OrderReadHelper {
      * @return the order items sub total
      */
     public BigDecimal getOrderItemsSubTotal() {
-        return getOrderItemsSubTotal(getValidOrderItems(), getAdjustments());
+        return getTotal("orderItemsSubTotal", () -> getOrderItemsSubTotal(getValidOrderItems(), getAdjustments()));
     }
 
     /**
@@ -2678,7 +2733,7 @@ public class OrderReadHelper {
      * @return the order items total
      */
     public BigDecimal getOrderItemsTotal() {
-        return getOrderItemsTotal(getValidOrderItems(), getAdjustments());
+        return getTotal("orderItemsTotal", () -> getOrderItemsTotal(getValidOrderItems(), getAdjustments()));
     }
 
     /**
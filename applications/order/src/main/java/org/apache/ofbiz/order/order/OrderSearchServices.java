@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.order;
+
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityConditionSubSelect;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+/**
+ * Maintains and queries the OrderSearchValue records, the values of the order roles, items, ship groups, payment
+ * preferences and item issuances an order can be searched by.
+ * <p>With the index {@link OrderLookupServices#findOrders} selects the OrderHeader records directly, each of these filters
+ * being a sub-select on the index, instead of joining all the related entities and removing the duplicated orders.</p>
+ * <p>When <code>order.search.index.enabled</code> is <code>true</code> in order.properties, the entity ECAs on the indexed
+ * entities queue the order, and its values are indexed by a job persisted in the transaction, which runs once the
+ * transaction is committed. The orders changed while the index is disabled are not indexed: the
+ * {@link #rebuildOrderSearchIndex} service must be run once before enabling it.</p>
+ */
+public class OrderSearchServices {
+
+    private static final String MODULE = OrderSearchServices.class.getName();
+
+    /** The search fields whose values must be found in the same record, only one of them can be searched with the index. */
+    private static final List<List<String>> RECORD_FIELDS = UtilMisc.toList(
+            UtilMisc.toList("correspondingPoId", "subscriptionId", "productId", "budgetId", "quoteId"),
+            UtilMisc.toList("finAccountId", "paymentStatusId"),
+            UtilMisc.toList("shipmentId", "inventoryItemId"));
+
+    /** The findOrders parameters joining entities that are not indexed. */
+    private static final List<String> NOT_INDEXED_FIELDS = UtilMisc.toList("gatewayAvsResult", "gatewayScoreResult", "cardNumber",
+            "accountNumber", "softIdentifier", "serialNumber", "hasBackOrders", "countryGeoId", "goodIdentificationTypeId");
+
+    /**
+     * Is the OrderSearchValue records maintained and used by findOrders
+     * @param delegator the delegator
+     * @return <code>true</code> if the order search index is maintained from the ECAs
+     */
+    public static boolean isEnabled(Delegator delegator) {
+        return "true".equals(EntityUtilProperties.getPropertyValue("order", "order.search.index.enabled", "false", delegator));
+    }
+
+    /**
+     * Can the orders be searched with the index
+     * @param delegator the delegator
+     * @param context the findOrders context
+     * @return <code>true</code> if the index is enabled and has all the values searched
+     */
+    public static boolean canSearch(Delegator delegator, Map<String, ? extends Object> context) {
+        if (!isEnabled(delegator)) {
+            return false;
+        }
+        for (String fieldName : NOT_INDEXED_FIELDS) {
+            if (UtilValidate.isNotEmpty(context.get(fieldName))) {
+                return false;
+            }
+        }
+        for (List<String> recordFields : RECORD_FIELDS) {
+            int searched = 0;
+            for (String fieldName : recordFields) {
+                if (UtilValidate.isNotEmpty(context.get(fieldName))) {
+                    searched++;
+                }
+            }
+            if (searched > 1) {
+                return false;
+            }
+        }
+        String partyId = (String) context.get("partyId");
+        List<String> roleTypeList = UtilGenerics.cast(context.get("roleTypeId"));
+        // the party and role pairs are indexed as they are, without wildcard
+        return UtilValidate.isEmpty(partyId) || UtilValidate.isEmpty(roleTypeList) || !(partyId.contains("*") || partyId.contains("%"));
+    }
+
+    /**
+     * Makes the condition selecting the orders having an indexed value
+     * @param delegator the delegator
+     * @param searchField the indexed field
+     * @param valueCondition the condition on the searchValue field
+     * @return the condition on the orderId field
+     */
+    public static EntityCondition makeCondition(Delegator delegator, String searchField, EntityCondition valueCondition) {
+        EntityCondition searchCondition = EntityCondition.makeCondition(EntityCondition.makeCondition("searchField", searchField),
+                EntityOperator.AND, valueCondition);
+        return EntityCondition.makeCondition("orderId", EntityOperator.EQUALS,
+                new EntityConditionSubSelect("OrderSearchValue", "orderId", searchCondition, false, delegator));
+    }
+
+    /**
+     * Makes the value indexed for a party in a role
+     * @param partyId the party
+     * @param roleTypeId the role
+     * @return the partyRole search value
+     */
+    public static String makePartyRoleValue(String partyId, String roleTypeId) {
+        return partyId + "::" + roleTypeId;
+    }
+
+    /**
+     * Makes the value indexed for a shipment method
+     * @param carrierPartyId the carrier
+     * @param shipmentMethodTypeId the shipment method type
+     * @return the shipmentMethod search value, in the format of the findOrders shipmentMethod parameter
+     */
+    public static String makeShipmentMethodValue(String carrierPartyId, String shipmentMethodTypeId) {
+        return carrierPartyId + "@" + shipmentMethodTypeId;
+    }
+
+    /**
+     * Queues the indexing of an order after the current transaction is committed, triggered via ECA
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> queueOrderSearchIndexUpdate(DispatchContext dctx, Map<String, ? extends Object> context) {
+        String orderId = (String) context.get("orderId");
+        if (UtilValidate.isEmpty(orderId) || !isEnabled(dctx.getDelegator())) {
+            return ServiceUtil.returnSuccess();
+        }
+        OrderUpdateQueue.queue(dctx.getDispatcher(), "updateOrderSearchIndex", orderId);
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Indexes the search values of an order
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> updateOrderSearchIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String orderId = (String) context.get("orderId");
+        try {
+            updateIndex(delegator, orderId);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error indexing the search values of order " + orderId, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    private static void updateIndex(Delegator delegator, String orderId) throws GenericEntityException {
+        Set<GenericPK> searchValues = getSearchValues(delegator, orderId);
+        List<GenericPK> obsoleteValues = new LinkedList<>();
+        for (GenericValue indexedValue : EntityQuery.use(delegator).from("OrderSearchValue").where("orderId", orderId).queryList()) {
+            GenericPK indexedPK = indexedValue.getPrimaryKey();
+            if (!searchValues.remove(indexedPK)) {
+                obsoleteValues.add(indexedPK);
+            }
+        }
+        delegator.removeAll(obsoleteValues);
+        for (GenericPK searchValue : searchValues) {
+            delegator.create(searchValue);
+        }
+    }
+
+    private static Set<GenericPK> getSearchValues(Delegator delegator, String orderId) throws GenericEntityException {
+        Set<GenericPK> searchValues = new LinkedHashSet<>();
+        if (EntityQuery.use(delegator).from("OrderHeader").where("orderId", orderId).queryCount() == 0) {
+            return searchValues;
+        }
+        for (GenericValue orderRole : EntityQuery.use(delegator).from("OrderRole").where("orderId", orderId).queryList()) {
+            String partyId = orderRole.getString("partyId");
+            String roleTypeId = orderRole.getString("roleTypeId");
+            addSearchValue(delegator, searchValues, orderId, "partyId", partyId);
+            addSearchValue(delegator, searchValues, orderId, "roleTypeId", roleTypeId);
+            addSearchValue(delegator, searchValues, orderId, "partyRole", makePartyRoleValue(partyId, roleTypeId));
+        }
+        for (GenericValue orderItem : EntityQuery.use(delegator).from("OrderItem").where("orderId", orderId).queryList()) {
+            for (String fieldName : RECORD_FIELDS.get(0)) {
+                addSearchValue(delegator, searchValues, orderId, fieldName, orderItem.getString(fieldName));
+            }
+        }
+        for (GenericValue shipGroup : EntityQuery.use(delegator).from("OrderItemShipGroup").where("orderId", orderId).queryList()) {
+            String carrierPartyId = shipGroup.getString("carrierPartyId");
+            String shipmentMethodTypeId = shipGroup.getString("shipmentMethodTypeId");
+            addSearchValue(delegator, searchValues, orderId, "carrierPartyId", carrierPartyId);
+            addSearchValue(delegator, searchValues, orderId, "shipmentMethodTypeId", shipmentMethodTypeId);
+            if (carrierPartyId != null && shipmentMethodTypeId != null) {
+                addSearchValue(delegator, searchValues, orderId, "shipmentMethod", makeShipmentMethodValue(carrierPartyId, shipmentMethodTypeId));
+            }
+        }
+        for (GenericValue paymentPref : EntityQuery.use(delegator).from("OrderPaymentPreference").where("orderId", orderId).queryList()) {
+            addSearchValue(delegator, searchValues, orderId, "finAccountId", paymentPref.getString("finAccountId"));
+            addSearchValue(delegator, searchValues, orderId, "paymentStatusId", paymentPref.getString("statusId"));
+        }
+        for (GenericValue itemIssuance : EntityQuery.use(delegator).from("ItemIssuance").where("orderId", orderId).queryList()) {
+            addSearchValue(delegator, searchValues, orderId, "shipmentId", itemIssuance.getString("shipmentId"));
+            addSearchValue(delegator, searchValues, orderId, "inventoryItemId", itemIssuance.getString("inventoryItemId"));
+        }
+        return searchValues;
+    }
+
+    private static void addSearchValue(Delegator delegator, Set<GenericPK> searchValues, String orderId, String searchField, String value) {
+        if (UtilValidate.isNotEmpty(value)) {
+            searchValues.add(delegator.makePK("OrderSearchValue", UtilMisc.toMap("orderId", orderId, "searchField", searchField,
+                    "searchValue", value)));
+        }
+    }
+
+    /**
+     * Indexes the search values of all the orders, to run once before enabling <code>order.search.index.enabled</code>
+     * and after changes made without entity ECA.
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution, with the number of orders indexed
+     */
+    public static Map<String, Object> rebuildOrderSearchIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        long startTime = System.currentTimeMillis();
+        List<String> orderIds = new LinkedList<>();
+        try {
+            TransactionUtil.doNewTransaction(() -> {
+                try (EntityListIterator eli = EntityQuery.use(delegator).select("orderId").from("OrderHeader").queryIterator()) {
+                    GenericValue orderHeader;
+                    while ((orderHeader = eli.next()) != null) {
+                        orderIds.add(orderHeader.getString("orderId"));
+                    }
+                }
+                return null;
+            }, "Error reading the orders to index", 7200, true);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        int orderCount = 0;
+        for (String orderId : orderIds) {
+            try {
+                TransactionUtil.doNewTransaction(() -> {
+                    updateIndex(delegator, orderId);
+                    return null;
+                }, "Error indexing the search values of order " + orderId, 0, true);
+                orderCount++;
+            } catch (GenericEntityException e) {
+                Debug.logError(e, MODULE);
+            }
+        }
+        Debug.logInfo("Indexed the search values of " + orderCount + " orders in " + (System.currentTimeMillis() - startTime) / 1000.0 + "s",
+                MODULE);
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("orderCount", orderCount);
+        return result;
+    }
+}
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.order;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.transaction.TransactionKeySet;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
+
+/**
+ * Schedules an order service once per order and transaction, whatever the number of times the order is queued in the
+ * transaction. The job is persisted in the current transaction: it runs once the changes are committed, is dropped with
+ * them on a rollback and is not lost if the server stops before running it. Used by the entity ECAs maintaining the
+ * records derived from the orders.
+ */
+final class OrderUpdateQueue {
+
+    private static final String MODULE = OrderUpdateQueue.class.getName();
+    /** The service name and orderId of the jobs scheduled by the running transactions */
+    private static final TransactionKeySet<List<String>> QUEUED_ORDERS = new TransactionKeySet<>("schedule the update of the order", null);
+
+    private OrderUpdateQueue() { }
+
+    /**
+     * Queues an order, the service is scheduled with the orderId in the current transaction, or right now if there is
+     * no transaction.
+     * @param dispatcher the dispatcher
+     * @param serviceName the service to run, taking an orderId
+     * @param orderId the order
+     */
+    static void queue(LocalDispatcher dispatcher, String serviceName, String orderId) {
+        if (!QUEUED_ORDERS.add(Arrays.asList(serviceName, orderId))) {
+            return;
+        }
+        try {
+            dispatcher.runAsync(serviceName, UtilMisc.toMap("orderId", orderId), true);
+        } catch (GenericServiceException e) {
+            Debug.logError(e, "Error scheduling " + serviceName + " for order " + orderId, MODULE);
+        }
+    }
+}
@@ -64,6 +64,7 @@ import org.apache.ofbiz.entity.util.EntityUtil;
 import org.apache.ofbiz.entity.util.EntityUtilProperties;
 import org.apache.ofbiz.order.finaccount.FinAccountHelper;
 import org.apache.ofbiz.order.order.OrderReadHelper;
+import org.apache.ofbiz.order.shoppingcart.product.ProductPromoIndex;
 import org.apache.ofbiz.order.shoppingcart.product.ProductPromoWorker;
 import org.apache.ofbiz.order.shoppingcart.shipping.ShippingEstimateWrapper;
 import org.apache.ofbiz.order.shoppingcart.shipping.ShippingEvents;
@@ -163,6 +164,8 @@ public class ShoppingCart implements Iterable<ShoppingCartItem>, Serializable {
     /** Note that even though this is promotion info, it should NOT be cleared when the promos are cleared,
      * it is a preference that will be used in the next promo calculation */
     private Map<GenericPK, String> desiredAlternateGiftByAction = new HashMap<>();
+    /** The isolated test runs of the product scoped promotions by productPromoId, reused while the cart lines they depend on do not change */
+    private transient Map<String, ProductPromoIndex.TestRun> productPromoTestRuns = null;
     private Timestamp cartCreatedTs = UtilDateTime.nowTimestamp();
 
     private transient Delegator delegator = null;
@@ -1762,6 +1765,7 @@ public class ShoppingCart implements Iterable<ShoppingCartItem>, Serializable {
         this.desiredAlternateGiftByAction.clear();
         this.productPromoUseInfoList.clear();
         this.productPromoCodes.clear();
+        this.productPromoTestRuns = null;
 
         // clear the auto-save info
         if (ProductStoreWorker.autoSaveCart(this.getDelegator(), this.getProductStoreId())) {
@@ -3947,6 +3951,17 @@ public class ShoppingCart implements Iterable<ShoppingCartItem>, Serializable {
     public Iterator<ProductPromoUseInfo> getProductPromoUseInfoIter() {
         return productPromoUseInfoList.iterator();
     }
+    /** get the last isolated test run of a product promo */
+    public ProductPromoIndex.TestRun getProductPromoTestRun(String productPromoId) {
+        return productPromoTestRuns != null ? productPromoTestRuns.get(productPromoId) : null;
+    }
+    /** set the last isolated test run of a product promo */
+    public void setProductPromoTestRun(String productPromoId, ProductPromoIndex.TestRun testRun) {
+        if (productPromoTestRuns == null) {
+            productPromoTestRuns = new HashMap<>();
+        }
+        productPromoTestRuns.put(productPromoId, testRun);
+    }
     /** get product promo total */
     public BigDecimal getProductPromoTotal() {
         BigDecimal totalDiscount = BigDecimal.ZERO;
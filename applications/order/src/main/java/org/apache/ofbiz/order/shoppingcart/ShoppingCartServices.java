@@ -50,6 +50,7 @@ import org.apache.ofbiz.entity.util.EntityUtilProperties;
 import org.apache.ofbiz.order.order.OrderReadHelper;
 import org.apache.ofbiz.order.shoppingcart.ShoppingCart.CartShipInfo;
 import org.apache.ofbiz.order.shoppingcart.ShoppingCart.CartShipInfo.CartShipItemInfo;
+import org.apache.ofbiz.order.shoppingcart.product.ProductPromoIndex;
 import org.apache.ofbiz.product.config.ProductConfigWorker;
 import org.apache.ofbiz.product.config.ProductConfigWrapper;
 import org.apache.ofbiz.service.DispatchContext;
@@ -1269,4 +1270,15 @@ public class ShoppingCartServices {
         }
         return result;
     }
+
+    /**
+     * Drops the compiled promotions once the current transaction is committed, triggered via ECA when the promotions change.
+     * @param dctx the dispatch context
+     * @param context the service context
+     * @return success
+     */
+    public static Map<String, Object> clearProductPromoIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+        ProductPromoIndex.clear(dctx.getDelegator());
+        return ServiceUtil.returnSuccess();
+    }
 }
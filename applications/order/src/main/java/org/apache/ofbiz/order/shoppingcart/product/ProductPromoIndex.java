@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.order.shoppingcart.product;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityDerivedCache;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCart;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCart.ProductPromoUseInfo;
+import org.apache.ofbiz.order.shoppingcart.ShoppingCartItem;
+
+/**
+ * Compiled form of a promotion: its rules with their conditions and actions, used by {@link ProductPromoWorker} when
+ * <code>promo.index.enabled</code> is <code>true</code> in order.properties instead of reading the conditions and
+ * actions of each rule from the entity cache on each evaluation.
+ * <p>A promotion whose conditions and actions only look at the cart lines of some products (product quantity, amount
+ * and total conditions, product discount and price actions) is "product scoped": the result of its isolated test run
+ * in <code>doPromotions</code> only depends on these lines, so it is kept in the cart and reused as long as these
+ * lines do not change.</p>
+ * <p>The compiled promotions are dropped by an entity ECA once a transaction changing the promotions is completed.</p>
+ */
+public final class ProductPromoIndex {
+
+    private static final String MODULE = ProductPromoIndex.class.getName();
+    private static final EntityDerivedCache<ProductPromoIndex> INDEXES = new EntityDerivedCache<>("order.promo.index", "promotion index");
+
+    /** The conditions only depending on the cart lines of their products */
+    private static final Set<String> PRODUCT_COND_METHODS = UtilMisc.toSet("PPC_PRODUCT_AMOUNT", "PPC_PRODUCT_TOTAL", "PPC_PRODUCT_QUANT");
+    /** The actions only changing the cart lines of their products */
+    private static final Set<String> PRODUCT_ACTION_METHODS = UtilMisc.toSet("PPA_PROD_DISC", "PPA_PROD_AMDISC", "PPA_PROD_PRICE");
+
+    private final String productPromoId;
+    private final List<GenericValue> rules;
+    private final Map<String, List<GenericValue>> condsByRuleId;
+    private final Map<String, List<GenericValue>> actionsByRuleId;
+    private final boolean hasOrderTotalCondition;
+    /** The products of the conditions and actions when the promotion is product scoped, otherwise <code>null</code> */
+    private final Set<String> productIds;
+
+    private ProductPromoIndex(String productPromoId, List<GenericValue> rules, Map<String, List<GenericValue>> condsByRuleId,
+            Map<String, List<GenericValue>> actionsByRuleId, boolean hasOrderTotalCondition, Set<String> productIds) {
+        this.productPromoId = productPromoId;
+        this.rules = rules;
+        this.condsByRuleId = condsByRuleId;
+        this.actionsByRuleId = actionsByRuleId;
+        this.hasOrderTotalCondition = hasOrderTotalCondition;
+        this.productIds = productIds;
+    }
+
+    /**
+     * Is the index used by the promotion calculation
+     * @param delegator the delegator
+     * @return <code>true</code> if the promotions must be evaluated from the index
+     */
+    public static boolean isEnabled(Delegator delegator) {
+        return "true".equals(EntityUtilProperties.getPropertyValue("order", "promo.index.enabled", "false", delegator));
+    }
+
+    /**
+     * Gets the compiled form of a promotion, compiling it if needed.
+     * @param productPromo the promotion
+     * @return the compiled promotion
+     * @throws GenericEntityException if the promotion rules cannot be read
+     */
+    public static ProductPromoIndex getInstance(GenericValue productPromo) throws GenericEntityException {
+        Delegator delegator = productPromo.getDelegator();
+        return INDEXES.get(delegator, productPromo.getString("productPromoId"), () -> load(productPromo, delegator));
+    }
+
+    /**
+     * Drops the compiled promotions of a delegator once the current transaction is completed, or right now if there is no transaction.
+     * @param delegator the delegator
+     */
+    public static void clear(Delegator delegator) {
+        INDEXES.clear(delegator);
+    }
+
+    private static ProductPromoIndex load(GenericValue productPromo, Delegator delegator) throws GenericEntityException {
+        String productPromoId = productPromo.getString("productPromoId");
+        List<GenericValue> rules = productPromo.getRelated("ProductPromoRule", null, null, true);
+        Map<String, List<GenericValue>> condsByRuleId = groupByRuleId(EntityQuery.use(delegator).from("ProductPromoCond")
+                .where("productPromoId", productPromoId).orderBy("productPromoCondSeqId").cache(true).queryList());
+        Map<String, List<GenericValue>> actionsByRuleId = groupByRuleId(EntityQuery.use(delegator).from("ProductPromoAction")
+                .where("productPromoId", productPromoId).orderBy("productPromoRuleId", "productPromoActionSeqId").cache(true).queryList());
+
+        boolean hasOrderTotalCondition = false;
+        boolean productScoped = !rules.isEmpty();
+        for (List<GenericValue> conds : condsByRuleId.values()) {
+            for (GenericValue cond : conds) {
+                String customMethodId = getCustomMethodId(cond, "inputParamEnumId", delegator);
+                if ("PPIP_ORDER_TOTAL".equals(cond.getString("inputParamEnumId")) || "PPC_ORDER_TOTAL".equals(customMethodId)) {
+                    hasOrderTotalCondition = true;
+                }
+                productScoped &= PRODUCT_COND_METHODS.contains(customMethodId);
+            }
+        }
+        for (List<GenericValue> actions : actionsByRuleId.values()) {
+            for (GenericValue action : actions) {
+                productScoped &= PRODUCT_ACTION_METHODS.contains(getCustomMethodId(action, "productPromoActionEnumId", delegator));
+            }
+        }
+
+        Set<String> productIds = null;
+        if (productScoped) {
+            // the products of each condition and action, the sets of makeProductPromoCondActionIdSets apply the excludes of one
+            // condition to the products of the other ones and may miss some products
+            productIds = new HashSet<>();
+            Timestamp nowTimestamp = UtilDateTime.nowTimestamp();
+            for (List<GenericValue> conds : condsByRuleId.values()) {
+                for (GenericValue cond : conds) {
+                    productIds.addAll(ProductPromoWorker.getPromoRuleCondProductIds(cond, delegator, nowTimestamp));
+                }
+            }
+            for (List<GenericValue> actions : actionsByRuleId.values()) {
+                for (GenericValue action : actions) {
+                    productIds.addAll(ProductPromoWorker.getPromoRuleActionProductIds(action, delegator, nowTimestamp));
+                }
+            }
+            productIds = Collections.unmodifiableSet(productIds);
+        }
+        return new ProductPromoIndex(productPromoId, rules, condsByRuleId, actionsByRuleId, hasOrderTotalCondition, productIds);
+    }
+
+    /**
+     * Gets the custom method of a condition or action, resolved from the code of its enumeration when it has none, like
+     * {@link ProductPromoWorker} does for the old promotions (PPIP_* conditions and PROMO_* actions).
+     */
+    private static String getCustomMethodId(GenericValue condOrAction, String enumFieldName, Delegator delegator) throws GenericEntityException {
+        String customMethodId = condOrAction.getString("customMethodId");
+        String enumId = condOrAction.getString(enumFieldName);
+        if (customMethodId == null && enumId != null) {
+            GenericValue enumeration = EntityQuery.use(delegator).from("Enumeration").where("enumId", enumId).cache().queryOne();
+            customMethodId = enumeration != null ? enumeration.getString("enumCode") : null;
+        }
+        return customMethodId;
+    }
+
+    private static Map<String, List<GenericValue>> groupByRuleId(List<GenericValue> values) {
+        Map<String, List<GenericValue>> valuesByRuleId = new HashMap<>();
+        for (GenericValue value : values) {
+            valuesByRuleId.computeIfAbsent(value.getString("productPromoRuleId"), k -> new ArrayList<>()).add(value);
+        }
+        return valuesByRuleId;
+    }
+
+    /**
+     * Gets the rules of the promotion
+     * @return the rules
+     */
+    public List<GenericValue> getRules() {
+        return rules;
+    }
+
+    /**
+     * Gets the conditions of a rule, ordered by sequence id
+     * @param productPromoRuleId the rule id
+     * @return the conditions
+     */
+    public List<GenericValue> getConditions(String productPromoRuleId) {
+        return condsByRuleId.getOrDefault(productPromoRuleId, Collections.emptyList());
+    }
+
+    /**
+     * Gets the actions of a rule, ordered by sequence id
+     * @param productPromoRuleId the rule id
+     * @return the actions
+     */
+    public List<GenericValue> getActions(String productPromoRuleId) {
+        return actionsByRuleId.getOrDefault(productPromoRuleId, Collections.emptyList());
+    }
+
+    /**
+     * Has the promotion a condition on the order total
+     * @return <code>true</code> if one of the conditions is on the order total
+     */
+    public boolean hasOrderTotalCondition() {
+        return hasOrderTotalCondition;
+    }
+
+    /**
+     * Is the promotion product scoped
+     * @return <code>true</code> if the promotion only depends on the cart lines of its products
+     */
+    public boolean isProductScoped() {
+        return productIds != null;
+    }
+
+    /**
+     * Gets the state of the cart an isolated test run of the promotion depends on.
+     * @param cart the cart
+     * @param useLimit the use limit of the promotion
+     * @param maxUseLimit the maximum number of uses of the promotion
+     * @return the state, or <code>null</code> if the promotion is not product scoped
+     */
+    public CartState getCartState(ShoppingCart cart, Long useLimit, long maxUseLimit) {
+        if (productIds == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder();
+        key.append(useLimit).append('|').append(maxUseLimit).append('|').append(cart.getPartyId()).append('|').append(cart.getCurrency());
+        List<ShoppingCartItem> items = new ArrayList<>();
+        for (ShoppingCartItem item : cart) {
+            String parentProductId = item.getParentProductId();
+            if (productIds.contains(item.getProductId()) || (parentProductId != null && productIds.contains(parentProductId))) {
+                items.add(item);
+                key.append('|').append(item.getProductId()).append(':').append(item.getQuantity()).append(':').append(item.getBasePrice())
+                        .append(':').append(item.getItemSubTotal()).append(':').append(item.getIsPromo());
+            }
+        }
+        return new CartState(key.toString(), items);
+    }
+
+    /**
+     * Runs of a promotion are reused as long as the cart lines of its products are the same items, unchanged and in the same order.
+     */
+    public static final class CartState {
+        private final String key;
+        private final List<ShoppingCartItem> items;
+
+        private CartState(String key, List<ShoppingCartItem> items) {
+            this.key = key;
+            this.items = items;
+        }
+
+        private boolean isSame(CartState other) {
+            if (!key.equals(other.key) || items.size() != other.items.size()) {
+                return false;
+            }
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i) != other.items.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The uses of a promotion recorded by its isolated test run on a cart state.
+     */
+    public static final class TestRun {
+        private final String productPromoId;
+        private final CartState cartState;
+        private final List<ProductPromoUseInfo> uses;
+
+        /**
+         * Records the uses of a promotion added to the cart by its isolated test run.
+         * @param index the compiled promotion
+         * @param cartState the state of the cart before the test run
+         * @param cart the cart after the test run
+         */
+        public TestRun(ProductPromoIndex index, CartState cartState, ShoppingCart cart) {
+            this.productPromoId = index.productPromoId;
+            this.cartState = cartState;
+            List<ProductPromoUseInfo> promoUses = new ArrayList<>();
+            cart.getProductPromoUseInfoIter().forEachRemaining(use -> {
+                if (productPromoId.equals(use.getProductPromoId())) {
+                    promoUses.add(use);
+                }
+            });
+            this.uses = Collections.unmodifiableList(promoUses);
+        }
+
+        /**
+         * Was the test run done on the same cart state
+         * @param otherCartState the current state of the cart
+         * @return <code>true</code> if the test run can be replayed
+         */
+        public boolean isRunOn(CartState otherCartState) {
+            return cartState.isSame(otherCartState);
+        }
+
+        /**
+         * Adds the uses of the test run to the cart, like running the promotion again would.
+         * @param cart the cart
+         */
+        public void replay(ShoppingCart cart) {
+            for (ProductPromoUseInfo use : uses) {
+                Map<ShoppingCartItem, BigDecimal> usageInfoMap = use.getUsageInfoMap() != null ? new HashMap<>(use.getUsageInfoMap()) : null;
+                cart.addProductPromoUse(productPromoId, use.getProductPromoCodeId(), use.getTotalDiscountAmount(), use.getQuantityLeftInActions(),
+                        usageInfoMap);
+            }
+        }
+    }
+}
@@ -412,6 +412,9 @@ public final class ProductPromoWorker {
     }
 
     private static boolean hasOrderTotalCondition(GenericValue productPromo, Delegator delegator) throws GenericEntityException {
+        if (ProductPromoIndex.isEnabled(delegator)) {
+            return ProductPromoIndex.getInstance(productPromo).hasOrderTotalCondition();
+        }
         boolean hasOtCond = false;
         List<GenericValue> productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond")
                 .where("productPromoId", productPromo.get("productPromoId"))
@@ -442,6 +445,7 @@ public final class ProductPromoWorker {
         //default to 2 times the number of items in the cart
         long maxUseLimit = cart.getTotalQuantity().multiply(BigDecimal.valueOf(2)).setScale(0, RoundingMode.CEILING).longValue();
         maxUseLimit = Math.max(1, maxUseLimit);
+        boolean useIndex = ProductPromoIndex.isEnabled(delegator);
 
         try {
             // repeat until no more rules to run: either all rules are run, or no changes to the cart in a loop
@@ -458,7 +462,9 @@ public final class ProductPromoWorker {
                 for (GenericValue productPromo : productPromoList) {
                     String productPromoId = productPromo.getString("productPromoId");
 
-                    List<GenericValue> productPromoRules = productPromo.getRelated("ProductPromoRule", null, null, true);
+                    ProductPromoIndex promoIndex = useIndex ? ProductPromoIndex.getInstance(productPromo) : null;
+                    List<GenericValue> productPromoRules = promoIndex != null ? promoIndex.getRules()
+                            : productPromo.getRelated("ProductPromoRule", null, null, true);
                     if (UtilValidate.isNotEmpty(productPromoRules)) {
                         // always have a useLimit to avoid unlimited looping, default to 1 if no other is specified
                         Long candidateUseLimit = getProductPromoUseLimit(productPromo, partyId, delegator);
@@ -502,7 +508,7 @@ public final class ProductPromoWorker {
                                     String productPromoCodeId = productPromoCode.getString("productPromoCodeId");
                                     Long codeUseLimit = getProductPromoCodeUseLimit(productPromoCode, partyId, delegator);
                                     if (runProductPromoRules(cart, useLimit, true, productPromoCodeId, codeUseLimit, maxUseLimit, productPromo,
-                                            productPromoRules, dispatcher, delegator, nowTimestamp)) {
+                                            productPromoRules, promoIndex, dispatcher, delegator, nowTimestamp)) {
                                         cartChanged = true;
                                     }
 
@@ -516,10 +522,22 @@ public final class ProductPromoWorker {
                                 }
                             }
                         } else {
+                            // a product scoped promo only depends on the lines of its products, if they did not change since its last
+                            // isolated test run the uses found by that run are the same
+                            ProductPromoIndex.CartState cartState = isolatedTestRun && promoIndex != null
+                                    ? promoIndex.getCartState(cart, useLimit, maxUseLimit) : null;
+                            ProductPromoIndex.TestRun testRun = cartState != null ? cart.getProductPromoTestRun(productPromoId) : null;
                             try {
-                                if (runProductPromoRules(cart, useLimit, false, null, null, maxUseLimit, productPromo, productPromoRules,
-                                        dispatcher, delegator, nowTimestamp)) {
-                                    cartChanged = true;
+                                if (testRun != null && testRun.isRunOn(cartState)) {
+                                    testRun.replay(cart);
+                                } else {
+                                    if (runProductPromoRules(cart, useLimit, false, null, null, maxUseLimit, productPromo, productPromoRules,
+                                            promoIndex, dispatcher, delegator, nowTimestamp)) {
+                                        cartChanged = true;
+                                    }
+                                    if (cartState != null) {
+                                        cart.setProductPromoTestRun(productPromoId, new ProductPromoIndex.TestRun(promoIndex, cartState, cart));
+                                    }
                                 }
                             } catch (RuntimeException e) {
                                 throw new GeneralException("Error running promotion with ID [" + productPromoId + "]", e);
@@ -880,8 +898,8 @@ public final class ProductPromoWorker {
     }
 
     private static boolean runProductPromoRules(ShoppingCart cart, Long useLimit, boolean requireCode, String productPromoCodeId, Long codeUseLimit,
-            long maxUseLimit, GenericValue productPromo, List<GenericValue> productPromoRules, LocalDispatcher dispatcher, Delegator delegator,
-            Timestamp nowTimestamp) throws GenericEntityException, UseLimitException {
+            long maxUseLimit, GenericValue productPromo, List<GenericValue> productPromoRules, ProductPromoIndex promoIndex,
+            LocalDispatcher dispatcher, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException, UseLimitException {
         boolean cartChanged = false;
         Map<ShoppingCartItem, BigDecimal> usageInfoMap = prepareProductUsageInfoMap(cart);
         String productPromoId = productPromo.getString("productPromoId");
@@ -900,10 +918,15 @@ public final class ProductPromoWorker {
                 boolean performActions = true;
 
                 // loop through conditions for rule, if any false, set allConditionsTrue to false
-                List<GenericValue> productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond").where("productPromoId",
-                        productPromo.get("productPromoId")).orderBy("productPromoCondSeqId").cache(true).queryList();
-                productPromoConds = EntityUtil.filterByAnd(productPromoConds, UtilMisc.toMap("productPromoRuleId", productPromoRule.get(
-                        "productPromoRuleId")));
+                List<GenericValue> productPromoConds;
+                if (promoIndex != null) {
+                    productPromoConds = promoIndex.getConditions(productPromoRule.getString("productPromoRuleId"));
+                } else {
+                    productPromoConds = EntityQuery.use(delegator).from("ProductPromoCond").where("productPromoId",
+                            productPromo.get("productPromoId")).orderBy("productPromoCondSeqId").cache(true).queryList();
+                    productPromoConds = EntityUtil.filterByAnd(productPromoConds, UtilMisc.toMap("productPromoRuleId", productPromoRule.get(
+                            "productPromoRuleId")));
+                }
                 // using the other method to consolidate cache entries because the same cache is used elsewhere: List productPromoConds =
                 // productPromoRule.getRelated("ProductPromoCond", null, UtilMisc.toList("productPromoCondSeqId"), true);
                 if (Debug.verboseOn()) {
@@ -926,8 +949,9 @@ public final class ProductPromoWorker {
                 if (performActions) {
                     // perform all actions, either apply or unapply
 
-                    List<GenericValue> productPromoActions = productPromoRule.getRelated("ProductPromoAction", null, UtilMisc.toList(
-                            "productPromoActionSeqId"), true);
+                    List<GenericValue> productPromoActions = promoIndex != null
+                            ? promoIndex.getActions(productPromoRule.getString("productPromoRuleId"))
+                            : productPromoRule.getRelated("ProductPromoAction", null, UtilMisc.toList("productPromoActionSeqId"), true);
                     Iterator<GenericValue> productPromoActionIter = UtilMisc.toIterator(productPromoActions);
                     while (productPromoActionIter != null && productPromoActionIter.hasNext()) {
                         GenericValue productPromoAction = productPromoActionIter.next();
@@ -79,10 +79,12 @@ function toggleOrderIdList() {
     }
 }
 
-function paginateOrderList(viewSize, viewIndex, hideFields) {
+function paginateOrderList(viewSize, viewIndex, hideFields, lastOrderDate, lastOrderId) {
     document.paginationForm.viewSize.value = viewSize;
     document.paginationForm.viewIndex.value = viewIndex;
     document.paginationForm.hideFields.value = hideFields;
+    document.paginationForm.lastOrderDate.value = lastOrderDate || "";
+    document.paginationForm.lastOrderId.value = lastOrderId || "";
     document.paginationForm.submit();
 }
 </script>
@@ -418,12 +420,12 @@ document.lookuporder.orderId.focus();
       <li class="h3">${uiLabelMap.OrderOrderFound}</li>
       <#if (orderList?has_content && 0 < orderList?size)>
         <#if (orderListSize > highIndex)>
-          <li><a href="javascript:paginateOrderList('${viewSize}', '${viewIndex+1}', '${requestParameters.hideFields?default("N")}')">${uiLabelMap.CommonNext}</a></li>
+          <li><a href="javascript:paginateOrderList('${viewSize}', '${viewIndex+1}', '${requestParameters.hideFields?default("N")}', '${lastOrderDate!}', '${lastOrderId!}')">${uiLabelMap.CommonNext}</a></li>
         <#else>
           <li><span class="disabled">${uiLabelMap.CommonNext}</span></li>
         </#if>
         <#if (orderListSize > 0)>
-          <li><span>${lowIndex} - ${highIndex} ${uiLabelMap.CommonOf} ${orderListSize}</span></li>
+          <li><span>${lowIndex} - ${highIndex} ${uiLabelMap.CommonOf} ${orderListSize}<#if orderListSizeApproximate!false>+</#if></span></li>
         </#if>
         <#if (viewIndex > 1)>
           <li><a href="javascript:paginateOrderList('${viewSize}', '${viewIndex-1}', '${requestParameters.hideFields?default("N")}')">${uiLabelMap.CommonPrevious}</a></li>
@@ -439,6 +441,8 @@ document.lookuporder.orderId.focus();
       <input type="hidden" name="viewSize"/>
       <input type="hidden" name="viewIndex"/>
       <input type="hidden" name="hideFields"/>
+      <input type="hidden" name="lastOrderDate"/>
+      <input type="hidden" name="lastOrderId"/>
       <input type="hidden" name="showAll" value="Y"/>
       <#if paramIdList?? && paramIdList?has_content>
         <#list paramIdList as paramIds>
@@ -511,6 +515,7 @@ document.lookuporder.orderId.focus();
           <#assign alt_row = false>
           <#list orderList as orderHeader>
             <#assign orh = Static["org.apache.ofbiz.order.order.OrderReadHelper"].getHelper(orderHeader)>
+            <#assign orderHeaderTotal = (orderHeaderTotals!{})[orderHeader.orderId]!>
             <#assign statusItem = orderHeader.getRelatedOne("StatusItem", true)>
             <#assign orderType = orderHeader.getRelatedOne("OrderType", true)>
             <#if "PURCHASE_ORDER" == orderType.orderTypeId>
@@ -540,10 +545,10 @@ document.lookuporder.orderId.focus();
                   </#if>
                 </div>
               </td>
-              <td align="right">${orh.hasSurvey()?string.number}</td>
-              <td align="right">${orh.getTotalOrderItemsQuantity()?string.number}</td>
-              <td align="right">${orh.getOrderBackorderQuantity()?string.number}</td>
-              <td align="right">${orh.getOrderReturnedQuantity()?string.number}</td>
+              <td align="right">${(orderHeaderTotal.surveyCount!orh.hasSurvey())?string.number}</td>
+              <td align="right">${(orderHeaderTotal.itemsQuantity!orh.getTotalOrderItemsQuantity())?string.number}</td>
+              <td align="right">${(orderHeaderTotal.backorderQuantity!orh.getOrderBackorderQuantity())?string.number}</td>
+              <td align="right">${(orderHeaderTotal.returnedQuantity!orh.getOrderReturnedQuantity())?string.number}</td>
               <td align="right"><@ofbizCurrency amount=orderHeader.remainingSubTotal isoCode=orh.getCurrency()/></td>
               <td align="right"><@ofbizCurrency amount=orderHeader.grandTotal isoCode=orh.getCurrency()/></td>
 
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.party.party.test
+
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.entity.util.EntityListIterator
+import org.apache.ofbiz.party.party.PartySearchServices
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class PartySearchTests extends OFBizTestCase {
+
+    PartySearchTests(String name) {
+        super(name)
+    }
+
+    void testGetTrigrams() {
+        assert PartySearchServices.getTrigrams('Party') == ['PAR', 'ART', 'RTY'] as Set
+        assert PartySearchServices.getTrigrams('Pa').isEmpty()
+    }
+
+    void testUpdatePartySearchIndex() {
+        Map serviceResult = dispatcher.runSync('updatePartySearchIndex', [partyId: 'TestCustomer', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+
+        List<GenericValue> searchValues = from('PartySearchValue').where(partyId: 'TestCustomer').queryList()
+        assert searchValues.find { it.searchField == 'lastName' && it.searchValue == 'CUS' }
+        assert searchValues.find { it.searchField == 'partyId' && it.searchValue == 'TOM' }
+
+        // updating again does not duplicate the values
+        serviceResult = dispatcher.runSync('updatePartySearchIndex', [partyId: 'TestCustomer', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert from('PartySearchValue').where(partyId: 'TestCustomer').queryCount() == searchValues.size()
+    }
+
+    // the concurrent indexings of a party not indexed yet insert the same values
+    void testConcurrentUpdatePartySearchIndex() {
+        delegator.removeByAnd('PartySearchValue', [partyId: 'TestCustomer'])
+        int updates = 4
+        CyclicBarrier barrier = new CyclicBarrier(updates)
+        ExecutorService executor = Executors.newFixedThreadPool(updates)
+        try {
+            List<Future> futures = (1..updates).collect {
+                executor.submit {
+                    barrier.await()
+                    Map serviceResult = dispatcher.runSync('updatePartySearchIndex', [partyId: 'TestCustomer', userLogin: userLogin])
+                    assert ServiceUtil.isSuccess(serviceResult)
+                }
+            }
+            futures.each { it.get() }
+        } finally {
+            executor.shutdown()
+        }
+
+        List<GenericValue> searchValues = from('PartySearchValue').where(partyId: 'TestCustomer').queryList()
+        assert searchValues.find { it.searchField == 'lastName' && it.searchValue == 'CUS' }
+        Map serviceResult = dispatcher.runSync('updatePartySearchIndex', [partyId: 'TestCustomer', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert from('PartySearchValue').where(partyId: 'TestCustomer').queryCount() == searchValues.size()
+    }
+
+    void testFindPartiesWithIndex() {
+        Map serviceResult = dispatcher.runSync('rebuildPartySearchIndex', [userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+
+        Map searchCtx = [firstName: 'test', lastName: 'ustom', noConditionFind: 'Y', userLogin: userLogin]
+        List<String> joinPartyIds = findPartyIds(searchCtx)
+
+        GenericValue indexEnabled = delegator.makeValue('SystemProperty', [systemResourceId: 'party',
+                systemPropertyId: 'party.search.index.enabled', systemPropertyValue: 'true'])
+        delegator.createOrStore(indexEnabled)
+        try {
+            List<String> indexPartyIds = findPartyIds(searchCtx)
+            assert indexPartyIds == joinPartyIds
+            assert indexPartyIds.contains('TestCustomer')
+
+            // a text without trigram is searched without the index
+            assert findPartyIds(searchCtx + [lastName: 'us']).contains('TestCustomer')
+            assert !findPartyIds(searchCtx + [lastName: 'ustomerX']).contains('TestCustomer')
+        } finally {
+            delegator.removeValue(indexEnabled)
+        }
+    }
+
+    private List<String> findPartyIds(Map searchCtx) {
+        Map serviceResult = dispatcher.runSync('performFindParty', searchCtx)
+        assert ServiceUtil.isSuccess(serviceResult)
+        EntityListIterator listIt = serviceResult.listIt
+        try {
+            return listIt.getCompleteList()*.partyId
+        } finally {
+            listIt.close()
+        }
+    }
+}
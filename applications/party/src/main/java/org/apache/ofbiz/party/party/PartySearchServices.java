@@ -0,0 +1,399 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.party.party;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.model.DynamicViewEntity;
+import org.apache.ofbiz.entity.transaction.TransactionKeySet;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.service.ServiceUtil;
+
+/**
+ * Maintains and queries the PartySearchValue records, the trigrams of the values a party can be searched by with a
+ * case insensitive <code>LIKE '%value%'</code>, and its phone numbers, searched with a case insensitive equality.
+ * <p>A value containing a searched text contains all the trigrams of this text, so {@link PartyServices#findParty} and
+ * {@link PartyServices#performFindParty} first find the parties having all the trigrams of the searched texts, then run
+ * their usual query restricted to these parties, which checks the exact conditions on a few rows instead of scanning all
+ * the parties.</p>
+ * <p>When <code>party.search.index.enabled</code> is <code>true</code> in party.properties, the entity ECAs on the indexed
+ * entities queue the party, and its values are indexed once after the transaction is committed.</p>
+ */
+public class PartySearchServices {
+
+    private static final String MODULE = PartySearchServices.class.getName();
+
+    /** The searched fields indexed by trigrams, with the entity having the values of a party. */
+    private static final List<String> TRIGRAM_FIELDS = UtilMisc.toList("partyId", "firstName", "lastName", "groupName", "userLoginId",
+            "idValue", "infoString", "address1", "address2", "city", "postalCode");
+    /** The searched fields indexed by their whole value. */
+    private static final List<String> VALUE_FIELDS = UtilMisc.toList("countryCode", "areaCode", "contactNumber");
+
+    /** The parties whose indexing is scheduled by the running transactions */
+    private static final TransactionKeySet<String> QUEUED_PARTY_IDS = new TransactionKeySet<>("schedule the indexing of party", null);
+
+    /**
+     * Is the PartySearchValue records maintained and used by findParty and performFindParty
+     * @param delegator the delegator
+     * @return <code>true</code> if the party search index is maintained from the ECAs
+     */
+    public static boolean isEnabled(Delegator delegator) {
+        return "true".equals(EntityUtilProperties.getPropertyValue("party", "party.search.index.enabled", "false", delegator));
+    }
+
+    /**
+     * Finds the parties which may match searched texts with the index.
+     * <p>The values of the trigram fields are searched as with <code>LIKE '%value%'</code>, the ones of the other indexed
+     * fields as with an equality, all case insensitive. A searched text without trigram, or matched by more parties than
+     * <code>party.search.candidate.limit</code>, is ignored. The parties found must then be checked with the usual
+     * conditions, the index only excludes the parties which cannot match.</p>
+     * @param delegator the delegator
+     * @param searchedValues the searched texts by field, the fields not indexed are ignored
+     * @return the ids of the parties which may match, <code>null</code> if the index is not enabled or none of the texts
+     * can be searched with it
+     * @throws GenericEntityException when the index cannot be read
+     */
+    public static Set<String> findCandidatePartyIds(Delegator delegator, Map<String, String> searchedValues) throws GenericEntityException {
+        if (!isEnabled(delegator)) {
+            return null;
+        }
+        int limit = EntityUtilProperties.getPropertyAsInteger("party", "party.search.candidate.limit", 1000);
+        // the texts with the most values first, they are likely the most selective
+        List<Map.Entry<String, Set<String>>> searches = new ArrayList<>();
+        for (Map.Entry<String, String> searchedValue : searchedValues.entrySet()) {
+            String field = searchedValue.getKey();
+            String text = searchedValue.getValue();
+            if (UtilValidate.isEmpty(text)) {
+                continue;
+            }
+            Set<String> values = null;
+            if (TRIGRAM_FIELDS.contains(field)) {
+                values = getSearchedTrigrams(text);
+            } else if (VALUE_FIELDS.contains(field)) {
+                values = UtilMisc.toSet(normalize(text.trim()));
+            }
+            if (UtilValidate.isNotEmpty(values)) {
+                searches.add(new AbstractMap.SimpleEntry<>(field, values));
+            }
+        }
+        searches.sort((a, b) -> b.getValue().size() - a.getValue().size());
+
+        Set<String> candidates = null;
+        for (Map.Entry<String, Set<String>> search : searches) {
+            Set<String> partyIds = findPartyIds(delegator, search.getKey(), search.getValue(), candidates, limit);
+            if (partyIds == null) {
+                continue;
+            }
+            candidates = partyIds;
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+        return candidates;
+    }
+
+    // the parties having all the values, null if there are more than the limit
+    private static Set<String> findPartyIds(Delegator delegator, String searchField, Set<String> values, Set<String> candidates,
+            int limit) throws GenericEntityException {
+        DynamicViewEntity dve = new DynamicViewEntity();
+        dve.addMemberEntity("PSV", "PartySearchValue");
+        dve.addAlias("PSV", "partyId", null, null, null, Boolean.TRUE, null);
+        dve.addAlias("PSV", "searchField", null, null, null, null, null);
+        dve.addAlias("PSV", "searchValue", null, null, null, null, null);
+        dve.addAlias("PSV", "searchValueCount", "searchValue", null, null, null, "count");
+
+        List<EntityCondition> conditions = new LinkedList<>();
+        conditions.add(EntityCondition.makeCondition("searchField", searchField));
+        conditions.add(EntityCondition.makeCondition("searchValue", EntityOperator.IN, values));
+        if (candidates != null) {
+            conditions.add(EntityCondition.makeCondition("partyId", EntityOperator.IN, candidates));
+        }
+        Set<String> partyIds = new HashSet<>();
+        try (EntityListIterator eli = EntityQuery.use(delegator).select("partyId", "searchValueCount").from(dve)
+                .where(conditions)
+                .having(EntityCondition.makeCondition("searchValueCount", EntityOperator.EQUALS, (long) values.size()))
+                .maxRows(limit + 1)
+                .queryIterator()) {
+            GenericValue found;
+            while ((found = eli.next()) != null) {
+                partyIds.add(found.getString("partyId"));
+                if (partyIds.size() > limit) {
+                    return null;
+                }
+            }
+        }
+        return partyIds;
+    }
+
+    /**
+     * Normalizes a text for the index in upper case as the searches, character by character so that a part of a text is
+     * normalized as in the text.
+     * @param text the text
+     * @return the normalized text
+     */
+    public static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            normalized.append(Character.toUpperCase(text.charAt(i)));
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Gets the trigrams of a value, once normalized.
+     * @param value the value
+     * @return the trigrams, empty if the value has less than three characters
+     */
+    public static Set<String> getTrigrams(String value) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        String normalized = normalize(value);
+        for (int i = 0; i + 3 <= normalized.length(); i++) {
+            trigrams.add(normalized.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    // the LIKE wildcards typed in a searched text are not part of the trigrams
+    private static Set<String> getSearchedTrigrams(String text) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (String part : text.split("[%_]")) {
+            trigrams.addAll(getTrigrams(part));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Queues the indexing of a party, or of the parties of a contact mech, after the current transaction is committed,
+     * triggered via ECA
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> queuePartySearchIndexUpdate(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        if (!isEnabled(delegator)) {
+            return ServiceUtil.returnSuccess();
+        }
+        String partyId = (String) context.get("partyId");
+        String contactMechId = (String) context.get("contactMechId");
+        if (UtilValidate.isNotEmpty(partyId)) {
+            queue(dctx.getDispatcher(), partyId);
+        } else if (UtilValidate.isNotEmpty(contactMechId)) {
+            try {
+                for (GenericValue partyContactMech : EntityQuery.use(delegator).select("partyId").from("PartyContactMech")
+                        .where("contactMechId", contactMechId).distinct().queryList()) {
+                    queue(dctx.getDispatcher(), partyContactMech.getString("partyId"));
+                }
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "Error reading the parties of contact mech " + contactMechId, MODULE);
+                return ServiceUtil.returnError(e.getMessage());
+            }
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    // schedules updatePartySearchIndex once per party and transaction, the job is persisted in the current transaction so
+    // that it runs once the changes are committed and is not lost if the server stops before
+    private static void queue(LocalDispatcher dispatcher, String partyId) {
+        if (!QUEUED_PARTY_IDS.add(partyId)) {
+            return;
+        }
+        try {
+            dispatcher.runAsync("updatePartySearchIndex", UtilMisc.toMap("partyId", partyId), true);
+        } catch (GenericServiceException e) {
+            Debug.logError(e, "Error scheduling updatePartySearchIndex for party " + partyId, MODULE);
+        }
+    }
+
+    /**
+     * Indexes the search values of a party
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> updatePartySearchIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String partyId = (String) context.get("partyId");
+        try {
+            updateIndexInNewTransaction(delegator, partyId);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error indexing the search values of party " + partyId, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    // a concurrent indexing of the same party may insert the same values first, the indexing is then run again on the
+    // values committed by the other one
+    private static void updateIndexInNewTransaction(Delegator delegator, String partyId) throws GenericEntityException {
+        try {
+            TransactionUtil.doNewTransaction(() -> {
+                updateIndex(delegator, partyId);
+                return null;
+            }, "Error indexing the search values of party " + partyId, 0, false);
+        } catch (GenericEntityException e) {
+            Debug.logInfo("Indexing again the search values of party " + partyId + " after a concurrent indexing: " + e.getMessage(), MODULE);
+            TransactionUtil.doNewTransaction(() -> {
+                updateIndex(delegator, partyId);
+                return null;
+            }, "Error indexing the search values of party " + partyId, 0, true);
+        }
+    }
+
+    private static void updateIndex(Delegator delegator, String partyId) throws GenericEntityException {
+        Set<GenericPK> searchValues = getSearchValues(delegator, partyId);
+        List<GenericPK> obsoleteValues = new LinkedList<>();
+        for (GenericValue indexedValue : EntityQuery.use(delegator).from("PartySearchValue").where("partyId", partyId).queryList()) {
+            GenericPK indexedPK = indexedValue.getPrimaryKey();
+            if (!searchValues.remove(indexedPK)) {
+                obsoleteValues.add(indexedPK);
+            }
+        }
+        delegator.removeAll(obsoleteValues);
+        for (GenericPK searchValue : searchValues) {
+            delegator.create(searchValue);
+        }
+    }
+
+    private static Set<GenericPK> getSearchValues(Delegator delegator, String partyId) throws GenericEntityException {
+        Set<GenericPK> searchValues = new LinkedHashSet<>();
+        if (EntityQuery.use(delegator).from("Party").where("partyId", partyId).queryCount() == 0) {
+            return searchValues;
+        }
+        addTrigrams(delegator, searchValues, partyId, "partyId", partyId);
+        GenericValue person = EntityQuery.use(delegator).from("Person").where("partyId", partyId).queryOne();
+        if (person != null) {
+            addTrigrams(delegator, searchValues, partyId, "firstName", person.getString("firstName"));
+            addTrigrams(delegator, searchValues, partyId, "lastName", person.getString("lastName"));
+        }
+        GenericValue partyGroup = EntityQuery.use(delegator).from("PartyGroup").where("partyId", partyId).queryOne();
+        if (partyGroup != null) {
+            addTrigrams(delegator, searchValues, partyId, "groupName", partyGroup.getString("groupName"));
+        }
+        for (GenericValue userLogin : EntityQuery.use(delegator).select("userLoginId").from("UserLogin").where("partyId", partyId).queryList()) {
+            addTrigrams(delegator, searchValues, partyId, "userLoginId", userLogin.getString("userLoginId"));
+        }
+        for (GenericValue identification : EntityQuery.use(delegator).from("PartyIdentification").where("partyId", partyId).queryList()) {
+            addTrigrams(delegator, searchValues, partyId, "idValue", identification.getString("idValue"));
+        }
+        // all the contact mechs the party ever had, as the searches do not filter them by date
+        Set<String> contactMechIds = new HashSet<>();
+        for (GenericValue partyContactMech : EntityQuery.use(delegator).from("PartyContactMech").where("partyId", partyId).queryList()) {
+            contactMechIds.add(partyContactMech.getString("contactMechId"));
+        }
+        for (String contactMechId : contactMechIds) {
+            GenericValue contactMech = EntityQuery.use(delegator).from("ContactMech").where("contactMechId", contactMechId).queryOne();
+            if (contactMech != null) {
+                addTrigrams(delegator, searchValues, partyId, "infoString", contactMech.getString("infoString"));
+            }
+            GenericValue postalAddress = EntityQuery.use(delegator).from("PostalAddress").where("contactMechId", contactMechId).queryOne();
+            if (postalAddress != null) {
+                for (String fieldName : UtilMisc.toList("address1", "address2", "city", "postalCode")) {
+                    addTrigrams(delegator, searchValues, partyId, fieldName, postalAddress.getString(fieldName));
+                }
+            }
+            GenericValue telecomNumber = EntityQuery.use(delegator).from("TelecomNumber").where("contactMechId", contactMechId).queryOne();
+            if (telecomNumber != null) {
+                for (String fieldName : VALUE_FIELDS) {
+                    String value = telecomNumber.getString(fieldName);
+                    if (UtilValidate.isNotEmpty(value)) {
+                        addSearchValue(delegator, searchValues, partyId, fieldName, normalize(value.trim()));
+                    }
+                }
+            }
+        }
+        return searchValues;
+    }
+
+    private static void addTrigrams(Delegator delegator, Set<GenericPK> searchValues, String partyId, String searchField, String value) {
+        if (UtilValidate.isNotEmpty(value)) {
+            for (String trigram : getTrigrams(value)) {
+                addSearchValue(delegator, searchValues, partyId, searchField, trigram);
+            }
+        }
+    }
+
+    private static void addSearchValue(Delegator delegator, Set<GenericPK> searchValues, String partyId, String searchField, String value) {
+        searchValues.add(delegator.makePK("PartySearchValue", UtilMisc.toMap("partyId", partyId, "searchField", searchField,
+                "searchValue", value)));
+    }
+
+    /**
+     * Indexes the search values of all the parties, to run once before enabling <code>party.search.index.enabled</code>
+     * and after changes made without entity ECA.
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution, with the number of parties indexed
+     */
+    public static Map<String, Object> rebuildPartySearchIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        long startTime = System.currentTimeMillis();
+        List<String> partyIds = new LinkedList<>();
+        try {
+            TransactionUtil.doNewTransaction(() -> {
+                try (EntityListIterator eli = EntityQuery.use(delegator).select("partyId").from("Party").queryIterator()) {
+                    GenericValue party;
+                    while ((party = eli.next()) != null) {
+                        partyIds.add(party.getString("partyId"));
+                    }
+                }
+                return null;
+            }, "Error reading the parties to index", 7200, true);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        int partyCount = 0;
+        for (String partyId : partyIds) {
+            try {
+                updateIndexInNewTransaction(delegator, partyId);
+                partyCount++;
+            } catch (GenericEntityException e) {
+                Debug.logError(e, MODULE);
+            }
+        }
+        Debug.logInfo("Indexed the search values of " + partyCount + " parties in " + (System.currentTimeMillis() - startTime) / 1000.0 + "s",
+                MODULE);
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("partyCount", partyCount);
+        return result;
+    }
+}
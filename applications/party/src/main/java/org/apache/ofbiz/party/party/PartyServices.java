@@ -32,6 +32,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVFormat.Builder;
@@ -1129,6 +1130,8 @@ public class PartyServices {
             // define the main condition & expression list
             List<EntityCondition> andExprs = new LinkedList<>();
             EntityCondition mainCond = null;
+            // the texts searched, to find the matching parties with the search index
+            Map<String, String> searchedValues = new HashMap<>();
 
             List<String> orderBy = new LinkedList<>();
             List<String> fieldsToSelect = new LinkedList<>();
@@ -1178,6 +1181,7 @@ public class PartyServices {
                 // check for a partyId
                 if (UtilValidate.isNotEmpty(partyId)) {
                     paramList = paramList + "&partyId=" + partyId;
+                    searchedValues.put("partyId", partyId);
                     andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("partyId"),
                             EntityOperator.LIKE, EntityFunction.upper("%" + partyId + "%")));
                 }
@@ -1207,6 +1211,7 @@ public class PartyServices {
                 // filter on user login
                 if (UtilValidate.isNotEmpty(userLoginId)) {
                     paramList = paramList + "&userLoginId=" + userLoginId;
+                    searchedValues.put("userLoginId", userLoginId);
 
                     // modify the dynamic view
                     dynamicView.addMemberEntity("UL", "UserLogin");
@@ -1227,6 +1232,7 @@ public class PartyServices {
                 // filter on groupName
                 if (UtilValidate.isNotEmpty(groupName)) {
                     paramList = paramList + "&groupName=" + groupName;
+                    searchedValues.put("groupName", groupName);
 
                     // modify the dynamic view
                     dynamicView.addMemberEntity("PG", "PartyGroup");
@@ -1260,6 +1266,7 @@ public class PartyServices {
                 // filter on firstName
                 if (UtilValidate.isNotEmpty(firstName)) {
                     paramList = paramList + "&firstName=" + firstName;
+                    searchedValues.put("firstName", firstName);
                     andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("firstName"),
                             EntityOperator.LIKE, EntityFunction.upper("%" + firstName + "%")));
                 }
@@ -1267,6 +1274,7 @@ public class PartyServices {
                 // filter on lastName
                 if (UtilValidate.isNotEmpty(lastName)) {
                     paramList = paramList + "&lastName=" + lastName;
+                    searchedValues.put("lastName", lastName);
                     andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("lastName"),
                             EntityOperator.LIKE, EntityFunction.upper("%" + lastName + "%")));
                 }
@@ -1350,6 +1358,7 @@ public class PartyServices {
                     String address1 = (String) context.get("address1");
                     if (UtilValidate.isNotEmpty(address1)) {
                         paramList = paramList + "&address1=" + address1;
+                        searchedValues.put("address1", address1);
                         andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("address1"),
                                 EntityOperator.LIKE, EntityFunction.upper("%" + address1 + "%")));
                     }
@@ -1358,6 +1367,7 @@ public class PartyServices {
                     String address2 = (String) context.get("address2");
                     if (UtilValidate.isNotEmpty(address2)) {
                         paramList = paramList + "&address2=" + address2;
+                        searchedValues.put("address2", address2);
                         andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("address2"),
                                 EntityOperator.LIKE, EntityFunction.upper("%" + address2 + "%")));
                     }
@@ -1366,6 +1376,7 @@ public class PartyServices {
                     String city = (String) context.get("city");
                     if (UtilValidate.isNotEmpty(city)) {
                         paramList = paramList + "&city=" + city;
+                        searchedValues.put("city", city);
                         andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("city"),
                                 EntityOperator.LIKE, EntityFunction.upper("%" + city + "%")));
                     }
@@ -1380,6 +1391,7 @@ public class PartyServices {
                     String postalCode = (String) context.get("postalCode");
                     if (UtilValidate.isNotEmpty(postalCode)) {
                         paramList = paramList + "&postalCode=" + postalCode;
+                        searchedValues.put("postalCode", postalCode);
                         andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("postalCode"),
                                 EntityOperator.LIKE, EntityFunction.upper("%" + postalCode + "%")));
                     }
@@ -1405,6 +1417,7 @@ public class PartyServices {
                     String infoString = (String) context.get("infoString");
                     if (UtilValidate.isNotEmpty(infoString)) {
                         paramList = paramList + "&infoString=" + infoString;
+                        searchedValues.put("infoString", infoString);
                         andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("infoString"),
                                 EntityOperator.LIKE, EntityFunction.upper("%" + infoString + "%")));
                         fieldsToSelect.add("infoString");
@@ -1430,6 +1443,7 @@ public class PartyServices {
                     String countryCode = (String) context.get("countryCode");
                     if (UtilValidate.isNotEmpty(countryCode)) {
                         paramList = paramList + "&countryCode=" + countryCode;
+                        searchedValues.put("countryCode", countryCode);
                         andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("countryCode"),
                                 EntityOperator.EQUALS, EntityFunction.upper(countryCode)));
                     }
@@ -1438,6 +1452,7 @@ public class PartyServices {
                     String areaCode = (String) context.get("areaCode");
                     if (UtilValidate.isNotEmpty(areaCode)) {
                         paramList = paramList + "&areaCode=" + areaCode;
+                        searchedValues.put("areaCode", areaCode);
                         andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("areaCode"),
                                 EntityOperator.EQUALS, EntityFunction.upper(areaCode)));
                     }
@@ -1446,6 +1461,7 @@ public class PartyServices {
                     String contactNumber = (String) context.get("contactNumber");
                     if (UtilValidate.isNotEmpty(contactNumber)) {
                         paramList = paramList + "&contactNumber=" + contactNumber;
+                        searchedValues.put("contactNumber", contactNumber);
                         andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("contactNumber"),
                                 EntityOperator.EQUALS, EntityFunction.upper(contactNumber)));
                     }
@@ -1456,6 +1472,8 @@ public class PartyServices {
 
                 // ---- End of Dynamic View Creation
 
+                addSearchIndexCondition(delegator, searchedValues, andExprs);
+
                 // build the main condition
                 if (!andExprs.isEmpty()) {
                     mainCond = EntityCondition.makeCondition(andExprs, EntityOperator.AND);
@@ -1547,6 +1565,8 @@ public class PartyServices {
         // define the main condition & expression list
         List<EntityCondition> andExprs = new ArrayList<>();
         EntityCondition mainCond = null;
+        // the texts searched, to find the matching parties with the search index
+        Map<String, String> searchedValues = new HashMap<>();
 
         List<String> orderBy = new ArrayList<>();
         String sortField = (String) context.get("sortField");
@@ -1601,6 +1621,7 @@ public class PartyServices {
 
         // check for a partyId
         if (UtilValidate.isNotEmpty(partyId)) {
+            searchedValues.put("partyId", partyId);
             andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("partyId"), EntityOperator.LIKE,
                     EntityFunction.upper("%" + partyId + "%")));
         }
@@ -1627,6 +1648,7 @@ public class PartyServices {
 
         // filter on user login
         if (UtilValidate.isNotEmpty(userLoginId)) {
+            searchedValues.put("userLoginId", userLoginId);
 
             // modify the dynamic view
             dynamicView.addMemberEntity("UL", "UserLogin");
@@ -1645,6 +1667,7 @@ public class PartyServices {
 
         // filter on groupName
         if (UtilValidate.isNotEmpty(groupName)) {
+            searchedValues.put("groupName", groupName);
 
             // modify the dynamic view
             dynamicView.addMemberEntity("PG", "PartyGroup");
@@ -1676,12 +1699,14 @@ public class PartyServices {
 
         // filter on firstName
         if (UtilValidate.isNotEmpty(firstName)) {
+            searchedValues.put("firstName", firstName);
             andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("firstName"), EntityOperator.LIKE,
                     EntityFunction.upper("%" + firstName + "%")));
         }
 
         // filter on lastName
         if (UtilValidate.isNotEmpty(lastName)) {
+            searchedValues.put("lastName", lastName);
             andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("lastName"), EntityOperator.LIKE,
                     EntityFunction.upper("%" + lastName + "%")));
         }
@@ -1734,6 +1759,7 @@ public class PartyServices {
             fieldsToSelect.add("idValue");
             fieldsToSelect.add("partyIdentificationTypeId");
             if (UtilValidate.isNotEmpty(idValue)) {
+                searchedValues.put("idValue", idValue);
                 andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("idValue"), EntityOperator.LIKE,
                         EntityFunction.upper("%".concat(idValue).concat("%"))));
             }
@@ -1805,6 +1831,7 @@ public class PartyServices {
             // filter on address1
             String address1 = (String) context.get("address1");
             if (UtilValidate.isNotEmpty(address1)) {
+                searchedValues.put("address1", address1);
                 andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("address1"), EntityOperator.LIKE,
                         EntityFunction.upper("%" + address1 + "%")));
             }
@@ -1812,6 +1839,7 @@ public class PartyServices {
             // filter on address2
             String address2 = (String) context.get("address2");
             if (UtilValidate.isNotEmpty(address2)) {
+                searchedValues.put("address2", address2);
                 andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("address2"), EntityOperator.LIKE,
                         EntityFunction.upper("%" + address2 + "%")));
             }
@@ -1819,6 +1847,7 @@ public class PartyServices {
             // filter on city
             String city = (String) context.get("city");
             if (UtilValidate.isNotEmpty(city)) {
+                searchedValues.put("city", city);
                 andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("city"), EntityOperator.LIKE,
                         EntityFunction.upper("%" + city + "%")));
             }
@@ -1831,6 +1860,7 @@ public class PartyServices {
             // filter on postal code
             String postalCode = (String) context.get("postalCode");
             if (UtilValidate.isNotEmpty(postalCode)) {
+                searchedValues.put("postalCode", postalCode);
                 andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("postalCode"), EntityOperator.LIKE,
                         EntityFunction.upper("%" + postalCode + "%")));
             }
@@ -1855,6 +1885,7 @@ public class PartyServices {
             // filter on infoString
             String infoString = (String) context.get("infoString");
             if (UtilValidate.isNotEmpty(infoString)) {
+                searchedValues.put("infoString", infoString);
                 andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("infoString"), EntityOperator.LIKE,
                         EntityFunction.upper("%" + infoString + "%")));
                 fieldsToSelect.add("infoString");
@@ -1881,6 +1912,7 @@ public class PartyServices {
             // filter on countryCode
             String countryCode = (String) context.get("countryCode");
             if (UtilValidate.isNotEmpty(countryCode)) {
+                searchedValues.put("countryCode", countryCode);
                 andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("countryCode"),
                         EntityOperator.EQUALS, EntityFunction.upper(countryCode)));
             }
@@ -1888,6 +1920,7 @@ public class PartyServices {
             // filter on areaCode
             String areaCode = (String) context.get("areaCode");
             if (UtilValidate.isNotEmpty(areaCode)) {
+                searchedValues.put("areaCode", areaCode);
                 andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("areaCode"),
                         EntityOperator.EQUALS, EntityFunction.upper(areaCode)));
             }
@@ -1895,6 +1928,7 @@ public class PartyServices {
             // filter on contact number
             String contactNumber = (String) context.get("contactNumber");
             if (UtilValidate.isNotEmpty(contactNumber)) {
+                searchedValues.put("contactNumber", contactNumber);
                 andExprs.add(EntityCondition.makeCondition(EntityFunction.upperField("contactNumber"),
                         EntityOperator.EQUALS, EntityFunction.upper(contactNumber)));
             }
@@ -1903,6 +1937,8 @@ public class PartyServices {
         }
         // ---- End of Dynamic View Creation
 
+        addSearchIndexCondition(delegator, searchedValues, andExprs);
+
         // build the main condition, add the extend condition is it present
         if (UtilValidate.isNotEmpty(extCond)) {
             andExprs.add(extCond);
@@ -1939,6 +1975,21 @@ public class PartyServices {
         return result;
     }
 
+    // restricts a party search to the parties found by the search index for the searched texts, when the index is enabled
+    private static void addSearchIndexCondition(Delegator delegator, Map<String, String> searchedValues, List<EntityCondition> andExprs) {
+        if (searchedValues.isEmpty()) {
+            return;
+        }
+        try {
+            Set<String> partyIds = PartySearchServices.findCandidatePartyIds(delegator, searchedValues);
+            if (partyIds != null) {
+                andExprs.add(EntityCondition.makeCondition("partyId", EntityOperator.IN, partyIds));
+            }
+        } catch (GenericEntityException e) {
+            Debug.logWarning(e, "Unable to read the party search index, searching without it", MODULE);
+        }
+    }
+
     /**
      * Changes the association of contact mechs, purposes, notes, orders and attributes from
      * one party to another for the purpose of merging records together. Flags the from party
@@ -2179,6 +2230,14 @@ public class PartyServices {
             }
         }
 
+        // the records moved to the party are changed without entity ECA
+        try {
+            dctx.getDispatcher().runSync("queuePartySearchIndexUpdate", UtilMisc.toMap("partyId", partyIdTo));
+        } catch (GenericServiceException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+
         Map<String, Object> resp = ServiceUtil.returnSuccess();
         resp.put("partyId", partyIdTo);
         return resp;
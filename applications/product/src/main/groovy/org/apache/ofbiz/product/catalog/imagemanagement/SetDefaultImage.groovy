@@ -169,10 +169,11 @@ if (fileType) {
             context.imageUrl = imageUrl
             product.set(fileType + 'ImageUrl', imageUrl)
 
-            // call scaleImageInAllSize
+            // call scaleImageInAllSizeAsync
             if (fileType == 'original') {
                 context.delegator = delegator
-                result = ScaleImage.scaleImageInAllSize(context, filenameToUse, 'main', '0')
+                context.dispatcher = dispatcher
+                result = ScaleImage.scaleImageInAllSizeAsync(context, filenameToUse, 'main', '0')
 
                 if (result.containsKey('responseMessage') && result.get('responseMessage') == 'success') {
                     imgMap = result.get('imageUrlMap')
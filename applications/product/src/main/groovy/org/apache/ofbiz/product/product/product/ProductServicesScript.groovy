@@ -27,6 +27,8 @@ import org.apache.ofbiz.entity.GenericValue
 import org.apache.ofbiz.entity.condition.EntityConditionBuilder
 import org.apache.ofbiz.entity.serialize.XmlSerializer
 import org.apache.ofbiz.product.product.KeywordIndex
+import org.apache.ofbiz.product.product.KeywordIndexQueue
+import org.apache.ofbiz.product.product.ProductSearchIndex
 import org.apache.ofbiz.product.product.ProductWorker
 import org.apache.ofbiz.service.ServiceUtil
 
@@ -322,6 +324,8 @@ Map forceIndexProductKeywords() {
 Map deleteProductKeywords() {
     GenericValue product = from('Product').where(parameters).cache().queryOne()
     product.removeRelated('ProductKeyword')
+    // removeRelated does not trigger the ProductKeyword ECAs
+    ProductSearchIndex.productKeywordsChanged(delegator, product.productId)
     return success()
 }
 
@@ -332,6 +336,11 @@ Map indexProductKeywords() {
     //this service is meant to be called from an entity ECA for entities that include a productId
     //if it is the Product entity itself triggering this action, then a [productInstance] parameter
     //will be passed and we can save a few cycles looking that up
+    if (KeywordIndexQueue.isEnabled(delegator)) {
+        // indexed in the background once the transaction is committed
+        KeywordIndexQueue.productChanged(delegator, parameters.productInstance?.productId ?: parameters.productId)
+        return success()
+    }
     GenericValue productInstance = parameters.productInstance ?: from('Product').where(parameters).queryOne()
     //induce keywords if autoCreateKeywords is empty or Y
     if (!productInstance.autoCreateKeywords || productInstance.autoCreateKeywords == 'Y') {
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.product.test
+
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.product.product.KeywordIndex
+import org.apache.ofbiz.product.product.KeywordIndexQueue
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class KeywordIndexTests extends OFBizTestCase {
+
+    KeywordIndexTests(String name) {
+        super(name)
+    }
+
+    private Set<String> getKeywords(String productId) {
+        return from('ProductKeyword').where('productId', productId, 'keywordTypeId', 'KWT_KEYWORD').queryList()
+                .collect { it.keyword } as Set
+    }
+
+    void testIndexChunkWithContents() {
+        List<GenericValue> products = from('Product').where('productId', 'KWI_TEST_1').queryList()
+        products.addAll(from('Product').where('productId', 'KWI_TEST_2').queryList())
+        delegator.removeByAnd('ProductKeyword', [productId: 'KWI_TEST_1'])
+        delegator.removeByAnd('ProductKeyword', [productId: 'KWI_TEST_2'])
+
+        assert KeywordIndex.indexKeywords(delegator, products, true) == 2
+
+        Set<String> keywords = getKeywords('KWI_TEST_1')
+        assert keywords.containsAll(['kwi_test_1', 'kwitestname', 'kwitestdescription', 'kwitestdescriptionfr'])
+        keywords = getKeywords('KWI_TEST_2')
+        assert keywords.containsAll(['kwi_test_2', 'kwitestother'])
+        assert !keywords.contains('kwitestdescription')
+    }
+
+    void testQueueIndexesChangedProducts() {
+        delegator.removeByAnd('ProductKeyword', [productId: 'KWI_TEST_3'])
+
+        // queued right away without transaction, then indexed in the background
+        KeywordIndexQueue.productChanged(delegator, 'KWI_TEST_3')
+
+        long timeout = System.currentTimeMillis() + 30000
+        while (!getKeywords('KWI_TEST_3').contains('kwitestqueued') && System.currentTimeMillis() < timeout) {
+            Thread.sleep(100)
+        }
+        assert getKeywords('KWI_TEST_3').contains('kwitestqueued')
+    }
+}
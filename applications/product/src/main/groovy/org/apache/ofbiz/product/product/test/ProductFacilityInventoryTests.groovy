@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.product.test
+
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class ProductFacilityInventoryTests extends OFBizTestCase {
+
+    ProductFacilityInventoryTests(String name) {
+        super(name)
+    }
+
+    private String createInventoryItem(String productId) {
+        Map serviceResult = dispatcher.runSync('createInventoryItem', [productId: productId, facilityId: 'WebStoreWarehouse',
+                inventoryItemTypeId: 'NON_SERIAL_INV_ITEM', statusId: 'INV_AVAILABLE', userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+        return serviceResult.inventoryItemId
+    }
+
+    private void receive(String inventoryItemId, BigDecimal quantity) {
+        Map serviceResult = dispatcher.runSync('createInventoryItemDetail', [inventoryItemId: inventoryItemId,
+                availableToPromiseDiff: quantity, quantityOnHandDiff: quantity, accountingQuantityDiff: quantity, userLogin: userLogin])
+        assert ServiceUtil.isSuccess(serviceResult)
+    }
+
+    private GenericValue getTotals(String productId) {
+        return from('ProductFacilityInventory').where(productId: productId, facilityId: 'WebStoreWarehouse').queryOne()
+    }
+
+    void testFirstReceipt() {
+        assert !getTotals('PFI_TEST_1')
+        String inventoryItemId = createInventoryItem('PFI_TEST_1')
+        receive(inventoryItemId, 5)
+
+        GenericValue totals = getTotals('PFI_TEST_1')
+        assert totals
+        assert totals.quantityOnHandTotal == 5
+        assert totals.availableToPromiseTotal == 5
+        assert totals.accountingQuantityTotal == 5
+
+        receive(inventoryItemId, -2)
+        assert getTotals('PFI_TEST_1').quantityOnHandTotal == 3
+    }
+
+    // the first receipts of a product in a facility, in concurrent transactions, all create or lock the same totals
+    void testConcurrentFirstReceipts() {
+        int receipts = 4
+        List<String> inventoryItemIds = (1..receipts).collect { createInventoryItem('PFI_TEST_2') }
+        assert !getTotals('PFI_TEST_2')
+
+        CyclicBarrier barrier = new CyclicBarrier(receipts)
+        ExecutorService executor = Executors.newFixedThreadPool(receipts)
+        try {
+            List<Future> futures = inventoryItemIds.collect { inventoryItemId ->
+                executor.submit {
+                    barrier.await()
+                    receive(inventoryItemId, 1)
+                }
+            }
+            futures.each { it.get() }
+        } finally {
+            executor.shutdown()
+        }
+
+        GenericValue totals = getTotals('PFI_TEST_2')
+        assert totals.quantityOnHandTotal == receipts
+        assert totals.availableToPromiseTotal == receipts
+        assert totals.accountingQuantityTotal == receipts
+        assert from('ProductFacilityInventory').where(productId: 'PFI_TEST_2').queryCount() == 1
+    }
+
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.product.test
+
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.entity.condition.EntityCondition
+import org.apache.ofbiz.entity.condition.EntityOperator
+import org.apache.ofbiz.entity.util.EntityListIterator
+import org.apache.ofbiz.product.product.ProductSearch
+import org.apache.ofbiz.product.product.ProductSearchIndex
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class ProductSearchIndexTests extends OFBizTestCase {
+
+    ProductSearchIndexTests(String name) {
+        super(name)
+    }
+
+    private ProductSearchIndex loadIndex() {
+        ProductSearchIndex index = new ProductSearchIndex(delegator)
+        try (EntityListIterator eli = from('ProductKeyword')
+                .where(EntityCondition.makeCondition('productId', EntityOperator.LIKE, 'PSI_TEST_%'))
+                .orderBy('productId').queryIterator()) {
+            index.loadProducts(eli)
+        }
+        return index
+    }
+
+    private void reloadProduct(ProductSearchIndex index, String productId) {
+        index.updateProduct(productId, from('ProductKeyword').where('productId', productId).queryList(), null)
+    }
+
+    // the products found by the SQL search, sorted by relevancy
+    private List<String> sqlSearch(List<String> keywords, boolean isAnd, boolean anySuffix = false) {
+        List constraints = isAnd
+                ? keywords.collect { new ProductSearch.KeywordConstraint(it, false, anySuffix, false, true) }
+                : [new ProductSearch.KeywordConstraint(keywords.join(' '), false, anySuffix, false, false)]
+        return ProductSearch.searchProducts(constraints, new ProductSearch.SortKeywordRelevancy(), delegator, null)
+    }
+
+    private static List<String> indexSearch(ProductSearchIndex index, List<String> keywords, boolean isAnd) {
+        return index.search(isAnd ? keywords as Set : [] as Set, isAnd ? [] : [keywords as Set], [], null, [], [] as Set,
+                [] as Set, [] as Set)
+    }
+
+    void testSearchLoadedIndex() {
+        ProductSearchIndex index = loadIndex()
+
+        assert indexSearch(index, ['psiapple'], true) == ['PSI_TEST_1', 'PSI_TEST_2']
+        assert indexSearch(index, ['psiapple'], true) == sqlSearch(['psiapple'], true)
+        assert indexSearch(index, ['psiapple', 'psibanana'], true) == ['PSI_TEST_1']
+        assert indexSearch(index, ['psiapple', 'psibanana'], true) == sqlSearch(['psiapple', 'psibanana'], true)
+        assert indexSearch(index, ['psiapple', 'psicherry'], false) == ['PSI_TEST_3', 'PSI_TEST_1', 'PSI_TEST_2']
+        assert indexSearch(index, ['psiapple', 'psicherry'], false) == sqlSearch(['psiapple', 'psicherry'], false)
+        assert indexSearch(index, ['psiap%'], true) == ['PSI_TEST_1', 'PSI_TEST_2', 'PSI_TEST_4']
+        assert indexSearch(index, ['psiap%'], true) == sqlSearch(['psiap'], true, true)
+        assert indexSearch(index, ['psiunknown'], true).isEmpty()
+        assert sqlSearch(['psiunknown'], true).isEmpty()
+    }
+
+    void testUpdateAndRemoveProducts() {
+        ProductSearchIndex index = loadIndex()
+        assert indexSearch(index, ['psiupdated'], true) == ['PSI_TEST_6', 'PSI_TEST_5']
+
+        GenericValue keyword = from('ProductKeyword').where('productId', 'PSI_TEST_5', 'keyword', 'psiupdated',
+                'keywordTypeId', 'KWT_KEYWORD').queryOne()
+        keyword.relevancyWeight = 9L
+        keyword.store()
+        delegator.create('ProductKeyword', [productId: 'PSI_TEST_5', keyword: 'psiadded', keywordTypeId: 'KWT_KEYWORD',
+                relevancyWeight: 1L, statusId: 'KW_APPROVED'])
+        reloadProduct(index, 'PSI_TEST_5')
+
+        assert indexSearch(index, ['psiupdated'], true) == ['PSI_TEST_5', 'PSI_TEST_6']
+        assert indexSearch(index, ['psiupdated'], true) == sqlSearch(['psiupdated'], true)
+        assert indexSearch(index, ['psiadded'], true) == sqlSearch(['psiadded'], true)
+
+        delegator.removeByAnd('ProductKeyword', [productId: 'PSI_TEST_6'])
+        reloadProduct(index, 'PSI_TEST_6')
+
+        assert indexSearch(index, ['psiupdated'], true) == ['PSI_TEST_5']
+        assert indexSearch(index, ['psiupdated'], true) == sqlSearch(['psiupdated'], true)
+        assert indexSearch(index, ['psiremoved'], true).isEmpty()
+        assert sqlSearch(['psiremoved'], true).isEmpty()
+    }
+
+    void testBuildPostingsLikeIncrementalUpdates() {
+        Random random = new Random(42)
+        def builder = new ProductSearchIndex.PostingBuilder()
+        def posting = ProductSearchIndex.Posting.EMPTY
+        int docId = 0
+        for (int i = 0; i < 1000; i++) {
+            docId += 1 + random.nextInt(300)
+            long weight = random.nextInt(2000) - 1000
+            builder.add(docId, weight)
+            posting = posting.with(docId, weight)
+        }
+        assert postingEntries(builder.build()) == postingEntries(posting)
+        assert builder.build().size() == 1000
+    }
+
+    private static List<List<Long>> postingEntries(def posting) {
+        List<List<Long>> entries = []
+        posting.forEach({ int docId, long weight -> entries << [(long) docId, weight] } as ProductSearchIndex.PostingVisitor)
+        return entries
+    }
+}
@@ -22,14 +22,19 @@ import java.awt.image.BufferedImage;
 import java.awt.image.ImagingOpException;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 
 import org.apache.commons.imaging.ImageReadException;
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.location.FlexibleLocation;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilGenerics;
@@ -40,6 +45,8 @@ import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
 import org.apache.ofbiz.common.image.ImageTransform;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
 import org.apache.ofbiz.service.ModelService;
 import org.apache.ofbiz.service.ServiceUtil;
 import org.jdom2.JDOMException;
@@ -83,14 +90,9 @@ public class ScaleImage {
 
         int index;
         Map<String, Map<String, String>> imgPropertyMap = new HashMap<>();
-        BufferedImage bufImg;
-        BufferedImage bufNewImg;
-        double imgHeight;
-        double imgWidth;
         Map<String, String> imgUrlMap = new HashMap<>();
         Map<String, Object> resultXMLMap = new HashMap<>();
         Map<String, Object> resultBufImgMap = new HashMap<>();
-        Map<String, Object> resultScaleImgMap = new HashMap<>();
         Map<String, Object> result = new HashMap<>();
 
         /* ImageProperties.xml */
@@ -145,121 +147,149 @@ public class ScaleImage {
             return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "ProductImageViewType", UtilMisc.toMap("viewType", viewType), locale));
         }
 
-        /* get original BUFFERED IMAGE */
-        resultBufImgMap.putAll(ImageTransform.getBufferedImage(imageServerPath + "/" + fileLocation + "." + imgExtension, locale));
-
-        if (resultBufImgMap.containsKey("responseMessage") && "success".equals(resultBufImgMap.get("responseMessage"))) {
-            bufImg = (BufferedImage) resultBufImgMap.get("bufferedImage");
+        String originalFilePath = imageServerPath + "/" + fileLocation + "." + imgExtension;
+        /* get original BUFFERED IMAGE, subsampled for the largest size type */
+        resultBufImgMap.putAll(ImageTransform.getBufferedImage(originalFilePath, imgPropertyMap, locale));
+        if (!resultBufImgMap.containsKey("responseMessage") || !"success".equals(resultBufImgMap.get("responseMessage"))) {
+            String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.unable_to_scale_original_image", locale) + " : " + filenameToUse;
+            Debug.logError(errMsg, MODULE);
+            return ServiceUtil.returnError(errMsg);
+        }
+        BufferedImage bufImg = (BufferedImage) resultBufImgMap.get("bufferedImage");
+
+        // get Dimensions of the original image
+        double imgHeight = (Integer) resultBufImgMap.get("originalHeight");
+        double imgWidth = (Integer) resultBufImgMap.get("originalWidth");
+        if (imgHeight == 0.0 || imgWidth == 0.0) {
+            String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.one_current_image_dimension_is_null", locale) + " : imgHeight = "
+                    + imgHeight + " ; imgWidth = " + imgWidth;
+            Debug.logError(errMsg, MODULE);
+            result.put(ModelService.ERROR_MESSAGE, errMsg);
+            return result;
+        }
 
-            // get Dimensions
-            imgHeight = bufImg.getHeight();
-            imgWidth = bufImg.getWidth();
-            if (imgHeight == 0.0 || imgWidth == 0.0) {
-                String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.one_current_image_dimension_is_null", locale) + " : imgHeight = "
-                        + imgHeight + " ; imgWidth = " + imgWidth;
-                Debug.logError(errMsg, MODULE);
-                result.put(ModelService.ERROR_MESSAGE, errMsg);
-                return result;
+        /* Prepare the directory of the image of each size from ImageProperties.xml */
+        Map<String, String> newFileLocations = new LinkedHashMap<>();
+        Map<String, String> newFilePaths = new LinkedHashMap<>();
+        for (String sizeType : imgPropertyMap.keySet()) {
+            // Build full path for the new scaled image
+            String newFileLocation = null;
+            if (viewType.toLowerCase(Locale.getDefault()).contains("main")) {
+                newFileLocation = filenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "type", sizeType));
+            } else if (viewType.toLowerCase(Locale.getDefault()).contains("additional")) {
+                newFileLocation = filenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "viewtype",
+                        viewType, "sizetype", sizeType));
             }
-
-            /* Scale image for each size from ImageProperties.xml */
-            for (Map.Entry<String, Map<String, String>> entry : imgPropertyMap.entrySet()) {
-                String sizeType = entry.getKey();
-
-                // Scale
-                resultScaleImgMap.putAll(ImageTransform.scaleImage(bufImg, imgHeight, imgWidth, imgPropertyMap, sizeType, locale));
-
-                /* Write the new image file */
-                if (resultScaleImgMap.containsKey("responseMessage") && "success".equals(resultScaleImgMap.get("responseMessage"))) {
-                    bufNewImg = (BufferedImage) resultScaleImgMap.get("bufferedImage");
-
-                    // Build full path for the new scaled image
-                    String newFileLocation = null;
-                    filenameToUse = sizeType + filenameToUse.substring(filenameToUse.lastIndexOf('.'));
-                    if (viewType.toLowerCase(Locale.getDefault()).contains("main")) {
-                        newFileLocation = filenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "type", sizeType));
-                    } else if (viewType.toLowerCase(Locale.getDefault()).contains("additional")) {
-                        newFileLocation = filenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "viewtype",
-                                viewType, "sizetype", sizeType));
-                    }
-                    String newFilePathPrefix = "";
-                    if (newFileLocation != null && newFileLocation.lastIndexOf('/') != -1) {
-                        newFilePathPrefix = newFileLocation.substring(0, newFileLocation.lastIndexOf('/') + 1);
-                        // adding 1 to include the trailing slash
+            String newFilePathPrefix = "";
+            if (newFileLocation != null && newFileLocation.lastIndexOf('/') != -1) {
+                newFilePathPrefix = newFileLocation.substring(0, newFileLocation.lastIndexOf('/') + 1);
+                // adding 1 to include the trailing slash
+            }
+            // Directory
+            String targetDirectory = imageServerPath + "/" + newFilePathPrefix;
+            try {
+                // Create the new directory
+                File targetDir = new File(targetDirectory);
+                if (!targetDir.exists()) {
+                    boolean created = targetDir.mkdirs();
+                    if (!created) {
+                        String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.unable_to_create_target_directory", locale)
+                                + " - " + targetDirectory;
+                        Debug.logFatal(errMsg, MODULE);
+                        return ServiceUtil.returnError(errMsg);
                     }
-                    // Directory
-                    String targetDirectory = imageServerPath + "/" + newFilePathPrefix;
+                // Delete existing image files
+                // Images aren't ordered by productId (${location}/${viewtype}/${sizetype}/${id}) !!! BE CAREFUL !!!
+                } else if (newFileLocation.endsWith("/" + id)) {
                     try {
-                        // Create the new directory
-                        File targetDir = new File(targetDirectory);
-                        if (!targetDir.exists()) {
-                            boolean created = targetDir.mkdirs();
-                            if (!created) {
-                                String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.unable_to_create_target_directory", locale)
-                                        + " - " + targetDirectory;
-                                Debug.logFatal(errMsg, MODULE);
-                                return ServiceUtil.returnError(errMsg);
-                            }
-                        // Delete existing image files
-                        // Images aren't ordered by productId (${location}/${viewtype}/${sizetype}/${id}) !!! BE CAREFUL !!!
-                        } else if (newFileLocation.endsWith("/" + id)) {
-                            try {
-                                File[] files = targetDir.listFiles();
-                                for (File file : files) {
-                                    if (file.isFile() && file.getName().startsWith(id)) {
-                                        if (!file.delete()) {
-                                            Debug.logError("File :" + file.getName() + ", couldn't be deleted", MODULE);
-                                        }
-                                    }
+                        File[] files = targetDir.listFiles();
+                        for (File file : files) {
+                            if (file.isFile() && file.getName().startsWith(id)) {
+                                if (!file.delete()) {
+                                    Debug.logError("File :" + file.getName() + ", couldn't be deleted", MODULE);
                                 }
-                            } catch (SecurityException e) {
-                                Debug.logError(e, MODULE);
                             }
                         }
-                    } catch (NullPointerException e) {
+                    } catch (SecurityException e) {
                         Debug.logError(e, MODULE);
                     }
+                }
+            } catch (NullPointerException e) {
+                Debug.logError(e, MODULE);
+            }
+            newFileLocations.put(sizeType, newFileLocation);
+            newFilePaths.put(sizeType, imageServerPath + "/" + newFileLocation + "." + imgExtension);
+        }
 
-                    // write new image
-                    try {
-                        String fileToCheck = imageServerPath + "/" + newFileLocation + "." + imgExtension;
-                        ImageIO.write(bufNewImg, imgExtension, new File(fileToCheck));
-                        // Check if a webshell is not uploaded
-                        if (!org.apache.ofbiz.security.SecuredUpload.isValidFile(fileToCheck, "Image", delegator)) {
-                            String errorMessage = UtilProperties.getMessage("SecurityUiLabels", "SupportedImageFormats", locale);
-                            return ServiceUtil.returnError(errorMessage);
-                        }
-                    } catch (IllegalArgumentException e) {
-                        String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.one_parameter_is_null", locale) + e.toString();
-                        Debug.logError(errMsg, MODULE);
-                        result.put(ModelService.ERROR_MESSAGE, errMsg);
-                        return result;
-                    } catch (IOException | ImageReadException e) {
-                        String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.error_occurs_during_writing", locale) + e.toString();
-                        Debug.logError(errMsg, MODULE);
-                        result.put(ModelService.ERROR_MESSAGE, errMsg);
-                        return result;
-                    }
-                    // Save each Url
-                    if (SIZE_TYPE_LIST.contains(sizeType)) {
-                        String imageUrl = imageUrlPrefix + "/" + newFileLocation + "." + imgExtension;
-                        imgUrlMap.put(sizeType, imageUrl);
-                    }
-
-                } // scaleImgMap
-            } // Loop over sizeType
+        /* Scale and write the image of each size in parallel */
+        List<String> writtenSizeTypes = new ArrayList<>();
+        Map<String, Object> writeResult = writeScaledImages(bufImg, imgHeight, imgWidth, imgPropertyMap, newFilePaths, imgExtension,
+                writtenSizeTypes, delegator, locale);
+        if (writeResult != null) {
+            return writeResult;
+        }
+        // Save each Url
+        for (String sizeType : writtenSizeTypes) {
+            if (SIZE_TYPE_LIST.contains(sizeType)) {
+                String imageUrl = imageUrlPrefix + "/" + newFileLocations.get(sizeType) + "." + imgExtension;
+                imgUrlMap.put(sizeType, imageUrl);
+            }
+        }
 
-            result.put("responseMessage", "success");
-            result.put("imageUrlMap", imgUrlMap);
-            result.put("original", resultBufImgMap);
-            return result;
+        result.put("responseMessage", "success");
+        result.put("imageUrlMap", imgUrlMap);
+        result.put("original", resultBufImgMap);
+        return result;
+    }
 
-        } else {
-            String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.unable_to_scale_original_image", locale) + " : " + filenameToUse;
-            Debug.logError(errMsg, MODULE);
-            result.put(ModelService.ERROR_MESSAGE, errMsg);
-            return ServiceUtil.returnError(errMsg);
+    /**
+     * scaleImageInAllSizeAsync
+     * <p>
+     * Schedule the generateProductImageDerivatives service to scale the original image into all different size Types, so
+     * that the upload doesn't wait for the scaling. The URLs of the size types are returned null, to be unset until the
+     * service wrote the images and stored their URLs. The images are scaled during the call when the catalog property
+     * image.derivatives.async is N or when there is no dispatcher in the context.
+     * @param   context                     Context
+     * @param   filenameToUse               Filename of future image files
+     * @param   viewType                    "Main" view or "additional" view
+     * @param   viewNumber                  If it's the main view, viewNumber = "0"
+     * @return                              URL images for all different size types
+     * @throws  IllegalArgumentException    Any parameter is null
+     * @throws  ImagingOpException          The transform is non-invertible
+     * @throws  IOException                 Error prevents the document from being fully parsed
+     * @throws  JDOMException               Errors occur in parsing
+     */
+    public static Map<String, Object> scaleImageInAllSizeAsync(Map<String, ? extends Object> context, String filenameToUse,
+            String viewType, String viewNumber) throws IllegalArgumentException, ImagingOpException, IOException, JDOMException {
+        Delegator delegator = (Delegator) context.get("delegator");
+        LocalDispatcher dispatcher = (LocalDispatcher) context.get("dispatcher");
+        if (dispatcher == null || !"Y".equals(EntityUtilProperties.getPropertyValue("catalog", "image.derivatives.async", "Y", delegator))) {
+            return scaleImageInAllSize(context, filenameToUse, viewType, viewNumber);
         }
+        Map<String, Object> serviceContext = UtilMisc.toMap("productId", context.get("productId"), "filenameToUse", filenameToUse,
+                "viewType", viewType, "viewNumber", viewNumber, "userLogin", context.get("userLogin"));
+        if (viewType.toLowerCase(Locale.getDefault()).contains("additional")) {
+            // the images of an additional view are stored as contents, created by the service like by the upload
+            serviceContext.put("contentId", context.get("contentId"));
+            serviceContext.put("fromDate", context.get("fromDate"));
+            serviceContext.put("thruDate", context.get("thruDate"));
+            serviceContext.put("dataResourceName", context.get("_uploadedFile_fileName"));
+        }
+        try {
+            dispatcher.runAsync("generateProductImageDerivatives", serviceContext, true);
+        } catch (GenericServiceException e) {
+            Debug.logWarning(e, "Unable to schedule the scaling of the images of product " + context.get("productId")
+                    + ", scaling them now", MODULE);
+            return scaleImageInAllSize(context, filenameToUse, viewType, viewNumber);
+        }
+        Map<String, String> imgUrlMap = new HashMap<>();
+        for (String sizeType : SIZE_TYPE_LIST) {
+            imgUrlMap.put(sizeType, null);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("responseMessage", "success");
+        result.put("imageUrlMap", imgUrlMap);
+        return result;
     }
 
     public static Map<String, Object> scaleImageManageInAllSize(Map<String, ? extends Object> context, String filenameToUse,
@@ -278,13 +308,11 @@ public class ScaleImage {
         int index;
         Map<String, Map<String, String>> imgPropertyMap = new HashMap<>();
         BufferedImage bufImg;
-        BufferedImage bufNewImg;
         double imgHeight;
         double imgWidth;
         Map<String, String> imgUrlMap = new HashMap<>();
         Map<String, Object> resultXMLMap = new HashMap<>();
         Map<String, Object> resultBufImgMap = new HashMap<>();
-        Map<String, Object> resultScaleImgMap = new HashMap<>();
         Map<String, Object> result = new HashMap<>();
 
         /* ImageProperties.xml */
@@ -336,20 +364,24 @@ public class ScaleImage {
             filePathPrefix = fileLocation.substring(0, fileLocation.lastIndexOf('/') + 1); // adding 1 to include the trailing slash
         }
 
+        // the original image is subsampled for the largest of the requested size types only
+        Map<String, Map<String, String>> sizeTypePropertyMap = new HashMap<>(imgPropertyMap);
+        sizeTypePropertyMap.keySet().retainAll(sizeTypeList);
         if (context.get("contentId") != null) {
             resultBufImgMap.putAll(ImageTransform.getBufferedImage(imageServerPath + "/" + context.get("productId") + "/"
-                    + context.get("clientFileName"), locale));
+                    + context.get("clientFileName"), sizeTypePropertyMap, locale));
         } else {
             /* get original BUFFERED IMAGE */
-            resultBufImgMap.putAll(ImageTransform.getBufferedImage(imageServerPath + "/" + filePathPrefix + filenameToUse, locale));
+            resultBufImgMap.putAll(ImageTransform.getBufferedImage(imageServerPath + "/" + filePathPrefix + filenameToUse, sizeTypePropertyMap,
+                    locale));
         }
 
         if (resultBufImgMap.containsKey("responseMessage") && "success".equals(resultBufImgMap.get("responseMessage"))) {
             bufImg = (BufferedImage) resultBufImgMap.get("bufferedImage");
 
-            // get Dimensions
-            imgHeight = bufImg.getHeight();
-            imgWidth = bufImg.getWidth();
+            // get Dimensions of the original image
+            imgHeight = (Integer) resultBufImgMap.get("originalHeight");
+            imgWidth = (Integer) resultBufImgMap.get("originalWidth");
             if (imgHeight == 0.0 || imgWidth == 0.0) {
                 String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.one_current_image_dimension_is_null", locale)
                         + " : imgHeight = " + imgHeight + " ; imgWidth = " + imgWidth;
@@ -366,66 +398,50 @@ public class ScaleImage {
                 addFilenameExpander = FlexibleStringExpander.getInstance(addFilenameFormat);
             }
 
-            /* scale Image for each Size Type */
+            /* prepare the directory of the image of each Size Type */
+            Map<String, String> newFilePathPrefixes = new LinkedHashMap<>();
+            Map<String, String> newFilePaths = new LinkedHashMap<>();
             for (String sizeType : sizeTypeList) {
-                resultScaleImgMap.putAll(ImageTransform.scaleImage(bufImg, imgHeight, imgWidth, imgPropertyMap, sizeType, locale));
-
-                if (resultScaleImgMap.containsKey("responseMessage") && "success".equals(resultScaleImgMap.get("responseMessage"))) {
-                    bufNewImg = (BufferedImage) resultScaleImgMap.get("bufferedImage");
-
-                    // write the New Scaled Image
-                    String newFileLocation = null;
-                    if (viewType.toLowerCase(Locale.getDefault()).contains("main")) {
-                        newFileLocation = mainFilenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "type", sizeType));
-                    } else if (viewType.toLowerCase(Locale.getDefault()).contains("additional")) {
-                        newFileLocation = addFilenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id,
-                                "viewtype", viewType, "sizetype", sizeType));
-                    }
-                    String newFilePathPrefix = "";
-                    if (newFileLocation != null && newFileLocation.lastIndexOf('/') != -1) {
-                        newFilePathPrefix = newFileLocation.substring(0, newFileLocation.lastIndexOf('/') + 1);
-                        // adding 1 to include the trailing slash
-                    }
-
-                    String targetDirectory = imageServerPath + "/" + newFilePathPrefix;
-                    File targetDir = new File(targetDirectory);
-                    if (!targetDir.exists()) {
-                        boolean created = targetDir.mkdirs();
-                        if (!created) {
-                            String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.unable_to_create_target_directory", locale)
-                                    + " - " + targetDirectory;
-                            Debug.logFatal(errMsg, MODULE);
-                            return ServiceUtil.returnError(errMsg);
-                        }
+                String newFileLocation = null;
+                if (viewType.toLowerCase(Locale.getDefault()).contains("main")) {
+                    newFileLocation = mainFilenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id, "type", sizeType));
+                } else if (viewType.toLowerCase(Locale.getDefault()).contains("additional")) {
+                    newFileLocation = addFilenameExpander.expandString(UtilMisc.toMap("location", "products", "id", id,
+                            "viewtype", viewType, "sizetype", sizeType));
+                }
+                String newFilePathPrefix = "";
+                if (newFileLocation != null && newFileLocation.lastIndexOf('/') != -1) {
+                    newFilePathPrefix = newFileLocation.substring(0, newFileLocation.lastIndexOf('/') + 1);
+                    // adding 1 to include the trailing slash
+                }
+
+                String targetDirectory = imageServerPath + "/" + newFilePathPrefix;
+                File targetDir = new File(targetDirectory);
+                if (!targetDir.exists()) {
+                    boolean created = targetDir.mkdirs();
+                    if (!created) {
+                        String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.unable_to_create_target_directory", locale)
+                                + " - " + targetDirectory;
+                        Debug.logFatal(errMsg, MODULE);
+                        return ServiceUtil.returnError(errMsg);
                     }
+                }
+                newFilePathPrefixes.put(sizeType, newFilePathPrefix);
+                newFilePaths.put(sizeType, imageServerPath + "/" + newFileLocation + "." + imgExtension);
+            }
 
-                    // write new image
-                    try {
-                        String fileToCheck = imageServerPath + "/" + newFileLocation + "." + imgExtension;
-                        ImageIO.write(bufNewImg, imgExtension, new File(fileToCheck));
-                        // Check if a webshell is not uploaded
-                        if (!org.apache.ofbiz.security.SecuredUpload.isValidFile(fileToCheck, "Image", delegator)) {
-                            String errorMessage = UtilProperties.getMessage("SecurityUiLabels", "SupportedImageFormats", locale);
-                            return ServiceUtil.returnError(errorMessage);
-                        }
-                    } catch (IllegalArgumentException e) {
-                        String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.one_parameter_is_null", locale) + e.toString();
-                        Debug.logError(errMsg, MODULE);
-                        result.put(ModelService.ERROR_MESSAGE, errMsg);
-                        return result;
-                    } catch (IOException | ImageReadException e) {
-                        String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.error_occurs_during_writing", locale) + e.toString();
-                        Debug.logError(errMsg, MODULE);
-                        result.put(ModelService.ERROR_MESSAGE, errMsg);
-                        return result;
-                    }
-
-                    /* write Return Result */
-                    String imageUrl = imageUrlPrefix + "/" + newFilePathPrefix + filenameToUse;
-                    imgUrlMap.put(sizeType, imageUrl);
-
-                } // scaleImgMap
-            } // sizeIter
+            /* scale and write the image of each Size Type in parallel */
+            List<String> writtenSizeTypes = new ArrayList<>();
+            Map<String, Object> writeResult = writeScaledImages(bufImg, imgHeight, imgWidth, imgPropertyMap, newFilePaths, imgExtension,
+                    writtenSizeTypes, delegator, locale);
+            if (writeResult != null) {
+                return writeResult;
+            }
+            /* write Return Result */
+            for (String sizeType : writtenSizeTypes) {
+                String imageUrl = imageUrlPrefix + "/" + newFilePathPrefixes.get(sizeType) + filenameToUse;
+                imgUrlMap.put(sizeType, imageUrl);
+            }
 
             result.put("responseMessage", "success");
             result.put("imageUrlMap", imgUrlMap);
@@ -438,4 +454,81 @@ public class ScaleImage {
         result.put(ModelService.ERROR_MESSAGE, errMsg);
         return ServiceUtil.returnError(errMsg);
     }
+
+    /**
+     * Scales and writes the image of each size type in parallel, on the fork-join pool bounded by the number of processors.
+     * @param bufImg the original image, possibly subsampled
+     * @param imgHeight the height of the original image
+     * @param imgWidth the width of the original image
+     * @param imgPropertyMap the dimensions by size type
+     * @param newFilePaths the path of the file to write by size type
+     * @param imgExtension the format of the files to write
+     * @param writtenSizeTypes filled with the size types written, in the order of newFilePaths
+     * @return the error of the first size type which failed, null if none failed
+     */
+    private static Map<String, Object> writeScaledImages(BufferedImage bufImg, double imgHeight, double imgWidth,
+            Map<String, Map<String, String>> imgPropertyMap, Map<String, String> newFilePaths, String imgExtension,
+            List<String> writtenSizeTypes, Delegator delegator, Locale locale) {
+        List<Future<Map<String, Object>>> futures = new ArrayList<>(newFilePaths.size());
+        for (Map.Entry<String, String> entry : newFilePaths.entrySet()) {
+            futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(() -> writeScaledImage(bufImg, imgHeight, imgWidth, imgPropertyMap,
+                    entry.getKey(), entry.getValue(), imgExtension, delegator, locale)));
+        }
+        Map<String, Object> error = null;
+        int i = 0;
+        for (String sizeType : newFilePaths.keySet()) {
+            Map<String, Object> writeResult;
+            try {
+                writeResult = futures.get(i++).get();
+            } catch (ExecutionException | InterruptedException e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.error_occurs_during_writing", locale) + e.toString();
+                Debug.logError(e, errMsg, MODULE);
+                writeResult = UtilMisc.toMap(ModelService.ERROR_MESSAGE, errMsg);
+            }
+            // all the tasks are waited for, so that no file is still written when the error is returned
+            if (writeResult == null) {
+                continue;
+            } else if ("success".equals(writeResult.get("responseMessage"))) {
+                writtenSizeTypes.add(sizeType);
+            } else if (error == null) {
+                error = writeResult;
+            }
+        }
+        return error;
+    }
+
+    // returns null when the size type can't be scaled, as the image of such a size type has never been written
+    private static Map<String, Object> writeScaledImage(BufferedImage bufImg, double imgHeight, double imgWidth,
+            Map<String, Map<String, String>> imgPropertyMap, String sizeType, String fileToCheck, String imgExtension,
+            Delegator delegator, Locale locale) {
+        Map<String, Object> resultScaleImgMap = ImageTransform.scaleImage(bufImg, imgHeight, imgWidth, imgPropertyMap, sizeType, locale);
+        if (!"success".equals(resultScaleImgMap.get("responseMessage"))) {
+            return null;
+        }
+        BufferedImage bufNewImg = (BufferedImage) resultScaleImgMap.get("bufferedImage");
+        Map<String, Object> result = new HashMap<>();
+        try {
+            ImageIO.write(bufNewImg, imgExtension, new File(fileToCheck));
+            // Check if a webshell is not uploaded
+            if (!org.apache.ofbiz.security.SecuredUpload.isValidFile(fileToCheck, "Image", delegator)) {
+                String errorMessage = UtilProperties.getMessage("SecurityUiLabels", "SupportedImageFormats", locale);
+                return ServiceUtil.returnError(errorMessage);
+            }
+        } catch (IllegalArgumentException e) {
+            String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.one_parameter_is_null", locale) + e.toString();
+            Debug.logError(errMsg, MODULE);
+            result.put(ModelService.ERROR_MESSAGE, errMsg);
+            return result;
+        } catch (IOException | ImageReadException e) {
+            String errMsg = UtilProperties.getMessage(RESOURCE, "ScaleImage.error_occurs_during_writing", locale) + e.toString();
+            Debug.logError(errMsg, MODULE);
+            result.put(ModelService.ERROR_MESSAGE, errMsg);
+            return result;
+        }
+        result.put("responseMessage", "success");
+        return result;
+    }
 }
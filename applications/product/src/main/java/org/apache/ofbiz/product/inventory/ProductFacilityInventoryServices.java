@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.inventory;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceUtil;
+
+/**
+ * Maintains the ProductFacilityInventory records, the quantity on hand, available to promise and accounting
+ * quantity totals of the available inventory items of a product in a facility.
+ * <p>The totals are updated in the transaction changing the InventoryItem, from the entity ECAs triggered
+ * before the InventoryItem is written: the difference between the counted quantities of the stored item
+ * and the ones of the new version is added to the totals. The items counted are the ones counted by the
+ * <code>getProductInventoryAvailable</code> service when no statusId is passed.</p>
+ * <p>The items without facility are counted with the <code>_NA_</code> facilityId.</p>
+ */
+public class ProductFacilityInventoryServices {
+
+    private static final String MODULE = ProductFacilityInventoryServices.class.getName();
+    private static final String NO_FACILITY_ID = "_NA_";
+    private static final String[] TOTAL_FIELDS = {"quantityOnHandTotal", "availableToPromiseTotal", "accountingQuantityTotal"};
+
+    /**
+     * Updates the product facility totals from an InventoryItem about to be created or stored
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> updateProductFacilityInventoryFromItem(DispatchContext dctx, Map<String, ? extends Object> context) {
+        GenericValue inventoryItem = (GenericValue) context.get("inventoryItem");
+        return updateTotals(dctx.getDelegator(), inventoryItem.getString("inventoryItemId"), inventoryItem);
+    }
+
+    /**
+     * Updates the product facility totals from an InventoryItem about to be removed
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> removeProductFacilityInventoryItem(DispatchContext dctx, Map<String, ? extends Object> context) {
+        GenericValue inventoryItem = (GenericValue) context.get("inventoryItem");
+        return updateTotals(dctx.getDelegator(), inventoryItem.getString("inventoryItemId"), null);
+    }
+
+    private static Map<String, Object> updateTotals(Delegator delegator, String inventoryItemId, GenericValue newItem) {
+        try {
+            GenericValue oldItem = EntityQuery.use(delegator).from("InventoryItem").where("inventoryItemId", inventoryItemId).queryOne();
+            BigDecimal[] oldTotals = getCountedTotals(oldItem);
+            BigDecimal[] newTotals = getCountedTotals(newItem);
+            if (oldItem != null && newItem != null && Objects.equals(oldItem.get("productId"), newItem.get("productId"))
+                    && Objects.equals(oldItem.get("facilityId"), newItem.get("facilityId"))) {
+                for (int i = 0; i < newTotals.length; i++) {
+                    newTotals[i] = newTotals[i].subtract(oldTotals[i]);
+                }
+                addToTotals(delegator, newItem.getString("productId"), newItem.getString("facilityId"), newTotals);
+            } else {
+                if (oldItem != null) {
+                    for (int i = 0; i < oldTotals.length; i++) {
+                        oldTotals[i] = oldTotals[i].negate();
+                    }
+                    addToTotals(delegator, oldItem.getString("productId"), oldItem.getString("facilityId"), oldTotals);
+                }
+                if (newItem != null) {
+                    addToTotals(delegator, newItem.getString("productId"), newItem.getString("facilityId"), newTotals);
+                }
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error updating the product facility inventory totals for item " + inventoryItemId, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /** Is the item counted in the totals, see the getProductInventoryAvailable service when no statusId is passed */
+    private static boolean isCounted(GenericValue inventoryItem) {
+        String statusId = inventoryItem.getString("statusId");
+        return statusId == null || "INV_AVAILABLE".equals(statusId) || "INV_NS_RETURNED".equals(statusId)
+                || "SERIALIZED_INV_ITEM".equals(inventoryItem.getString("inventoryItemTypeId"));
+    }
+
+    private static BigDecimal[] getCountedTotals(GenericValue inventoryItem) {
+        boolean counted = inventoryItem != null && inventoryItem.get("productId") != null && isCounted(inventoryItem);
+        return getTotals(counted ? inventoryItem : null);
+    }
+
+    /** Gets the values of the total fields of an InventoryItem or ProductFacilityInventory, zeros if it is <code>null</code> */
+    private static BigDecimal[] getTotals(GenericValue value) {
+        BigDecimal[] totals = new BigDecimal[TOTAL_FIELDS.length];
+        for (int i = 0; i < TOTAL_FIELDS.length; i++) {
+            BigDecimal total = value != null ? value.getBigDecimal(TOTAL_FIELDS[i]) : null;
+            totals[i] = total != null ? total : BigDecimal.ZERO;
+        }
+        return totals;
+    }
+
+    /**
+     * Locks the ProductFacilityInventory record of a product and facility until the end of the current
+     * transaction, creating it first if needed, and returns it.
+     */
+    private static GenericValue lockTotals(Delegator delegator, String productId, String facilityId) throws GenericEntityException {
+        EntityCondition pkCondition = EntityCondition.makeCondition(UtilMisc.toMap("productId", productId, "facilityId", facilityId));
+        // the update locks the row, the concurrent updates of the same totals wait for the end of the transaction
+        Map<String, Object> lockFields = UtilMisc.toMap("lastUpdatedTxStamp", TransactionUtil.getTransactionStartStamp());
+        if (delegator.storeByCondition("ProductFacilityInventory", lockFields, pkCondition) == 0) {
+            try {
+                // in its own transaction, so that a concurrent creation does not fail the current one
+                TransactionUtil.doNewTransaction(() -> delegator.create("ProductFacilityInventory", "productId", productId,
+                        "facilityId", facilityId, "quantityOnHandTotal", BigDecimal.ZERO, "availableToPromiseTotal", BigDecimal.ZERO,
+                        "accountingQuantityTotal", BigDecimal.ZERO), "Error creating the product facility inventory totals", 0, false);
+            } catch (GenericEntityException e) {
+                Debug.logInfo("Could not create the product facility inventory totals of product " + productId + " in facility "
+                        + facilityId + " in a new transaction: " + e.getMessage(), MODULE);
+            }
+            if (delegator.storeByCondition("ProductFacilityInventory", lockFields, pkCondition) == 0) {
+                // not created by another transaction either: the product is not committed yet (new transaction blocked on or
+                // failing its foreign key), the totals are created in the current transaction
+                delegator.create("ProductFacilityInventory", "productId", productId, "facilityId", facilityId, "quantityOnHandTotal",
+                        BigDecimal.ZERO, "availableToPromiseTotal", BigDecimal.ZERO, "accountingQuantityTotal", BigDecimal.ZERO);
+            }
+        }
+        GenericValue totals = EntityQuery.use(delegator).from("ProductFacilityInventory").where("productId", productId, "facilityId", facilityId)
+                .queryOne();
+        if (totals == null) {
+            throw new GenericEntityException("Unable to create the product facility inventory totals of product " + productId
+                    + " in facility " + facilityId);
+        }
+        return totals;
+    }
+
+    private static void addToTotals(Delegator delegator, String productId, String facilityId, BigDecimal[] diffs) throws GenericEntityException {
+        boolean changed = false;
+        for (BigDecimal diff : diffs) {
+            changed |= diff.signum() != 0;
+        }
+        if (!changed || productId == null) {
+            return;
+        }
+        GenericValue totals = lockTotals(delegator, productId, facilityId == null ? NO_FACILITY_ID : facilityId);
+        for (int i = 0; i < TOTAL_FIELDS.length; i++) {
+            BigDecimal total = totals.getBigDecimal(TOTAL_FIELDS[i]);
+            totals.set(TOTAL_FIELDS[i], (total != null ? total : BigDecimal.ZERO).add(diffs[i]));
+        }
+        totals.store();
+    }
+
+    /**
+     * Recomputes the ProductFacilityInventory totals from the InventoryItem records and reports the differences.
+     * <p>All the totals are first computed in one pass over the inventory items, the totals found different are then
+     * computed again and fixed one by one, each in its own transaction with the totals record locked, so that the
+     * inventory changes made during the reconciliation are not lost.</p>
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution, with the list of the totals found different
+     */
+    public static Map<String, Object> reconcileProductFacilityInventory(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        boolean fixDrift = !"N".equals(context.get("fixDrift"));
+        long startTime = System.currentTimeMillis();
+
+        Map<List<String>, BigDecimal[]> expectedTotals = new HashMap<>();
+        Map<List<String>, BigDecimal[]> storedTotals = new HashMap<>();
+        try {
+            TransactionUtil.doNewTransaction(() -> {
+                try (EntityListIterator eli = EntityQuery.use(delegator).select("productId", "facilityId", "statusId", "inventoryItemTypeId",
+                        "quantityOnHandTotal", "availableToPromiseTotal", "accountingQuantityTotal").from("InventoryItem")
+                        .where(EntityCondition.makeCondition("productId", EntityOperator.NOT_EQUAL, null)).queryIterator()) {
+                    GenericValue inventoryItem;
+                    while ((inventoryItem = eli.next()) != null) {
+                        addTotals(expectedTotals, getKey(inventoryItem), getCountedTotals(inventoryItem));
+                    }
+                }
+                try (EntityListIterator eli = EntityQuery.use(delegator).from("ProductFacilityInventory").queryIterator()) {
+                    GenericValue totals;
+                    while ((totals = eli.next()) != null) {
+                        addTotals(storedTotals, UtilMisc.toList(totals.getString("productId"), totals.getString("facilityId")),
+                                getTotals(totals));
+                    }
+                }
+                return null;
+            }, "Error reading the inventory items to reconcile", 7200, true);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+
+        List<Map<String, Object>> drifts = new LinkedList<>();
+        Map<List<String>, BigDecimal[]> allKeys = new HashMap<>(storedTotals);
+        allKeys.putAll(expectedTotals);
+        for (List<String> key : allKeys.keySet()) {
+            BigDecimal[] expected = expectedTotals.getOrDefault(key, getTotals(null));
+            BigDecimal[] stored = storedTotals.getOrDefault(key, getTotals(null));
+            if (sameTotals(expected, stored)) {
+                continue;
+            }
+            Map<String, Object> drift = UtilMisc.toMap("productId", key.get(0), "facilityId", key.get(1));
+            for (int i = 0; i < TOTAL_FIELDS.length; i++) {
+                drift.put(TOTAL_FIELDS[i], stored[i]);
+                drift.put("expected" + Character.toUpperCase(TOTAL_FIELDS[i].charAt(0)) + TOTAL_FIELDS[i].substring(1), expected[i]);
+            }
+            Debug.logWarning("Product facility inventory totals drift: " + drift, MODULE);
+            drifts.add(drift);
+            if (fixDrift) {
+                try {
+                    TransactionUtil.doNewTransaction(() -> {
+                        fixTotals(delegator, key.get(0), key.get(1));
+                        return null;
+                    }, "Error fixing the product facility inventory totals of " + key, 0, true);
+                } catch (GenericEntityException e) {
+                    Debug.logError(e, MODULE);
+                }
+            }
+        }
+        Debug.logInfo("Reconciled " + allKeys.size() + " product facility inventory totals, " + drifts.size() + " different, in "
+                + (System.currentTimeMillis() - startTime) / 1000.0 + "s", MODULE);
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("drifts", drifts);
+        return result;
+    }
+
+    /** Sets the totals of a product in a facility to the ones computed from the InventoryItem records */
+    private static void fixTotals(Delegator delegator, String productId, String facilityId) throws GenericEntityException {
+        GenericValue totals = lockTotals(delegator, productId, facilityId);
+        List<GenericValue> inventoryItems = EntityQuery.use(delegator).from("InventoryItem")
+                .where("productId", productId, "facilityId", NO_FACILITY_ID.equals(facilityId) ? null : facilityId).queryList();
+        BigDecimal[] expected = getTotals(null);
+        for (GenericValue inventoryItem : inventoryItems) {
+            BigDecimal[] itemTotals = getCountedTotals(inventoryItem);
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = expected[i].add(itemTotals[i]);
+            }
+        }
+        for (int i = 0; i < TOTAL_FIELDS.length; i++) {
+            totals.set(TOTAL_FIELDS[i], expected[i]);
+        }
+        totals.store();
+    }
+
+    private static List<String> getKey(GenericValue inventoryItem) {
+        String facilityId = inventoryItem.getString("facilityId");
+        return UtilMisc.toList(inventoryItem.getString("productId"), facilityId == null ? NO_FACILITY_ID : facilityId);
+    }
+
+    private static void addTotals(Map<List<String>, BigDecimal[]> totalsByKey, List<String> key, BigDecimal[] values) {
+        BigDecimal[] totals = totalsByKey.computeIfAbsent(key, k -> getTotals(null));
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = totals[i].add(values[i]);
+        }
+    }
+
+    private static boolean sameTotals(BigDecimal[] totals1, BigDecimal[] totals2) {
+        for (int i = 0; i < totals1.length; i++) {
+            if (totals1[i].compareTo(totals2[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -23,10 +23,13 @@ import java.math.RoundingMode;
 import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.ofbiz.base.util.Debug;
@@ -82,6 +85,92 @@ public class PriceServices {
      * </ul>
      */
     public static Map<String, Object> calculateProductPrice(DispatchContext dctx, Map<String, ? extends Object> context) {
+        ProductPriceRuleIndex ruleIndex = null;
+        if (ProductPriceRuleIndex.isEnabled(dctx.getDelegator())) {
+            try {
+                ruleIndex = ProductPriceRuleIndex.getInstance(dctx.getDelegator());
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "Error getting rules from the database while calculating price", MODULE);
+                return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE,
+                        "ProductPriceCannotRetrievePriceRules", UtilMisc.toMap("errorString", e.toString()), (Locale) context.get("locale")));
+            }
+        }
+        return calculateProductPrice(dctx, context, ruleIndex, null);
+    }
+
+    /**
+     * Calculates the prices of several products with the same input as calculateProductPrice, the price rules that can apply
+     * to the products are found with the {@link ProductPriceRuleIndex}.
+     * @param dctx the dispatch context
+     * @param context the products or productIds, and the calculateProductPrice input other than product
+     * @return the calculateProductPrice results by productId in productPrices
+     */
+    public static Map<String, Object> calculateProductPrices(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        Locale locale = (Locale) context.get("locale");
+        List<GenericValue> products = UtilGenerics.cast(context.get("products"));
+        List<String> productIds = UtilGenerics.cast(context.get("productIds"));
+        Map<String, Map<String, Object>> productPrices = new LinkedHashMap<>();
+        try {
+            if (UtilValidate.isEmpty(products) && UtilValidate.isNotEmpty(productIds)) {
+                products = EntityQuery.use(delegator).from("Product")
+                        .where(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds)).queryList();
+            }
+            if (UtilValidate.isEmpty(products)) {
+                Map<String, Object> result = ServiceUtil.returnSuccess();
+                result.put("productPrices", productPrices);
+                return result;
+            }
+            ProductPriceRuleIndex ruleIndex = ProductPriceRuleIndex.getInstance(delegator);
+
+            // the categories and features of all the products and of their virtual products are read at once
+            Set<String> memberProductIds = new HashSet<>();
+            for (GenericValue product : products) {
+                memberProductIds.add(product.getString("productId"));
+                if ("Y".equals(product.getString("isVariant"))) {
+                    String virtualProductId = ProductWorker.getVariantVirtualId(product);
+                    if (virtualProductId != null) {
+                        memberProductIds.add(virtualProductId);
+                    }
+                }
+            }
+            ProductPriceRuleIndex.Memberships memberships = ruleIndex.loadMemberships(delegator, memberProductIds,
+                    UtilDateTime.nowTimestamp(), false);
+
+            Map<String, Object> priceContext = new HashMap<>(context);
+            priceContext.remove("products");
+            priceContext.remove("productIds");
+            for (GenericValue product : products) {
+                priceContext.put("product", product);
+                Map<String, Object> priceResult = calculateProductPrice(dctx, priceContext, ruleIndex, memberships);
+                if (ServiceUtil.isError(priceResult)) {
+                    return priceResult;
+                }
+                productPrices.put(product.getString("productId"), priceResult);
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error getting rules from the database while calculating prices", MODULE);
+            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE,
+                    "ProductPriceCannotRetrievePriceRules", UtilMisc.toMap("errorString", e.toString()), locale));
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("productPrices", productPrices);
+        return result;
+    }
+
+    /**
+     * Drops the price rule index once the current transaction is committed
+     * @param dctx the dispatch context
+     * @param context the service context
+     * @return success
+     */
+    public static Map<String, Object> clearProductPriceRuleIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+        ProductPriceRuleIndex.clear(dctx.getDelegator());
+        return ServiceUtil.returnSuccess();
+    }
+
+    private static Map<String, Object> calculateProductPrice(DispatchContext dctx, Map<String, ? extends Object> context,
+            ProductPriceRuleIndex ruleIndex, ProductPriceRuleIndex.Memberships memberships) {
         Delegator delegator = dctx.getDelegator();
         LocalDispatcher dispatcher = dctx.getDispatcher();
         Map<String, Object> result = new HashMap<>();
@@ -437,29 +526,38 @@ public class PriceServices {
             if (errorResult != null) return errorResult;
         } else {
             try {
-                List<GenericValue> allProductPriceRules = makeProducePriceRuleList(delegator, optimizeForLargeRuleSet, productId, virtualProductId,
-                        prodCatalogId, productStoreGroupId, webSiteId, partyId, currencyDefaultUomId);
-                allProductPriceRules = EntityUtil.filterByDate(allProductPriceRules, true);
+                List<ProductPriceRuleIndex.PriceRule> allProductPriceRules = new LinkedList<>();
+                if (ruleIndex != null) {
+                    if (memberships == null) {
+                        List<String> memberProductIds = virtualProductId != null ? UtilMisc.toList(productId, virtualProductId)
+                                : UtilMisc.toList(productId);
+                        memberships = ruleIndex.loadMemberships(delegator, memberProductIds, nowTimestamp, true);
+                    }
+                    allProductPriceRules = ruleIndex.getRules(productId, virtualProductId, prodCatalogId, productStoreGroupId, webSiteId,
+                            partyId, currencyDefaultUomId, memberships, nowTimestamp);
+                } else {
+                    for (GenericValue productPriceRule : EntityUtil.filterByDate(makeProducePriceRuleList(delegator, optimizeForLargeRuleSet,
+                            productId, virtualProductId, prodCatalogId, productStoreGroupId, webSiteId, partyId, currencyDefaultUomId), true)) {
+                        allProductPriceRules.add(ProductPriceRuleIndex.PriceRule.of(productPriceRule));
+                    }
+                }
 
-                List<GenericValue> quantityProductPriceRules = null;
-                List<GenericValue> nonQuantityProductPriceRules = null;
+                List<ProductPriceRuleIndex.PriceRule> quantityProductPriceRules = null;
+                List<ProductPriceRuleIndex.PriceRule> nonQuantityProductPriceRules = null;
                 if (findAllQuantityPrices) {
                     // split into list with quantity conditions and list without, then iterate through each quantity cond one
                     quantityProductPriceRules = new LinkedList<>();
                     nonQuantityProductPriceRules = new LinkedList<>();
-                    for (GenericValue productPriceRule: allProductPriceRules) {
-                        List<GenericValue> productPriceCondList = EntityQuery.use(delegator).from("ProductPriceCond").where("productPriceRuleId",
-                                productPriceRule.get("productPriceRuleId")).cache(true).queryList();
-
+                    for (ProductPriceRuleIndex.PriceRule productPriceRule: allProductPriceRules) {
                         boolean foundQuantityInputParam = false;
                         // only consider a rule if all conditions except the quantity condition are true
                         boolean allExceptQuantTrue = true;
-                        for (GenericValue productPriceCond: productPriceCondList) {
+                        for (GenericValue productPriceCond: productPriceRule.getConditions()) {
                             if ("PRIP_QUANTITY".equals(productPriceCond.getString("inputParamEnumId"))) {
                                 foundQuantityInputParam = true;
                             } else {
                                 if (!checkPriceCondition(productPriceCond, productId, virtualProductId, prodCatalogId, productStoreGroupId,
-                                        webSiteId, partyId, quantity, listPrice, currencyDefaultUomId, delegator, nowTimestamp)) {
+                                        webSiteId, partyId, quantity, listPrice, currencyDefaultUomId, delegator, nowTimestamp, memberships)) {
                                     allExceptQuantTrue = false;
                                 }
                             }
@@ -478,32 +576,32 @@ public class PriceServices {
 
                     // if findAllQuantityPrices then iterate through quantityProductPriceRules
                     // foreach create an entry in the out list and eval that rule and all nonQuantityProductPriceRules rather than a single rule
-                    for (GenericValue quantityProductPriceRule: quantityProductPriceRules) {
-                        List<GenericValue> ruleListToUse = new LinkedList<>();
+                    for (ProductPriceRuleIndex.PriceRule quantityProductPriceRule: quantityProductPriceRules) {
+                        List<ProductPriceRuleIndex.PriceRule> ruleListToUse = new LinkedList<>();
                         ruleListToUse.add(quantityProductPriceRule);
                         ruleListToUse.addAll(nonQuantityProductPriceRules);
 
-                        Map<String, Object> quantCalcResults = calcPriceResultFromRules(ruleListToUse, listPrice, defaultPrice, promoPrice,
+                        Map<String, Object> quantCalcResults = calcPriceResultFromPriceRules(ruleListToUse, listPrice, defaultPrice, promoPrice,
                                 wholesalePrice, maximumPriceValue, minimumPriceValue, validPriceFound,
                                 averageCostValue, productId, virtualProductId, prodCatalogId, productStoreGroupId,
-                                webSiteId, partyId, null, currencyDefaultUomId, delegator, nowTimestamp, locale);
+                                webSiteId, partyId, null, currencyDefaultUomId, delegator, nowTimestamp, locale, memberships);
                         Map<String, Object> quantErrorResult = addGeneralResults(quantCalcResults, competitivePriceValue, specialPromoPriceValue,
                                 productStore,
                                 checkIncludeVat, currencyDefaultUomId, productId, quantity, partyId, dispatcher, locale);
                         if (quantErrorResult != null) return quantErrorResult;
 
                         // also add the quantityProductPriceRule to the Map so it can be used for quantity break information
-                        quantCalcResults.put("quantityProductPriceRule", quantityProductPriceRule);
+                        quantCalcResults.put("quantityProductPriceRule", quantityProductPriceRule.getRule());
 
                         allQuantityPrices.add(quantCalcResults);
                     }
                     result.put("allQuantityPrices", allQuantityPrices);
 
                     // use a quantity 1 to get the main price, then fill in the quantity break prices
-                    Map<String, Object> calcResults = calcPriceResultFromRules(allProductPriceRules, listPrice, defaultPrice, promoPrice,
+                    Map<String, Object> calcResults = calcPriceResultFromPriceRules(allProductPriceRules, listPrice, defaultPrice, promoPrice,
                             wholesalePrice, maximumPriceValue, minimumPriceValue, validPriceFound,
                             averageCostValue, productId, virtualProductId, prodCatalogId, productStoreGroupId,
-                            webSiteId, partyId, BigDecimal.ONE, currencyDefaultUomId, delegator, nowTimestamp, locale);
+                            webSiteId, partyId, BigDecimal.ONE, currencyDefaultUomId, delegator, nowTimestamp, locale, memberships);
                     result.putAll(calcResults);
                     // The orderItemPriceInfos out parameter requires a special treatment:
                     // the list of OrderItemPriceInfos generated by the price rule is appended to
@@ -518,10 +616,10 @@ public class PriceServices {
                             checkIncludeVat, currencyDefaultUomId, productId, quantity, partyId, dispatcher, locale);
                     if (errorResult != null) return errorResult;
                 } else {
-                    Map<String, Object> calcResults = calcPriceResultFromRules(allProductPriceRules, listPrice, defaultPrice, promoPrice,
+                    Map<String, Object> calcResults = calcPriceResultFromPriceRules(allProductPriceRules, listPrice, defaultPrice, promoPrice,
                             wholesalePrice, maximumPriceValue, minimumPriceValue, validPriceFound,
                             averageCostValue, productId, virtualProductId, prodCatalogId, productStoreGroupId,
-                            webSiteId, partyId, quantity, currencyDefaultUomId, delegator, nowTimestamp, locale);
+                            webSiteId, partyId, quantity, currencyDefaultUomId, delegator, nowTimestamp, locale, memberships);
                     result.putAll(calcResults);
                     // The orderItemPriceInfos out parameter requires a special treatment:
                     // the list of OrderItemPriceInfos generated by the price rule is appended to
@@ -844,6 +942,21 @@ public class PriceServices {
                                                                String webSiteId, String partyId, BigDecimal quantity, String currencyUomId,
                                                                Delegator delegator, Timestamp nowTimestamp,
                                                                Locale locale) throws GenericEntityException {
+        List<ProductPriceRuleIndex.PriceRule> priceRules = new LinkedList<>();
+        for (GenericValue productPriceRule : productPriceRules) {
+            priceRules.add(ProductPriceRuleIndex.PriceRule.of(productPriceRule));
+        }
+        return calcPriceResultFromPriceRules(priceRules, listPrice, defaultPrice, promoPrice, wholesalePrice, maximumPriceValue,
+                minimumPriceValue, validPriceFound, averageCostValue, productId, virtualProductId, prodCatalogId, productStoreGroupId,
+                webSiteId, partyId, quantity, currencyUomId, delegator, nowTimestamp, locale, null);
+    }
+
+    private static Map<String, Object> calcPriceResultFromPriceRules(List<ProductPriceRuleIndex.PriceRule> productPriceRules,
+            BigDecimal listPrice, BigDecimal defaultPrice, BigDecimal promoPrice, BigDecimal wholesalePrice, GenericValue maximumPriceValue,
+            GenericValue minimumPriceValue, boolean validPriceFound, GenericValue averageCostValue, String productId, String virtualProductId,
+            String prodCatalogId, String productStoreGroupId, String webSiteId, String partyId, BigDecimal quantity, String currencyUomId,
+            Delegator delegator, Timestamp nowTimestamp, Locale locale, ProductPriceRuleIndex.Memberships memberships)
+            throws GenericEntityException {
 
         Map<String, Object> calcResults = new HashMap<>();
 
@@ -863,8 +976,8 @@ public class PriceServices {
         // calculate running sum based on listPrice and rules found
         BigDecimal price = listPrice;
 
-        for (GenericValue productPriceRule: productPriceRules) {
-            String productPriceRuleId = productPriceRule.getString("productPriceRuleId");
+        for (ProductPriceRuleIndex.PriceRule priceRule: productPriceRules) {
+            GenericValue productPriceRule = priceRule.getRule();
 
             // check from/thru dates
             java.sql.Timestamp fromDate = productPriceRule.getTimestamp("fromDate");
@@ -881,54 +994,37 @@ public class PriceServices {
 
             // check all conditions
             boolean allTrue = true;
-            StringBuilder condsDescription = new StringBuilder();
-            List<GenericValue> productPriceConds = EntityQuery.use(delegator).from("ProductPriceCond").where("productPriceRuleId",
-                    productPriceRuleId).cache(true).queryList();
-            for (GenericValue productPriceCond: productPriceConds) {
+            for (GenericValue productPriceCond: priceRule.getConditions()) {
 
                 totalConds++;
 
                 if (!checkPriceCondition(productPriceCond, productId, virtualProductId, prodCatalogId, productStoreGroupId, webSiteId, partyId,
-                        quantity, listPrice, currencyUomId, delegator, nowTimestamp)) {
+                        quantity, listPrice, currencyUomId, delegator, nowTimestamp, memberships)) {
                     allTrue = false;
                     break;
                 }
-
-                // add condsDescription string entry
-                condsDescription.append("[");
-                GenericValue inputParamEnum = productPriceCond.getRelatedOne("InputParamEnumeration", true);
-
-                condsDescription.append(inputParamEnum.getString("enumCode"));
-                // condsDescription.append(":");
-                GenericValue operatorEnum = productPriceCond.getRelatedOne("OperatorEnumeration", true);
-
-                condsDescription.append(operatorEnum.getString("description"));
-                // condsDescription.append(":");
-                condsDescription.append(productPriceCond.getString("condValue"));
-                condsDescription.append("] ");
             }
 
-            // add some info about the prices we are calculating from
-            condsDescription.append("[list:");
-            condsDescription.append(listPrice);
-            condsDescription.append(";avgCost:");
-            condsDescription.append(averageCost);
-            condsDescription.append(";margin:");
-            condsDescription.append(margin);
-            condsDescription.append("] ");
-
             boolean foundFlatOverride = false;
 
             // if all true, perform all actions
             if (allTrue) {
+                // describe the conditions, and add some info about the prices we are calculating from
+                StringBuilder condsDescription = new StringBuilder(priceRule.getConditionsDescription());
+                condsDescription.append("[list:");
+                condsDescription.append(listPrice);
+                condsDescription.append(";avgCost:");
+                condsDescription.append(averageCost);
+                condsDescription.append(";margin:");
+                condsDescription.append(margin);
+                condsDescription.append("] ");
+
                 // check isSale
                 if ("Y".equals(productPriceRule.getString("isSale"))) {
                     isSale = true;
                 }
 
-                List<GenericValue> productPriceActions = EntityQuery.use(delegator).from("ProductPriceAction").where("productPriceRuleId",
-                        productPriceRuleId).cache(true).queryList();
-                for (GenericValue productPriceAction: productPriceActions) {
+                for (GenericValue productPriceAction: priceRule.getActions()) {
 
                     totalActions++;
 
@@ -1112,6 +1208,14 @@ public class PriceServices {
     public static boolean checkPriceCondition(GenericValue productPriceCond, String productId, String virtualProductId, String prodCatalogId,
             String productStoreGroupId, String webSiteId, String partyId, BigDecimal quantity, BigDecimal listPrice,
             String currencyUomId, Delegator delegator, Timestamp nowTimestamp) throws GenericEntityException {
+        return checkPriceCondition(productPriceCond, productId, virtualProductId, prodCatalogId, productStoreGroupId, webSiteId, partyId,
+                quantity, listPrice, currencyUomId, delegator, nowTimestamp, null);
+    }
+
+    private static boolean checkPriceCondition(GenericValue productPriceCond, String productId, String virtualProductId, String prodCatalogId,
+            String productStoreGroupId, String webSiteId, String partyId, BigDecimal quantity, BigDecimal listPrice,
+            String currencyUomId, Delegator delegator, Timestamp nowTimestamp, ProductPriceRuleIndex.Memberships memberships)
+            throws GenericEntityException {
         if (Debug.verboseOn()) {
             Debug.logVerbose("Checking price condition: " + productPriceCond, MODULE);
         }
@@ -1122,30 +1226,37 @@ public class PriceServices {
         } else if ("PRIP_PROD_CAT_ID".equals(productPriceCond.getString("inputParamEnumId"))) {
             // if a ProductCategoryMember exists for this productId and the specified productCategoryId
             String productCategoryId = productPriceCond.getString("condValue");
-            // and from/thru date within range
-            List<GenericValue> productCategoryMembers = EntityQuery.use(delegator).from("ProductCategoryMember")
-                    .where("productId", productId, "productCategoryId", productCategoryId)
-                    .cache(true)
-                    .filterByDate(nowTimestamp)
-                    .queryList();
-            // then 0 (equals), otherwise 1 (not equals)
-            if (UtilValidate.isNotEmpty(productCategoryMembers)) {
-                compare = 0;
+            if (memberships != null && memberships.hasCategoryIds(productId)
+                    && (UtilValidate.isEmpty(virtualProductId) || memberships.hasCategoryIds(virtualProductId))) {
+                // the members were already read
+                compare = memberships.getCategoryIds(productId).contains(productCategoryId)
+                        || memberships.getCategoryIds(virtualProductId).contains(productCategoryId) ? 0 : 1;
             } else {
-                compare = 1;
-            }
-
-            // if there is a virtualProductId, try that given that this one has failed
-            // NOTE: this is important becuase of the common scenario where a virtual product is a member of a category but the variants
-            // will typically NOT be
-            // NOTE: we may want to parameterize this in the future, ie with an indicator on the ProductPriceCond entity
-            if (compare == 1 && UtilValidate.isNotEmpty(virtualProductId)) {
                 // and from/thru date within range
-                List<GenericValue> virtualProductCategoryMembers = EntityQuery.use(delegator).from("ProductCategoryMember").where("productId",
-                        virtualProductId, "productCategoryId", productCategoryId).cache(true).filterByDate(nowTimestamp).queryList();
-                if (UtilValidate.isNotEmpty(virtualProductCategoryMembers)) {
-                    // we found a member record? great, then this condition is satisfied
+                List<GenericValue> productCategoryMembers = EntityQuery.use(delegator).from("ProductCategoryMember")
+                        .where("productId", productId, "productCategoryId", productCategoryId)
+                        .cache(true)
+                        .filterByDate(nowTimestamp)
+                        .queryList();
+                // then 0 (equals), otherwise 1 (not equals)
+                if (UtilValidate.isNotEmpty(productCategoryMembers)) {
                     compare = 0;
+                } else {
+                    compare = 1;
+                }
+
+                // if there is a virtualProductId, try that given that this one has failed
+                // NOTE: this is important becuase of the common scenario where a virtual product is a member of a category but the variants
+                // will typically NOT be
+                // NOTE: we may want to parameterize this in the future, ie with an indicator on the ProductPriceCond entity
+                if (compare == 1 && UtilValidate.isNotEmpty(virtualProductId)) {
+                    // and from/thru date within range
+                    List<GenericValue> virtualProductCategoryMembers = EntityQuery.use(delegator).from("ProductCategoryMember").where("productId",
+                            virtualProductId, "productCategoryId", productCategoryId).cache(true).filterByDate(nowTimestamp).queryList();
+                    if (UtilValidate.isNotEmpty(virtualProductCategoryMembers)) {
+                        // we found a member record? great, then this condition is satisfied
+                        compare = 0;
+                    }
                 }
             }
         } else if ("PRIP_PROD_FEAT_ID".equals(productPriceCond.getString("inputParamEnumId"))) {
@@ -1154,14 +1265,19 @@ public class PriceServices {
 
             // if a ProductFeatureAppl exists for this productId and the specified productFeatureId
             String productFeatureId = productPriceCond.getString("condValue");
-            // and from/thru date within range
-            List<GenericValue> productFeatureAppls = EntityQuery.use(delegator).from("ProductFeatureAppl").where("productId", productId,
-                    "productFeatureId", productFeatureId).cache(true).filterByDate(nowTimestamp).queryList();
-            // then 0 (equals), otherwise 1 (not equals)
-            if (UtilValidate.isNotEmpty(productFeatureAppls)) {
-                compare = 0;
+            if (memberships != null && memberships.hasFeatureIds(productId)) {
+                // the features were already read
+                compare = memberships.getFeatureIds(productId).contains(productFeatureId) ? 0 : 1;
             } else {
-                compare = 1;
+                // and from/thru date within range
+                List<GenericValue> productFeatureAppls = EntityQuery.use(delegator).from("ProductFeatureAppl").where("productId", productId,
+                        "productFeatureId", productFeatureId).cache(true).filterByDate(nowTimestamp).queryList();
+                // then 0 (equals), otherwise 1 (not equals)
+                if (UtilValidate.isNotEmpty(productFeatureAppls)) {
+                    compare = 0;
+                } else {
+                    compare = 1;
+                }
             }
         } else if ("PRIP_PROD_CLG_ID".equals(productPriceCond.getString("inputParamEnumId"))) {
             if (UtilValidate.isNotEmpty(prodCatalogId)) {
@@ -0,0 +1,394 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.price;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityDerivedCache;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtil;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+
+/**
+ * Immutable in-memory copy of the ProductPriceRule, ProductPriceCond and ProductPriceAction records, used by the price
+ * calculation instead of reading the conditions and actions of each rule from the entity cache.
+ * <p>Each rule having an equals condition on a product, category, feature, catalog, store group, web site, party or
+ * currency is indexed by the value of this condition, so that only the rules that can apply to a product are evaluated.
+ * The rules are evaluated in the order of their ids, like with <code>optimizeForLargeRuleSet</code>.</p>
+ * <p>The index is used by <code>calculateProductPrices</code> and, when <code>price.rule.index.enabled</code> is
+ * <code>true</code> in catalog.properties, by <code>calculateProductPrice</code>. It is dropped by an entity ECA
+ * once a transaction changing the rules is completed and built again on the next price calculation.</p>
+ */
+public final class ProductPriceRuleIndex {
+
+    private static final String MODULE = ProductPriceRuleIndex.class.getName();
+    private static final EntityDerivedCache<ProductPriceRuleIndex> INDEXES = new EntityDerivedCache<>("product.price.rule.index",
+            "price rule index");
+
+    /** The input parameters of the conditions used to index the rules, the most selective first */
+    private static final List<String> INDEXED_INPUT_PARAMS = Collections.unmodifiableList(Arrays.asList("PRIP_PRODUCT_ID",
+            "PRIP_PROD_FEAT_ID", "PRIP_PROD_CAT_ID", "PRIP_PARTY_ID", "PRIP_WEBSITE_ID", "PRIP_PROD_CLG_ID", "PRIP_PROD_SGRP_ID",
+            "PRIP_CURRENCY_UOMID"));
+
+    private final List<PriceRule> rules;
+    /** The rules without indexed condition, evaluated for all products */
+    private final BitSet unindexedRules = new BitSet();
+    /** The rules by input parameter and value of their indexed condition */
+    private final Map<String, Map<String, BitSet>> indexedRules = new HashMap<>();
+    private final boolean hasCategoryConditions;
+    private final boolean hasFeatureConditions;
+
+    private ProductPriceRuleIndex(List<PriceRule> rules) {
+        this.rules = rules;
+        boolean categoryConditions = false;
+        boolean featureConditions = false;
+        for (int i = 0; i < rules.size(); i++) {
+            GenericValue indexedCond = null;
+            int indexedCondRank = INDEXED_INPUT_PARAMS.size();
+            for (GenericValue cond : rules.get(i).conds) {
+                String inputParamEnumId = cond.getString("inputParamEnumId");
+                categoryConditions |= "PRIP_PROD_CAT_ID".equals(inputParamEnumId);
+                featureConditions |= "PRIP_PROD_FEAT_ID".equals(inputParamEnumId);
+                int rank = INDEXED_INPUT_PARAMS.indexOf(inputParamEnumId);
+                if (rank >= 0 && rank < indexedCondRank && "PRC_EQ".equals(cond.getString("operatorEnumId"))
+                        && UtilValidate.isNotEmpty(cond.getString("condValue"))) {
+                    indexedCond = cond;
+                    indexedCondRank = rank;
+                }
+            }
+            if (indexedCond == null) {
+                unindexedRules.set(i);
+            } else {
+                indexedRules.computeIfAbsent(indexedCond.getString("inputParamEnumId"), k -> new HashMap<>())
+                        .computeIfAbsent(indexedCond.getString("condValue"), k -> new BitSet()).set(i);
+            }
+        }
+        this.hasCategoryConditions = categoryConditions;
+        this.hasFeatureConditions = featureConditions;
+    }
+
+    /**
+     * Is the index used by calculateProductPrice
+     * @param delegator the delegator
+     * @return <code>true</code> if calculateProductPrice must use the index
+     */
+    public static boolean isEnabled(Delegator delegator) {
+        return "true".equals(EntityUtilProperties.getPropertyValue("catalog", "price.rule.index.enabled", "false", delegator));
+    }
+
+    /**
+     * Gets the index of a delegator, building it if needed.
+     * @param delegator the delegator
+     * @return the index
+     * @throws GenericEntityException if the rules cannot be read
+     */
+    public static ProductPriceRuleIndex getInstance(Delegator delegator) throws GenericEntityException {
+        return INDEXES.get(delegator, "rules", () -> load(delegator));
+    }
+
+    /**
+     * Drops the index of a delegator once the current transaction is completed, or right now if there is no transaction.
+     * @param delegator the delegator
+     */
+    public static void clear(Delegator delegator) {
+        INDEXES.clear(delegator);
+    }
+
+    private static ProductPriceRuleIndex load(Delegator delegator) throws GenericEntityException {
+        long startTime = System.currentTimeMillis();
+        Map<String, List<GenericValue>> condsByRuleId = groupByRuleId(EntityQuery.use(delegator).from("ProductPriceCond")
+                .orderBy("productPriceRuleId", "productPriceCondSeqId").queryList());
+        Map<String, List<GenericValue>> actionsByRuleId = groupByRuleId(EntityQuery.use(delegator).from("ProductPriceAction")
+                .orderBy("productPriceRuleId", "productPriceActionSeqId").queryList());
+        List<PriceRule> rules = new ArrayList<>();
+        for (GenericValue rule : EntityQuery.use(delegator).from("ProductPriceRule").orderBy("productPriceRuleId").queryList()) {
+            String productPriceRuleId = rule.getString("productPriceRuleId");
+            PriceRule priceRule = new PriceRule(rule, condsByRuleId.getOrDefault(productPriceRuleId, Collections.emptyList()),
+                    actionsByRuleId.getOrDefault(productPriceRuleId, Collections.emptyList()));
+            priceRule.conditionsDescription = describeConditions(priceRule.conds);
+            rules.add(priceRule);
+        }
+        if (Debug.infoOn()) {
+            Debug.logInfo("Loaded " + rules.size() + " price rules in " + (System.currentTimeMillis() - startTime) + "ms", MODULE);
+        }
+        return new ProductPriceRuleIndex(Collections.unmodifiableList(rules));
+    }
+
+    private static Map<String, List<GenericValue>> groupByRuleId(List<GenericValue> values) {
+        Map<String, List<GenericValue>> valuesByRuleId = new HashMap<>();
+        for (GenericValue value : values) {
+            valuesByRuleId.computeIfAbsent(value.getString("productPriceRuleId"), k -> new ArrayList<>()).add(value);
+        }
+        return valuesByRuleId;
+    }
+
+    private static String describeConditions(List<GenericValue> conds) throws GenericEntityException {
+        StringBuilder condsDescription = new StringBuilder();
+        for (GenericValue productPriceCond : conds) {
+            condsDescription.append("[");
+            GenericValue inputParamEnum = productPriceCond.getRelatedOne("InputParamEnumeration", true);
+            condsDescription.append(inputParamEnum.getString("enumCode"));
+            GenericValue operatorEnum = productPriceCond.getRelatedOne("OperatorEnumeration", true);
+            condsDescription.append(operatorEnum.getString("description"));
+            condsDescription.append(productPriceCond.getString("condValue"));
+            condsDescription.append("] ");
+        }
+        return condsDescription.toString();
+    }
+
+    /**
+     * Gets the active rules that can apply to a product, the other rules have a condition that cannot be true.
+     * @param productId the product id
+     * @param virtualProductId the id of the virtual product if the product is a variant, can be <code>null</code>
+     * @param prodCatalogId the catalog id, can be <code>null</code>
+     * @param productStoreGroupId the product store group id, can be <code>null</code>
+     * @param webSiteId the web site id, can be <code>null</code>
+     * @param partyId the party id, can be <code>null</code>
+     * @param currencyUomId the currency id
+     * @param memberships the categories and features of the product, loaded by {@link #loadMemberships}
+     * @param nowTimestamp the moment the rules must be active at
+     * @return the rules to evaluate, ordered by id
+     */
+    public List<PriceRule> getRules(String productId, String virtualProductId, String prodCatalogId, String productStoreGroupId,
+            String webSiteId, String partyId, String currencyUomId, Memberships memberships, Timestamp nowTimestamp) {
+        BitSet candidates = (BitSet) unindexedRules.clone();
+        addRules(candidates, "PRIP_PRODUCT_ID", productId);
+        addRules(candidates, "PRIP_PRODUCT_ID", virtualProductId);
+        addRules(candidates, "PRIP_PROD_CLG_ID", prodCatalogId);
+        addRules(candidates, "PRIP_PROD_SGRP_ID", productStoreGroupId);
+        addRules(candidates, "PRIP_WEBSITE_ID", webSiteId);
+        addRules(candidates, "PRIP_PARTY_ID", partyId);
+        addRules(candidates, "PRIP_CURRENCY_UOMID", currencyUomId);
+        if (hasCategoryConditions) {
+            for (String productCategoryId : memberships.getCategoryIds(productId)) {
+                addRules(candidates, "PRIP_PROD_CAT_ID", productCategoryId);
+            }
+            for (String productCategoryId : memberships.getCategoryIds(virtualProductId)) {
+                addRules(candidates, "PRIP_PROD_CAT_ID", productCategoryId);
+            }
+        }
+        if (hasFeatureConditions) {
+            for (String productFeatureId : memberships.getFeatureIds(productId)) {
+                addRules(candidates, "PRIP_PROD_FEAT_ID", productFeatureId);
+            }
+        }
+        List<PriceRule> activeRules = new ArrayList<>(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            PriceRule priceRule = rules.get(i);
+            if (EntityUtil.isValueActive(priceRule.rule, nowTimestamp)) {
+                activeRules.add(priceRule);
+            }
+        }
+        return activeRules;
+    }
+
+    private void addRules(BitSet candidates, String inputParamEnumId, String condValue) {
+        if (condValue == null) {
+            return;
+        }
+        Map<String, BitSet> rulesByValue = indexedRules.get(inputParamEnumId);
+        BitSet valueRules = rulesByValue != null ? rulesByValue.get(condValue) : null;
+        if (valueRules != null) {
+            candidates.or(valueRules);
+        }
+    }
+
+    /**
+     * Loads the categories and features of products needed to evaluate the rules of this index.
+     * @param delegator the delegator
+     * @param productIds the ids of the products, and of their virtual products
+     * @param nowTimestamp the moment the categories and features must be active at
+     * @param useCache read the members of each product from the entity cache rather than all the members in one query
+     * @return the memberships of the products
+     * @throws GenericEntityException if the members cannot be read
+     */
+    public Memberships loadMemberships(Delegator delegator, Collection<String> productIds, Timestamp nowTimestamp, boolean useCache)
+            throws GenericEntityException {
+        Map<String, Set<String>> categoryIds = hasCategoryConditions
+                ? loadMembers(delegator, "ProductCategoryMember", "productCategoryId", productIds, nowTimestamp, useCache) : null;
+        Map<String, Set<String>> featureIds = hasFeatureConditions
+                ? loadMembers(delegator, "ProductFeatureAppl", "productFeatureId", productIds, nowTimestamp, useCache) : null;
+        return new Memberships(categoryIds, featureIds);
+    }
+
+    private static Map<String, Set<String>> loadMembers(Delegator delegator, String entityName, String memberFieldName,
+            Collection<String> productIds, Timestamp nowTimestamp, boolean useCache) throws GenericEntityException {
+        Map<String, Set<String>> members = new HashMap<>();
+        List<GenericValue> values;
+        if (useCache) {
+            values = new ArrayList<>();
+            for (String productId : productIds) {
+                values.addAll(EntityQuery.use(delegator).from(entityName).where("productId", productId).cache(true)
+                        .filterByDate(nowTimestamp).queryList());
+            }
+        } else {
+            values = productIds.isEmpty() ? Collections.emptyList() : EntityQuery.use(delegator).from(entityName)
+                    .where(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds)).filterByDate(nowTimestamp).queryList();
+        }
+        for (String productId : productIds) {
+            members.put(productId, new HashSet<>());
+        }
+        for (GenericValue value : values) {
+            members.computeIfAbsent(value.getString("productId"), k -> new HashSet<>()).add(value.getString(memberFieldName));
+        }
+        return members;
+    }
+
+    /**
+     * A rule with its conditions and actions. The rules read outside of the index load their conditions and actions
+     * from the entity cache when they are evaluated.
+     */
+    public static final class PriceRule {
+        private final GenericValue rule;
+        private final List<GenericValue> conds;
+        private final List<GenericValue> actions;
+        private volatile String conditionsDescription;
+
+        private PriceRule(GenericValue rule, List<GenericValue> conds, List<GenericValue> actions) {
+            this.rule = rule;
+            this.conds = conds;
+            this.actions = actions;
+        }
+
+        /**
+         * Makes a rule reading its conditions and actions from the entity cache.
+         * @param rule the ProductPriceRule
+         * @return the rule
+         */
+        public static PriceRule of(GenericValue rule) {
+            return new PriceRule(rule, null, null);
+        }
+
+        /**
+         * Gets the rule
+         * @return the ProductPriceRule
+         */
+        public GenericValue getRule() {
+            return rule;
+        }
+
+        /**
+         * Gets the conditions of the rule
+         * @return the ProductPriceCond list
+         * @throws GenericEntityException if the conditions cannot be read
+         */
+        public List<GenericValue> getConditions() throws GenericEntityException {
+            if (conds != null) {
+                return conds;
+            }
+            return EntityQuery.use(rule.getDelegator()).from("ProductPriceCond").where("productPriceRuleId",
+                    rule.get("productPriceRuleId")).cache(true).queryList();
+        }
+
+        /**
+         * Gets the actions of the rule
+         * @return the ProductPriceAction list
+         * @throws GenericEntityException if the actions cannot be read
+         */
+        public List<GenericValue> getActions() throws GenericEntityException {
+            if (actions != null) {
+                return actions;
+            }
+            return EntityQuery.use(rule.getDelegator()).from("ProductPriceAction").where("productPriceRuleId",
+                    rule.get("productPriceRuleId")).cache(true).queryList();
+        }
+
+        /**
+         * Gets the description of the conditions of the rule, used in the OrderItemPriceInfo descriptions
+         * @return the description of the conditions
+         * @throws GenericEntityException if the conditions cannot be read
+         */
+        public String getConditionsDescription() throws GenericEntityException {
+            String description = conditionsDescription;
+            if (description == null) {
+                description = describeConditions(getConditions());
+                conditionsDescription = description;
+            }
+            return description;
+        }
+    }
+
+    /**
+     * The active categories and features of products, used to select and evaluate the rules having category and feature conditions.
+     */
+    public static final class Memberships {
+        private final Map<String, Set<String>> categoryIds;
+        private final Map<String, Set<String>> featureIds;
+
+        private Memberships(Map<String, Set<String>> categoryIds, Map<String, Set<String>> featureIds) {
+            this.categoryIds = categoryIds;
+            this.featureIds = featureIds;
+        }
+
+        /**
+         * Gets the categories of a product
+         * @param productId the product id, can be <code>null</code>
+         * @return the category ids, empty if they were not loaded
+         */
+        public Set<String> getCategoryIds(String productId) {
+            Set<String> ids = categoryIds != null && productId != null ? categoryIds.get(productId) : null;
+            return ids != null ? ids : Collections.emptySet();
+        }
+
+        /**
+         * Gets the features of a product
+         * @param productId the product id
+         * @return the feature ids, empty if they were not loaded
+         */
+        public Set<String> getFeatureIds(String productId) {
+            Set<String> ids = featureIds != null && productId != null ? featureIds.get(productId) : null;
+            return ids != null ? ids : Collections.emptySet();
+        }
+
+        /**
+         * Are the categories of a product loaded
+         * @param productId the product id
+         * @return <code>true</code> if the categories of the product are known
+         */
+        public boolean hasCategoryIds(String productId) {
+            return categoryIds != null && categoryIds.containsKey(productId);
+        }
+
+        /**
+         * Are the features of a product loaded
+         * @param productId the product id
+         * @return <code>true</code> if the features of the product are known
+         */
+        public boolean hasFeatureIds(String productId) {
+            return featureIds != null && featureIds.containsKey(productId);
+        }
+    }
+}
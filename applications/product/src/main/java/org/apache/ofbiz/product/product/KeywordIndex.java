@@ -20,13 +20,20 @@ package org.apache.ofbiz.product.product;
 
 import java.io.IOException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
 import org.apache.ofbiz.base.util.UtilDateTime;
@@ -37,16 +44,23 @@ import org.apache.ofbiz.content.data.DataResourceWorker;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityUtil;
 import org.apache.ofbiz.entity.util.EntityUtilProperties;
 
 /**
  *  Does indexing in preparation for a keyword search.
+ *  <p>The products can be indexed in chunks: the related records of all the products of a chunk are read
+ *  with one query per entity, the keywords are computed in parallel and only the keywords that changed
+ *  are written, the new ones in one batch.</p>
  */
 public class KeywordIndex {
 
     private static final String MODULE = KeywordIndex.class.getName();
+    private static final String KEYWORD_TYPE_ID = "KWT_KEYWORD";
 
     public static void forceIndexKeywords(GenericValue product) throws GenericEntityException {
         KeywordIndex.indexKeywords(product, true);
@@ -57,31 +71,278 @@ public class KeywordIndex {
     }
 
     public static void indexKeywords(GenericValue product, boolean doAll) throws GenericEntityException {
-        if (product == null) {
+        if (product == null || product.getDelegator() == null) {
             return;
         }
+        KeywordIndex.indexKeywords(product.getDelegator(), UtilMisc.toList(product), doAll);
+    }
+
+    /**
+     * Indexes the keywords of a chunk of products, in one transaction.
+     * @param delegator the delegator
+     * @param products the products to index
+     * @param doAll if <code>false</code> the products excluded from the index by the prodsearch.properties
+     * settings and the <code>autoCreateKeywords</code> field are ignored
+     * @return the number of products indexed
+     * @throws GenericEntityException
+     */
+    public static int indexKeywords(Delegator delegator, List<GenericValue> products, boolean doAll) throws GenericEntityException {
         Timestamp nowTimestamp = UtilDateTime.nowTimestamp();
-        Delegator delegator = product.getDelegator();
+        List<GenericValue> toIndex = new ArrayList<>(products.size());
+        for (GenericValue product : products) {
+            if (doAll || isIndexed(product, delegator, nowTimestamp)) {
+                toIndex.add(product);
+            }
+        }
+        if (toIndex.isEmpty()) {
+            return 0;
+        }
+
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin();
+            Map<String, KeywordSources> sources = readKeywordSources(delegator, toIndex);
+            Map<String, Map<String, Long>> keywords = new HashMap<>();
+            if (toIndex.size() == 1) {
+                // no need of another thread for a single product
+                GenericValue product = toIndex.get(0);
+                keywords.put(product.getString("productId"), makeKeywords(product, sources.get(product.getString("productId")), delegator));
+            } else {
+                List<Future<Map<String, Long>>> futures = new ArrayList<>(toIndex.size());
+                for (GenericValue product : toIndex) {
+                    futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(() -> makeKeywords(product, sources.get(product.getString("productId")),
+                            delegator)));
+                }
+                for (int i = 0; i < toIndex.size(); i++) {
+                    keywords.put(toIndex.get(i).getString("productId"), futures.get(i).get());
+                }
+            }
+            storeKeywords(delegator, keywords);
+            TransactionUtil.commit(beganTransaction);
+        } catch (GenericEntityException | ExecutionException | InterruptedException e) {
+            String errMsg = "Error indexing the keywords of " + toIndex.size() + " products: " + e.toString();
+            TransactionUtil.rollback(beganTransaction, errMsg, e);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw e instanceof GenericEntityException ? (GenericEntityException) e : new GenericEntityException(errMsg, e);
+        }
+        return toIndex.size();
+    }
+
+    /**
+     * Indexes the keywords of all the products, by chunks of <code>index.bulk.chunk.size</code> products
+     * (prodsearch.properties), each chunk in its own transaction. When a chunk fails its products are indexed
+     * one by one to find the failing ones.
+     * @param delegator the delegator
+     * @param doAll if <code>true</code> all the products having <code>autoCreateKeywords</code> different from N
+     * are indexed, ignoring the exclusion settings of prodsearch.properties
+     * @param errorProductIds the list to which the ids of the products which could not be indexed are added
+     * @return the number of products read
+     * @throws GenericEntityException if the products cannot be read
+     */
+    public static int indexAllKeywords(Delegator delegator, boolean doAll, List<String> errorProductIds) throws GenericEntityException {
+        int chunkSize = EntityUtilProperties.getPropertyAsInteger("prodsearch", "index.bulk.chunk.size", 200);
+        EntityCondition condition = getIndexedProductsCondition(delegator, doAll, UtilDateTime.nowTimestamp());
+        int numProds = 0;
+        String lastProductId = null;
+        long startTime = System.currentTimeMillis();
+        List<GenericValue> products;
+        do {
+            // read by productId ranges, so that each chunk is read and written in its own transaction
+            EntityCondition chunkCondition = lastProductId == null ? condition : EntityCondition.makeCondition(condition,
+                    EntityOperator.AND, EntityCondition.makeCondition("productId", EntityOperator.GREATER_THAN, lastProductId));
+            products = EntityQuery.use(delegator).from("Product").where(chunkCondition).orderBy("productId").maxRows(chunkSize).queryList();
+            if (products.isEmpty()) {
+                break;
+            }
+            try {
+                indexKeywords(delegator, products, doAll);
+            } catch (GenericEntityException e) {
+                Debug.logWarning("Could not index the keywords of the chunk starting at product " + products.get(0).getString("productId")
+                        + ", indexing its products one by one: " + e.getMessage(), MODULE);
+                for (GenericValue product : products) {
+                    try {
+                        indexKeywords(product, doAll);
+                    } catch (GenericEntityException e2) {
+                        Debug.logWarning("Could not create product-keyword (write error) for product " + product.getString("productId")
+                                + "; message: " + e2.getMessage(), MODULE);
+                        errorProductIds.add(product.getString("productId"));
+                    }
+                }
+            }
+            numProds += products.size();
+            lastProductId = products.get(products.size() - 1).getString("productId");
+            Debug.logInfo("Keywords indexed for " + numProds + " products so far, in " + (System.currentTimeMillis() - startTime) / 1000
+                    + "s", MODULE);
+        } while (products.size() == chunkSize);
+        return numProds;
+    }
+
+    /**
+     * Gets the condition on the Product entity selecting the products to index.
+     * @param delegator the delegator
+     * @param doAll if <code>true</code> the exclusion settings of prodsearch.properties are ignored
+     * @param nowTimestamp the now timestamp
+     * @return the condition
+     */
+    public static EntityCondition getIndexedProductsCondition(Delegator delegator, boolean doAll, Timestamp nowTimestamp) {
+        List<EntityCondition> condList = new LinkedList<>();
+        condList.add(EntityCondition.makeCondition(EntityCondition.makeCondition("autoCreateKeywords", EntityOperator.EQUALS, null),
+                EntityOperator.OR, EntityCondition.makeCondition("autoCreateKeywords", EntityOperator.NOT_EQUAL, "N")));
         if (!doAll) {
-            if ("N".equals(product.getString("autoCreateKeywords"))) {
-                return;
+            if ("true".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.ignore.variants", delegator))) {
+                condList.add(EntityCondition.makeCondition(EntityCondition.makeCondition("isVariant", EntityOperator.EQUALS, null),
+                        EntityOperator.OR, EntityCondition.makeCondition("isVariant", EntityOperator.NOT_EQUAL, "Y")));
+            }
+            if ("true".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.ignore.discontinued.sales", delegator))) {
+                condList.add(EntityCondition.makeCondition(EntityCondition.makeCondition("salesDiscontinuationDate", EntityOperator.EQUALS, null),
+                        EntityOperator.OR, EntityCondition.makeCondition("salesDiscontinuationDate", EntityOperator.GREATER_THAN_EQUAL_TO,
+                                nowTimestamp)));
+            }
+        }
+        return EntityCondition.makeCondition(condList, EntityOperator.AND);
+    }
+
+    private static boolean isIndexed(GenericValue product, Delegator delegator, Timestamp nowTimestamp) {
+        if ("N".equals(product.getString("autoCreateKeywords"))) {
+            return false;
+        }
+        if ("Y".equals(product.getString("isVariant")) && "true".equals(EntityUtilProperties.getPropertyValue("prodsearch",
+                "index.ignore.variants", delegator))) {
+            return false;
+        }
+        Timestamp salesDiscontinuationDate = product.getTimestamp("salesDiscontinuationDate");
+        return salesDiscontinuationDate == null || !salesDiscontinuationDate.before(nowTimestamp)
+                || !"true".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.ignore.discontinued.sales", delegator));
+    }
+
+    /** The records related to a product from which keywords are taken */
+    private static final class KeywordSources {
+        private final List<GenericValue> productFeatureAndAppls = new LinkedList<>();
+        private final List<GenericValue> productAttributes = new LinkedList<>();
+        private final List<GenericValue> goodIdentifications = new LinkedList<>();
+        private final List<GenericValue> variantProductAssocs = new LinkedList<>();
+        /** The texts of the contents, repeated by their weight */
+        private final List<String> contentStrings = new LinkedList<>();
+    }
+
+    private static boolean isWeighted(String propertyName, Delegator delegator) {
+        return !"0".equals(EntityUtilProperties.getPropertyValue("prodsearch", propertyName, "0", delegator));
+    }
+
+    /**
+     * Reads the records related to the products, with one query per entity for all the products, and renders their
+     * contents in the transaction of the chunk.
+     */
+    private static Map<String, KeywordSources> readKeywordSources(Delegator delegator, List<GenericValue> products) throws GenericEntityException {
+        Map<String, KeywordSources> sources = new HashMap<>();
+        Map<String, GenericValue> productsById = new HashMap<>();
+        List<String> virtualProductIds = new LinkedList<>();
+        for (GenericValue product : products) {
+            sources.put(product.getString("productId"), new KeywordSources());
+            productsById.put(product.getString("productId"), product);
+            if ("Y".equals(product.getString("isVirtual"))) {
+                virtualProductIds.add(product.getString("productId"));
+            }
+        }
+        EntityCondition productIdCondition = EntityCondition.makeCondition("productId", EntityOperator.IN, sources.keySet());
+
+        // ProductFeatureAppl
+        if (isWeighted("index.weight.ProductFeatureAndAppl.description", delegator)
+                || isWeighted("index.weight.ProductFeatureAndAppl.abbrev", delegator)
+                || isWeighted("index.weight.ProductFeatureAndAppl.idCode", delegator)) {
+            List<GenericValue> productFeatureAndAppls = EntityQuery.use(delegator).from("ProductFeatureAndAppl")
+                    .where(productIdCondition).queryList();
+            for (GenericValue productFeatureAndAppl : productFeatureAndAppls) {
+                sources.get(productFeatureAndAppl.getString("productId")).productFeatureAndAppls.add(productFeatureAndAppl);
             }
-            if ("Y".equals(product.getString("isVariant")) && "true".equals(EntityUtilProperties.getPropertyValue("prodsearch",
-                    "index.ignore.variants", delegator))) {
-                return;
+        }
+
+        // ProductAttribute
+        if (isWeighted("index.weight.ProductAttribute.attrName", delegator) || isWeighted("index.weight.ProductAttribute.attrValue", delegator)) {
+            for (GenericValue productAttribute : EntityQuery.use(delegator).from("ProductAttribute").where(productIdCondition).queryList()) {
+                sources.get(productAttribute.getString("productId")).productAttributes.add(productAttribute);
             }
-            Timestamp salesDiscontinuationDate = product.getTimestamp("salesDiscontinuationDate");
-            if (salesDiscontinuationDate != null && salesDiscontinuationDate.before(nowTimestamp)
-                    && "true".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.ignore.discontinued.sales", delegator))) {
-                return;
+        }
+
+        // GoodIdentification
+        if (isWeighted("index.weight.GoodIdentification.idValue", delegator)) {
+            for (GenericValue goodIdentification : EntityQuery.use(delegator).from("GoodIdentification").where(productIdCondition).queryList()) {
+                sources.get(goodIdentification.getString("productId")).goodIdentifications.add(goodIdentification);
             }
         }
 
-        if (delegator == null) {
-            return;
+        // Variant Product IDs
+        if (!virtualProductIds.isEmpty() && isWeighted("index.weight.Variant.Product.productId", delegator)) {
+            List<GenericValue> variantProductAssocs = EntityQuery.use(delegator).from("ProductAssoc")
+                    .where(EntityCondition.makeCondition("productId", EntityOperator.IN, virtualProductIds),
+                            EntityCondition.makeCondition("productAssocTypeId", EntityOperator.EQUALS, "PRODUCT_VARIANT"))
+                    .filterByDate().queryList();
+            for (GenericValue variantProductAssoc : variantProductAssocs) {
+                sources.get(variantProductAssoc.getString("productId")).variantProductAssocs.add(variantProductAssoc);
+            }
+        }
+
+        // ProductContent
+        List<String> productContentTypeIds = getProductContentTypeIds(delegator);
+        if (!productContentTypeIds.isEmpty()) {
+            List<GenericValue> productContentAndInfos = EntityQuery.use(delegator).from("ProductContentAndInfo")
+                    .where(productIdCondition, EntityCondition.makeCondition("productContentTypeId", EntityOperator.IN, productContentTypeIds))
+                    .queryList();
+            Map<String, List<GenericValue>> alternateViewsByContentId = new HashMap<>();
+            if (!productContentAndInfos.isEmpty()) {
+                Set<String> contentIds = new HashSet<>();
+                for (GenericValue productContentAndInfo : productContentAndInfos) {
+                    contentIds.add(productContentAndInfo.getString("contentId"));
+                }
+                List<GenericValue> alternateViews = EntityQuery.use(delegator).from("ContentAssocDataResourceViewTo")
+                        .where(EntityCondition.makeCondition("contentIdStart", EntityOperator.IN, contentIds),
+                                EntityCondition.makeCondition("caContentAssocTypeId", EntityOperator.EQUALS, "ALTERNATE_LOCALE"))
+                        .orderBy("-caFromDate").queryList();
+                alternateViews = EntityUtil.filterByDate(alternateViews, UtilDateTime.nowTimestamp(), "caFromDate", "caThruDate", true);
+                for (GenericValue alternateView : alternateViews) {
+                    alternateViewsByContentId.computeIfAbsent(alternateView.getString("contentIdStart"), k -> new LinkedList<>()).add(alternateView);
+                }
+            }
+            Map<String, Integer> weights = new HashMap<>();
+            for (GenericValue productContentAndInfo : productContentAndInfos) {
+                String productId = productContentAndInfo.getString("productId");
+                int weight = weights.computeIfAbsent(productContentAndInfo.getString("productContentTypeId"), KeywordIndex::getProductContentWeight);
+                List<String> contentStrings = sources.get(productId).contentStrings;
+                addWeightedDataResourceString(productContentAndInfo, weight, contentStrings, delegator, productsById.get(productId));
+                for (GenericValue alternateView : alternateViewsByContentId.getOrDefault(productContentAndInfo.getString("contentId"),
+                        Collections.emptyList())) {
+                    addWeightedDataResourceString(alternateView, weight, contentStrings, delegator, productsById.get(productId));
+                }
+            }
+        }
+        return sources;
+    }
+
+    private static List<String> getProductContentTypeIds(Delegator delegator) {
+        List<String> productContentTypeIds = new LinkedList<>();
+        String productContentTypes = EntityUtilProperties.getPropertyValue("prodsearch", "index.include.ProductContentTypes", delegator);
+        for (String productContentTypeId : productContentTypes.split(",")) {
+            if (UtilValidate.isNotEmpty(productContentTypeId.trim())) {
+                productContentTypeIds.add(productContentTypeId.trim());
+            }
+        }
+        return productContentTypeIds;
+    }
+
+    private static int getProductContentWeight(String productContentTypeId) {
+        try {
+            // this is defaulting to a weight of 1 because you specified you wanted to index this type
+            return EntityUtilProperties.getPropertyAsInteger("prodsearch", "index.weight.ProductContent." + productContentTypeId, 1);
+        } catch (Exception e) {
+            Debug.logWarning("Could not parse weight number: " + e.toString(), MODULE);
+            return 1;
         }
-        String productId = product.getString("productId");
+    }
 
+    /** Computes the keywords of a product and their weight, from the records read by {@link #readKeywordSources} */
+    private static Map<String, Long> makeKeywords(GenericValue product, KeywordSources sources, Delegator delegator) {
         // get these in advance just once since they will be used many times for the multiple strings to index
         String separators = KeywordSearchUtil.getSeparators();
         String stopWordBagOr = KeywordSearchUtil.getStopWordBagOr();
@@ -101,96 +362,48 @@ public class KeywordIndex {
         keywords.put(product.getString("productId").toLowerCase(Locale.getDefault()), (long) pidWeight);
 
         // Product fields - default is 0 if not found in the properties file
-        if (!"0".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.weight.Product.productName", "0", delegator))) {
+        if (isWeighted("index.weight.Product.productName", delegator)) {
             addWeightedKeywordSourceString(product, "productName", strings);
         }
-        if (!"0".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.weight.Product.internalName", "0", delegator))) {
+        if (isWeighted("index.weight.Product.internalName", delegator)) {
             addWeightedKeywordSourceString(product, "internalName", strings);
         }
-        if (!"0".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.weight.Product.brandName", "0", delegator))) {
+        if (isWeighted("index.weight.Product.brandName", delegator)) {
             addWeightedKeywordSourceString(product, "brandName", strings);
         }
-        if (!"0".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.weight.Product.description", "0", delegator))) {
+        if (isWeighted("index.weight.Product.description", delegator)) {
             addWeightedKeywordSourceString(product, "description", strings);
         }
-        if (!"0".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.weight.Product.longDescription", "0", delegator))) {
+        if (isWeighted("index.weight.Product.longDescription", delegator)) {
             addWeightedKeywordSourceString(product, "longDescription", strings);
         }
 
-        // ProductFeatureAppl
-        if (!"0".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.weight.ProductFeatureAndAppl.description", "0", delegator))
-                || !"0".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.weight.ProductFeatureAndAppl.abbrev", "0", delegator))
-                || !"0".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.weight.ProductFeatureAndAppl.idCode", "0", delegator))) {
-            // get strings from attributes and features
-            List<GenericValue> productFeatureAndAppls = EntityQuery.use(delegator).from("ProductFeatureAndAppl")
-                    .where("productId", productId).queryList();
-            for (GenericValue productFeatureAndAppl: productFeatureAndAppls) {
-                addWeightedKeywordSourceString(productFeatureAndAppl, "description", strings);
-                addWeightedKeywordSourceString(productFeatureAndAppl, "abbrev", strings);
-                addWeightedKeywordSourceString(productFeatureAndAppl, "idCode", strings);
-            }
+        // get strings from attributes and features
+        for (GenericValue productFeatureAndAppl: sources.productFeatureAndAppls) {
+            addWeightedKeywordSourceString(productFeatureAndAppl, "description", strings);
+            addWeightedKeywordSourceString(productFeatureAndAppl, "abbrev", strings);
+            addWeightedKeywordSourceString(productFeatureAndAppl, "idCode", strings);
         }
-
-        // ProductAttribute
-        if (!"0".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.weight.ProductAttribute.attrName", "0", delegator))
-                || !"0".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.weight.ProductAttribute.attrValue", "0", delegator))) {
-            List<GenericValue> productAttributes = EntityQuery.use(delegator).from("ProductAttribute").where("productId", productId).queryList();
-            for (GenericValue productAttribute: productAttributes) {
-                addWeightedKeywordSourceString(productAttribute, "attrName", strings);
-                addWeightedKeywordSourceString(productAttribute, "attrValue", strings);
-            }
-        }
-
-        // GoodIdentification
-        if (!"0".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.weight.GoodIdentification.idValue", "0", delegator))) {
-            List<GenericValue> goodIdentifications = EntityQuery.use(delegator).from("GoodIdentification").where("productId", productId).queryList();
-            for (GenericValue goodIdentification: goodIdentifications) {
-                addWeightedKeywordSourceString(goodIdentification, "idValue", strings);
-            }
+        for (GenericValue productAttribute: sources.productAttributes) {
+            addWeightedKeywordSourceString(productAttribute, "attrName", strings);
+            addWeightedKeywordSourceString(productAttribute, "attrValue", strings);
         }
-
-        // Variant Product IDs
-        if ("Y".equals(product.getString("isVirtual"))) {
-            if (!"0".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.weight.Variant.Product.productId", "0", delegator))) {
-                List<GenericValue> variantProductAssocs = EntityQuery.use(delegator).from("ProductAssoc").where("productId", productId,
-                        "productAssocTypeId", "PRODUCT_VARIANT").filterByDate().queryList();
-                for (GenericValue variantProductAssoc: variantProductAssocs) {
-                    int weight = 1;
-                    try {
-                        weight = EntityUtilProperties.getPropertyAsInteger("prodsearch", "index.weight.Variant.Product.productId", 0);
-                    } catch (Exception e) {
-                        Debug.logWarning("Could not parse weight number: " + e.toString(), MODULE);
-                    }
-                    for (int i = 0; i < weight; i++) {
-                        strings.add(variantProductAssoc.getString("productIdTo"));
-                    }
-                }
-            }
+        for (GenericValue goodIdentification: sources.goodIdentifications) {
+            addWeightedKeywordSourceString(goodIdentification, "idValue", strings);
         }
-
-        String productContentTypes = EntityUtilProperties.getPropertyValue("prodsearch", "index.include.ProductContentTypes", delegator);
-        for (String productContentTypeId: productContentTypes.split(",")) {
+        for (GenericValue variantProductAssoc: sources.variantProductAssocs) {
             int weight = 1;
             try {
-                // this is defaulting to a weight of 1 because you specified you wanted to index this type
-                weight = EntityUtilProperties.getPropertyAsInteger("prodsearch", "index.weight.ProductContent." + productContentTypeId, 1);
+                weight = EntityUtilProperties.getPropertyAsInteger("prodsearch", "index.weight.Variant.Product.productId", 0);
             } catch (Exception e) {
                 Debug.logWarning("Could not parse weight number: " + e.toString(), MODULE);
             }
-
-            List<GenericValue> productContentAndInfos = EntityQuery.use(delegator).from("ProductContentAndInfo").where("productId", productId,
-                    "productContentTypeId", productContentTypeId).queryList();
-            for (GenericValue productContentAndInfo: productContentAndInfos) {
-                addWeightedDataResourceString(productContentAndInfo, weight, strings, delegator, product);
-
-                List<GenericValue> alternateViews = productContentAndInfo.getRelated("ContentAssocDataResourceViewTo",
-                        UtilMisc.toMap("caContentAssocTypeId", "ALTERNATE_LOCALE"), UtilMisc.toList("-caFromDate"), false);
-                alternateViews = EntityUtil.filterByDate(alternateViews, UtilDateTime.nowTimestamp(), "caFromDate", "caThruDate", true);
-                for (GenericValue thisView: alternateViews) {
-                    addWeightedDataResourceString(thisView, weight, strings, delegator, product);
-                }
+            for (int i = 0; i < weight; i++) {
+                strings.add(variantProductAssoc.getString("productIdTo"));
             }
         }
+
+        strings.addAll(sources.contentStrings);
         if (UtilValidate.isNotEmpty(strings)) {
             for (String str: strings) {
                 // call process keywords method here
@@ -198,27 +411,62 @@ public class KeywordIndex {
             }
         }
 
-        List<GenericValue> toBeStored = new LinkedList<>();
         int keywordMaxLength = EntityUtilProperties.getPropertyAsInteger("prodsearch", "product.keyword.max.length", 0);
-        for (Map.Entry<String, Long> entry: keywords.entrySet()) {
-            if (entry.getKey().length() <= keywordMaxLength) {
-                GenericValue productKeyword = delegator.makeValue("ProductKeyword", UtilMisc.toMap("productId", product.getString("productId"),
-                        "keyword", entry.getKey(), "keywordTypeId", "KWT_KEYWORD", "relevancyWeight", entry.getValue()));
-                toBeStored.add(productKeyword);
+        keywords.keySet().removeIf(keyword -> keyword.length() > keywordMaxLength);
+        return keywords;
+    }
+
+    /**
+     * Writes the differences between the computed keywords and the ProductKeyword records: the new keywords are
+     * created in one batch, the keywords with a new weight are updated and, if <code>index.delete.on_index</code>
+     * is true, the keywords no longer found are removed.
+     */
+    private static void storeKeywords(Delegator delegator, Map<String, Map<String, Long>> keywordsByProductId) throws GenericEntityException {
+        Map<String, Map<String, GenericValue>> existingByProductId = new HashMap<>();
+        List<GenericValue> existingKeywords = EntityQuery.use(delegator).from("ProductKeyword")
+                .where(EntityCondition.makeCondition("productId", EntityOperator.IN, keywordsByProductId.keySet()),
+                        EntityCondition.makeCondition("keywordTypeId", EntityOperator.EQUALS, KEYWORD_TYPE_ID))
+                .queryList();
+        for (GenericValue existingKeyword : existingKeywords) {
+            existingByProductId.computeIfAbsent(existingKeyword.getString("productId"), k -> new HashMap<>())
+                    .put(existingKeyword.getString("keyword"), existingKeyword);
+        }
+        boolean deleteOnIndex = "true".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.delete.on_index", "false", delegator));
+
+        List<GenericValue> toCreate = new LinkedList<>();
+        for (Map.Entry<String, Map<String, Long>> productKeywords : keywordsByProductId.entrySet()) {
+            String productId = productKeywords.getKey();
+            Map<String, GenericValue> existing = existingByProductId.getOrDefault(productId, new HashMap<>());
+            boolean changed = false;
+            for (Map.Entry<String, Long> entry : productKeywords.getValue().entrySet()) {
+                GenericValue productKeyword = existing.remove(entry.getKey());
+                if (productKeyword == null) {
+                    toCreate.add(delegator.makeValue("ProductKeyword", UtilMisc.toMap("productId", productId,
+                            "keyword", entry.getKey(), "keywordTypeId", KEYWORD_TYPE_ID, "relevancyWeight", entry.getValue())));
+                    changed = true;
+                } else if (!entry.getValue().equals(productKeyword.getLong("relevancyWeight"))) {
+                    productKeyword.set("relevancyWeight", entry.getValue());
+                    productKeyword.store();
+                }
+            }
+            if (deleteOnIndex && !existing.isEmpty()) {
+                delegator.removeByCondition("ProductKeyword", EntityCondition.makeCondition(UtilMisc.toList(
+                        EntityCondition.makeCondition("productId", EntityOperator.EQUALS, productId),
+                        EntityCondition.makeCondition("keywordTypeId", EntityOperator.EQUALS, KEYWORD_TYPE_ID),
+                        EntityCondition.makeCondition("keyword", EntityOperator.IN, existing.keySet()))));
+                changed = true;
+            }
+            if (changed) {
+                // the batch and by condition operations do not trigger the ProductKeyword ECAs
+                ProductSearchIndex.productKeywordsChanged(delegator, productId);
             }
         }
-        if (!toBeStored.isEmpty()) {
+        if (!toCreate.isEmpty()) {
             if (Debug.verboseOn()) {
-                Debug.logVerbose("[KeywordIndex.indexKeywords] Storing " + toBeStored.size() + " keywords for productId "
-                        + product.getString("productId"), MODULE);
+                Debug.logVerbose("[KeywordIndex.storeKeywords] Creating " + toCreate.size() + " keywords for " + keywordsByProductId.size()
+                        + " products", MODULE);
             }
-
-            if ("true".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.delete.on_index", "false", delegator))) {
-                // delete all keywords if the properties file says to
-                delegator.removeByAnd("ProductKeyword", UtilMisc.toMap("productId", product.getString("productId")));
-            }
-
-            delegator.storeAll(toBeStored);
+            delegator.createAllByBatchProcess(toCreate);
         }
     }
 
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.product;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionKeySet;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+
+/**
+ * Feed of the products whose keywords must be indexed again, used by the <code>indexProductKeywords</code> ECAs
+ * when <code>index.change.feed</code> is <code>true</code> in prodsearch.properties.
+ * <p>Instead of indexing the keywords in the transaction changing the product, the product is queued once the
+ * transaction is committed and a background task indexes the queued products by chunks of
+ * <code>index.bulk.chunk.size</code>. The products changed several times before being indexed are indexed once.</p>
+ * <p>The queue is kept in memory, the products still queued when OFBiz stops are not indexed: running the
+ * <code>indexAllProductKeywords</code> service indexes them again.</p>
+ */
+public final class KeywordIndexQueue {
+
+    private static final String MODULE = KeywordIndexQueue.class.getName();
+    private static final Map<String, KeywordIndexQueue> QUEUES = new ConcurrentHashMap<>();
+
+    private final Delegator delegator;
+    private final Set<String> queuedProductIds = new LinkedHashSet<>();
+    private boolean draining = false;
+    /** Products changed by the running transactions, queued once per transaction after the commit */
+    private final TransactionKeySet<String> changedProductIds = new TransactionKeySet<>("queue the keyword indexing of product",
+            (productId, committed) -> {
+                if (committed) {
+                    add(productId);
+                }
+            });
+
+    private KeywordIndexQueue(Delegator delegator) {
+        this.delegator = delegator;
+    }
+
+    /**
+     * Is the change feed enabled
+     * @param delegator the delegator
+     * @return <code>true</code> if the changed products must be queued instead of indexed right away
+     */
+    public static boolean isEnabled(Delegator delegator) {
+        return "true".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.change.feed", "false", delegator));
+    }
+
+    /**
+     * Queues a product for indexing, once the current transaction is committed.
+     * @param delegator the delegator
+     * @param productId the id of the changed product
+     */
+    public static void productChanged(Delegator delegator, String productId) {
+        QUEUES.computeIfAbsent(delegator.getDelegatorName(), k -> new KeywordIndexQueue(delegator)).changedProductIds.add(productId);
+    }
+
+    private synchronized void add(String productId) {
+        queuedProductIds.add(productId);
+        if (!draining) {
+            draining = true;
+            ExecutionPool.GLOBAL_BATCH.submit(this::drain);
+        }
+    }
+
+    private synchronized List<String> takeChunk(int chunkSize) {
+        List<String> chunk = new ArrayList<>(Math.min(chunkSize, queuedProductIds.size()));
+        Iterator<String> it = queuedProductIds.iterator();
+        while (it.hasNext() && chunk.size() < chunkSize) {
+            chunk.add(it.next());
+            it.remove();
+        }
+        if (chunk.isEmpty()) {
+            draining = false;
+        }
+        return chunk;
+    }
+
+    private synchronized void stopDraining() {
+        draining = false;
+    }
+
+    private void drain() {
+        boolean drained = false;
+        try {
+            int chunkSize = EntityUtilProperties.getPropertyAsInteger("prodsearch", "index.bulk.chunk.size", 200);
+            List<String> productIds;
+            while (!(productIds = takeChunk(chunkSize)).isEmpty()) {
+                try {
+                    List<GenericValue> products = EntityQuery.use(delegator).from("Product")
+                            .where(EntityCondition.makeCondition("productId", EntityOperator.IN, productIds)).queryList();
+                    KeywordIndex.indexKeywords(delegator, products, false);
+                } catch (GenericEntityException e) {
+                    Debug.logError(e, "Could not index the keywords of the products " + productIds, MODULE);
+                } catch (RuntimeException e) {
+                    // keep draining the queue
+                    Debug.logError(e, "Error indexing the keywords of the products " + productIds, MODULE);
+                }
+            }
+            // the empty chunk has stopped the draining
+            drained = true;
+        } finally {
+            if (!drained) {
+                // the next queued product starts another drain
+                stopDraining();
+            }
+        }
+    }
+}
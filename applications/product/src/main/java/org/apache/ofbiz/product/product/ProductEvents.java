@@ -48,14 +48,10 @@ import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericPK;
 import org.apache.ofbiz.entity.GenericValue;
-import org.apache.ofbiz.entity.condition.EntityCondition;
-import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
-import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityUtil;
-import org.apache.ofbiz.entity.util.EntityUtilProperties;
 import org.apache.ofbiz.product.store.ProductStoreWorker;
 import org.apache.ofbiz.security.Security;
 import org.apache.ofbiz.service.GenericServiceException;
@@ -95,88 +91,24 @@ public class ProductEvents {
             return "error";
         }
 
-        EntityCondition condition = null;
-        if (!"Y".equals(doAll)) {
-            List<EntityCondition> condList = new LinkedList<>();
-            condList.add(EntityCondition.makeCondition(EntityCondition.makeCondition("autoCreateKeywords", EntityOperator.EQUALS, null),
-                    EntityOperator.OR, EntityCondition.makeCondition("autoCreateKeywords", EntityOperator.NOT_EQUAL, "N")));
-            if ("true".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.ignore.variants", delegator))) {
-                condList.add(EntityCondition.makeCondition(EntityCondition.makeCondition("isVariant", EntityOperator.EQUALS, null),
-                        EntityOperator.OR, EntityCondition.makeCondition("isVariant", EntityOperator.NOT_EQUAL, "Y")));
-            }
-            if ("true".equals(EntityUtilProperties.getPropertyValue("prodsearch", "index.ignore.discontinued.sales", delegator))) {
-                condList.add(EntityCondition.makeCondition(EntityCondition.makeCondition("salesDiscontinuationDate", EntityOperator.EQUALS, null),
-                        EntityOperator.OR, EntityCondition.makeCondition("salesDiscontinuationDate", EntityOperator.GREATER_THAN_EQUAL_TO,
-                                nowTimestamp)));
-            }
-            condition = EntityCondition.makeCondition(condList, EntityOperator.AND);
-        } else {
-            condition = EntityCondition.makeCondition(EntityCondition.makeCondition("autoCreateKeywords", EntityOperator.EQUALS, null),
-                    EntityOperator.OR, EntityCondition.makeCondition("autoCreateKeywords", EntityOperator.NOT_EQUAL, "N"));
-        }
-
-
         int numProds = 0;
         int errProds = 0;
-
-        boolean beganTx = false;
         try {
-            // begin the transaction
-            beganTx = TransactionUtil.begin(7200);
-        } catch (GenericTransactionException gte) {
-            Debug.logError(gte, "Unable to begin transaction", MODULE);
-        }
-        try (EntityListIterator entityListIterator = EntityQuery.use(delegator).from("Product").where(condition).queryIterator()) {
-            try {
-                if (Debug.infoOn()) {
-                    long count = EntityQuery.use(delegator).from("Product").where(condition).queryCount();
-                    Debug.logInfo("========== Found " + count + " products to index ==========", MODULE);
-                }
-            } catch (GenericEntityException gee) {
-                Debug.logWarning(gee, gee.getMessage(), MODULE);
-                Map<String, String> messageMap = UtilMisc.toMap("gee", gee.toString());
-                errMsg = UtilProperties.getMessage(RESOURCE, "productevents.error_getting_product_list", messageMap, UtilHttp.getLocale(request));
-                request.setAttribute("_ERROR_MESSAGE_", errMsg);
-                return "error";
-            }
-
-            GenericValue product;
-            while ((product = entityListIterator.next()) != null) {
-                try {
-                    KeywordIndex.indexKeywords(product, "Y".equals(doAll));
-                } catch (GenericEntityException e) {
-                    Debug.logWarning("[ProductEvents.updateAllKeywords] Could not create product-keyword (write error); message: "
-                            + e.getMessage(), MODULE);
-                    errProds++;
-                }
-                numProds++;
-                if (numProds % 500 == 0) {
-                    Debug.logInfo("Keywords indexed for " + numProds + " so far", MODULE);
-                }
-            }
-        } catch (GenericEntityException e) {
-            try {
-                TransactionUtil.rollback(beganTx, e.getMessage(), e);
-            } catch (GenericTransactionException e1) {
-                Debug.logError(e1, MODULE);
-            }
-            return "error";
-        } catch (Throwable t) {
-            Debug.logError(t, MODULE);
-            request.setAttribute("_ERROR_MESSAGE_", t.getMessage());
-            try {
-                TransactionUtil.rollback(beganTx, t.getMessage(), t);
-            } catch (GenericTransactionException e2) {
-                Debug.logError(e2, MODULE);
+            if (Debug.infoOn()) {
+                long count = EntityQuery.use(delegator).from("Product").where(KeywordIndex.getIndexedProductsCondition(delegator,
+                        "Y".equals(doAll), nowTimestamp)).queryCount();
+                Debug.logInfo("========== Found " + count + " products to index ==========", MODULE);
             }
+            List<String> errorProductIds = new LinkedList<>();
+            numProds = KeywordIndex.indexAllKeywords(delegator, "Y".equals(doAll), errorProductIds);
+            errProds = errorProductIds.size();
+        } catch (GenericEntityException gee) {
+            Debug.logWarning(gee, gee.getMessage(), MODULE);
+            Map<String, String> messageMap = UtilMisc.toMap("gee", gee.toString());
+            errMsg = UtilProperties.getMessage(RESOURCE, "productevents.error_getting_product_list", messageMap, UtilHttp.getLocale(request));
+            request.setAttribute("_ERROR_MESSAGE_", errMsg);
             return "error";
         }
-        // commit the transaction
-        try {
-            TransactionUtil.commit(beganTx);
-        } catch (GenericTransactionException e) {
-            Debug.logError(e, MODULE);
-        }
 
         if (errProds == 0) {
             Map<String, String> messageMap = UtilMisc.toMap("numProds", Integer.toString(numProds));
@@ -308,13 +308,15 @@ public class ProductSearch {
         public ArrayList<String> doSearch() {
             long startMillis = System.currentTimeMillis();
 
-            // do the query
-            ArrayList<String> productIds = null;
-            try (EntityListIterator eli = this.doQuery(delegator)) {
-                productIds = this.makeProductIdList(eli);
-            } catch (GenericEntityException e) {
-                Debug.logError(e, MODULE);
-                return null;
+            // do the query, in the memory index when possible
+            ArrayList<String> productIds = this.doIndexSearch();
+            if (productIds == null) {
+                try (EntityListIterator eli = this.doQuery(delegator)) {
+                    productIds = this.makeProductIdList(eli);
+                } catch (GenericEntityException e) {
+                    Debug.logError(e, MODULE);
+                    return null;
+                }
             }
 
             long endMillis = System.currentTimeMillis();
@@ -326,6 +328,57 @@ public class ProductSearch {
             return productIds;
         }
 
+        /**
+         * Searches the products in the {@link ProductSearchIndex} when it is enabled and ready, and when all the
+         * constraints are keyword, category or feature constraints it supports.
+         * @return the product ids, or <code>null</code> if the search must be done with SQL
+         */
+        private ArrayList<String> doIndexSearch() {
+            if (!ProductSearchIndex.isEnabled(delegator) || !entityConditionList.isEmpty()
+                    || (resultSortOrder != null && !(resultSortOrder instanceof SortKeywordRelevancy))
+                    || (orKeywordFixedSet.isEmpty() && andKeywordFixedSet.isEmpty() && keywordFixedOrSetAndList.isEmpty())
+                    || !alwaysIncludeCategoryIds.isEmpty() || !alwaysIncludeCategoryIdOrSetAndList.isEmpty()
+                    || !alwaysIncludeFeatureIds.isEmpty() || !includeFeatureIdOrSetAndList.isEmpty() || !alwaysIncludeFeatureIdOrSetAndList.isEmpty()
+                    || !includeFeatureCategoryIds.isEmpty() || !excludeFeatureCategoryIds.isEmpty() || !alwaysIncludeFeatureCategoryIds.isEmpty()
+                    || !includeFeatureGroupIds.isEmpty() || !excludeFeatureGroupIds.isEmpty() || !alwaysIncludeFeatureGroupIds.isEmpty()) {
+                return null;
+            }
+            ProductSearchIndex searchIndex = ProductSearchIndex.getReadyInstance(delegator);
+            if (searchIndex == null) {
+                return null;
+            }
+
+            // same keyword sets as finishKeywordConstraints
+            Set<String> andKeywords = new HashSet<>(andKeywordFixedSet);
+            List<Set<String>> orKeywordSets = new LinkedList<>();
+            List<Set<String>> keywordOrSets = new LinkedList<>(keywordFixedOrSetAndList);
+            if (!orKeywordFixedSet.isEmpty()) {
+                keywordOrSets.add(orKeywordFixedSet);
+            }
+            for (Set<String> keywordOrSet : keywordOrSets) {
+                if (keywordOrSet.size() == 1) {
+                    andKeywords.add(keywordOrSet.iterator().next());
+                } else if (!keywordOrSet.isEmpty()) {
+                    orKeywordSets.add(keywordOrSet);
+                }
+            }
+            List<Set<String>> categoryIdOrSets = new LinkedList<>(includeCategoryIdOrSetAndList);
+            for (String includeCategoryId : includeCategoryIds) {
+                categoryIdOrSets.add(UtilMisc.toSet(includeCategoryId));
+            }
+
+            List<String> found = searchIndex.search(andKeywords, orKeywordSets, keywordTypeIds, UtilValidate.isEmpty(statusId) ? null : statusId,
+                    categoryIdOrSets, excludeCategoryIds, includeFeatureIds, excludeFeatureIds);
+            this.totalResults = found.size();
+            int fromIndex = resultOffset == null ? 0 : Math.min(Math.max(resultOffset - 1, 0), found.size());
+            int toIndex = maxResults == null ? found.size() : Math.min(fromIndex + maxResults, found.size());
+            if (Debug.infoOn()) {
+                Debug.logInfo("Got search values from the index, totalResults=" + totalResults + ", maxResults=" + maxResults
+                        + ", resultOffset=" + resultOffset, MODULE);
+            }
+            return new ArrayList<>(found.subList(fromIndex, toIndex));
+        }
+
         /**
          * Finish keyword constraints.
          */
@@ -0,0 +1,627 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.product.product;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilDateTime;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionKeySet;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+
+/**
+ * In-memory inverted index of the ProductKeyword records, used by {@link ProductSearch} instead of joining
+ * the ProductKeyword entity once per keyword when the <code>search.backend</code> property of prodsearch.properties
+ * is set to <code>memory</code>.
+ * <p>Each product gets an int document id and each keyword a posting list of (document id, relevancy weight)
+ * pairs, sorted by document id and delta/varint encoded. The keywords are split by keywordTypeId and statusId
+ * so that the keyword type and status filters of the search are applied without reading the database.
+ * The category and feature constraints are evaluated with bitsets of the active ProductCategoryMember and
+ * ProductFeatureAppl records, kept in the <code>product.search.membership</code> cache.</p>
+ * <p>The index is loaded in the background on first use, the searches use SQL until it is ready. The products are
+ * read by increasing productId and get increasing document ids, so the posting lists are appended to and each is encoded
+ * once at the end of the loading. It is then kept
+ * current by {@link #productKeywordsChanged(Delegator, String)}, called by an entity ECA on ProductKeyword and by
+ * the code removing the keywords of a product, which reloads the keywords of the product after the commit.</p>
+ */
+public final class ProductSearchIndex {
+
+    private static final String MODULE = ProductSearchIndex.class.getName();
+    private static final Map<String, ProductSearchIndex> INDEXES = new ConcurrentHashMap<>();
+    private static final UtilCache<String, BitSet> MEMBERSHIP_CACHE = UtilCache.createUtilCache("product.search.membership", 0, 0, true);
+
+    private final Delegator delegator;
+    private final Map<String, Integer> docIdByProductId = new ConcurrentHashMap<>();
+    private volatile String[] productIdByDocId = new String[1024];
+    private int docCount = 0;
+    /** Keywords by partition, a partition holds the keywords of one keywordTypeId and statusId */
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+    /** All the terms, by ordinal, used to remove the keywords of a product */
+    private final List<Term> terms = new ArrayList<>();
+    private final Map<Integer, int[]> termOrdinalsByDocId = new ConcurrentHashMap<>();
+    /** Products changed while the index was loading, reloaded when the loading ends */
+    private final Set<String> changedWhileLoading = new HashSet<>();
+    /** Products committed and waiting to be reloaded, several commits of the same product are reloaded once */
+    private final Set<String> reloadPendingProductIds = ConcurrentHashMap.newKeySet();
+    /** Products changed by the running transactions */
+    private final TransactionKeySet<String> changedProductIds = new TransactionKeySet<>("update the search index of product",
+            this::productCommitted);
+    private volatile boolean loading = true;
+    private volatile boolean ready = false;
+
+    ProductSearchIndex(Delegator delegator) {
+        this.delegator = delegator;
+    }
+
+    /**
+     * Is the memory backend enabled for this delegator
+     * @param delegator the delegator
+     * @return <code>true</code> if the searches should use the memory index
+     */
+    public static boolean isEnabled(Delegator delegator) {
+        return "memory".equals(EntityUtilProperties.getPropertyValue("prodsearch", "search.backend", "sql", delegator));
+    }
+
+    /**
+     * Gets the index of a delegator, its loading is started on the first call.
+     * @param delegator the delegator
+     * @return the index, or <code>null</code> if it is not loaded yet
+     */
+    public static ProductSearchIndex getReadyInstance(Delegator delegator) {
+        ProductSearchIndex index = INDEXES.get(delegator.getDelegatorName());
+        if (index == null) {
+            ProductSearchIndex newIndex = new ProductSearchIndex(delegator);
+            index = INDEXES.putIfAbsent(delegator.getDelegatorName(), newIndex);
+            if (index == null) {
+                index = newIndex;
+                ExecutionPool.GLOBAL_BATCH.submit(newIndex::load);
+            }
+        }
+        return index.ready ? index : null;
+    }
+
+    /**
+     * Drops the index of a delegator, it will be loaded again on the next search.
+     * @param delegator the delegator
+     */
+    public static void clear(Delegator delegator) {
+        INDEXES.remove(delegator.getDelegatorName());
+    }
+
+    /**
+     * Reloads the keywords of a product in the index, in the background once the current transaction is committed
+     * or right away if there is no transaction. Nothing is done when the index is not used.
+     * @param delegator the delegator
+     * @param productId the product having keywords created, updated or removed
+     */
+    public static void productKeywordsChanged(Delegator delegator, String productId) {
+        ProductSearchIndex index = INDEXES.get(delegator.getDelegatorName());
+        if (index == null || productId == null) {
+            return;
+        }
+        index.changedProductIds.add(productId);
+    }
+
+    private void productCommitted(String productId, boolean committed) {
+        if (committed && reloadPendingProductIds.add(productId)) {
+            ExecutionPool.GLOBAL_BATCH.submit(() -> {
+                // removed before reading, a commit during the reload plans another one
+                reloadPendingProductIds.remove(productId);
+                reloadProduct(productId);
+            });
+        }
+    }
+
+    private void load() {
+        long startTime = System.currentTimeMillis();
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin(7200);
+            try (EntityListIterator eli = EntityQuery.use(delegator).from("ProductKeyword").orderBy("productId").queryIterator()) {
+                loadProducts(eli);
+            }
+            TransactionUtil.commit(beganTransaction);
+        } catch (GenericEntityException e) {
+            try {
+                TransactionUtil.rollback(beganTransaction, "Error loading the product search index", e);
+            } catch (GenericTransactionException e2) {
+                Debug.logError(e2, "Unable to rollback the product search index loading", MODULE);
+            }
+            INDEXES.remove(delegator.getDelegatorName(), this);
+            Debug.logError(e, "Error loading the product search index, SQL will be used", MODULE);
+            return;
+        }
+        List<String> changedProductIds;
+        synchronized (changedWhileLoading) {
+            loading = false;
+            changedProductIds = new ArrayList<>(changedWhileLoading);
+            changedWhileLoading.clear();
+        }
+        for (String productId : changedProductIds) {
+            reloadProduct(productId);
+        }
+        ready = true;
+        Debug.logInfo("Loaded the product search index of delegator " + delegator.getDelegatorName() + ": " + docIdByProductId.size()
+                + " products, " + terms.size() + " keywords in " + (System.currentTimeMillis() - startTime) / 1000.0 + "s", MODULE);
+    }
+
+    /**
+     * Indexes the keywords of all the products, sorted by productId, into an empty index.
+     * @param eli the iterator of the ProductKeyword records sorted by productId
+     * @throws GenericEntityException when the records cannot be read
+     */
+    synchronized void loadProducts(EntityListIterator eli) throws GenericEntityException {
+        Map<Term, PostingBuilder> builders = new HashMap<>();
+        String currentProductId = null;
+        List<GenericValue> productKeywords = new ArrayList<>();
+        GenericValue productKeyword;
+        while ((productKeyword = eli.next()) != null) {
+            if (!productKeyword.getString("productId").equals(currentProductId)) {
+                if (currentProductId != null) {
+                    updateProduct(currentProductId, productKeywords, builders);
+                }
+                currentProductId = productKeyword.getString("productId");
+                productKeywords.clear();
+            }
+            productKeywords.add(productKeyword);
+        }
+        if (currentProductId != null) {
+            updateProduct(currentProductId, productKeywords, builders);
+        }
+        builders.forEach((term, builder) -> term.posting = builder.build());
+    }
+
+    private void reloadProduct(String productId) {
+        synchronized (changedWhileLoading) {
+            if (loading) {
+                changedWhileLoading.add(productId);
+                return;
+            }
+        }
+        try {
+            updateProduct(productId, EntityQuery.use(delegator).from("ProductKeyword").where("productId", productId).queryList(), null);
+        } catch (GenericEntityException e) {
+            // the index cannot be trusted anymore, it will be loaded again
+            Debug.logError(e, "Error updating the product search index for product " + productId + ", the index is dropped", MODULE);
+            INDEXES.remove(delegator.getDelegatorName(), this);
+        }
+    }
+
+    /**
+     * Replaces the keywords of a product.
+     * @param productId the product
+     * @param productKeywords all the ProductKeyword records of the product
+     * @param builders the posting lists being loaded, where the document is appended, <code>null</code> to update the
+     * encoded posting lists
+     */
+    synchronized void updateProduct(String productId, List<GenericValue> productKeywords, Map<Term, PostingBuilder> builders) {
+        int docId = getOrCreateDocId(productId);
+        int[] oldOrdinals = termOrdinalsByDocId.get(docId);
+        if (oldOrdinals != null) {
+            for (int ordinal : oldOrdinals) {
+                Term term = terms.get(ordinal);
+                term.posting = term.posting.without(docId);
+            }
+        }
+        int[] newOrdinals = new int[productKeywords.size()];
+        int i = 0;
+        for (GenericValue productKeyword : productKeywords) {
+            Partition partition = partitions.computeIfAbsent(partitionKey(productKeyword.getString("keywordTypeId"),
+                    productKeyword.getString("statusId")), k -> new Partition(productKeyword.getString("keywordTypeId"),
+                    productKeyword.getString("statusId")));
+            Term term = partition.terms.get(productKeyword.getString("keyword"));
+            if (term == null) {
+                term = new Term(terms.size());
+                terms.add(term);
+                partition.terms.put(productKeyword.getString("keyword"), term);
+            }
+            Long weight = productKeyword.getLong("relevancyWeight");
+            if (builders != null) {
+                builders.computeIfAbsent(term, k -> new PostingBuilder()).add(docId, weight == null ? 0 : weight.longValue());
+            } else {
+                term.posting = term.posting.with(docId, weight == null ? 0 : weight.longValue());
+            }
+            newOrdinals[i++] = term.ordinal;
+        }
+        if (newOrdinals.length > 0) {
+            termOrdinalsByDocId.put(docId, newOrdinals);
+        } else {
+            termOrdinalsByDocId.remove(docId);
+        }
+    }
+
+    private int getOrCreateDocId(String productId) {
+        Integer docId = docIdByProductId.get(productId);
+        if (docId != null) {
+            return docId;
+        }
+        synchronized (docIdByProductId) {
+            docId = docIdByProductId.get(productId);
+            if (docId == null) {
+                docId = docCount++;
+                if (docId >= productIdByDocId.length) {
+                    productIdByDocId = Arrays.copyOf(productIdByDocId, productIdByDocId.length * 2);
+                }
+                productIdByDocId[docId] = productId;
+                docIdByProductId.put(productId, docId);
+            }
+            return docId;
+        }
+    }
+
+    private static String partitionKey(String keywordTypeId, String statusId) {
+        return keywordTypeId + "::" + (statusId == null ? "" : statusId);
+    }
+
+    /**
+     * Searches the products matching the keyword, category and feature constraints, sorted by decreasing relevancy.
+     * The keywords can contain the <code>%</code> wildcard, as in a LIKE condition.
+     * @param andKeywords the keywords which must all be found, filtered by keyword type and status
+     * @param orKeywordSets the sets of keywords from which at least one must be found in each set
+     * @param keywordTypeIds the keyword types of the and keywords, all the types if empty
+     * @param statusId the status of the and keywords, all the status if <code>null</code>
+     * @param includeCategoryIdOrSets the sets of categories from which the product must be a member of at least one in each set
+     * @param excludeCategoryIds the categories the product must not be a member of
+     * @param includeFeatureIds the features the product must all have
+     * @param excludeFeatureIds the features the product must not have
+     * @return the productIds found
+     */
+    public List<String> search(Set<String> andKeywords, List<Set<String>> orKeywordSets, List<String> keywordTypeIds, String statusId,
+            List<Set<String>> includeCategoryIdOrSets, Set<String> excludeCategoryIds, Set<String> includeFeatureIds,
+            Set<String> excludeFeatureIds) {
+        String[] productIds = this.productIdByDocId;
+        long[] totalScores = new long[productIds.length];
+        long[] groupScores = new long[productIds.length];
+        BitSet result = null;
+
+        List<Partition> filteredPartitions = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            if ((UtilValidate.isEmpty(keywordTypeIds) || keywordTypeIds.contains(partition.keywordTypeId))
+                    && (statusId == null || statusId.equals(partition.statusId))) {
+                filteredPartitions.add(partition);
+            }
+        }
+        for (String keyword : andKeywords) {
+            BitSet groupDocs = matchKeywords(Collections.singleton(keyword), filteredPartitions, groupScores, false);
+            result = accumulate(result, groupDocs, groupScores, totalScores);
+        }
+        for (Set<String> orKeywordSet : orKeywordSets) {
+            BitSet groupDocs = matchKeywords(orKeywordSet, partitions.values(), groupScores, true);
+            result = accumulate(result, groupDocs, groupScores, totalScores);
+        }
+        if (result == null) {
+            return new ArrayList<>();
+        }
+
+        Timestamp nowTimestamp = UtilDateTime.nowTimestamp();
+        for (Set<String> categoryIdOrSet : includeCategoryIdOrSets) {
+            BitSet members = new BitSet();
+            for (String productCategoryId : categoryIdOrSet) {
+                members.or(getMembers("ProductCategoryMember", "productCategoryId", productCategoryId, nowTimestamp));
+            }
+            result.and(members);
+        }
+        for (String productCategoryId : excludeCategoryIds) {
+            result.andNot(getMembers("ProductCategoryMember", "productCategoryId", productCategoryId, nowTimestamp));
+        }
+        for (String productFeatureId : includeFeatureIds) {
+            result.and(getMembers("ProductFeatureAppl", "productFeatureId", productFeatureId, nowTimestamp));
+        }
+        for (String productFeatureId : excludeFeatureIds) {
+            result.andNot(getMembers("ProductFeatureAppl", "productFeatureId", productFeatureId, nowTimestamp));
+        }
+
+        Integer[] docIds = new Integer[result.cardinality()];
+        int i = 0;
+        for (int docId = result.nextSetBit(0); docId >= 0; docId = result.nextSetBit(docId + 1)) {
+            docIds[i++] = docId;
+        }
+        Arrays.sort(docIds, (a, b) -> totalScores[a] != totalScores[b] ? Long.compare(totalScores[b], totalScores[a])
+                : productIds[a].compareTo(productIds[b]));
+        List<String> found = new ArrayList<>(docIds.length);
+        for (Integer docId : docIds) {
+            found.add(productIds[docId]);
+        }
+        return found;
+    }
+
+    /**
+     * Finds the documents having one of the keywords, their score is the sum of the weights of the keywords found
+     * for <code>sumWeights</code>, the highest weight otherwise.
+     */
+    private static BitSet matchKeywords(Collection<String> keywords, Collection<Partition> partitions, long[] scores, boolean sumWeights) {
+        BitSet docs = new BitSet();
+        for (String keyword : keywords) {
+            for (Partition partition : partitions) {
+                for (Term term : partition.find(keyword)) {
+                    term.posting.forEach((docId, weight) -> {
+                        if (docId >= scores.length) {
+                            // added after the beginning of the search
+                            return;
+                        }
+                        if (!docs.get(docId)) {
+                            docs.set(docId);
+                            scores[docId] = weight;
+                        } else if (sumWeights) {
+                            scores[docId] += weight;
+                        } else if (weight > scores[docId]) {
+                            scores[docId] = weight;
+                        }
+                    });
+                }
+            }
+        }
+        return docs;
+    }
+
+    private static BitSet accumulate(BitSet result, BitSet groupDocs, long[] groupScores, long[] totalScores) {
+        for (int docId = groupDocs.nextSetBit(0); docId >= 0; docId = groupDocs.nextSetBit(docId + 1)) {
+            totalScores[docId] += groupScores[docId];
+        }
+        if (result == null) {
+            return groupDocs;
+        }
+        result.and(groupDocs);
+        return result;
+    }
+
+    /** Gets the documents of the products having an active membership record, the returned BitSet must not be modified */
+    private BitSet getMembers(String entityName, String fieldName, String id, Timestamp nowTimestamp) {
+        String cacheKey = delegator.getDelegatorName() + "::" + entityName + "::" + id;
+        BitSet members = MEMBERSHIP_CACHE.get(cacheKey);
+        if (members == null) {
+            members = new BitSet();
+            try {
+                List<GenericValue> values = EntityQuery.use(delegator).select("productId").from(entityName)
+                        .where(EntityCondition.makeCondition(fieldName, EntityOperator.EQUALS, id)).filterByDate(nowTimestamp).queryList();
+                for (GenericValue value : values) {
+                    members.set(getOrCreateDocId(value.getString("productId")));
+                }
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "Error reading the " + entityName + " records of " + id + " for the product search", MODULE);
+                return members;
+            }
+            members = MEMBERSHIP_CACHE.putIfAbsentAndGet(cacheKey, members);
+        }
+        return members;
+    }
+
+    /** The keywords of one keywordTypeId and statusId */
+    private static final class Partition {
+        private final String keywordTypeId;
+        private final String statusId;
+        private final NavigableMap<String, Term> terms = new ConcurrentSkipListMap<>();
+
+        private Partition(String keywordTypeId, String statusId) {
+            this.keywordTypeId = keywordTypeId;
+            this.statusId = statusId;
+        }
+
+        /** Finds the terms matching a keyword which may contain <code>%</code> wildcards */
+        private Collection<Term> find(String keyword) {
+            int wildcard = keyword.indexOf('%');
+            if (wildcard == -1) {
+                Term term = terms.get(keyword);
+                return term == null ? Collections.emptyList() : Collections.singletonList(term);
+            }
+            String prefix = keyword.substring(0, wildcard);
+            NavigableMap<String, Term> candidates = prefix.isEmpty() ? terms : terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+            if (wildcard == keyword.length() - 1) {
+                return candidates.values();
+            }
+            List<Term> found = new ArrayList<>();
+            String[] parts = keyword.substring(wildcard + 1).split("%", -1);
+            for (Map.Entry<String, Term> entry : candidates.entrySet()) {
+                if (matches(entry.getKey(), prefix.length(), parts)) {
+                    found.add(entry.getValue());
+                }
+            }
+            return found;
+        }
+
+        /** Matches the parts of a LIKE pattern following its first wildcard */
+        private static boolean matches(String value, int start, String[] parts) {
+            int pos = start;
+            for (int i = 0; i < parts.length; i++) {
+                String part = parts[i];
+                if (i == parts.length - 1) {
+                    // the last part must end the value, it is empty when the pattern ends with a wildcard
+                    return value.length() - part.length() >= pos && value.endsWith(part);
+                }
+                int found = value.indexOf(part, pos);
+                if (found == -1) {
+                    return false;
+                }
+                pos = found + part.length();
+            }
+            return true;
+        }
+    }
+
+    static final class Term {
+        private final int ordinal;
+        private volatile Posting posting = Posting.EMPTY;
+
+        private Term(int ordinal) {
+            this.ordinal = ordinal;
+        }
+    }
+
+    /** The documents of a posting list being loaded, added by increasing document id */
+    static final class PostingBuilder {
+        private int[] docIds = new int[8];
+        private long[] weights = new long[8];
+        private int count = 0;
+
+        void add(int docId, long weight) {
+            if (count > 0 && docIds[count - 1] == docId) {
+                weights[count - 1] = weight;
+                return;
+            }
+            if (count > 0 && docIds[count - 1] > docId) {
+                throw new IllegalArgumentException("Document " + docId + " added after document " + docIds[count - 1]);
+            }
+            if (count == docIds.length) {
+                docIds = Arrays.copyOf(docIds, count * 2);
+                weights = Arrays.copyOf(weights, count * 2);
+            }
+            docIds[count] = docId;
+            weights[count++] = weight;
+        }
+
+        Posting build() {
+            return Posting.encode(docIds, weights, count);
+        }
+    }
+
+    @FunctionalInterface
+    interface PostingVisitor {
+        void visit(int docId, long weight);
+    }
+
+    /**
+     * An immutable posting list: the document ids, sorted, and the weights, encoded as varints
+     * with the document ids stored as the difference with the previous one.
+     */
+    static final class Posting {
+        static final Posting EMPTY = new Posting(new byte[0], 0);
+
+        private final byte[] data;
+        private final int size;
+
+        private Posting(byte[] data, int size) {
+            this.data = data;
+            this.size = size;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void forEach(PostingVisitor visitor) {
+            int[] pos = {0};
+            int docId = 0;
+            for (int i = 0; i < size; i++) {
+                docId += (int) readVarLong(data, pos);
+                long zigzag = readVarLong(data, pos);
+                visitor.visit(docId, (zigzag >>> 1) ^ -(zigzag & 1));
+            }
+        }
+
+        /** Returns a posting with the weight of a document added or replaced, used to update a loaded index */
+        Posting with(int docId, long weight) {
+            int[] docIds = new int[size + 1];
+            long[] weights = new long[size + 1];
+            int[] count = {0};
+            boolean[] added = {false};
+            forEach((id, w) -> {
+                if (!added[0] && id >= docId) {
+                    docIds[count[0]] = docId;
+                    weights[count[0]++] = weight;
+                    added[0] = true;
+                    if (id == docId) {
+                        return;
+                    }
+                }
+                docIds[count[0]] = id;
+                weights[count[0]++] = w;
+            });
+            if (!added[0]) {
+                docIds[count[0]] = docId;
+                weights[count[0]++] = weight;
+            }
+            return encode(docIds, weights, count[0]);
+        }
+
+        /** Returns a posting without a document */
+        Posting without(int docId) {
+            int[] docIds = new int[size];
+            long[] weights = new long[size];
+            int[] count = {0};
+            forEach((id, w) -> {
+                if (id != docId) {
+                    docIds[count[0]] = id;
+                    weights[count[0]++] = w;
+                }
+            });
+            return count[0] == size ? this : encode(docIds, weights, count[0]);
+        }
+
+        static Posting encode(int[] docIds, long[] weights, int count) {
+            if (count == 0) {
+                return EMPTY;
+            }
+            byte[] buffer = new byte[count * 20];
+            int pos = 0;
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                pos = writeVarLong(buffer, pos, docIds[i] - previous);
+                pos = writeVarLong(buffer, pos, (weights[i] << 1) ^ (weights[i] >> 63));
+                previous = docIds[i];
+            }
+            return new Posting(Arrays.copyOf(buffer, pos), count);
+        }
+
+        private static int writeVarLong(byte[] buffer, int pos, long value) {
+            while ((value & ~0x7FL) != 0) {
+                buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[pos++] = (byte) value;
+            return pos;
+        }
+
+        private static long readVarLong(byte[] buffer, int[] pos) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[pos[0]++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
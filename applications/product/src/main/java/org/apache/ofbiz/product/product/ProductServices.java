@@ -18,6 +18,7 @@
  ******************************************************************************/
 package org.apache.ofbiz.product.product;
 
+import java.awt.image.ImagingOpException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -54,6 +55,7 @@ import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityJoinOperator;
 import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityUtil;
 import org.apache.ofbiz.entity.util.EntityUtilProperties;
@@ -983,6 +985,7 @@ public class ProductServices {
             Map<String, Object> imageContext = new HashMap<>();
             imageContext.putAll(context);
             imageContext.put("delegator", delegator);
+            imageContext.put("dispatcher", dispatcher);
             imageContext.put("tenantId", delegator.getDelegatorTenantId());
             String imageFilenameFormat = EntityUtilProperties.getPropertyValue("catalog", "image.filename.additionalviewsize.format", delegator);
 
@@ -1105,7 +1108,7 @@ public class ProductServices {
             /* scale Image in different sizes */
             Map<String, Object> resultResize = new HashMap<>();
             try {
-                resultResize.putAll(ScaleImage.scaleImageInAllSize(imageContext, filenameToUse, "additional", viewNumber));
+                resultResize.putAll(ScaleImage.scaleImageInAllSizeAsync(imageContext, filenameToUse, "additional", viewNumber));
             } catch (IOException e) {
                 Debug.logError(e, "Scale additional image in all different sizes is impossible : " + e.toString(), MODULE);
                 return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE,
@@ -1124,30 +1127,35 @@ public class ProductServices {
                 return result;
             }
 
-            /* now store the image versions created by ScaleImage.scaleImageInAllSize */
-            /* have to shrink length of productContentTypeId, as otherwise value is too long for database field */
-            Map<String, String> imageUrlMap = UtilGenerics.cast(resultResize.get("imageUrlMap"));
-            for (String sizeType : ScaleImage.SIZE_TYPE_LIST) {
-                imageUrl = imageUrlMap.get(sizeType);
-                if (UtilValidate.isNotEmpty(imageUrl)) {
-                    try {
-                        GenericValue productContentType = EntityQuery.use(delegator)
-                                .from("ProductContentType")
-                                .where("productContentTypeId", "XTRA_IMG_" + viewNumber + "_" + sizeType.toUpperCase(Locale.getDefault()))
-                                .cache()
-                                .queryOne();
-                        if (UtilValidate.isNotEmpty(productContentType)) {
-                            result = addImageResource(dispatcher, delegator, context, imageUrl, "XTRA_IMG_"
-                                    + viewNumber + "_" + sizeType.toUpperCase(Locale.getDefault()));
-                            if (ServiceUtil.isError(result)) {
-                                Debug.logError(ServiceUtil.getErrorMessage(result), MODULE);
-                                return result;
-                            }
+            /* now store the image versions created by ScaleImage.scaleImageInAllSize, unless they are scaled in a job */
+            return addScaledImageResources(dispatcher, delegator, context, viewNumber, UtilGenerics.cast(resultResize.get("imageUrlMap")));
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    private static Map<String, Object> addScaledImageResources(LocalDispatcher dispatcher, Delegator delegator,
+            Map<String, ? extends Object> context, String viewNumber, Map<String, String> imageUrlMap) {
+        /* have to shrink length of productContentTypeId, as otherwise value is too long for database field */
+        for (String sizeType : ScaleImage.SIZE_TYPE_LIST) {
+            String imageUrl = imageUrlMap.get(sizeType);
+            if (UtilValidate.isNotEmpty(imageUrl)) {
+                try {
+                    GenericValue productContentType = EntityQuery.use(delegator)
+                            .from("ProductContentType")
+                            .where("productContentTypeId", "XTRA_IMG_" + viewNumber + "_" + sizeType.toUpperCase(Locale.getDefault()))
+                            .cache()
+                            .queryOne();
+                    if (UtilValidate.isNotEmpty(productContentType)) {
+                        Map<String, Object> result = addImageResource(dispatcher, delegator, context, imageUrl, "XTRA_IMG_"
+                                + viewNumber + "_" + sizeType.toUpperCase(Locale.getDefault()));
+                        if (ServiceUtil.isError(result)) {
+                            Debug.logError(ServiceUtil.getErrorMessage(result), MODULE);
+                            return result;
                         }
-                    } catch (GenericEntityException e) {
-                        Debug.logError(e, MODULE);
-                        return ServiceUtil.returnError(e.getMessage());
                     }
+                } catch (GenericEntityException e) {
+                    Debug.logError(e, MODULE);
+                    return ServiceUtil.returnError(e.getMessage());
                 }
             }
         }
@@ -1553,4 +1561,145 @@ public class ProductServices {
         }
         return ServiceUtil.returnSuccess();
     }
+
+    /**
+     * Indexes the keywords of all the products, see {@link KeywordIndex#indexAllKeywords(Delegator, boolean, List)}
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> indexAllProductKeywords(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        List<String> errorProductIds = new LinkedList<>();
+        int numProducts;
+        try {
+            numProducts = KeywordIndex.indexAllKeywords(delegator, "Y".equals(context.get("doAll")), errorProductIds);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("numProducts", numProducts);
+        result.put("errorProductIds", errorProductIds);
+        return result;
+    }
+
+    /**
+     * Updates the product search memory index with the keywords of a product, triggered by the ProductKeyword ECAs
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> updateProductSearchIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+        ProductSearchIndex.productKeywordsChanged(dctx.getDelegator(), (String) context.get("productId"));
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Scales the image of a product into all the size types and stores the URLs of the scaled images, on the product for
+     * the main image or as contents for an additional view, scheduled by the upload of the image when
+     * image.derivatives.async is Y (catalog.properties)
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> generateProductImageDerivatives(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String productId = (String) context.get("productId");
+        String viewType = (String) context.get("viewType");
+        String viewNumber = (String) context.get("viewNumber");
+        Map<String, Object> imageContext = new HashMap<>(context);
+        imageContext.put("delegator", delegator);
+        Map<String, String> imageUrlMap;
+        try {
+            Map<String, Object> resultResize = ScaleImage.scaleImageInAllSize(imageContext, (String) context.get("filenameToUse"),
+                    viewType, viewNumber);
+            if (!"success".equals(resultResize.get("responseMessage"))) {
+                return ServiceUtil.returnError((String) resultResize.get(ModelService.ERROR_MESSAGE));
+            }
+            imageUrlMap = UtilGenerics.cast(resultResize.get("imageUrlMap"));
+        } catch (IOException | JDOMException | ImagingOpException | IllegalArgumentException e) {
+            Debug.logError(e, "Scale image of product " + productId + " in all different sizes is impossible", MODULE);
+            return ServiceUtil.returnError(UtilProperties.getMessage(RES_ERROR,
+                    "ProductImageViewScaleImpossible", UtilMisc.toMap("errorString", e.toString()), (Locale) context.get("locale")));
+        }
+        if (viewType.toLowerCase(Locale.getDefault()).contains("additional")) {
+            Map<String, Object> resourceContext = new HashMap<>(context);
+            resourceContext.put("_uploadedFile_fileName", context.get("dataResourceName"));
+            return addScaledImageResources(dctx.getDispatcher(), delegator, resourceContext, viewNumber, imageUrlMap);
+        }
+        try {
+            GenericValue product = EntityQuery.use(delegator).from("Product").where("productId", productId).queryOne();
+            if (product == null) {
+                return ServiceUtil.returnError(UtilProperties.getMessage(RES_ERROR, "productservices.product_not_found_with_ID",
+                        UtilMisc.toMap("productId", productId), (Locale) context.get("locale")));
+            }
+            for (Map.Entry<String, String> imageUrl : imageUrlMap.entrySet()) {
+                product.set(imageUrl.getKey() + "ImageUrl", imageUrl.getValue());
+            }
+            product.store();
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    /**
+     * Scales again the main image of the products into all the size types, e.g. after a change of ImageProperties.xml,
+     * and stores the URLs of the scaled images on the products.
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> regenerateProductImageDerivatives(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Delegator delegator = dctx.getDelegator();
+        String productId = (String) context.get("productId");
+        List<EntityCondition> conditions = UtilMisc.toList(EntityCondition.makeCondition("originalImageUrl", EntityOperator.NOT_EQUAL, null));
+        if (UtilValidate.isNotEmpty(productId)) {
+            conditions.add(EntityCondition.makeCondition("productId", productId));
+        }
+        List<String> errorProductIds = new LinkedList<>();
+        int numProducts = 0;
+        try (EntityListIterator products = EntityQuery.use(delegator).from("Product").where(conditions).orderBy("productId").queryIterator()) {
+            GenericValue product;
+            while ((product = products.next()) != null) {
+                String originalImageUrl = product.getString("originalImageUrl");
+                int extensionIndex = originalImageUrl.lastIndexOf('.');
+                if (extensionIndex == -1) {
+                    errorProductIds.add(product.getString("productId"));
+                    continue;
+                }
+                Map<String, Object> imageContext = new HashMap<>(context);
+                imageContext.put("delegator", delegator);
+                imageContext.put("productId", product.getString("productId"));
+                String filenameToUse = product.getString("productId") + originalImageUrl.substring(extensionIndex);
+                try {
+                    Map<String, Object> resultResize = ScaleImage.scaleImageInAllSize(imageContext, filenameToUse, "main", "0");
+                    if (!"success".equals(resultResize.get("responseMessage"))) {
+                        Debug.logWarning("Unable to scale the image of product " + product.getString("productId") + ": "
+                                + resultResize.get(ModelService.ERROR_MESSAGE), MODULE);
+                        errorProductIds.add(product.getString("productId"));
+                        continue;
+                    }
+                    Map<String, String> imageUrlMap = UtilGenerics.cast(resultResize.get("imageUrlMap"));
+                    for (Map.Entry<String, String> imageUrl : imageUrlMap.entrySet()) {
+                        product.set(imageUrl.getKey() + "ImageUrl", imageUrl.getValue());
+                    }
+                    product.store();
+                    numProducts++;
+                } catch (IOException | JDOMException | ImagingOpException | IllegalArgumentException e) {
+                    Debug.logWarning(e, "Unable to scale the image of product " + product.getString("productId"), MODULE);
+                    errorProductIds.add(product.getString("productId"));
+                }
+            }
+        } catch (GenericEntityException e) {
+            Debug.logError(e, MODULE);
+            return ServiceUtil.returnError(e.getMessage());
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("numProducts", numProducts);
+        result.put("errorProductIds", errorProductIds);
+        return result;
+    }
 }
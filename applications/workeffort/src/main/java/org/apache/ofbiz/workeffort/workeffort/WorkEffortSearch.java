@@ -36,6 +36,7 @@ import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.common.KeywordSearchIndex;
 import org.apache.ofbiz.common.KeywordSearchUtil;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -146,6 +147,8 @@ public class WorkEffortSearch {
         private List<Set<String>> keywordFixedOrSetAndList = new LinkedList<>();
         private Set<String> orKeywordFixedSet = new HashSet<>();
         private Set<String> andKeywordFixedSet = new HashSet<>();
+        /** The scores of the work efforts found by the embedded keyword index, null when the keywords are joined in the query */
+        private Map<String, Double> keywordScores = null;
         private List<GenericValue> workEffortSearchConstraintList = new LinkedList<>();
         private ResultSortOrder resultSortOrder = null;
         private Integer resultOffset = null;
@@ -220,7 +223,8 @@ public class WorkEffortSearch {
 
             // do the query
             try (EntityListIterator eli = this.doQuery(delegator)) {
-                ArrayList<String> workEffortIds = this.makeWorkEffortIdList(eli);
+                ArrayList<String> workEffortIds = this.isRankedByKeywordScore() ? this.makeRankedWorkEffortIdList(eli)
+                        : this.makeWorkEffortIdList(eli);
                 long endMillis = System.currentTimeMillis();
                 double totalSeconds = ((double) endMillis - (double) startMillis) / 1000.0;
 
@@ -263,6 +267,17 @@ public class WorkEffortSearch {
                 }
             }
 
+            // search the keywords in the embedded index when it is enabled, instead of joining a keyword record per keyword
+            List<Set<String>> keywordGroups = new LinkedList<>(keywordFixedOrSetAndList);
+            for (String keyword: andKeywordFixedSet) {
+                keywordGroups.add(UtilMisc.toSet(keyword));
+            }
+            keywordScores = KeywordSearchIndex.search(delegator, "WorkEffortKeyword", "workEffortId", keywordGroups);
+            if (keywordScores != null) {
+                entityConditionList.add(EntityCondition.makeCondition("workEffortId", EntityOperator.IN, keywordScores.keySet()));
+                return;
+            }
+
             boolean doingBothAndOr = (keywordFixedOrSetAndList.size() > 1) || (!keywordFixedOrSetAndList.isEmpty() && !andKeywordFixedSet.isEmpty());
 
             Debug.logInfo("Finished initial setup of keywords, doingBothAndOr=" + doingBothAndOr + ", andKeywordFixedSet=" + andKeywordFixedSet
@@ -343,7 +358,7 @@ public class WorkEffortSearch {
             EntityListIterator eli = null;
             try {
                 int maxRows = 0;
-                if (maxResults != null) {
+                if (maxResults != null && !this.isRankedByKeywordScore()) {
                     maxRows = maxResults;
                 }
                 eli = EntityQuery.use(delegator).select(UtilMisc.toSet(fieldsToSelect))
@@ -451,6 +466,41 @@ public class WorkEffortSearch {
             return workEffortIds;
         }
 
+        // the work efforts found by the embedded keyword index are sorted by relevancy on their score, not in the query
+        private boolean isRankedByKeywordScore() {
+            return keywordScores != null && resultSortOrder instanceof SortKeywordRelevancy;
+        }
+
+        // the work efforts found by the query in the order of their keyword score, with the offset and maximum applied
+        private ArrayList<String> makeRankedWorkEffortIdList(EntityListIterator eli) {
+            ArrayList<String> workEffortIds = new ArrayList<>(maxResults == null ? 100 : maxResults);
+            if (eli == null) {
+                Debug.logWarning("The eli is null, returning zero results", MODULE);
+                return workEffortIds;
+            }
+            try {
+                Set<String> foundWorkEffortIds = new HashSet<>();
+                GenericValue searchResult;
+                while ((searchResult = eli.next()) != null) {
+                    foundWorkEffortIds.add(searchResult.getString("workEffortId"));
+                }
+                int skipped = resultOffset != null && resultOffset > 1 ? resultOffset - 1 : 0;
+                int total = 0;
+                for (String workEffortId : keywordScores.keySet()) {
+                    if (foundWorkEffortIds.contains(workEffortId)) {
+                        total++;
+                        if (total > skipped && (maxResults == null || workEffortIds.size() < maxResults)) {
+                            workEffortIds.add(workEffortId);
+                        }
+                    }
+                }
+                this.totalResults = total;
+            } catch (GenericEntityException e) {
+                Debug.logError(e, "Error getting results from the workEffort search query", MODULE);
+            }
+            return workEffortIds;
+        }
+
         /**
          * Save search result info.
          * @param numResults the num results
@@ -1249,7 +1299,7 @@ public class WorkEffortSearch {
 
         @Override
         public void setSortOrder(WorkEffortSearchContext workEffortSearchContext) {
-            if (workEffortSearchContext.includedKeywordSearch) {
+            if (workEffortSearchContext.includedKeywordSearch && workEffortSearchContext.keywordScores == null) {
                 // we have to check this in order to be sure that there is a totalRelevancy to sort by...
                 workEffortSearchContext.orderByList.add("-totalRelevancy");
                 workEffortSearchContext.fieldsToSelect.add("totalRelevancy");
@@ -41,6 +41,7 @@ import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.common.KeywordSearchIndex;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
@@ -1131,4 +1132,15 @@ public class WorkEffortServices {
         result.put("workEfforts", resultList);
         return result;
     }
+
+    /**
+     * Reads again the keywords of a work effort in the embedded keyword index, triggered by the WorkEffortKeyword ECAs
+     * @param dctx the dispatch context
+     * @param context the context
+     * @return the result of the service execution
+     */
+    public static Map<String, Object> updateWorkEffortKeywordSearchIndex(DispatchContext dctx, Map<String, ? extends Object> context) {
+        KeywordSearchIndex.keywordsChanged(dctx.getDelegator(), "WorkEffortKeyword", (String) context.get("workEffortId"));
+        return ServiceUtil.returnSuccess();
+    }
 }
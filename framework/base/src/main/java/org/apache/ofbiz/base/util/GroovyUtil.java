@@ -30,12 +30,14 @@ import org.apache.ofbiz.base.location.FlexibleLocation;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.codehaus.groovy.control.CompilationFailedException;
 import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
 import org.codehaus.groovy.runtime.InvokerHelper;
 
 import groovy.lang.Binding;
 import groovy.lang.GroovyClassLoader;
 import groovy.lang.GroovyShell;
 import groovy.lang.Script;
+import groovy.transform.CompileStatic;
 
 /**
  * Groovy Utilities.
@@ -46,18 +48,23 @@ public final class GroovyUtil {
     private static final String MODULE = GroovyUtil.class.getName();
     private static final UtilCache<String, Class<?>> PARSED_SCRIPTS = UtilCache.createUtilCache("script.GroovyLocationParsedCache", 0, 0, false);
     private static final GroovyClassLoader GROOVY_CLASS_LOADER;
+    private static final GroovyClassLoader STATIC_GROOVY_CLASS_LOADER;
 
     private GroovyUtil() { }
 
     static {
         GroovyClassLoader groovyClassLoader = null;
+        CompilerConfiguration staticConf = new CompilerConfiguration();
         String scriptBaseClass = UtilProperties.getPropertyValue("groovy", "scriptBaseClass");
         if (!scriptBaseClass.isEmpty()) {
             CompilerConfiguration conf = new CompilerConfiguration();
             conf.setScriptBaseClass(scriptBaseClass);
             groovyClassLoader = new GroovyClassLoader(GroovyUtil.class.getClassLoader(), conf);
+            staticConf.setScriptBaseClass(scriptBaseClass);
         }
+        staticConf.addCompilationCustomizers(new ASTTransformationCustomizer(CompileStatic.class));
         GROOVY_CLASS_LOADER = groovyClassLoader;
+        STATIC_GROOVY_CLASS_LOADER = new GroovyClassLoader(GroovyUtil.class.getClassLoader(), staticConf);
     }
 
     /**
@@ -165,6 +172,25 @@ public final class GroovyUtil {
         }
     }
 
+    /**
+     * Tells if the script at a location must be compiled with {@code @CompileStatic}, that is if it is listed in the
+     * {@code compileStatic.locations} property of {@code groovy.properties}.
+     * @param location the location of the script
+     * @return {@code true} if the script must be statically compiled
+     */
+    public static boolean isCompileStaticLocation(String location) {
+        String locations = UtilProperties.getPropertyValue("groovy", "compileStatic.locations");
+        if (locations.isEmpty() || location == null) {
+            return false;
+        }
+        for (String compileStaticLocation : StringUtil.split(locations, ",")) {
+            if (location.equals(compileStaticLocation.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Parses a Groovy class from an input stream.
      * <p>
@@ -177,6 +203,15 @@ public final class GroovyUtil {
      */
     private static Class<?> parseClass(InputStream in, String location) throws IOException {
         String classText = UtilIO.readString(in);
+        if (isCompileStaticLocation(location)) {
+            try {
+                return STATIC_GROOVY_CLASS_LOADER.parseClass(classText, location);
+            } catch (CompilationFailedException e) {
+                // the script uses dynamic features, it is compiled as usual
+                Debug.logWarning("Groovy script at [" + location + "] cannot be statically compiled, compiling it dynamically: "
+                        + e.getMessage(), MODULE);
+            }
+        }
         if (GROOVY_CLASS_LOADER != null) {
             return GROOVY_CLASS_LOADER.parseClass(classText, location);
         } else {
@@ -39,7 +39,11 @@ import java.net.URLConnection;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -1361,6 +1365,198 @@ public final class UtilHttp {
         streamContentToBrowser(response, in, length, contentType, null);
     }
 
+    /**
+     * Streams a file to the browser without copying it through the heap.
+     * <p>The <code>ETag</code> and <code>Last-Modified</code> headers are set from the size and the last modification
+     * time of the file, a conditional request for an unchanged file is answered with a <code>304 Not Modified</code>,
+     * and a single range of bytes requested by a <code>Range</code> header is answered with a <code>206 Partial
+     * Content</code>. When Tomcat supports it and the file is larger than the <code>stream.sendfile.size</code> property
+     * of content.properties the file is written to the socket by the connector with sendfile, otherwise it is
+     * transferred from its <code>FileChannel</code> to the response.</p>
+     * @param request     the request, its conditional and range headers are honored
+     * @param response    the response to write to
+     * @param file        the file to stream
+     * @param contentType the content type to pass to the browser
+     * @param fileName    the fileName to tell the browser we are downloading, can be <code>null</code>
+     * @throws IOException when the file cannot be read or the response written
+     */
+    public static void streamFileToBrowser(HttpServletRequest request, HttpServletResponse response, File file, String contentType,
+            String fileName) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        String eTag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+        if (checkNotModified(request, response, eTag, lastModified)) {
+            return;
+        }
+        response.setHeader("Accept-Ranges", "bytes");
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        if (fileName != null) {
+            setContentDisposition(response, fileName);
+        }
+
+        long start = 0;
+        long count = length;
+        long[] range = isRangeCurrent(request, eTag, lastModified) ? getByteRange(request.getHeader("Range"), length) : null;
+        if (range != null && range.length == 0) {
+            response.setHeader("Content-Range", "bytes */" + length);
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        if (range != null) {
+            start = range[0];
+            count = range[1] - range[0] + 1;
+            response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        }
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return;
+        }
+
+        if (useSendfile(request, response, count)) {
+            request.setAttribute("org.apache.tomcat.sendfile.filename", file.getCanonicalPath());
+            request.setAttribute("org.apache.tomcat.sendfile.start", start);
+            request.setAttribute("org.apache.tomcat.sendfile.end", start + count);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long end = start + count;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, out);
+                if (transferred <= 0) {
+                    throw new IOException("File " + file + " truncated while streaming it at byte " + position);
+                }
+                position += transferred;
+            }
+        }
+        response.flushBuffer();
+    }
+
+    /**
+     * Sets the validators of a content to the response, and answers a conditional request with a <code>304 Not
+     * Modified</code> when the browser already has the current content, as given by its <code>If-None-Match</code> or
+     * <code>If-Modified-Since</code> header.
+     * <p>The browser may keep the content but must check it each time it uses it.</p>
+     * @param request      the request
+     * @param response     the response
+     * @param eTag         the entity tag of the content, quotes included
+     * @param lastModified the last modification time of the content in milliseconds, negative if unknown
+     * @return <code>true</code> when the response status is set to 304, nothing must then be written to the response
+     */
+    public static boolean checkNotModified(HttpServletRequest request, HttpServletResponse response, String eTag, long lastModified) {
+        response.setHeader("Cache-Control", "private, no-cache");
+        response.setHeader("ETag", eTag);
+        if (lastModified >= 0) {
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+        boolean notModified;
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-Modified-Since is ignored when If-None-Match is present
+            notModified = matchesETag(ifNoneMatch, eTag);
+        } else {
+            long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+            // the HTTP dates have a precision of one second
+            notModified = lastModified >= 0 && ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+        }
+        if (notModified) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return notModified;
+    }
+
+    /**
+     * Parses the value of a <code>Range</code> header for a single range of bytes.
+     * @param range  the value of the header, can be <code>null</code>
+     * @param length the length of the content
+     * @return the first and last positions of the range, an empty array if the range cannot be satisfied, <code>null</code>
+     * if there is no range, or if it is invalid or has several ranges, the whole content must then be sent
+     */
+    static long[] getByteRange(String range, long length) {
+        if (range == null || !range.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        String spec = range.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        String first = spec.substring(0, dash).trim();
+        String last = spec.substring(dash + 1).trim();
+        try {
+            if (first.isEmpty()) {
+                // suffix range, the last bytes of the content
+                long suffixLength = Long.parseLong(last);
+                if (suffixLength < 0) {
+                    return null;
+                }
+                if (suffixLength == 0 || length == 0) {
+                    return new long[0];
+                }
+                return new long[] {Math.max(0, length - suffixLength), length - 1};
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? length - 1 : Long.parseLong(last);
+            if (start < 0 || end < start) {
+                return null;
+            }
+            if (start >= length) {
+                return new long[0];
+            }
+            return new long[] {start, Math.min(end, length - 1)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // a range is only sent for the content given by the If-Range header, if any
+    private static boolean isRangeCurrent(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.trim().startsWith("\"")) {
+            return eTag.equals(ifRange.trim());
+        }
+        long ifRangeDate = getDateHeader(request, "If-Range");
+        return ifRangeDate >= 0 && lastModified / 1000 <= ifRangeDate / 1000;
+    }
+
+    // same conditions as the Tomcat DefaultServlet: the connector must support sendfile and see the response as is
+    private static boolean useSendfile(HttpServletRequest request, HttpServletResponse response, long count) {
+        if (!Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))
+                || !"org.apache.catalina.connector.RequestFacade".equals(request.getClass().getName())
+                || !"org.apache.catalina.connector.ResponseFacade".equals(response.getClass().getName())) {
+            return false;
+        }
+        long sendfileSize = EntityUtilProperties.getPropertyAsLong("content", "stream.sendfile.size", 49152);
+        return sendfileSize > 0 && count > sendfileSize;
+    }
+
+    private static boolean matchesETag(String header, String eTag) {
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            // weak comparison
+            if ("*".equals(tag) || eTag.equals(tag.startsWith("W/") ? tag.substring(2) : tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
     /**
      * Stream binary content from InputStream to OutputStream
      * This method does not close the streams passed
@@ -1712,7 +1908,13 @@ public final class UtilHttp {
         return "autoId_" + uniqueIdNumber;
     }
 
-    private static void setContentDisposition(final HttpServletResponse response, final String filename) {
+    /**
+     * Sets the Content-Disposition header of a download, of the type given by the <code>content-disposition-type</code>
+     * property of requestHandler.properties
+     * @param response the response
+     * @param filename the name of the downloaded file
+     */
+    public static void setContentDisposition(final HttpServletResponse response, final String filename) {
         String dispositionType = UtilProperties.getPropertyValue("requestHandler", "content-disposition-type", "attachment");
         response.setHeader("Content-Disposition", String.format("%s; filename=\"%s\"", dispositionType, filename));
     }
@@ -807,5 +807,7 @@ public final class UtilCache<K, V> implements Serializable, EvictionListener<Obj
     @Override
     public void onEviction(Object key, CacheLine<V> value) {
         ExecutionPool.removePulse(value);
+        // an element evicted over the size limit is removed as well for the listeners
+        noteRemoval(toKey(key), value.getValue());
     }
 }
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.collections;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ofbiz.base.util.UtilGenerics;
+
+/**
+ * Copy On Write Map View
+ *
+ * Provides a view of a Map which is read from the source Map until the first write operation,
+ * the source is then copied and the writes only affect the copy.
+ * Meant to replace the defensive copies of the rows pushed on a {@link MapStack} while rendering lists,
+ * since the rendering code rarely modifies them.
+ * When the source Map is a {@link LocalizedMap} the localized values of the fields not modified are still available.
+ */
+public class CopyOnWriteMapView<K, V> implements Map<K, V>, LocalizedMap<V> {
+
+    private final Map<K, V> source;
+    private Map<K, V> copy;
+    /** The keys written since the copy, {@code null} when all keys must be considered as modified. */
+    private Set<Object> modifiedKeys;
+
+    public CopyOnWriteMapView(Map<K, V> source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Error: cannot create a view of a null Map");
+        }
+        this.source = source;
+    }
+
+    /**
+     * Is copied boolean.
+     * @return {@code true} if a write operation has copied the source Map
+     */
+    public boolean isCopied() {
+        return copy != null;
+    }
+
+    private Map<K, V> current() {
+        return copy != null ? copy : source;
+    }
+
+    private Map<K, V> copyForWrite(Object key) {
+        if (copy == null) {
+            copy = new LinkedHashMap<>(source);
+            modifiedKeys = new HashSet<>();
+        }
+        if (modifiedKeys != null) {
+            modifiedKeys.add(key);
+        }
+        return copy;
+    }
+
+    private Map<K, V> copyForWriteAll() {
+        copyForWrite(null);
+        modifiedKeys = null;
+        return copy;
+    }
+
+    @Override
+    public int size() {
+        return current().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return current().isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return current().containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return current().containsValue(value);
+    }
+
+    @Override
+    public V get(Object key) {
+        return current().get(key);
+    }
+
+    @Override
+    public V get(String name, Locale locale) {
+        if (source instanceof LocalizedMap<?> && (copy == null || (modifiedKeys != null && !modifiedKeys.contains(name)))) {
+            LocalizedMap<V> localizedSource = UtilGenerics.cast(source);
+            return localizedSource.get(name, locale);
+        }
+        return current().get(name);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return copyForWrite(key).put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (copy == null && !source.containsKey(key)) {
+            return null;
+        }
+        return copyForWrite(key).remove(key);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        if (map.isEmpty()) {
+            return;
+        }
+        copyForWriteAll().putAll(map);
+    }
+
+    @Override
+    public void clear() {
+        copyForWriteAll().clear();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return copy != null ? copy.keySet() : Collections.unmodifiableSet(source.keySet());
+    }
+
+    @Override
+    public Collection<V> values() {
+        return copy != null ? copy.values() : Collections.unmodifiableCollection(source.values());
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return copy != null ? copy.entrySet() : Collections.unmodifiableMap(source).entrySet();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj || current().equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        return current().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return current().toString();
+    }
+}
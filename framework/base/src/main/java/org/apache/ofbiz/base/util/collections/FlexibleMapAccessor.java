@@ -32,6 +32,7 @@ import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
+import org.apache.ofbiz.base.util.string.SimplePathExpression;
 import org.apache.ofbiz.base.util.string.UelUtil;
 
 /**
@@ -51,6 +52,7 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
     private final String original;
     private final String bracketedOriginal;
     private final FlexibleStringExpander fse;
+    private final SimplePathExpression simplePath;
     private final boolean isAscending;
 
     private FlexibleMapAccessor(String name) {
@@ -58,6 +60,7 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
         this.isEmpty = name.isEmpty();
         FlexibleStringExpander fse = null;
         String bracketedOriginal = null;
+        SimplePathExpression simplePath = null;
         boolean isAscending = true;
         if (UtilValidate.isNotEmpty(name)) {
             if (name.charAt(0) == '-') {
@@ -70,11 +73,14 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
             if (name.contains(FlexibleStringExpander.OPEN_BRACKET)) {
                 fse = FlexibleStringExpander.getInstance(name);
             } else {
-                bracketedOriginal = FlexibleStringExpander.OPEN_BRACKET.concat(UelUtil.prepareExpression(name)
+                String expression = UelUtil.prepareExpression(name);
+                bracketedOriginal = FlexibleStringExpander.OPEN_BRACKET.concat(expression
                         .concat(FlexibleStringExpander.CLOSE_BRACKET));
+                simplePath = SimplePathExpression.compile(expression);
             }
         }
         this.bracketedOriginal = bracketedOriginal;
+        this.simplePath = simplePath;
         this.isAscending = isAscending;
         this.fse = fse;
         if (Debug.verboseOn()) {
@@ -147,7 +153,11 @@ public final class FlexibleMapAccessor<T> implements Serializable, IsEmpty {
         }
         Object obj = null;
         try {
-            obj = UelUtil.evaluate(base, getExpression(base));
+            if (this.simplePath != null) {
+                obj = this.simplePath.evaluate(base);
+            } else {
+                obj = UelUtil.evaluate(base, getExpression(base));
+            }
         } catch (PropertyNotFoundException e) {
             // PropertyNotFound exceptions are common, so log verbose.
             if (Debug.verboseOn()) {
@@ -23,13 +23,13 @@ import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
@@ -47,7 +47,7 @@ import org.apache.ofbiz.base.util.UtilGenerics;
  */
 public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
 
-    private Deque<Map<K, V>> contexts = new LinkedList<>();
+    private final Deque<Map<K, V>> contexts = new ArrayDeque<>();
 
     /**
      * Gets contexts.
@@ -85,6 +85,25 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
         return contexts.size() > 1 ? contexts.removeFirst() : null;
     }
 
+    /**
+     * Removes the Maps from the top of the stack until only {@code depth} Maps are left;
+     * enables to reuse the same stack for each item of a list instead of creating a new one per item.
+     * @param depth the number of Maps to keep, at least one Map is always kept
+     */
+    public void popTo(int depth) {
+        while (contexts.size() > Math.max(depth, 1)) {
+            contexts.removeFirst();
+        }
+    }
+
+    /**
+     * Gets the number of Maps on the stack.
+     * @return the depth of the stack
+     */
+    public int depth() {
+        return contexts.size();
+    }
+
     /* (non-Javadoc)
      * @see java.util.Map#size()
      */
@@ -146,7 +165,20 @@ public class MapContext<K, V> implements Map<K, V>, LocalizedMap<V> {
      */
     @Override
     public V get(Object key) {
-        return withContextContainingKey(key, ctx -> ctx.get(key));
+        // called for each variable lookup while rendering, so avoid the lambda and the double lookup of withContextContainingKey
+        for (Map<K, V> ctx: contexts) {
+            if (ctx instanceof HashMap) {
+                // a single lookup is enough for plain maps, `containsKey` is only needed to distinguish a null value
+                V value = ctx.get(key);
+                if (value != null || ctx.containsKey(key)) {
+                    return value;
+                }
+            } else if (ctx.containsKey(key)) {
+                // other maps, like entities, may not accept a key they do not contain
+                return ctx.get(key);
+            }
+        }
+        return null;
     }
 
     /* (non-Javadoc)
@@ -741,18 +741,25 @@ public abstract class FlexibleStringExpander implements Serializable, IsEmpty {
     /** An object that represents a simple, non-nested expression. */
     protected static class VarElem extends ArrayOffsetString {
         private final char[] bracketedOriginal;
+        // simple paths like a.b or a[b] are evaluated without UEL, null for the other expressions
+        private final SimplePathExpression simplePath;
 
         protected VarElem(char[] chars, int offset, int length, int parseStart, int parseLength) {
             super(chars, offset, length);
-            this.bracketedOriginal = OPEN_BRACKET.concat(UelUtil.prepareExpression(new String(chars, parseStart, parseLength)))
-                    .concat(CLOSE_BRACKET).toCharArray();
+            String expression = UelUtil.prepareExpression(new String(chars, parseStart, parseLength));
+            this.simplePath = SimplePathExpression.compile(expression);
+            this.bracketedOriginal = this.simplePath != null ? null : OPEN_BRACKET.concat(expression).concat(CLOSE_BRACKET).toCharArray();
         }
 
         @Override
         protected Object get(Map<String, ? extends Object> context, TimeZone timeZone, Locale locale) {
             Object obj = null;
             try {
-                obj = UelUtil.evaluate(context, new String(this.bracketedOriginal));
+                if (this.simplePath != null) {
+                    obj = this.simplePath.evaluate(context);
+                } else {
+                    obj = UelUtil.evaluate(context, new String(this.bracketedOriginal));
+                }
             } catch (PropertyNotFoundException e) {
                 if (Debug.verboseOn()) {
                     Debug.logVerbose("Error evaluating expression " + this + ": " + e, MODULE);
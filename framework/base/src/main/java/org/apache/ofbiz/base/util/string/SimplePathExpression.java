@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.string;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.collections.LocalizedMap;
+
+/**
+ * A compiled form of the simple UEL path expressions, like <code>a.b.c</code>, <code>a['b']</code>
+ * or <code>a[b]</code>, which are the vast majority of the expressions found in the widgets.
+ * <p>The path is walked with direct <code>Map</code> look-ups, following the same rules as
+ * {@link UelUtil} (<code>LocalizedMap</code> support and <code>$type</code> suffixes), without
+ * creating an <code>ELContext</code> nor parsing the expression. When a value of the path is not
+ * a <code>Map</code> (a bean, a <code>List</code>...) the whole expression is evaluated by UEL.</p>
+ */
+@SuppressWarnings("serial")
+public final class SimplePathExpression implements Serializable {
+    private static final Set<String> RESERVED_WORDS = UtilMisc.toSet("and", "or", "not", "eq", "ne", "lt", "gt", "le", "ge",
+            "true", "false", "null", "empty", "div", "mod", "instanceof");
+    /** Returned by the path walk when the expression must be evaluated by UEL. */
+    private static final Object USE_UEL = new Object();
+
+    private final String bracketedExpression;
+    private final String[] names;
+    /** <code>true</code> when the corresponding name is a variable containing the property name, as in <code>a[b]</code>. */
+    private final boolean[] variableNames;
+
+    private SimplePathExpression(String expression, String[] names, boolean[] variableNames) {
+        this.bracketedExpression = FlexibleStringExpander.OPEN_BRACKET.concat(expression).concat(FlexibleStringExpander.CLOSE_BRACKET);
+        this.names = names;
+        this.variableNames = variableNames;
+    }
+
+    /**
+     * Compiles an expression if it is a simple path.
+     * @param expression the expression, without the <code>${}</code> brackets, as returned by {@link UelUtil#prepareExpression(String)}
+     * @return the compiled expression, or <code>null</code> if the expression is not a simple path
+     */
+    public static SimplePathExpression compile(String expression) {
+        if (expression == null) {
+            return null;
+        }
+        String path = expression.trim();
+        int length = path.length();
+        List<String> names = new ArrayList<>();
+        List<Boolean> variableNames = new ArrayList<>();
+        int pos = scanIdentifier(path, 0);
+        if (pos == -1) {
+            return null;
+        }
+        names.add(path.substring(0, pos));
+        variableNames.add(Boolean.FALSE);
+        while (pos < length) {
+            char c = path.charAt(pos);
+            if (c == '.') {
+                int end = scanIdentifier(path, pos + 1);
+                if (end == -1) {
+                    return null;
+                }
+                names.add(path.substring(pos + 1, end));
+                variableNames.add(Boolean.FALSE);
+                pos = end;
+            } else if (c == '[' && pos + 1 < length) {
+                char quote = path.charAt(pos + 1);
+                if (quote == '\'' || quote == '"') {
+                    int end = path.indexOf(quote, pos + 2);
+                    if (end == -1 || end + 1 >= length || path.charAt(end + 1) != ']') {
+                        return null;
+                    }
+                    String name = path.substring(pos + 2, end);
+                    if (name.indexOf('\\') != -1) {
+                        // escaped characters are left to UEL
+                        return null;
+                    }
+                    names.add(name);
+                    variableNames.add(Boolean.FALSE);
+                    pos = end + 2;
+                } else {
+                    int end = scanIdentifier(path, pos + 1);
+                    if (end == -1 || end >= length || path.charAt(end) != ']') {
+                        return null;
+                    }
+                    names.add(path.substring(pos + 1, end));
+                    variableNames.add(Boolean.TRUE);
+                    pos = end + 1;
+                }
+            } else {
+                return null;
+            }
+        }
+        boolean[] variableNameArray = new boolean[variableNames.size()];
+        for (int i = 0; i < variableNameArray.length; i++) {
+            variableNameArray[i] = variableNames.get(i);
+        }
+        return new SimplePathExpression(path, names.toArray(new String[names.size()]), variableNameArray);
+    }
+
+    /** Returns the end of the identifier starting at <code>start</code>, or -1 if there is no valid identifier there. */
+    private static int scanIdentifier(String path, int start) {
+        if (start >= path.length() || !Character.isJavaIdentifierStart(path.charAt(start))) {
+            return -1;
+        }
+        int end = start + 1;
+        while (end < path.length() && Character.isJavaIdentifierPart(path.charAt(end))) {
+            end++;
+        }
+        if (RESERVED_WORDS.contains(path.substring(start, end))) {
+            return -1;
+        }
+        return end;
+    }
+
+    /**
+     * Evaluates this expression, the result is the same as the one of {@link UelUtil#evaluate(Map, String)}.
+     * @param context the evaluation context
+     * @return the value found at the end of the path, <code>null</code> if a value of the path is missing
+     */
+    public Object evaluate(Map<String, ? extends Object> context) {
+        Object result = walk(context);
+        if (result == USE_UEL) {
+            return UelUtil.evaluate(context, this.bracketedExpression);
+        }
+        return result;
+    }
+
+    private Object walk(Map<String, ? extends Object> context) {
+        Object base = UelUtil.resolveVariable(this.names[0], context, null);
+        for (int i = 1; i < this.names.length && base != null; i++) {
+            if (!(base instanceof Map<?, ?>)) {
+                return USE_UEL;
+            }
+            String name = this.names[i];
+            if (this.variableNames[i]) {
+                Object property = UelUtil.resolveVariable(name, context, null);
+                if (property == null) {
+                    return null;
+                }
+                if (!(property instanceof String)) {
+                    return USE_UEL;
+                }
+                name = (String) property;
+            }
+            Locale locale = null;
+            if (base instanceof LocalizedMap<?>) {
+                Object localeObj = getLocale(context);
+                if (localeObj == USE_UEL) {
+                    return USE_UEL;
+                }
+                locale = (Locale) localeObj;
+            }
+            Map<String, Object> map = UtilGenerics.cast(base);
+            base = UelUtil.resolveVariable(name, map, locale);
+        }
+        return base;
+    }
+
+    /** Looks up the locale used for the <code>LocalizedMap</code> values, as the UEL resolver does. */
+    private static Object getLocale(Map<String, ? extends Object> context) {
+        Object locale = UelUtil.resolveVariable(UelUtil.getLocalizedMapLocaleKey(), context, null);
+        if (locale == null) {
+            locale = UelUtil.resolveVariable("locale", context, null);
+        }
+        if (locale == null) {
+            return Locale.getDefault();
+        }
+        return locale instanceof Locale ? locale : USE_UEL;
+    }
+
+    /**
+     * Gets the expression.
+     * @return the expression, with the <code>${}</code> brackets
+     */
+    public String getExpression() {
+        return this.bracketedExpression;
+    }
+
+    @Override
+    public String toString() {
+        return this.bracketedExpression;
+    }
+}
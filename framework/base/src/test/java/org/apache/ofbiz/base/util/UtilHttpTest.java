@@ -28,9 +28,16 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.time.Month;
@@ -39,12 +46,16 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.function.Predicate;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.HttpMethod;
 
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 public class UtilHttpTest {
@@ -208,4 +219,89 @@ public class UtilHttpTest {
     public void missingRequestMakeParamListWithSuffix() {
         UtilHttp.makeParamListWithSuffix(null, "suffix", "prefix");
     }
+
+    @Test
+    public void basicGetByteRange() {
+        assertArrayEquals(new long[] {2, 5}, UtilHttp.getByteRange("bytes=2-5", 10));
+        assertArrayEquals(new long[] {2, 9}, UtilHttp.getByteRange("bytes=2-", 10));
+        assertArrayEquals(new long[] {7, 9}, UtilHttp.getByteRange("bytes=-3", 10));
+        assertArrayEquals(new long[] {0, 9}, UtilHttp.getByteRange("bytes=-30", 10));
+        assertArrayEquals(new long[] {8, 9}, UtilHttp.getByteRange("bytes=8-100", 10));
+        // cannot be satisfied
+        assertArrayEquals(new long[0], UtilHttp.getByteRange("bytes=10-", 10));
+        assertArrayEquals(new long[0], UtilHttp.getByteRange("bytes=-0", 10));
+        // the whole content is sent
+        assertNull(UtilHttp.getByteRange(null, 10));
+        assertNull(UtilHttp.getByteRange("bytes=5-2", 10));
+        assertNull(UtilHttp.getByteRange("bytes=0-1,4-5", 10));
+        assertNull(UtilHttp.getByteRange("items=0-1", 10));
+        assertNull(UtilHttp.getByteRange("bytes=a-b", 10));
+    }
+
+    @Test
+    public void rangeStreamFileToBrowser() throws IOException {
+        File file = createTempFile("0123456789");
+        try {
+            HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
+            ByteArrayOutputStream out = mockOutputStream(resp);
+            when(req.getDateHeader(anyString())).thenReturn(-1L);
+            when(req.getHeader("Range")).thenReturn("bytes=2-5");
+            UtilHttp.streamFileToBrowser(req, resp, file, "text/plain", null);
+            Mockito.verify(resp).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            Mockito.verify(resp).setHeader("Content-Range", "bytes 2-5/10");
+            Mockito.verify(resp).setContentLengthLong(4);
+            assertThat(out.toString("UTF-8"), equalTo("2345"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void notModifiedStreamFileToBrowser() throws IOException {
+        File file = createTempFile("0123456789");
+        try {
+            HttpServletResponse resp = Mockito.mock(HttpServletResponse.class);
+            when(req.getDateHeader("If-Modified-Since")).thenReturn(file.lastModified());
+            UtilHttp.streamFileToBrowser(req, resp, file, "text/plain", null);
+            Mockito.verify(resp).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            Mockito.verify(resp, Mockito.never()).getOutputStream();
+
+            // a changed file is sent again
+            ArgumentCaptor<String> eTag = ArgumentCaptor.forClass(String.class);
+            Mockito.verify(resp).setHeader(Mockito.eq("ETag"), eTag.capture());
+            HttpServletResponse changedResp = Mockito.mock(HttpServletResponse.class);
+            ByteArrayOutputStream out = mockOutputStream(changedResp);
+            when(req.getHeader("If-None-Match")).thenReturn(eTag.getValue());
+            Files.write(file.toPath(), "01234567890".getBytes(StandardCharsets.UTF_8));
+            UtilHttp.streamFileToBrowser(req, changedResp, file, "text/plain", null);
+            Mockito.verify(changedResp, Mockito.never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            assertThat(out.toString("UTF-8"), equalTo("01234567890"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static File createTempFile(String content) throws IOException {
+        File file = File.createTempFile("UtilHttpTest", ".txt");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static ByteArrayOutputStream mockOutputStream(HttpServletResponse resp) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        });
+        return out;
+    }
 }
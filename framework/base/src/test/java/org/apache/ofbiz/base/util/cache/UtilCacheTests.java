@@ -385,6 +385,24 @@ public class UtilCacheTests implements Serializable {
         assertEquals("listener", wantedListener, gotListener);
     }
 
+    @Test
+    public void testEvictionListener() throws Exception {
+        UtilCache<String, String> cache = createUtilCache(2, 2, 0, false);
+        Listener<String, String> gotListener = createListener(cache);
+        Listener<String, String> wantedListener = new Listener<>();
+        wantedListener.noteKeyAddition(cache, "one", "uno");
+        wantedListener.noteKeyAddition(cache, "two", "dos");
+        wantedListener.noteKeyAddition(cache, "three", "tres");
+        wantedListener.noteKeyRemoval(cache, "one", "uno");
+        cache.put("one", "uno");
+        cache.put("two", "dos");
+        cache.put("three", "tres");
+        assertEquals("cache.size", 2, cache.size());
+        assertFalse("evicted", cache.containsKey("one"));
+        cache.removeListener(gotListener);
+        assertEquals("listener", wantedListener, gotListener);
+    }
+
     @Test
     public void testChangeMemSize() throws Exception {
         int size = 5;
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.base.util.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.junit.Test;
+
+public class CopyOnWriteMapViewTest {
+
+    /** A map returning upper case values for the French locale. */
+    static class UpperCaseMap extends HashMap<String, Object> implements LocalizedMap<Object> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Object get(String name, Locale locale) {
+            Object value = get(name);
+            return Locale.FRENCH.equals(locale) && value != null ? value.toString().toUpperCase(Locale.ROOT) : value;
+        }
+    }
+
+    @Test
+    public void readsFromTheSourceUntilModified() {
+        Map<String, Object> source = UtilMisc.toMap("productId", "WG-1111", "internalName", "Widget");
+        CopyOnWriteMapView<String, Object> view = new CopyOnWriteMapView<>(source);
+        assertEquals("WG-1111", view.get("productId"));
+        assertEquals(2, view.size());
+        assertFalse(view.isCopied());
+
+        view.put("productId", "GZ-1000");
+        view.remove("internalName");
+        assertTrue(view.isCopied());
+        assertEquals("GZ-1000", view.get("productId"));
+        assertFalse(view.containsKey("internalName"));
+        assertEquals("WG-1111", source.get("productId"));
+        assertEquals("Widget", source.get("internalName"));
+    }
+
+    @Test
+    public void keepsTheLocalizedValuesOfTheFieldsNotModified() {
+        UpperCaseMap source = new UpperCaseMap();
+        source.put("description", "chair");
+        source.put("comments", "red");
+        CopyOnWriteMapView<String, Object> view = new CopyOnWriteMapView<>(source);
+        assertEquals("CHAIR", view.get("description", Locale.FRENCH));
+
+        view.put("comments", "blue");
+        assertEquals("CHAIR", view.get("description", Locale.FRENCH));
+        assertEquals("blue", view.get("comments", Locale.FRENCH));
+
+        view.clear();
+        assertNull(view.get("description", Locale.FRENCH));
+    }
+
+    @Test
+    public void isReadThroughAMapStack() {
+        MapStack<String> context = MapStack.create();
+        context.put("productId", "from context");
+        context.push(new CopyOnWriteMapView<>(UtilMisc.toMap("productId", "from row")));
+        assertEquals("from row", context.get("productId"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void doesNotModifyTheSourceThroughItsKeySet() {
+        Map<String, Object> source = UtilMisc.toMap("productId", "WG-1111");
+        new CopyOnWriteMapView<>(source).keySet().clear();
+    }
+}
@@ -20,6 +20,8 @@ package org.apache.ofbiz.base.util.collections;
 
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -93,4 +95,36 @@ public class MapContextTest {
         assertThat("insertion order of LinkedHashMap is preserved by the 'values' method",
                 mc.values(), contains("1", "1", "3", "8", "1", "14"));
     }
+
+    // Checks that a null value on the top of the stack hides the values below,
+    // whatever the type of the maps.
+    @Test
+    public void nullValueOverridesLowerLayers() {
+        MapContext<String, String> mc = new MapContext<>();
+        mc.push(Collections.singletonMap("a", "bottom"));
+        mc.push(UtilMisc.toMap("b", "middle"));
+        mc.push();
+        mc.put("a", null);
+        assertNull(mc.get("a"));
+        assertEquals("middle", mc.get("b"));
+        assertNull(mc.get("c"));
+    }
+
+    // Checks that a stack can be reset to a given depth to be reused for each item of a list.
+    @Test
+    public void popToKeepsTheBottomOfTheStack() {
+        MapContext<String, String> mc = new MapContext<>();
+        mc.push(UtilMisc.toMap("a", "1"));
+        int depth = mc.depth();
+        for (String item : Arrays.asList("x", "y")) {
+            mc.popTo(depth);
+            mc.push();
+            mc.put("item", item);
+            assertEquals(depth + 1, mc.depth());
+            assertEquals(item, mc.get("item"));
+            assertEquals("1", mc.get("a"));
+        }
+        mc.popTo(0);
+        assertEquals(1, mc.depth());
+    }
 }
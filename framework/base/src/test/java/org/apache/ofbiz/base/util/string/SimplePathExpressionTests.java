@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.base.util.string;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.collections.LocalizedMap;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SimplePathExpressionTests {
+    private Map<String, Object> context;
+
+    @SuppressWarnings("serial")
+    private static final class LabelMap extends HashMap<String, Object> implements LocalizedMap<Object> {
+        @Override
+        public Object get(String name, Locale locale) {
+            return name + "_" + locale;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        context = new HashMap<>();
+        context.put("parameters", UtilMisc.toMap("productId", "WG-1111", "field", "productId"));
+        context.put("fieldName", "productId");
+        context.put("nested", UtilMisc.toMap("map", UtilMisc.toMap("value", 1L)));
+        context.put("labels", new LabelMap());
+        context.put("locale", Locale.FRENCH);
+        context.put("list", Arrays.asList("first", "second"));
+        context.put("text", "some text");
+    }
+
+    private void assertSameAsUel(String expression) {
+        SimplePathExpression path = SimplePathExpression.compile(UelUtil.prepareExpression(expression));
+        assertNotNull(expression + " is compiled", path);
+        assertEquals(expression, UelUtil.evaluate(context, "${" + expression + "}"), path.evaluate(context));
+    }
+
+    @Test
+    public void compilesSimplePaths() {
+        assertSameAsUel("parameters");
+        assertSameAsUel("parameters.productId");
+        assertSameAsUel("parameters['productId']");
+        assertSameAsUel("parameters[\"productId\"]");
+        assertSameAsUel("parameters[fieldName]");
+        assertSameAsUel("nested.map.value");
+        assertSameAsUel("nested['map'].value");
+        assertSameAsUel(" parameters.productId ");
+        assertSameAsUel("parameters.productId$string");
+    }
+
+    @Test
+    public void missingValuesAreNull() {
+        assertNull(SimplePathExpression.compile("missing").evaluate(context));
+        assertNull(SimplePathExpression.compile("missing.value").evaluate(context));
+        assertNull(SimplePathExpression.compile("parameters.missing").evaluate(context));
+        assertNull(SimplePathExpression.compile("parameters[missing]").evaluate(context));
+        assertEquals("", SimplePathExpression.compile("parameters.missing$string").evaluate(context));
+    }
+
+    @Test
+    public void usesTheContextLocaleForLocalizedMaps() {
+        assertSameAsUel("labels.CommonSubmit");
+        assertEquals("CommonSubmit_fr", SimplePathExpression.compile("labels.CommonSubmit").evaluate(context));
+    }
+
+    @Test
+    public void fallsBackToUelForOtherValues() {
+        assertSameAsUel("text.blank");
+        assertEquals("some text", SimplePathExpression.compile("text").evaluate(context));
+    }
+
+    @Test
+    public void doesNotCompileComplexExpressions() {
+        assertNull(SimplePathExpression.compile("list[0]"));
+        assertNull(SimplePathExpression.compile("a + b"));
+        assertNull(SimplePathExpression.compile("a == 'b'"));
+        assertNull(SimplePathExpression.compile("empty a"));
+        assertNull(SimplePathExpression.compile("a.b()"));
+        assertNull(SimplePathExpression.compile("a ? b : c"));
+        assertNull(SimplePathExpression.compile("a['b\\'c']"));
+        assertNull(SimplePathExpression.compile("a."));
+        assertNull(SimplePathExpression.compile("a[b"));
+        assertNull(SimplePathExpression.compile("null"));
+        assertNull(SimplePathExpression.compile(""));
+    }
+}
@@ -0,0 +1,542 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityDerivedCache;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+
+/**
+ * In memory inverted index of the keywords stored by the keyword indexing, like ContentKeyword or WorkEffortKeyword.
+ * <p>The keywords searched are the patterns made by {@link KeywordSearchUtil#fixKeywordsForSearch}, where <code>%</code>
+ * matches any characters and <code>_</code> one character. An exact keyword is read from the dictionary, a keyword
+ * prefix from the sorted dictionary, and the other patterns from the keywords having all the trigrams of their longest
+ * literal part. The documents are found by intersecting the sorted posting lists of each group of keywords, and ranked
+ * with BM25 using the relevancy weight of a keyword as its frequency in the document.</p>
+ * <p>The index of an entity is loaded on the first search once <code>index.embedded.enabled</code> is <code>true</code> in
+ * keywordsearch.properties, and kept in the <code>keywordsearch.index</code> cache. The entity ECAs of the keyword
+ * entity call {@link #keywordsChanged} when the keywords of a document are stored or removed, the keywords of this
+ * document are read again by the next search after the transaction is completed. The cache expires to take the changes
+ * made without entity ECA into account.</p>
+ */
+public final class KeywordSearchIndex {
+
+    private static final String MODULE = KeywordSearchIndex.class.getName();
+    private static final UtilCache<String, KeywordSearchIndex> INDEXES = UtilCache.createUtilCache("keywordsearch.index", 0, 0);
+    private static final int TRIGRAM_LENGTH = 3;
+
+    private final double k1;
+    private final double b;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** The documents whose keywords must be read again before the next search */
+    private final Set<String> changedIds = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded = false;
+
+    /** The document ids by ordinal, an ordinal is not reused and its id is null once the document is updated or removed */
+    private List<String> documentIds = new ArrayList<>();
+    private List<String[]> documentKeywords = new ArrayList<>();
+    private long[] documentLengths = new long[16];
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private int documentCount = 0;
+    private long totalLength = 0;
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+    private final Map<String, Set<String>> trigramKeywords = new HashMap<>();
+
+    KeywordSearchIndex(double k1, double b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    /**
+     * Is the embedded index used by the keyword searches
+     * @param delegator the delegator
+     * @return <code>true</code> if the keyword searches must use the embedded index
+     */
+    public static boolean isEnabled(Delegator delegator) {
+        return "true".equals(EntityUtilProperties.getPropertyValue("keywordsearch", "index.embedded.enabled", "false", delegator));
+    }
+
+    /**
+     * Searches the documents having a keyword of each group of keywords.
+     * @param delegator the delegator
+     * @param entityName the keyword entity, like ContentKeyword
+     * @param idFieldName the field of the document id in the keyword entity, like contentId
+     * @param keywordGroups the groups of keywords, the keywords of a group being alternatives
+     * @return the ids of the documents found with their score, from the highest score; <code>null</code> if the index is
+     * not enabled, cannot be loaded, or finds more documents than <code>index.embedded.result.limit</code>
+     */
+    public static Map<String, Double> search(Delegator delegator, String entityName, String idFieldName, List<Set<String>> keywordGroups) {
+        if (keywordGroups.isEmpty() || !isEnabled(delegator)) {
+            return null;
+        }
+        String key = delegator.getDelegatorName() + "::" + entityName;
+        KeywordSearchIndex index = INDEXES.get(key);
+        if (index == null) {
+            index = INDEXES.putIfAbsentAndGet(key, new KeywordSearchIndex(
+                    EntityUtilProperties.getPropertyAsDouble("keywordsearch", "index.embedded.bm25.k1", 1.2),
+                    EntityUtilProperties.getPropertyAsDouble("keywordsearch", "index.embedded.bm25.b", 0.75)));
+        }
+        try {
+            index.refresh(delegator, entityName, idFieldName);
+        } catch (GenericEntityException e) {
+            Debug.logError(e, "Error loading the keyword index of " + entityName + ", searching without it", MODULE);
+            return null;
+        }
+        long startMillis = System.currentTimeMillis();
+        Map<String, Double> scores = index.search(keywordGroups,
+                EntityUtilProperties.getPropertyAsInteger("keywordsearch", "index.embedded.result.limit", 1000));
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("Searched " + keywordGroups + " in the keyword index of " + entityName + " in "
+                    + (System.currentTimeMillis() - startMillis) + "ms, found " + (scores != null ? scores.size() : "too many"), MODULE);
+        }
+        return scores;
+    }
+
+    /**
+     * Notes that the keywords of a document are changed, they are read again by the next search once the current
+     * transaction is completed, or right now if there is no transaction.
+     * @param delegator the delegator
+     * @param entityName the keyword entity, like ContentKeyword
+     * @param id the id of the document
+     */
+    public static void keywordsChanged(Delegator delegator, String entityName, String id) {
+        String key = delegator.getDelegatorName() + "::" + entityName;
+        EntityDerivedCache.afterTransaction(() -> markChanged(key, id), "update the keyword index of " + entityName);
+    }
+
+    private static void markChanged(String key, String id) {
+        // an index not loaded yet reads the keywords when it is loaded
+        KeywordSearchIndex index = INDEXES.get(key);
+        if (index != null) {
+            index.changedIds.add(id);
+        }
+    }
+
+    // loads the index the first time, then reads again the keywords of the documents changed
+    private void refresh(Delegator delegator, String entityName, String idFieldName) throws GenericEntityException {
+        if (loaded && changedIds.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                long startMillis = System.currentTimeMillis();
+                TransactionUtil.doNewTransaction(() -> {
+                    try (EntityListIterator eli = EntityQuery.use(delegator).select(idFieldName, "keyword", "relevancyWeight")
+                            .from(entityName).orderBy(idFieldName).queryIterator()) {
+                        String documentId = null;
+                        Map<String, Long> keywords = new HashMap<>();
+                        GenericValue keyword;
+                        while ((keyword = eli.next()) != null) {
+                            if (!keyword.getString(idFieldName).equals(documentId)) {
+                                update(documentId, keywords);
+                                documentId = keyword.getString(idFieldName);
+                                keywords = new HashMap<>();
+                            }
+                            keywords.put(keyword.getString("keyword"), keyword.getLong("relevancyWeight"));
+                        }
+                        update(documentId, keywords);
+                    }
+                    return null;
+                }, "Error loading the keyword index of " + entityName, 0, true);
+                loaded = true;
+                Debug.logInfo("Loaded the keyword index of " + entityName + " with " + documentCount + " documents and " + postings.size()
+                        + " keywords in " + (System.currentTimeMillis() - startMillis) + "ms", MODULE);
+            }
+            Iterator<String> changedIdIter = changedIds.iterator();
+            while (changedIdIter.hasNext()) {
+                String documentId = changedIdIter.next();
+                changedIdIter.remove();
+                Map<String, Long> keywords = new HashMap<>();
+                for (GenericValue keyword : EntityQuery.use(delegator).select("keyword", "relevancyWeight").from(entityName)
+                        .where(idFieldName, documentId).queryList()) {
+                    keywords.put(keyword.getString("keyword"), keyword.getLong("relevancyWeight"));
+                }
+                update(documentId, keywords);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the keywords of a document.
+     * @param documentId the id of the document
+     * @param keywords the keywords of the document with their relevancy weight, the document is removed if it is empty
+     */
+    void update(String documentId, Map<String, Long> keywords) {
+        if (documentId == null) {
+            return;
+        }
+        Integer previousOrdinal = ordinals.remove(documentId);
+        if (previousOrdinal != null) {
+            remove(previousOrdinal);
+        }
+        if (keywords.isEmpty()) {
+            return;
+        }
+        // a new ordinal is greater than the others so that the posting lists stay sorted
+        int ordinal = documentIds.size();
+        documentIds.add(documentId);
+        documentKeywords.add(keywords.keySet().toArray(new String[0]));
+        ordinals.put(documentId, ordinal);
+        if (ordinal == documentLengths.length) {
+            documentLengths = Arrays.copyOf(documentLengths, ordinal * 2);
+        }
+        long length = 0;
+        for (Map.Entry<String, Long> keyword : keywords.entrySet()) {
+            long weight = keyword.getValue() != null && keyword.getValue() > 0 ? keyword.getValue() : 1;
+            Postings keywordPostings = postings.get(keyword.getKey());
+            if (keywordPostings == null) {
+                keywordPostings = new Postings();
+                postings.put(keyword.getKey(), keywordPostings);
+                for (String trigram : getTrigrams(keyword.getKey())) {
+                    trigramKeywords.computeIfAbsent(trigram, k -> new HashSet<>()).add(keyword.getKey());
+                }
+            }
+            keywordPostings.add(ordinal, weight);
+            length += weight;
+        }
+        documentLengths[ordinal] = length;
+        documentCount++;
+        totalLength += length;
+    }
+
+    private void remove(int ordinal) {
+        for (String keyword : documentKeywords.get(ordinal)) {
+            Postings keywordPostings = postings.get(keyword);
+            keywordPostings.remove(ordinal);
+            if (keywordPostings.size == 0) {
+                postings.remove(keyword);
+                for (String trigram : getTrigrams(keyword)) {
+                    Set<String> keywords = trigramKeywords.get(trigram);
+                    keywords.remove(keyword);
+                    if (keywords.isEmpty()) {
+                        trigramKeywords.remove(trigram);
+                    }
+                }
+            }
+        }
+        documentIds.set(ordinal, null);
+        documentKeywords.set(ordinal, null);
+        documentCount--;
+        totalLength -= documentLengths[ordinal];
+        if (documentIds.size() - documentCount > Math.max(documentCount, 1024)) {
+            compact();
+        }
+    }
+
+    // gives consecutive ordinals to the remaining documents, in the same order so that the posting lists stay sorted
+    private void compact() {
+        int[] newOrdinals = new int[documentIds.size()];
+        List<String> newDocumentIds = new ArrayList<>(documentCount);
+        List<String[]> newDocumentKeywords = new ArrayList<>(documentCount);
+        long[] newDocumentLengths = new long[Math.max(documentCount, 16)];
+        for (int ordinal = 0; ordinal < documentIds.size(); ordinal++) {
+            String documentId = documentIds.get(ordinal);
+            if (documentId != null) {
+                int newOrdinal = newDocumentIds.size();
+                newOrdinals[ordinal] = newOrdinal;
+                newDocumentIds.add(documentId);
+                newDocumentKeywords.add(documentKeywords.get(ordinal));
+                newDocumentLengths[newOrdinal] = documentLengths[ordinal];
+                ordinals.put(documentId, newOrdinal);
+            }
+        }
+        for (Postings keywordPostings : postings.values()) {
+            for (int i = 0; i < keywordPostings.size; i++) {
+                keywordPostings.documents[i] = newOrdinals[keywordPostings.documents[i]];
+            }
+        }
+        documentIds = newDocumentIds;
+        documentKeywords = newDocumentKeywords;
+        documentLengths = newDocumentLengths;
+    }
+
+    /**
+     * Searches the documents having a keyword of each group of keywords.
+     * @param keywordGroups the groups of keywords, the keywords of a group being alternatives
+     * @param limit the maximum number of documents found
+     * @return the ids of the documents found with their score, from the highest score; <code>null</code> if there are more
+     * documents than the limit
+     */
+    Map<String, Double> search(List<Set<String>> keywordGroups, int limit) {
+        lock.readLock().lock();
+        try {
+            List<ScoredDocuments> groupDocuments = new ArrayList<>(keywordGroups.size());
+            for (Set<String> keywordGroup : keywordGroups) {
+                // a keyword matched by several patterns of the group is counted once
+                Set<String> matchedKeywords = new HashSet<>();
+                for (String keyword : keywordGroup) {
+                    matchedKeywords.addAll(matchKeywords(keyword));
+                }
+                List<ScoredDocuments> keywordDocuments = new ArrayList<>(matchedKeywords.size());
+                for (String matchedKeyword : matchedKeywords) {
+                    keywordDocuments.add(score(postings.get(matchedKeyword)));
+                }
+                ScoredDocuments documents = union(keywordDocuments, 0, keywordDocuments.size());
+                if (documents.size == 0) {
+                    return new LinkedHashMap<>();
+                }
+                groupDocuments.add(documents);
+            }
+            // intersect from the shortest posting list, it bounds the documents to look for in the others
+            groupDocuments.sort(Comparator.comparingInt(documents -> documents.size));
+            ScoredDocuments found = groupDocuments.get(0);
+            for (int i = 1; i < groupDocuments.size() && found.size > 0; i++) {
+                found = intersect(found, groupDocuments.get(i));
+            }
+            if (found.size > limit) {
+                return null;
+            }
+            Integer[] positions = new Integer[found.size];
+            for (int i = 0; i < found.size; i++) {
+                positions[i] = i;
+            }
+            ScoredDocuments ranked = found;
+            Arrays.sort(positions, (x, y) -> Double.compare(ranked.scores[y], ranked.scores[x]));
+            Map<String, Double> scores = new LinkedHashMap<>();
+            for (int position : positions) {
+                scores.put(documentIds.get(found.documents[position]), found.scores[position]);
+            }
+            return scores;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Collection<String> matchKeywords(String pattern) {
+        int wildcard = indexOfWildcard(pattern, 0);
+        if (wildcard < 0) {
+            return postings.containsKey(pattern) ? Collections.singleton(pattern) : Collections.emptySet();
+        }
+        String prefix = pattern.substring(0, wildcard);
+        Collection<String> candidates = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, true).keySet();
+        if (wildcard == pattern.length() - 1 && pattern.charAt(wildcard) == '%') {
+            return candidates;
+        }
+        String literal = "";
+        for (String part : pattern.split("[%_]")) {
+            if (part.length() > literal.length()) {
+                literal = part;
+            }
+        }
+        if (prefix.length() < TRIGRAM_LENGTH && literal.length() >= TRIGRAM_LENGTH) {
+            candidates = getTrigramCandidates(literal);
+        }
+        Pattern regex = Pattern.compile(toRegex(pattern), Pattern.DOTALL);
+        List<String> matched = new ArrayList<>();
+        for (String candidate : candidates) {
+            if (regex.matcher(candidate).matches()) {
+                matched.add(candidate);
+            }
+        }
+        return matched;
+    }
+
+    // the keywords having all the trigrams of a text, a superset of the keywords containing it
+    private Set<String> getTrigramCandidates(String text) {
+        List<Set<String>> keywordSets = new ArrayList<>();
+        for (String trigram : getTrigrams(text)) {
+            Set<String> keywords = trigramKeywords.get(trigram);
+            if (keywords == null) {
+                return Collections.emptySet();
+            }
+            keywordSets.add(keywords);
+        }
+        keywordSets.sort(Comparator.comparingInt(Set::size));
+        Set<String> candidates = new HashSet<>(keywordSets.get(0));
+        for (int i = 1; i < keywordSets.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(keywordSets.get(i));
+        }
+        return candidates;
+    }
+
+    private ScoredDocuments score(Postings keywordPostings) {
+        double idf = Math.log(1 + (documentCount - keywordPostings.size + 0.5) / (keywordPostings.size + 0.5));
+        double averageLength = (double) totalLength / documentCount;
+        ScoredDocuments documents = new ScoredDocuments(keywordPostings.size);
+        for (int i = 0; i < keywordPostings.size; i++) {
+            long frequency = keywordPostings.frequencies[i];
+            long length = documentLengths[keywordPostings.documents[i]];
+            documents.add(keywordPostings.documents[i],
+                    idf * frequency * (k1 + 1) / (frequency + k1 * (1 - b + b * length / averageLength)));
+        }
+        return documents;
+    }
+
+    private static ScoredDocuments union(List<ScoredDocuments> lists, int from, int to) {
+        if (to - from == 0) {
+            return new ScoredDocuments(0);
+        }
+        if (to - from == 1) {
+            return lists.get(from);
+        }
+        int middle = (from + to) >>> 1;
+        ScoredDocuments first = union(lists, from, middle);
+        ScoredDocuments second = union(lists, middle, to);
+        ScoredDocuments merged = new ScoredDocuments(first.size + second.size);
+        int i = 0;
+        int j = 0;
+        while (i < first.size || j < second.size) {
+            if (j == second.size || (i < first.size && first.documents[i] < second.documents[j])) {
+                merged.add(first.documents[i], first.scores[i]);
+                i++;
+            } else if (i == first.size || second.documents[j] < first.documents[i]) {
+                merged.add(second.documents[j], second.scores[j]);
+                j++;
+            } else {
+                merged.add(first.documents[i], first.scores[i] + second.scores[j]);
+                i++;
+                j++;
+            }
+        }
+        return merged;
+    }
+
+    private static ScoredDocuments intersect(ScoredDocuments shorter, ScoredDocuments longer) {
+        ScoredDocuments found = new ScoredDocuments(Math.min(shorter.size, longer.size));
+        int j = 0;
+        for (int i = 0; i < shorter.size && j < longer.size; i++) {
+            j = advance(longer.documents, j, longer.size, shorter.documents[i]);
+            if (j < longer.size && longer.documents[j] == shorter.documents[i]) {
+                found.add(shorter.documents[i], shorter.scores[i] + longer.scores[j]);
+            }
+        }
+        return found;
+    }
+
+    // the position of the first document not lower than the target, galloping from a position
+    private static int advance(int[] documents, int from, int size, int target) {
+        if (from >= size || documents[from] >= target) {
+            return from;
+        }
+        int low = from;
+        int step = 1;
+        while (low + step < size && documents[low + step] < target) {
+            low += step;
+            step <<= 1;
+        }
+        int position = Arrays.binarySearch(documents, low + 1, Math.min(low + step, size), target);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    private static int indexOfWildcard(String pattern, int from) {
+        for (int i = from; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == '%' || pattern.charAt(i) == '_') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        int wildcard;
+        while ((wildcard = indexOfWildcard(pattern, start)) >= 0) {
+            if (wildcard > start) {
+                regex.append(Pattern.quote(pattern.substring(start, wildcard)));
+            }
+            regex.append(pattern.charAt(wildcard) == '%' ? ".*" : ".");
+            start = wildcard + 1;
+        }
+        if (start < pattern.length()) {
+            regex.append(Pattern.quote(pattern.substring(start)));
+        }
+        return regex.toString();
+    }
+
+    private static Set<String> getTrigrams(String text) {
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + TRIGRAM_LENGTH <= text.length(); i++) {
+            trigrams.add(text.substring(i, i + TRIGRAM_LENGTH));
+        }
+        return trigrams;
+    }
+
+    /** The documents having a keyword, by increasing ordinal, with the frequency of the keyword */
+    private static final class Postings {
+        private int[] documents = new int[4];
+        private long[] frequencies = new long[4];
+        private int size = 0;
+
+        private void add(int ordinal, long frequency) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = ordinal;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        private void remove(int ordinal) {
+            int position = Arrays.binarySearch(documents, 0, size, ordinal);
+            if (position >= 0) {
+                System.arraycopy(documents, position + 1, documents, position, size - position - 1);
+                System.arraycopy(frequencies, position + 1, frequencies, position, size - position - 1);
+                size--;
+            }
+        }
+    }
+
+    /** Documents by increasing ordinal with their score */
+    private static final class ScoredDocuments {
+        private final int[] documents;
+        private final double[] scores;
+        private int size = 0;
+
+        private ScoredDocuments(int capacity) {
+            documents = new int[capacity];
+            scores = new double[capacity];
+        }
+
+        private void add(int ordinal, double score) {
+            documents[size] = ordinal;
+            scores[size] = score;
+            size++;
+        }
+    }
+}
@@ -30,13 +30,18 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.activation.DataHandler;
 import javax.activation.DataSource;
@@ -44,7 +49,6 @@ import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.SendFailedException;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
@@ -54,6 +58,7 @@ import javax.xml.transform.stream.StreamSource;
 
 import org.apache.fop.apps.Fop;
 import org.apache.fop.apps.MimeConstants;
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
 import org.apache.ofbiz.base.util.HttpClient;
@@ -335,18 +340,11 @@ public class EmailServices {
             return results;
         }
 
-        Transport trans = null;
-        try {
-            trans = session.getTransport("smtp");
-            if (!useSmtpAuth) {
-                trans.connect();
-            } else {
-                trans.connect(sendVia, authUser, authPass);
-            }
-            trans.sendMessage(mail, mail.getAllRecipients());
+        try (SmtpTransportPool.PooledTransport trans = SmtpTransportPool.getTransport(session, sendVia, useSmtpAuth ? authUser : null,
+                authPass)) {
+            trans.sendMessage(mail);
             results.put("messageWrapper", new MimeMessageWrapper(session, mail));
             results.put("messageId", mail.getMessageID());
-            trans.close();
         } catch (SendFailedException e) {
             // message code prefix may be used by calling services to determine the cause of the failure
             Debug.logError(e, "[ADDRERR] Address error when sending message to [" + sendTo + "] from [" + sendFrom + "] cc [" + sendCc
@@ -368,7 +366,6 @@ public class EmailServices {
                 results.put("messageWrapper", new MimeMessageWrapper(session, mail));
                 try {
                     results.put("messageId", mail.getMessageID());
-                    trans.close();
                 } catch (MessagingException e1) {
                     Debug.logError(e1, MODULE);
                 }
@@ -688,6 +685,65 @@ public class EmailServices {
         serviceContext.put("hideInLog", true);
         return sendMailFromScreen(dctx, serviceContext);
     }
+
+    /**
+     * JavaMail Service sending a list of emails with their body rendered from a Screen Widget.
+     * The emails are rendered and sent by a few threads, each one calling sendMailFromScreen for the next email of the
+     * list, so that the sending of each thread goes through the same pooled SMTP connection.
+     *@param dctx The DispatchContext that this service is operating in
+     *@param context Map containing the input parameters
+     *@return Map with the result of the service, the output parameters
+     */
+    public static Map<String, Object> sendMailFromScreenBulk(DispatchContext dctx, Map<String, ? extends Object> context) {
+        LocalDispatcher dispatcher = dctx.getDispatcher();
+        List<Map<String, Object>> messages = UtilGenerics.cast(context.get("messages"));
+        int threadCount = Math.min(EntityUtilProperties.getPropertyAsInteger("general", "mail.smtp.bulk.threads", 4), messages.size());
+        // each thread sets the results of its messages only, the list is never resized
+        List<Map<String, Object>> sendResults = new ArrayList<>(Collections.nCopies(messages.size(), null));
+        AtomicInteger nextIndex = new AtomicInteger();
+        List<Future<Void>> futures = new ArrayList<>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            futures.add(ExecutionPool.GLOBAL_BATCH.submit(() -> {
+                int index = nextIndex.getAndIncrement();
+                while (index < messages.size()) {
+                    sendResults.set(index, sendBulkMessage(dispatcher, context, messages.get(index)));
+                    index = nextIndex.getAndIncrement();
+                }
+                return null;
+            }));
+        }
+        ExecutionPool.getAllFutures(futures);
+
+        int failureCount = 0;
+        for (int i = 0; i < sendResults.size(); i++) {
+            if (sendResults.get(i) == null) {
+                sendResults.set(i, ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "CommonEmailSendError",
+                        UtilMisc.toMap("errorString", "not sent"), (Locale) context.get("locale"))));
+            }
+            if (ServiceUtil.isError(sendResults.get(i))) {
+                failureCount++;
+            }
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("sendResults", sendResults);
+        result.put("failureCount", failureCount);
+        return result;
+    }
+
+    private static Map<String, Object> sendBulkMessage(LocalDispatcher dispatcher, Map<String, ? extends Object> context,
+            Map<String, Object> message) {
+        Map<String, Object> sendMailContext = new HashMap<>(message);
+        sendMailContext.putIfAbsent("userLogin", context.get("userLogin"));
+        sendMailContext.putIfAbsent("locale", context.get("locale"));
+        try {
+            return dispatcher.runSync("sendMailFromScreen", sendMailContext);
+        } catch (GenericServiceException | RuntimeException e) {
+            Debug.logError(e, "Error sending email to [" + message.get("sendTo") + "]", MODULE);
+            return ServiceUtil.returnError(UtilProperties.getMessage(RESOURCE, "CommonEmailSendError",
+                    UtilMisc.toMap("errorString", e.toString()), (Locale) context.get("locale")));
+        }
+    }
+
     public static void sendFailureNotification(DispatchContext dctx, Map<String, ? extends Object> context, MimeMessage message,
                                                List<SMTPAddressFailedException> failures) {
         Locale locale = (Locale) context.get("locale");
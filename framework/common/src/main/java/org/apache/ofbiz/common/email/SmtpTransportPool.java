@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.common.email;
+
+import java.util.Deque;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.crypto.HashCrypt;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+
+/**
+ * Pool of the SMTP connections used to send the emails.
+ * <p>The connections are kept by server, port, user and SMTP settings of the session, so that the emails sent one after
+ * the other pay the connection, TLS and authentication handshakes once. An idle connection is checked with a NOOP
+ * before being reused when it has not been used for a while, it is closed after {@code mail.smtp.pool.maxMessages}
+ * messages and when it stays idle longer than {@code mail.smtp.pool.idleTimeout}, the properties of
+ * {@code general.properties}.</p>
+ */
+public final class SmtpTransportPool {
+
+    private static final String MODULE = SmtpTransportPool.class.getName();
+    // an idle connection is checked with a NOOP when it has not been used for this time
+    private static final long KEEP_ALIVE_CHECK_MILLIS = 5000;
+    private static final Map<String, Deque<PooledTransport>> IDLE_TRANSPORTS = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService EVICTOR = ExecutionPool.getScheduledExecutor(new ThreadGroup(MODULE),
+            "OFBiz-SmtpTransportPool", 1, 0, false);
+
+    static {
+        EVICTOR.scheduleWithFixedDelay(SmtpTransportPool::evictIdleTransports, 10, 10, TimeUnit.SECONDS);
+    }
+
+    private SmtpTransportPool() { }
+
+    /**
+     * Gets a connected SMTP transport for a session, reusing an idle connection to the same server if any.
+     * <p>The transport must be closed after use, which returns it to the pool.</p>
+     * @param session the session of the message to send
+     * @param host the SMTP server
+     * @param authUser the user to authenticate with, if empty no authentication is done
+     * @param authPass the password of the user
+     * @return the connected transport
+     * @throws MessagingException when the connection fails
+     */
+    public static PooledTransport getTransport(Session session, String host, String authUser, String authPass) throws MessagingException {
+        boolean useSmtpAuth = authUser != null && !authUser.isEmpty();
+        String key = makeKey(session, host, useSmtpAuth ? authUser : null, useSmtpAuth ? authPass : null);
+        int maxMessages = EntityUtilProperties.getPropertyAsInteger("general", "mail.smtp.pool.maxMessages", 100);
+        if (maxMessages > 1) {
+            Deque<PooledTransport> idleTransports = IDLE_TRANSPORTS.get(key);
+            PooledTransport pooled;
+            while (idleTransports != null && (pooled = idleTransports.pollFirst()) != null) {
+                if (pooled.isUsable()) {
+                    return pooled;
+                }
+                pooled.disconnect();
+            }
+        }
+        Transport transport = session.getTransport("smtp");
+        if (!useSmtpAuth) {
+            transport.connect();
+        } else {
+            transport.connect(host, authUser, authPass);
+        }
+        long idleTimeout = EntityUtilProperties.getPropertyAsLong("general", "mail.smtp.pool.idleTimeout", 30000);
+        int maxIdle = EntityUtilProperties.getPropertyAsInteger("general", "mail.smtp.pool.maxIdle", 4);
+        return new PooledTransport(key, transport, maxMessages, idleTimeout, maxIdle);
+    }
+
+    /**
+     * Closes all the idle connections.
+     */
+    public static void clear() {
+        for (Deque<PooledTransport> idleTransports : IDLE_TRANSPORTS.values()) {
+            PooledTransport pooled;
+            while ((pooled = idleTransports.pollFirst()) != null) {
+                pooled.disconnect();
+            }
+        }
+    }
+
+    // the SMTP settings and credentials of the session are part of the key so that a connection is never reused with other
+    // settings or after a password change; the credentials are hashed to keep the password out of the key
+    private static String makeKey(Session session, String host, String authUser, String authPass) {
+        SortedMap<String, String> settings = new TreeMap<>();
+        for (String name : session.getProperties().stringPropertyNames()) {
+            if (name.startsWith("mail.smtp.")) {
+                settings.put(name, session.getProperty(name));
+            }
+        }
+        String credentials = authUser == null ? null : HashCrypt.digestHash("SHA-256", null, authUser + "\u0000" + authPass);
+        return host + "|" + authUser + "|" + credentials + "|" + settings;
+    }
+
+    private static void evictIdleTransports() {
+        long now = System.currentTimeMillis();
+        for (Deque<PooledTransport> idleTransports : IDLE_TRANSPORTS.values()) {
+            // the most recently used connections are at the head, the expired ones are at the tail
+            PooledTransport pooled;
+            while ((pooled = idleTransports.peekLast()) != null && pooled.isExpired(now)) {
+                if (idleTransports.removeLastOccurrence(pooled)) {
+                    pooled.disconnect();
+                }
+            }
+        }
+    }
+
+    /**
+     * A connected SMTP transport of the pool, returned to the pool when closed.
+     */
+    public static final class PooledTransport implements AutoCloseable {
+        private final String key;
+        private final Transport transport;
+        private final int maxMessages;
+        private final long idleTimeout;
+        private final int maxIdle;
+        private int messageCount = 0;
+        private boolean broken = false;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private PooledTransport(String key, Transport transport, int maxMessages, long idleTimeout, int maxIdle) {
+            this.key = key;
+            this.transport = transport;
+            this.maxMessages = maxMessages;
+            this.idleTimeout = idleTimeout;
+            this.maxIdle = maxIdle;
+        }
+
+        /**
+         * Sends a message to all its recipients. When the sending fails the connection is not reused.
+         * @param message the message to send
+         * @throws MessagingException when the sending fails
+         */
+        public void sendMessage(MimeMessage message) throws MessagingException {
+            try {
+                messageCount++;
+                transport.sendMessage(message, message.getAllRecipients());
+            } catch (MessagingException | RuntimeException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        /**
+         * Returns the connection to the pool, or closes it when it has sent its maximum number of messages, when the
+         * last sending failed or when enough connections to the same server are idle.
+         */
+        @Override
+        public void close() {
+            lastUsed = System.currentTimeMillis();
+            if (broken || messageCount >= maxMessages) {
+                disconnect();
+                return;
+            }
+            Deque<PooledTransport> idleTransports = IDLE_TRANSPORTS.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<>());
+            if (idleTransports.size() >= maxIdle) {
+                disconnect();
+                return;
+            }
+            idleTransports.offerFirst(this);
+        }
+
+        private boolean isExpired(long now) {
+            return now - lastUsed > idleTimeout;
+        }
+
+        private boolean isUsable() {
+            long now = System.currentTimeMillis();
+            if (isExpired(now)) {
+                return false;
+            }
+            // the server may have dropped the connection, the SMTP transport checks it with a NOOP
+            return now - lastUsed < KEEP_ALIVE_CHECK_MILLIS || transport.isConnected();
+        }
+
+        private void disconnect() {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                Debug.logWarning(e, "Error closing the SMTP connection", MODULE);
+            }
+        }
+    }
+}
@@ -20,16 +20,21 @@ package org.apache.ofbiz.common.image;
 
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.ImageIcon;
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -94,6 +99,73 @@ public class ImageTransform {
 
     }
 
+    /**
+     * getBufferedImage
+     * <p>
+     * Set a buffered image decoded with a subsampling, keeping at least twice the pixels of the largest size type to scale
+     * it to, so that the full resolution of a large image is never held in memory
+     * @param   fileLocation    Full file Path
+     * @param   dimensionMap    Image dimensions by size type
+     * @return  the buffered image and the originalWidth and originalHeight of the image before subsampling
+     * @throws  IOException Error prevents the document from being fully parsed
+     */
+    public static Map<String, Object> getBufferedImage(String fileLocation, Map<String, Map<String, String>> dimensionMap, Locale locale)
+        throws IOException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        try (ImageInputStream input = ImageIO.createImageInputStream(new File(fileLocation))) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                String errMsg = UtilProperties.getMessage(RESOURCE, "ImageTransform.input_is_null", locale) + " : " + fileLocation;
+                Debug.logError(errMsg, MODULE);
+                result.put(ModelService.ERROR_MESSAGE, errMsg);
+                return result;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                double maxScaleFactor = 0;
+                for (Map<String, String> dimensions : dimensionMap.values()) {
+                    maxScaleFactor = Math.max(maxScaleFactor, getScaleFactor(height, width, dimensions));
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (maxScaleFactor > 0 && maxScaleFactor < 0.25) {
+                    int subsampling = (int) (1 / (2 * maxScaleFactor));
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                result.put("responseMessage", "success");
+                result.put("bufferedImage", reader.read(0, param));
+                result.put("originalWidth", width);
+                result.put("originalHeight", height);
+                return result;
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            String errMsg = UtilProperties.getMessage(RESOURCE, "ImageTransform.error_occurs_during_reading", locale) + " : "
+                    + fileLocation + "; " + e.toString();
+            Debug.logError(errMsg, MODULE);
+            result.put(ModelService.ERROR_MESSAGE, errMsg);
+            return result;
+        }
+    }
+
+    // the scale factor of scaleImage for valid dimensions, 0 otherwise
+    private static double getScaleFactor(double imgHeight, double imgWidth, Map<String, String> dimensions) {
+        double defaultHeight = dimensions.containsKey("height") ? Double.parseDouble(dimensions.get("height")) : -1;
+        double defaultWidth = dimensions.containsKey("width") ? Double.parseDouble(dimensions.get("width")) : -1;
+        if (defaultHeight == 0.0 || defaultWidth == 0.0 || (defaultHeight == -1 && defaultWidth == -1)) {
+            return 0;
+        }
+        if (defaultHeight == -1) {
+            return defaultWidth / imgWidth;
+        } else if (defaultWidth == -1) {
+            return defaultHeight / imgHeight;
+        }
+        return Math.min(defaultHeight / imgHeight, defaultWidth / imgWidth);
+    }
+
     /**
      * scaleImage
      * <p>
@@ -199,10 +271,9 @@ public class ImageTransform {
             bufImgType = bufImg.getType();
         }
 
-        // scale original image with new size
-        Image newImg = bufImg.getScaledInstance((int) (imgWidth * scaleFactor), (int) (imgHeight * scaleFactor), Image.SCALE_SMOOTH);
-
-        bufNewImg = ImageTransform.toBufferedImage(newImg, bufImgType);
+        // scale original image with new size, the given image may be a subsampling of the original image
+        bufNewImg = ImageTransform.scaleProgressively(bufImg, Math.max(1, (int) (imgWidth * scaleFactor)),
+                Math.max(1, (int) (imgHeight * scaleFactor)), bufImgType);
 
         result.put("responseMessage", "success");
         result.put("bufferedImage", bufNewImg);
@@ -211,6 +282,40 @@ public class ImageTransform {
 
     }
 
+    /**
+     * scaleProgressively
+     * <p>
+     * Scale an image by halving its size with a bilinear interpolation until the target size is reached, which is as
+     * smooth as the area averaging of Image.SCALE_SMOOTH for a fraction of its cost. An image is enlarged in one step.
+     * @param image             Source image
+     * @param width             Width of the scaled image
+     * @param height            Height of the scaled image
+     * @param bufImgType        Type of the scaled image
+     * @return the scaled image
+     */
+    public static BufferedImage scaleProgressively(BufferedImage image, int width, int height, int bufImgType) {
+        int stepImgType = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            currentWidth = currentWidth > width ? Math.max(currentWidth / 2, width) : width;
+            currentHeight = currentHeight > height ? Math.max(currentHeight / 2, height) : height;
+            boolean lastStep = currentWidth == width && currentHeight == height;
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight, lastStep ? bufImgType : stepImgType);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (currentWidth != width || currentHeight != height);
+        return current;
+    }
+
     /**
      * getXMLValue
      * <p>
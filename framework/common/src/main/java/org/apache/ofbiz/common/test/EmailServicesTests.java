@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.common.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.common.email.SmtpTransportPool;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+
+public class EmailServicesTests extends OFBizTestCase {
+
+    private static final String MODULE = EmailServicesTests.class.getName();
+    private static final String[] GENERAL_PROPERTIES = {"mail.notifications.enabled", "mail.smtp.relay.host", "mail.smtp.port",
+        "mail.smtp.pool.maxMessages"};
+
+    private final Map<String, String> savedProperties = new HashMap<>();
+    private String savedSystemPort;
+    private SmtpStandIn smtpServer;
+
+    public EmailServicesTests(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        for (String name : GENERAL_PROPERTIES) {
+            savedProperties.put(name, UtilProperties.getPropertyValue("general", name));
+        }
+        // sendMail copies the SMTP settings in the system properties
+        savedSystemPort = System.getProperty("mail.smtp.port");
+        smtpServer = new SmtpStandIn();
+        SmtpTransportPool.clear();
+        UtilProperties.setPropertyValueInMemory("general", "mail.notifications.enabled", "Y");
+        UtilProperties.setPropertyValueInMemory("general", "mail.smtp.relay.host", "localhost");
+        UtilProperties.setPropertyValueInMemory("general", "mail.smtp.port", String.valueOf(smtpServer.getPort()));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SmtpTransportPool.clear();
+        smtpServer.close();
+        for (Map.Entry<String, String> property : savedProperties.entrySet()) {
+            UtilProperties.setPropertyValueInMemory("general", property.getKey(), property.getValue());
+        }
+        if (savedSystemPort == null) {
+            System.clearProperty("mail.smtp.port");
+        } else {
+            System.setProperty("mail.smtp.port", savedSystemPort);
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Sends several emails one after the other, they must all go through the same SMTP connection.
+     */
+    public void testSendMailReusesConnection() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Map<String, Object> result = getDispatcher().runSync("sendMail", UtilMisc.toMap("sendTo", "pool" + i + "@example.com",
+                    "subject", "Pool test " + i, "body", "Body " + i, "contentType", "text/plain", "userLogin", getUserLogin()));
+            assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+        }
+        assertEquals(5, smtpServer.getMessageCount());
+        assertEquals(1, smtpServer.getConnectionCount());
+    }
+
+    /**
+     * Disables the pool, each email must be sent through its own SMTP connection.
+     */
+    public void testSendMailWithoutPool() throws Exception {
+        UtilProperties.setPropertyValueInMemory("general", "mail.smtp.pool.maxMessages", "1");
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> result = getDispatcher().runSync("sendMail", UtilMisc.toMap("sendTo", "nopool" + i + "@example.com",
+                    "subject", "No pool test " + i, "body", "Body " + i, "contentType", "text/plain", "userLogin", getUserLogin()));
+            assertTrue(ServiceUtil.getErrorMessage(result), ServiceUtil.isSuccess(result));
+        }
+        assertEquals(3, smtpServer.getMessageCount());
+        assertEquals(3, smtpServer.getConnectionCount());
+    }
+
+    /**
+     * Sends a list of emails in bulk, all of them must be received, through no more connections than sending threads.
+     */
+    public void testSendMailFromScreenBulk() throws Exception {
+        int messageCount = 20;
+        List<Map<String, Object>> messages = new ArrayList<>();
+        for (int i = 0; i < messageCount; i++) {
+            messages.add(UtilMisc.toMap("sendTo", "bulk" + i + "@example.com", "subject", "Bulk test " + i,
+                    "bodyText", "Body of email " + i, "contentType", "text/plain"));
+        }
+        long start = System.nanoTime();
+        Map<String, Object> result = getDispatcher().runSync("sendMailFromScreenBulk", UtilMisc.toMap("messages", messages,
+                "userLogin", getUserLogin()));
+        long time = System.nanoTime() - start;
+        Debug.logInfo("Bulk sending of " + messageCount + " emails: " + time / 1000000 + "ms over " + smtpServer.getConnectionCount()
+                + " connections", MODULE);
+
+        assertTrue(ServiceUtil.isSuccess(result));
+        assertEquals(0, result.get("failureCount"));
+        List<Map<String, Object>> sendResults = UtilGenerics.cast(result.get("sendResults"));
+        assertEquals(messageCount, sendResults.size());
+        assertEquals("Bulk test 3", sendResults.get(3).get("subject"));
+        assertEquals(messageCount, smtpServer.getMessageCount());
+        for (int i = 0; i < messageCount; i++) {
+            assertTrue(smtpServer.getRecipients().contains("<bulk" + i + "@example.com>"));
+        }
+        int threads = UtilProperties.getPropertyAsInteger("general", "mail.smtp.bulk.threads", 4);
+        assertTrue(smtpServer.getConnectionCount() <= threads);
+    }
+
+    /**
+     * In-process SMTP server accepting all the messages, counting the connections and the messages received.
+     */
+    private static final class SmtpStandIn implements AutoCloseable {
+        private final ServerSocket serverSocket;
+        private final AtomicInteger connectionCount = new AtomicInteger();
+        private final AtomicInteger messageCount = new AtomicInteger();
+        private final Set<String> recipients = ConcurrentHashMap.newKeySet();
+
+        SmtpStandIn() throws IOException {
+            serverSocket = new ServerSocket(0);
+            ExecutionPool.GLOBAL_BATCH.submit(this::accept);
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        int getConnectionCount() {
+            return connectionCount.get();
+        }
+
+        int getMessageCount() {
+            return messageCount.get();
+        }
+
+        Set<String> getRecipients() {
+            return recipients;
+        }
+
+        private void accept() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    connectionCount.incrementAndGet();
+                    ExecutionPool.GLOBAL_BATCH.submit(() -> converse(socket));
+                } catch (IOException e) {
+                    // the server is closed
+                }
+            }
+        }
+
+        private void converse(Socket socket) {
+            try (Socket s = socket;
+                    BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+                    Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII)) {
+                reply(out, "220 localhost SMTP stand-in");
+                String line = in.readLine();
+                while (line != null) {
+                    String command = line.length() < 4 ? line.toUpperCase() : line.substring(0, 4).toUpperCase();
+                    if ("DATA".equals(command)) {
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        // skips the content of the message
+                        line = in.readLine();
+                        while (line != null && !".".equals(line)) {
+                            line = in.readLine();
+                        }
+                        messageCount.incrementAndGet();
+                        reply(out, "250 OK");
+                    } else if ("RCPT".equals(command)) {
+                        recipients.add(line.substring(line.indexOf(':') + 1).trim());
+                        reply(out, "250 OK");
+                    } else if ("QUIT".equals(command)) {
+                        reply(out, "221 Bye");
+                        return;
+                    } else if ("EHLO".equals(command) || "HELO".equals(command) || "MAIL".equals(command) || "NOOP".equals(command)
+                            || "RSET".equals(command)) {
+                        reply(out, "250 OK");
+                    } else {
+                        reply(out, "502 Command not implemented");
+                    }
+                    line = in.readLine();
+                }
+            } catch (IOException e) {
+                Debug.logWarning(e, "SMTP stand-in connection error", MODULE);
+            }
+        }
+
+        private static void reply(Writer out, String reply) throws IOException {
+            out.write(reply + "\r\n");
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
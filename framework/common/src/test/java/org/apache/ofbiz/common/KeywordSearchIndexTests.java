@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeywordSearchIndexTests {
+    private KeywordSearchIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        index = new KeywordSearchIndex(1.2, 0.75);
+        index.update("CNT1", keywords("apple", 3L, "banana", 1L, "cherry", 1L));
+        index.update("CNT2", keywords("apple", 1L, "banana", 1L, "pineapple", 1L));
+        index.update("CNT3", keywords("banana", 1L, "bandana", 2L));
+    }
+
+    private static Map<String, Long> keywords(Object... keywordWeights) {
+        Map<String, Long> keywords = new HashMap<>();
+        for (int i = 0; i < keywordWeights.length; i += 2) {
+            keywords.put((String) keywordWeights[i], (Long) keywordWeights[i + 1]);
+        }
+        return keywords;
+    }
+
+    private static List<Set<String>> groups(String... groups) {
+        List<Set<String>> keywordGroups = new ArrayList<>();
+        for (String group : groups) {
+            keywordGroups.add(new HashSet<>(Arrays.asList(group.split(","))));
+        }
+        return keywordGroups;
+    }
+
+    private List<String> search(String... groups) {
+        return new ArrayList<>(index.search(groups(groups), 100).keySet());
+    }
+
+    @Test
+    public void intersectGroups() {
+        assertEquals(Arrays.asList("CNT1", "CNT2"), search("apple", "banana"));
+        assertEquals(Arrays.asList("CNT1"), search("apple", "cherry"));
+        assertTrue(search("apple", "bandana").isEmpty());
+        assertTrue(search("apple", "unknown").isEmpty());
+    }
+
+    @Test
+    public void unionGroupAlternatives() {
+        assertEquals(new HashSet<>(Arrays.asList("CNT1", "CNT3")), new HashSet<>(search("cherry,bandana")));
+    }
+
+    @Test
+    public void matchPartialKeywords() {
+        assertEquals(new HashSet<>(Arrays.asList("CNT1", "CNT2", "CNT3")), new HashSet<>(search("ban%")));
+        assertEquals(new HashSet<>(Arrays.asList("CNT1", "CNT2")), new HashSet<>(search("%pple")));
+        assertEquals(Arrays.asList("CNT3"), search("%dan%"));
+        assertEquals(Arrays.asList("CNT3"), search("ban_ana"));
+        assertTrue(search("%xyz%").isEmpty());
+    }
+
+    @Test
+    public void rankByRelevancy() {
+        // the keyword weight counts as its frequency in the document
+        assertEquals(Arrays.asList("CNT1", "CNT2"), search("apple"));
+        // a rare keyword scores more than a common one
+        Map<String, Double> scores = index.search(groups("banana,bandana"), 100);
+        assertEquals("CNT3", scores.keySet().iterator().next());
+    }
+
+    @Test
+    public void updateKeywords() {
+        index.update("CNT1", keywords("cherry", 1L));
+        assertEquals(Arrays.asList("CNT2"), search("apple"));
+        assertEquals(Arrays.asList("CNT1"), search("cherry"));
+        index.update("CNT1", new HashMap<>());
+        assertTrue(search("cherry").isEmpty());
+    }
+
+    @Test
+    public void tooManyDocuments() {
+        assertNull(index.search(groups("banana"), 2));
+        assertEquals(3, index.search(groups("banana"), 3).size());
+    }
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.common.image;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImageTransformTests {
+    private File imageFile;
+
+    @Before
+    public void setUp() throws Exception {
+        BufferedImage image = new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, 2000, 1000);
+        g.dispose();
+        imageFile = File.createTempFile("ImageTransformTests", ".png");
+        ImageIO.write(image, "png", imageFile);
+    }
+
+    @After
+    public void tearDown() {
+        imageFile.delete();
+    }
+
+    @Test
+    public void scaleProgressivelyReachesTheTargetSize() {
+        BufferedImage image = new BufferedImage(1001, 333, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage scaled = ImageTransform.scaleProgressively(image, 100, 33, BufferedImage.TYPE_INT_RGB);
+        assertEquals(100, scaled.getWidth());
+        assertEquals(33, scaled.getHeight());
+        assertEquals(BufferedImage.TYPE_INT_RGB, scaled.getType());
+
+        BufferedImage enlarged = ImageTransform.scaleProgressively(image, 2000, 400, BufferedImage.TYPE_INT_ARGB);
+        assertEquals(2000, enlarged.getWidth());
+        assertEquals(400, enlarged.getHeight());
+    }
+
+    @Test
+    public void getBufferedImageSubsamplesForTheLargestSize() throws Exception {
+        Map<String, Map<String, String>> dimensionMap = UtilMisc.toMap(
+                "small", UtilMisc.toMap("height", "50", "width", "100"),
+                "medium", UtilMisc.toMap("height", "100", "width", "200"));
+        Map<String, Object> result = ImageTransform.getBufferedImage(imageFile.getPath(), dimensionMap, Locale.ENGLISH);
+        assertEquals("success", result.get("responseMessage"));
+        assertEquals(2000, result.get("originalWidth"));
+        assertEquals(1000, result.get("originalHeight"));
+        // the medium size is a tenth of the original image, which is read one pixel out of five
+        BufferedImage image = (BufferedImage) result.get("bufferedImage");
+        assertEquals(400, image.getWidth());
+        assertEquals(200, image.getHeight());
+
+        // the scaled images have the size they would have from the original image
+        Map<String, Object> scaled = ImageTransform.scaleImage(image, 1000, 2000, dimensionMap, "medium", Locale.ENGLISH);
+        assertEquals("success", scaled.get("responseMessage"));
+        assertEquals(200, ((BufferedImage) scaled.get("bufferedImage")).getWidth());
+        assertEquals(100, ((BufferedImage) scaled.get("bufferedImage")).getHeight());
+    }
+
+    @Test
+    public void getBufferedImageKeepsSmallImages() throws Exception {
+        Map<String, Map<String, String>> dimensionMap = UtilMisc.toMap("large", UtilMisc.toMap("height", "600", "width", "1200"));
+        Map<String, Object> result = ImageTransform.getBufferedImage(imageFile.getPath(), dimensionMap, Locale.ENGLISH);
+        assertEquals(2000, ((BufferedImage) result.get("bufferedImage")).getWidth());
+    }
+}
@@ -67,6 +67,38 @@ public class PrimaryKeyFinder extends Finder {
         selectFieldExpanderList = EntityFinderUtil.makeSelectFieldExpanderList(entityOneElement);
     }
 
+    /**
+     * Gets the accessor of the field receiving the value.
+     * @return the value name accessor
+     */
+    public FlexibleMapAccessor<Object> getValueNameAcsr() {
+        return valueNameAcsr;
+    }
+
+    /**
+     * Gets auto field map exdr.
+     * @return the auto field map exdr
+     */
+    public FlexibleStringExpander getAutoFieldMapExdr() {
+        return autoFieldMapExdr;
+    }
+
+    /**
+     * Gets the field map.
+     * @return the field map
+     */
+    public Map<FlexibleMapAccessor<Object>, Object> getFieldMap() {
+        return fieldMap;
+    }
+
+    /**
+     * Gets the select field expander list.
+     * @return the select field expander list
+     */
+    public List<FlexibleStringExpander> getSelectFieldExpanderList() {
+        return selectFieldExpanderList;
+    }
+
     @Override
     public void runFind(Map<String, Object> context, Delegator delegator) throws GeneralException {
         String entityName = this.getEntityNameExdr().expandString(context);
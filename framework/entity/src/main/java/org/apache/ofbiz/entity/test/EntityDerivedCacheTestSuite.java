@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.testtools.EntityTestCase;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityDerivedCache;
+
+public class EntityDerivedCacheTestSuite extends EntityTestCase {
+
+    private final EntityDerivedCache<String> cache = new EntityDerivedCache<>("entity.test.derived", "test values");
+    private final AtomicInteger loads = new AtomicInteger();
+
+    public EntityDerivedCacheTestSuite(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        cache.clear(getDelegator());
+        loads.set(0);
+    }
+
+    private String get() throws GenericEntityException {
+        return cache.get(getDelegator(), "value", () -> "value " + loads.incrementAndGet());
+    }
+
+    /**
+     * Test a value is loaded once.
+     */
+    public void testLoadOnce() throws Exception {
+        assertEquals("First load", "value 1", get());
+        assertEquals("Cached value", "value 1", get());
+    }
+
+    /**
+     * Test the values are dropped right away without transaction.
+     */
+    public void testClearWithoutTransaction() throws Exception {
+        get();
+        cache.clear(getDelegator());
+        assertEquals("Value loaded again", "value 2", get());
+    }
+
+    /**
+     * Test the values are dropped once the transaction is committed, and not shared before.
+     */
+    public void testClearAfterCommit() throws Exception {
+        get();
+        boolean beganTransaction = TransactionUtil.begin();
+        try {
+            cache.clear(getDelegator());
+            assertEquals("Value loaded in the changing transaction", "value 2", get());
+            assertEquals("Value loaded again in the changing transaction", "value 3", get());
+            assertEquals("Value kept for the other transactions", "value 1", TransactionUtil.doNewTransaction(this::get,
+                    "Test other transaction", 0, true));
+        } finally {
+            TransactionUtil.commit(beganTransaction);
+        }
+        assertEquals("Value loaded again after the commit", "value 4", get());
+        assertEquals("Value cached after the commit", "value 4", get());
+    }
+
+    /**
+     * Test the values are dropped once the transaction is rolled back, they may include its changes.
+     */
+    public void testClearAfterRollback() throws Exception {
+        get();
+        boolean beganTransaction = TransactionUtil.begin();
+        try {
+            cache.clear(getDelegator());
+            assertEquals("Value loaded in the changing transaction", "value 2", get());
+        } finally {
+            TransactionUtil.rollback(beganTransaction, "Test rollback", null);
+        }
+        assertEquals("Value loaded again after the rollback", "value 3", get());
+    }
+
+    /**
+     * Test a value loaded while the records are changed is not kept.
+     */
+    public void testChangeWhileLoading() throws Exception {
+        assertEquals("Value loaded during a change", "value 1", cache.get(getDelegator(), "value", () -> {
+            cache.clear(getDelegator());
+            return "value " + loads.incrementAndGet();
+        }));
+        assertEquals("Value loaded again", "value 2", get());
+    }
+}
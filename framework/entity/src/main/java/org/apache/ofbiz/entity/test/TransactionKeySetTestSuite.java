@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ofbiz.entity.testtools.EntityTestCase;
+import org.apache.ofbiz.entity.transaction.TransactionKeySet;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+
+public class TransactionKeySetTestSuite extends EntityTestCase {
+
+    private final List<String> completed = new ArrayList<>();
+    private final TransactionKeySet<String> keys = new TransactionKeySet<>("test the keys",
+            (key, committed) -> completed.add(key + (committed ? " committed" : " rolled back")));
+
+    public TransactionKeySetTestSuite(String name) {
+        super(name);
+    }
+
+    /**
+     * Test a key added without transaction is completed right away.
+     */
+    public void testWithoutTransaction() throws Exception {
+        assertTrue("Key added", keys.add("A"));
+        assertTrue("Key added again", keys.add("A"));
+        assertFalse("Key not kept", keys.contains("A"));
+        assertEquals("Keys completed", List.of("A committed", "A committed"), completed);
+    }
+
+    /**
+     * Test the keys are completed once per transaction after the commit.
+     */
+    public void testCompletedAfterCommit() throws Exception {
+        boolean beganTransaction = TransactionUtil.begin();
+        try {
+            assertTrue("First key added", keys.add("A"));
+            assertTrue("Second key added", keys.add("B"));
+            assertFalse("First key added once", keys.add("A"));
+            assertTrue("Key of the transaction", keys.contains("A"));
+            assertFalse("Key of no transaction", keys.contains("C"));
+            assertTrue("Keys completed after the transaction", completed.isEmpty());
+        } finally {
+            TransactionUtil.commit(beganTransaction);
+        }
+        assertEquals("Keys completed", List.of("A committed", "B committed"), completed);
+        assertFalse("Keys dropped with the transaction", keys.contains("A"));
+    }
+
+    /**
+     * Test the keys are completed after a rollback.
+     */
+    public void testCompletedAfterRollback() throws Exception {
+        boolean beganTransaction = TransactionUtil.begin();
+        try {
+            keys.add("A");
+        } finally {
+            TransactionUtil.rollback(beganTransaction, "Test rollback", null);
+        }
+        assertEquals("Key completed", List.of("A rolled back"), completed);
+    }
+
+    /**
+     * Test the keys of a suspended transaction are kept apart from the keys of the new one.
+     */
+    public void testSuspendedTransaction() throws Exception {
+        boolean beganTransaction = TransactionUtil.begin();
+        try {
+            keys.add("A");
+            TransactionUtil.doNewTransaction(() -> {
+                assertFalse("Key of the suspended transaction", keys.contains("A"));
+                assertTrue("Key added to the new transaction", keys.add("A"));
+                return null;
+            }, "Test new transaction", 0, true);
+            assertEquals("Key of the new transaction completed", List.of("A committed"), completed);
+            assertTrue("Key of the resumed transaction", keys.contains("A"));
+        } finally {
+            TransactionUtil.commit(beganTransaction);
+        }
+        assertEquals("Keys completed", List.of("A committed", "A committed"), completed);
+    }
+}
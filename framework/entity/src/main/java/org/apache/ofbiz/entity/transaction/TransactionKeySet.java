@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.IntConsumer;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+
+import org.apache.ofbiz.base.util.Debug;
+
+/**
+ * Keys added by the running transactions, like the ids of the records changed by each transaction, kept until the
+ * transaction is completed.
+ * <p>A single {@link Synchronization} is registered per transaction, which calls the completion of each key once the
+ * transaction is completed, whatever the number of times the key was added. A key added without a transaction is
+ * completed right away, as committed.</p>
+ * @param <K> the type of the keys
+ */
+public final class TransactionKeySet<K> {
+
+    private static final String MODULE = TransactionKeySet.class.getName();
+
+    private final Map<Transaction, Set<K>> keysByTransaction = new WeakHashMap<>();
+    /** Number of transactions having keys, read without lock to skip the transaction lookups when there are none */
+    private volatile int transactionCount = 0;
+    private final String description;
+    private final Completion<K> completion;
+
+    /**
+     * Creates a set of keys
+     * @param description the description of what is done for the keys, used in the log messages
+     * @param completion called for each key once its transaction is completed, can be <code>null</code>
+     */
+    public TransactionKeySet(String description, Completion<K> completion) {
+        this.description = description;
+        this.completion = completion;
+    }
+
+    /**
+     * Runs an action once the current transaction is completed, whatever its status, or right now if there is no transaction.
+     * @param action the action
+     * @param description the description of the action, used in the log messages
+     */
+    public static void afterCompletion(Runnable action, String description) {
+        if (!registerAfterCompletion(status -> action.run(), description)) {
+            action.run();
+        }
+    }
+
+    /**
+     * Adds a key to the current transaction.
+     * @param key the key
+     * @return <code>true</code> if the key was not added yet to the current transaction, always <code>true</code>
+     * without a transaction
+     */
+    public boolean add(K key) {
+        Transaction transaction = getTransaction(key);
+        if (transaction == null) {
+            complete(Collections.singletonList(key), true);
+            return true;
+        }
+        synchronized (keysByTransaction) {
+            Set<K> keys = keysByTransaction.get(transaction);
+            if (keys != null) {
+                return keys.add(key);
+            }
+            keys = new LinkedHashSet<>();
+            keys.add(key);
+            keysByTransaction.put(transaction, keys);
+            transactionCount = keysByTransaction.size();
+        }
+        boolean registered = registerAfterCompletion(status -> {
+            List<K> completedKeys;
+            synchronized (keysByTransaction) {
+                completedKeys = new ArrayList<>(keysByTransaction.remove(transaction));
+                transactionCount = keysByTransaction.size();
+            }
+            complete(completedKeys, status == Status.STATUS_COMMITTED);
+        }, description + " " + key);
+        if (!registered) {
+            synchronized (keysByTransaction) {
+                keysByTransaction.remove(transaction);
+                transactionCount = keysByTransaction.size();
+            }
+            complete(Collections.singletonList(key), true);
+        }
+        return true;
+    }
+
+    /**
+     * Is a key added to the current transaction
+     * @param key the key
+     * @return <code>true</code> if the key was added to the current transaction, <code>false</code> without a transaction
+     */
+    public boolean contains(K key) {
+        if (transactionCount == 0) {
+            return false;
+        }
+        Transaction transaction = getTransaction(key);
+        if (transaction == null) {
+            return false;
+        }
+        synchronized (keysByTransaction) {
+            Set<K> keys = keysByTransaction.get(transaction);
+            return keys != null && keys.contains(key);
+        }
+    }
+
+    private Transaction getTransaction(K key) {
+        try {
+            if (TransactionUtil.isTransactionInPlace()) {
+                return TransactionFactoryLoader.getInstance().getTransactionManager().getTransaction();
+            }
+        } catch (GenericTransactionException | SystemException e) {
+            Debug.logWarning(e, "Unable to read the current transaction to " + description + " " + key, MODULE);
+        }
+        return null;
+    }
+
+    // returns false when there is no transaction or when the synchronization cannot be registered
+    private static boolean registerAfterCompletion(IntConsumer action, String description) {
+        try {
+            if (TransactionUtil.isTransactionInPlace()) {
+                TransactionUtil.registerSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+                    @Override
+                    public void afterCompletion(int status) {
+                        action.accept(status);
+                    }
+                });
+                return true;
+            }
+        } catch (GenericTransactionException e) {
+            Debug.logWarning(e, "Unable to wait for the end of the transaction to " + description, MODULE);
+        }
+        return false;
+    }
+
+    private void complete(List<K> keys, boolean committed) {
+        if (completion == null) {
+            return;
+        }
+        for (K key : keys) {
+            try {
+                completion.completed(key, committed);
+            } catch (RuntimeException e) {
+                // complete the other keys
+                Debug.logError(e, "Error after the end of the transaction to " + description + " " + key, MODULE);
+            }
+        }
+    }
+
+    /**
+     * Called for each key once its transaction is completed.
+     * @param <K> the type of the keys
+     */
+    @FunctionalInterface
+    public interface Completion<K> {
+        /**
+         * Completes a key
+         * @param key the key
+         * @param committed <code>true</code> if the transaction was committed, or if there was no transaction
+         */
+        void completed(K key, boolean committed);
+    }
+}
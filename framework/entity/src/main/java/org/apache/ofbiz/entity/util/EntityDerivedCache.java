@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.transaction.TransactionKeySet;
+
+/**
+ * A cache of values computed from entity records, like indexes or immutable copies of records, dropped as a whole for
+ * a delegator when these records are changed, typically by an entity ECA calling {@link #clear(Delegator)}.
+ * <p>The values are dropped once the transaction changing the records is completed, whatever its status. Until then,
+ * the values used in this transaction are loaded on each call and not cached, as they include its uncommitted changes,
+ * while the other transactions keep using the cached values. A value loaded while the records are changed is not kept,
+ * it is loaded again on the next call.</p>
+ * @param <V> the type of the cached values
+ */
+public final class EntityDerivedCache<V> {
+
+    private static final String MODULE = EntityDerivedCache.class.getName();
+
+    private final UtilCache<String, V> cache;
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    /** Delegators whose values are dropped once the running transactions are completed */
+    private final TransactionKeySet<String> pendingDrops;
+
+    /**
+     * Creates a cache
+     * @param cacheName the name of the UtilCache holding the values, configured in cache.properties
+     * @param description the description of the values, used in the log messages
+     */
+    public EntityDerivedCache(String cacheName, String description) {
+        this.cache = UtilCache.createUtilCache(cacheName, 0, 0);
+        this.pendingDrops = new TransactionKeySet<>("clear the " + description + " of delegator", (delegatorName, committed) -> drop(delegatorName));
+    }
+
+    /**
+     * Gets a value, loading it if needed.
+     * @param delegator the delegator the value is computed from
+     * @param name the name of the value, unique for the delegator
+     * @param loader computes the value if it is not in the cache
+     * @return the value
+     * @throws GenericEntityException if the value cannot be loaded
+     */
+    public V get(Delegator delegator, String name, Loader<V> loader) throws GenericEntityException {
+        String delegatorName = delegator.getDelegatorName();
+        if (pendingDrops.contains(delegatorName)) {
+            // the current transaction changed the records, its values are not shared
+            return loader.load();
+        }
+        String key = delegatorName + "::" + name;
+        V value = cache.get(key);
+        if (value == null) {
+            AtomicLong version = versions.computeIfAbsent(delegatorName, k -> new AtomicLong());
+            long loadedVersion = version.get();
+            value = loader.load();
+            cache.put(key, value);
+            if (version.get() != loadedVersion) {
+                // the records were changed while being read, read them again on the next call
+                cache.remove(key);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drops the values of a delegator once the current transaction is completed, or right now if there is no transaction.
+     * @param delegator the delegator
+     */
+    public void clear(Delegator delegator) {
+        pendingDrops.add(delegator.getDelegatorName());
+    }
+
+    private void drop(String delegatorName) {
+        versions.computeIfAbsent(delegatorName, k -> new AtomicLong()).incrementAndGet();
+        String prefix = delegatorName + "::";
+        for (String key : cache.getCacheLineKeys()) {
+            if (key.startsWith(prefix)) {
+                cache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Runs an action once the current transaction is completed, whatever its status, or right now if there is no transaction.
+     * @param action the action, typically dropping cached values
+     * @param description the description of the action, used in the log messages
+     */
+    public static void afterTransaction(Runnable action, String description) {
+        TransactionKeySet.afterCompletion(action, description);
+    }
+
+    /**
+     * Computes a cached value from the entity records.
+     * @param <V> the type of the value
+     */
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws GenericEntityException;
+    }
+}
@@ -115,6 +115,7 @@ public final class SimpleMethod extends MiniLangElement {
     private final boolean loginRequired;
     private final String methodName;
     private final List<MethodOperation> methodOperations;
+    private final SimpleMethodCompiler.CompiledOperations compiledOperations;
     private final String serviceErrorMessageListName;
     private final String serviceErrorMessageMapName;
     private final String serviceErrorMessageName;
@@ -163,6 +164,15 @@ public final class SimpleMethod extends MiniLangElement {
         loginRequired = !"false".equals(simpleMethodElement.getAttribute("login-required"));
         useTransaction = !"false".equals(simpleMethodElement.getAttribute("use-transaction"));
         methodOperations = Collections.unmodifiableList(readOperations(simpleMethodElement, this));
+        SimpleMethodCompiler.CompiledOperations compiledOperations = null;
+        if (SimpleMethodCompiler.isCompiledLocation(fromLocation)) {
+            try {
+                compiledOperations = SimpleMethodCompiler.compile(this);
+            } catch (MiniLangException e) {
+                Debug.logWarning(e, "The simple-method " + getLocationAndName() + " will be interpreted", MODULE);
+            }
+        }
+        this.compiledOperations = compiledOperations;
     }
 
     // This method is needed only during the v1 to v2 transition
@@ -494,7 +504,11 @@ public final class SimpleMethod extends MiniLangElement {
             if (methodContext.isTraceOn()) {
                 outputTraceMessage(methodContext, "Begin running sub-elements.");
             }
-            finished = runSubOps(methodOperations, methodContext);
+            if (compiledOperations != null) {
+                finished = compiledOperations.exec(methodContext);
+            } else {
+                finished = runSubOps(methodOperations, methodContext);
+            }
         } catch (Throwable t) {
             // make SURE nothing gets thrown through
             String errMsg = UtilProperties.getMessage(ERR_RESOURCE, "simpleMethod.error_running", locale) + ": " + t.getMessage();
@@ -718,6 +732,14 @@ public final class SimpleMethod extends MiniLangElement {
         return methodName;
     }
 
+    /**
+     * Returns <code>true</code> if the operations of this method are run from a compiled class.
+     * @see SimpleMethodCompiler
+     */
+    public boolean isCompiled() {
+        return this.compiledOperations != null;
+    }
+
     public List<MethodOperation> getMethodOperations() {
         return methodOperations;
     }
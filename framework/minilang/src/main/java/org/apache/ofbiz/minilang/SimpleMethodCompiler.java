@@ -0,0 +1,445 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.minilang;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.apache.ofbiz.base.location.FlexibleLocation;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GroovyUtil;
+import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.collections.FlexibleMapAccessor;
+import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.minilang.method.MethodContext;
+import org.apache.ofbiz.minilang.method.MethodOperation;
+
+/**
+ * Compiles the operations of a <code>SimpleMethod</code> to a Groovy class compiled with <code>@CompileStatic</code>.
+ * <p>The operations implementing {@link MethodOperation#compile(SimpleMethodCompiler)} write the Groovy code doing what
+ * their <code>exec</code> method does, the other operations are kept and run by the interpreter from the compiled code.
+ * The fields are kept in the environment <code>Map</code> as the expressions and the interpreted operations use them by
+ * name, the fields with a plain name are read and written directly in the <code>Map</code> instead of through UEL.</p>
+ * <p>The files whose methods are compiled are listed in the <code>compiler.locations</code> property of
+ * <code>minilang.properties</code>.</p>
+ */
+public final class SimpleMethodCompiler {
+
+    private static final String MODULE = SimpleMethodCompiler.class.getName();
+    private static final Pattern PLAIN_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final Set<String> EL_KEYWORDS = UtilMisc.toSet("and", "or", "not", "eq", "ne", "lt", "gt", "le", "ge", "true",
+            "false", "null", "empty", "div", "mod", "instanceof");
+    private static final AtomicInteger CLASS_COUNT = new AtomicInteger();
+
+    /** Returned by {@link #next(Iterator)} when the iterator has no more entries. */
+    public static final Object END = new Object();
+
+    private final SimpleMethod simpleMethod;
+    private final List<Object> constants = new ArrayList<>();
+    private final StringBuilder body = new StringBuilder();
+    private int indent = 2;
+    private int localCount = 0;
+    private int compiledCount = 0;
+    private int interpretedCount = 0;
+
+    private SimpleMethodCompiler(SimpleMethod simpleMethod) {
+        this.simpleMethod = simpleMethod;
+    }
+
+    /**
+     * Returns <code>true</code> if the methods read from <code>location</code> must be compiled.
+     * @param location the location of the simple-methods file, as given to the <code>SimpleMethod</code>
+     * @return <code>true</code> if the methods must be compiled
+     */
+    public static boolean isCompiledLocation(String location) {
+        String locations = UtilProperties.getPropertyValue("minilang", "compiler.locations");
+        if (locations.isEmpty() || location == null) {
+            return false;
+        }
+        for (String compiledLocation : StringUtil.split(locations, ",")) {
+            compiledLocation = compiledLocation.trim();
+            if ("*".equals(compiledLocation) || location.equals(compiledLocation)) {
+                return true;
+            }
+            if (compiledLocation.contains("://")) {
+                try {
+                    URL url = FlexibleLocation.resolveLocation(compiledLocation);
+                    if (url != null && location.equals(url.toString())) {
+                        return true;
+                    }
+                } catch (MalformedURLException e) {
+                    Debug.logWarning("Invalid location in the compiler.locations property: " + compiledLocation, MODULE);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compiles the operations of <code>simpleMethod</code>.
+     * @param simpleMethod the method to compile
+     * @return the compiled operations
+     * @throws MiniLangException if the generated class cannot be compiled
+     */
+    public static CompiledOperations compile(SimpleMethod simpleMethod) throws MiniLangException {
+        SimpleMethodCompiler compiler = new SimpleMethodCompiler(simpleMethod);
+        compiler.ops(simpleMethod.getMethodOperations());
+        String className = "CompiledSimpleMethod" + CLASS_COUNT.incrementAndGet() + "_"
+                + simpleMethod.getMethodName().replaceAll("[^A-Za-z0-9_]", "_");
+        String source = compiler.getSource(className);
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("Compiled simple-method " + simpleMethod.getLocationAndName() + ":\n" + source, MODULE);
+        }
+        try {
+            Class<?> compiledClass = GroovyUtil.parseClass(source);
+            CompiledOperations compiledOperations = (CompiledOperations) compiledClass.getConstructor(Object[].class)
+                    .newInstance((Object) compiler.constants.toArray());
+            if (Debug.infoOn()) {
+                Debug.logInfo("Compiled simple-method " + simpleMethod.getLocationAndName() + ", " + compiler.compiledCount
+                        + " operations compiled and " + compiler.interpretedCount + " interpreted", MODULE);
+            }
+            return compiledOperations;
+        } catch (Exception e) {
+            throw new MiniLangException("Could not compile simple-method " + simpleMethod.getLocationAndName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the code running <code>methodOperations</code>, the compiled code returns <code>false</code> as soon as an
+     * operation returns <code>false</code>.
+     * @param methodOperations the operations, can be <code>null</code>
+     * @throws MiniLangException
+     */
+    public void ops(List<MethodOperation> methodOperations) throws MiniLangException {
+        if (methodOperations == null) {
+            return;
+        }
+        for (MethodOperation methodOperation : methodOperations) {
+            int bodyLength = body.length();
+            int constantCount = constants.size();
+            int currentIndent = indent;
+            int currentCompiledCount = compiledCount;
+            int currentInterpretedCount = interpretedCount;
+            if (methodOperation.compile(this)) {
+                compiledCount++;
+            } else {
+                // drop what the operation may have written before finding it could not be compiled
+                body.setLength(bodyLength);
+                constants.subList(constantCount, constants.size()).clear();
+                indent = currentIndent;
+                compiledCount = currentCompiledCount;
+                interpretedCount = currentInterpretedCount;
+                interpret(methodOperation);
+            }
+        }
+    }
+
+    /**
+     * Writes the code running <code>methodOperation</code> with the interpreter.
+     * @param methodOperation the operation
+     */
+    public void interpret(MethodOperation methodOperation) {
+        interpretedCount++;
+        open("if (!" + constant(methodOperation, MethodOperation.class) + ".exec(ctx))");
+        line("return false");
+        close();
+    }
+
+    /**
+     * Writes an <code>if</code> running <code>thenOperations</code> when <code>condition</code> is true, and
+     * <code>elseOperations</code> otherwise.
+     * @param condition the Groovy condition
+     * @param thenOperations the operations run when the condition is true, can be <code>null</code>
+     * @param elseOperations the operations run when the condition is false, can be <code>null</code>
+     * @throws MiniLangException
+     */
+    public void branches(String condition, List<MethodOperation> thenOperations, List<MethodOperation> elseOperations)
+            throws MiniLangException {
+        open("if (" + condition + ")");
+        ops(thenOperations);
+        if (elseOperations != null) {
+            reopen("} else");
+            ops(elseOperations);
+        }
+        close();
+    }
+
+    /**
+     * Returns an expression reading <code>fma</code> from the environment.
+     * @param fma the accessor
+     * @return the Groovy expression
+     */
+    public String get(FlexibleMapAccessor<?> fma) {
+        if (fma.isEmpty()) {
+            return "null";
+        }
+        if (isPlainName(fma)) {
+            return "env.get(" + literal(fma.getOriginalName()) + ")";
+        }
+        return constant(fma, FlexibleMapAccessor.class) + ".get(env)";
+    }
+
+    /**
+     * Writes the statement putting <code>value</code> in the environment with <code>fma</code>.
+     * @param fma the accessor
+     * @param value the Groovy expression of the value
+     */
+    public void put(FlexibleMapAccessor<?> fma, String value) {
+        put(fma, "env", value);
+    }
+
+    /**
+     * Writes the statement putting <code>value</code> in <code>map</code> with <code>fma</code>.
+     * @param fma the accessor
+     * @param map the Groovy expression of the map
+     * @param value the Groovy expression of the value
+     */
+    public void put(FlexibleMapAccessor<?> fma, String map, String value) {
+        if (fma.isEmpty()) {
+            return;
+        }
+        if (isPlainName(fma)) {
+            line(map + ".put(" + literal(fma.getOriginalName()) + ", " + value + ")");
+        } else {
+            line(constant(fma, FlexibleMapAccessor.class) + ".put(" + map + ", " + value + ")");
+        }
+    }
+
+    /**
+     * Returns an expression expanding <code>fse</code> with the environment, as {@link FlexibleStringExpander#expand(java.util.Map)}.
+     * @param fse the expander
+     * @return the Groovy expression
+     */
+    public String expand(FlexibleStringExpander fse) {
+        if (!FlexibleStringExpander.containsExpression(fse)) {
+            return fse.isEmpty() ? "null" : literal(fse.getOriginal());
+        }
+        return constant(fse, FlexibleStringExpander.class) + ".expand(env)";
+    }
+
+    /**
+     * Returns an expression expanding <code>fse</code> to a <code>String</code>, as
+     * {@link FlexibleStringExpander#expandString(java.util.Map)}.
+     * @param fse the expander
+     * @return the Groovy expression
+     */
+    public String expandString(FlexibleStringExpander fse) {
+        if (!FlexibleStringExpander.containsExpression(fse)) {
+            return literal(fse.getOriginal());
+        }
+        return constant(fse, FlexibleStringExpander.class) + ".expandString(env)";
+    }
+
+    /**
+     * Returns an expression giving <code>value</code> to the compiled code.
+     * @param value the value
+     * @param type the type of the expression
+     * @return the Groovy expression
+     */
+    public String constant(Object value, Class<?> type) {
+        constants.add(value);
+        return "((" + type.getCanonicalName() + ") c[" + (constants.size() - 1) + "])";
+    }
+
+    /**
+     * Returns the expression of the method being compiled.
+     * @return the Groovy expression
+     */
+    public String simpleMethod() {
+        return constant(simpleMethod, SimpleMethod.class);
+    }
+
+    /**
+     * Returns a Groovy string literal.
+     * @param value the string
+     * @return the Groovy literal
+     */
+    public static String literal(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('\'');
+        for (char ch : value.toCharArray()) {
+            switch (ch) {
+            case '\'':
+                sb.append("\\'");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                sb.append(ch);
+            }
+        }
+        return sb.append('\'').toString();
+    }
+
+    /**
+     * Returns a new local variable name.
+     * @return the variable name
+     */
+    public String local() {
+        return "v" + localCount++;
+    }
+
+    /**
+     * Writes a statement.
+     * @param code the Groovy statement
+     */
+    public void line(String code) {
+        for (int i = 0; i < indent; i++) {
+            body.append("    ");
+        }
+        body.append(code).append('\n');
+    }
+
+    /**
+     * Writes the start of a block, <code>code</code> is followed by the opening brace.
+     * @param code the Groovy code before the block
+     */
+    public void open(String code) {
+        line(code + " {");
+        indent++;
+    }
+
+    /**
+     * Closes the current block and opens the next one, as <code>} else {</code>.
+     * @param code the Groovy code between the blocks, starting with the closing brace
+     */
+    public void reopen(String code) {
+        indent--;
+        open(code);
+    }
+
+    /**
+     * Writes the end of the current block.
+     */
+    public void close() {
+        indent--;
+        line("}");
+    }
+
+    private static boolean isPlainName(FlexibleMapAccessor<?> fma) {
+        String name = fma.getOriginalName();
+        return PLAIN_NAME.matcher(name).matches() && !EL_KEYWORDS.contains(name);
+    }
+
+    private String getSource(String className) {
+        return "import groovy.transform.CompileStatic\n"
+                + "import org.apache.ofbiz.base.util.Debug\n"
+                + "import org.apache.ofbiz.base.util.ObjectType\n"
+                + "import org.apache.ofbiz.minilang.MiniLangException\n"
+                + "import org.apache.ofbiz.minilang.MiniLangUtil\n"
+                + "import org.apache.ofbiz.minilang.SimpleMethodCompiler\n"
+                + "import org.apache.ofbiz.minilang.method.MethodContext\n\n"
+                + "@CompileStatic\n"
+                + "final class " + className + " implements SimpleMethodCompiler.CompiledOperations {\n\n"
+                + "    private final Object[] c\n\n"
+                + "    " + className + "(Object[] c) {\n"
+                + "        this.c = c\n"
+                + "    }\n\n"
+                + "    @Override\n"
+                + "    boolean exec(MethodContext ctx) throws MiniLangException {\n"
+                + "        Map<String, Object> env = ctx.getEnvMap()\n"
+                + body
+                + "        return true\n"
+                + "    }\n"
+                + "}\n";
+    }
+
+    /**
+     * Returns an iterator on the entries of an <code>&lt;iterate&gt;</code> list, or <code>null</code> if there is
+     * nothing to iterate.
+     * @param list the list
+     * @return the iterator
+     */
+    public static Iterator<?> iterator(Object list) {
+        if (list instanceof EntityListIterator) {
+            return (EntityListIterator) list;
+        }
+        if (list instanceof Collection<?>) {
+            Collection<?> collection = (Collection<?>) list;
+            return collection.isEmpty() ? null : collection.iterator();
+        }
+        if (list instanceof Iterator<?>) {
+            Iterator<?> iterator = (Iterator<?>) list;
+            return iterator.hasNext() ? iterator : null;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the next entry of an <code>&lt;iterate&gt;</code> list, or {@link #END}.
+     * @param iterator the iterator returned by {@link #iterator(Object)}
+     * @return the next entry
+     */
+    public static Object next(Iterator<?> iterator) {
+        if (iterator instanceof EntityListIterator) {
+            GenericValue value = ((EntityListIterator) iterator).next();
+            return value != null ? value : END;
+        }
+        return iterator.hasNext() ? iterator.next() : END;
+    }
+
+    /**
+     * Closes the iterator of an <code>&lt;iterate&gt;</code> list when it is an <code>EntityListIterator</code>.
+     * @param iterator the iterator returned by {@link #iterator(Object)}
+     * @param methodOperation the iterating operation
+     * @throws MiniLangRuntimeException if the iterator cannot be closed
+     */
+    public static void close(Iterator<?> iterator, MethodOperation methodOperation) throws MiniLangRuntimeException {
+        if (iterator instanceof EntityListIterator) {
+            try {
+                ((EntityListIterator) iterator).close();
+            } catch (GenericEntityException e) {
+                throw new MiniLangRuntimeException("Error with entityListIterator: " + e.getMessage(), methodOperation);
+            }
+        }
+    }
+
+    /**
+     * The compiled operations of a simple method.
+     */
+    public interface CompiledOperations {
+
+        /**
+         * Runs the operations.
+         * Returns <code>true</code> if the method should continue, or <code>false</code> if it should stop.
+         * @throws MiniLangException */
+        boolean exec(MethodContext methodContext) throws MiniLangException;
+    }
+}
@@ -27,6 +27,7 @@ import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
 import org.apache.ofbiz.minilang.MiniLangElement;
 import org.apache.ofbiz.minilang.MiniLangException;
 import org.apache.ofbiz.minilang.SimpleMethod;
+import org.apache.ofbiz.minilang.SimpleMethodCompiler;
 import org.w3c.dom.Element;
 
 /**
@@ -46,6 +47,14 @@ public abstract class MethodOperation extends MiniLangElement {
      * @throws MiniLangException */
     public abstract boolean exec(MethodContext methodContext) throws MiniLangException;
 
+    /**
+     * Writes the code doing what {@link #exec(MethodContext)} does to <code>compiler</code>.
+     * Returns <code>false</code> if the operation is not compiled, it is then run by the interpreter.
+     * @throws MiniLangException */
+    public boolean compile(SimpleMethodCompiler compiler) throws MiniLangException {
+        return false;
+    }
+
     /** Create a string representation of the operation, using the current context.*/
     @Deprecated
     public String expandedString(MethodContext methodContext) {
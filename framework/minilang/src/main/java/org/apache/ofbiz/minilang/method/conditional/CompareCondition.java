@@ -32,6 +32,7 @@ import org.apache.ofbiz.minilang.MiniLangRuntimeException;
 import org.apache.ofbiz.minilang.MiniLangUtil;
 import org.apache.ofbiz.minilang.MiniLangValidate;
 import org.apache.ofbiz.minilang.SimpleMethod;
+import org.apache.ofbiz.minilang.SimpleMethodCompiler;
 import org.apache.ofbiz.minilang.artifact.ArtifactInfoContext;
 import org.apache.ofbiz.minilang.method.MethodContext;
 import org.apache.ofbiz.minilang.method.MethodOperation;
@@ -136,6 +137,12 @@ public final class CompareCondition extends MethodOperation implements Condition
         return true;
     }
 
+    @Override
+    public boolean compile(SimpleMethodCompiler compiler) throws MiniLangException {
+        compiler.branches(compiler.constant(this, Conditional.class) + ".checkCondition(ctx)", subOps, elseSubOps);
+        return true;
+    }
+
     @Override
     public void gatherArtifactInfo(ArtifactInfoContext aic) {
         if (this.subOps != null) {
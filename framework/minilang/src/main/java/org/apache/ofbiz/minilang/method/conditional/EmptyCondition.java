@@ -27,6 +27,7 @@ import org.apache.ofbiz.base.util.collections.FlexibleMapAccessor;
 import org.apache.ofbiz.minilang.MiniLangException;
 import org.apache.ofbiz.minilang.MiniLangValidate;
 import org.apache.ofbiz.minilang.SimpleMethod;
+import org.apache.ofbiz.minilang.SimpleMethodCompiler;
 import org.apache.ofbiz.minilang.artifact.ArtifactInfoContext;
 import org.apache.ofbiz.minilang.method.MethodContext;
 import org.apache.ofbiz.minilang.method.MethodOperation;
@@ -86,6 +87,12 @@ public final class EmptyCondition extends MethodOperation implements Conditional
         return true;
     }
 
+    @Override
+    public boolean compile(SimpleMethodCompiler compiler) throws MiniLangException {
+        compiler.branches("ObjectType.isEmpty(" + compiler.get(fieldFma) + ")", subOps, elseSubOps);
+        return true;
+    }
+
     @Override
     public void gatherArtifactInfo(ArtifactInfoContext aic) {
         if (this.subOps != null) {
@@ -26,6 +26,7 @@ import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.minilang.MiniLangException;
 import org.apache.ofbiz.minilang.MiniLangValidate;
 import org.apache.ofbiz.minilang.SimpleMethod;
+import org.apache.ofbiz.minilang.SimpleMethodCompiler;
 import org.apache.ofbiz.minilang.artifact.ArtifactInfoContext;
 import org.apache.ofbiz.minilang.method.MethodContext;
 import org.apache.ofbiz.minilang.method.MethodOperation;
@@ -96,6 +97,24 @@ public final class MasterIf extends MethodOperation {
         }
     }
 
+    @Override
+    public boolean compile(SimpleMethodCompiler compiler) throws MiniLangException {
+        compiler.open("if (" + compiler.constant(condition, Conditional.class) + ".checkCondition(ctx))");
+        compiler.ops(thenSubOps);
+        if (elseIfs != null) {
+            for (ElseIf elseIf : elseIfs) {
+                compiler.reopen("} else if (" + compiler.constant(elseIf, ElseIf.class) + ".checkCondition(ctx))");
+                compiler.ops(elseIf.getThenSubOps());
+            }
+        }
+        if (elseSubOps != null) {
+            compiler.reopen("} else");
+            compiler.ops(elseSubOps);
+        }
+        compiler.close();
+        return true;
+    }
+
     @Override
     public void gatherArtifactInfo(ArtifactInfoContext aic) {
         for (MethodOperation method : this.thenSubOps) {
@@ -18,13 +18,20 @@
  *******************************************************************************/
 package org.apache.ofbiz.minilang.method.entityops;
 
+import java.util.List;
+import java.util.Map;
+
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
 import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.finder.PrimaryKeyFinder;
+import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.minilang.MiniLangException;
 import org.apache.ofbiz.minilang.MiniLangValidate;
 import org.apache.ofbiz.minilang.SimpleMethod;
+import org.apache.ofbiz.minilang.SimpleMethodCompiler;
 import org.apache.ofbiz.minilang.artifact.ArtifactInfoContext;
 import org.apache.ofbiz.minilang.method.MethodContext;
 import org.w3c.dom.Element;
@@ -64,6 +71,49 @@ public final class EntityOne extends EntityOperation {
         return true;
     }
 
+    @Override
+    public boolean compile(SimpleMethodCompiler compiler) throws MiniLangException {
+        FlexibleStringExpander entityNameFse = this.finder.getEntityNameExdr();
+        if (!usesContextDelegator() || FlexibleStringExpander.containsExpression(entityNameFse)
+                || FlexibleStringExpander.containsExpression(this.finder.getUseCacheStrExdr())
+                || FlexibleStringExpander.containsExpression(this.finder.getAutoFieldMapExdr())) {
+            return false;
+        }
+        String entityName = entityNameFse.getOriginal();
+        String delegator = compiler.local();
+        String modelEntity = compiler.local();
+        String valueOut = compiler.local();
+        String exception = compiler.local();
+        String errMsg = compiler.local();
+        compiler.line(Delegator.class.getName() + " " + delegator + " = ctx.getDelegator()");
+        compiler.line(ModelEntity.class.getName() + " " + modelEntity + " = " + delegator + ".getModelEntity("
+                + SimpleMethodCompiler.literal(entityName) + ")");
+        compiler.open("if (" + modelEntity + " == null)");
+        compiler.line("throw new IllegalArgumentException(" + SimpleMethodCompiler.literal("No entity definition found for entity name ["
+                + entityName + "]") + ")");
+        compiler.close();
+        compiler.open("try");
+        compiler.line(GenericValue.class.getName() + " " + valueOut + " = " + PrimaryKeyFinder.class.getName() + ".runFind(" + modelEntity
+                + ", env, " + delegator + ", " + "true".equals(this.finder.getUseCacheStrExdr().getOriginal()) + ", "
+                + !"false".equals(this.finder.getAutoFieldMapExdr().getOriginal()) + ", "
+                + compiler.constant(this.finder.getFieldMap(), Map.class) + ", "
+                + compiler.constant(this.finder.getSelectFieldExpanderList(), List.class) + ")");
+        if (this.finder.getValueNameAcsr().isEmpty()) {
+            compiler.open("if (" + valueOut + " != null)");
+            compiler.line("env.putAll(" + valueOut + ")");
+            compiler.close();
+        } else {
+            compiler.put(this.finder.getValueNameAcsr(), valueOut);
+        }
+        compiler.reopen("} catch (" + GeneralException.class.getName() + " " + exception + ")");
+        compiler.line("String " + errMsg + " = 'Exception thrown while performing entity find: ' + " + exception + ".getMessage()");
+        compiler.line("Debug.logWarning(" + exception + ", " + errMsg + ", " + SimpleMethodCompiler.literal(MODULE) + ")");
+        compiler.line(compiler.simpleMethod() + ".addErrorMessage(ctx, " + errMsg + ")");
+        compiler.line("return false");
+        compiler.close();
+        return true;
+    }
+
     @Override
     public void gatherArtifactInfo(ArtifactInfoContext aic) {
         aic.addEntityName(this.finder.getEntityName());
@@ -46,4 +46,11 @@ public abstract class EntityOperation extends MethodOperation {
         }
         return methodContext.getDelegator();
     }
+
+    /**
+     * Returns <code>true</code> if the operation uses the delegator of the method context.
+     */
+    protected final boolean usesContextDelegator() {
+        return delegatorNameFse.isEmpty();
+    }
 }
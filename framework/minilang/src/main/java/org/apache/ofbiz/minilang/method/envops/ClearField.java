@@ -22,6 +22,7 @@ import org.apache.ofbiz.base.util.collections.FlexibleMapAccessor;
 import org.apache.ofbiz.minilang.MiniLangException;
 import org.apache.ofbiz.minilang.MiniLangValidate;
 import org.apache.ofbiz.minilang.SimpleMethod;
+import org.apache.ofbiz.minilang.SimpleMethodCompiler;
 import org.apache.ofbiz.minilang.method.MethodContext;
 import org.apache.ofbiz.minilang.method.MethodOperation;
 import org.w3c.dom.Element;
@@ -51,6 +52,12 @@ public final class ClearField extends MethodOperation {
         return true;
     }
 
+    @Override
+    public boolean compile(SimpleMethodCompiler compiler) throws MiniLangException {
+        compiler.put(fieldFma, "null");
+        return true;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("<set ");
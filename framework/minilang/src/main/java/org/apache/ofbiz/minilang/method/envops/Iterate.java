@@ -33,6 +33,7 @@ import org.apache.ofbiz.minilang.MiniLangException;
 import org.apache.ofbiz.minilang.MiniLangRuntimeException;
 import org.apache.ofbiz.minilang.MiniLangValidate;
 import org.apache.ofbiz.minilang.SimpleMethod;
+import org.apache.ofbiz.minilang.SimpleMethodCompiler;
 import org.apache.ofbiz.minilang.artifact.ArtifactInfoContext;
 import org.apache.ofbiz.minilang.method.MethodContext;
 import org.apache.ofbiz.minilang.method.MethodOperation;
@@ -163,6 +164,37 @@ public final class Iterate extends MethodOperation {
         return true;
     }
 
+    @Override
+    public boolean compile(SimpleMethodCompiler compiler) throws MiniLangException {
+        if (listFma.isEmpty()) {
+            return true;
+        }
+        String oldEntryValue = compiler.local();
+        String iterator = compiler.local();
+        String entry = compiler.local();
+        compiler.line("Object " + oldEntryValue + " = " + compiler.get(entryFma));
+        compiler.line("Iterator<?> " + iterator + " = SimpleMethodCompiler.iterator(" + compiler.get(listFma) + ")");
+        compiler.open("if (" + iterator + " != null)");
+        compiler.open("try");
+        compiler.open("for (Object " + entry + " = SimpleMethodCompiler.next(" + iterator + "); " + entry + " !== SimpleMethodCompiler.END; "
+                + entry + " = SimpleMethodCompiler.next(" + iterator + "))");
+        compiler.put(entryFma, entry);
+        compiler.open("try");
+        compiler.ops(subOps);
+        compiler.reopen("} catch (" + BreakElementException.class.getCanonicalName() + " " + compiler.local() + ")");
+        compiler.line("break");
+        compiler.reopen("} catch (" + ContinueElementException.class.getCanonicalName() + " " + compiler.local() + ")");
+        compiler.line("continue");
+        compiler.close();
+        compiler.close();
+        compiler.reopen("} finally");
+        compiler.line("SimpleMethodCompiler.close(" + iterator + ", " + compiler.constant(this, MethodOperation.class) + ")");
+        compiler.close();
+        compiler.put(entryFma, oldEntryValue);
+        compiler.close();
+        return true;
+    }
+
     @Override
     public void gatherArtifactInfo(ArtifactInfoContext aic) {
         for (MethodOperation method : this.subOps) {
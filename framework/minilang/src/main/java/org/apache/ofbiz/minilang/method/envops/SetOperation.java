@@ -32,6 +32,7 @@ import org.apache.ofbiz.minilang.MiniLangException;
 import org.apache.ofbiz.minilang.MiniLangUtil;
 import org.apache.ofbiz.minilang.MiniLangValidate;
 import org.apache.ofbiz.minilang.SimpleMethod;
+import org.apache.ofbiz.minilang.SimpleMethodCompiler;
 import org.apache.ofbiz.minilang.method.MethodContext;
 import org.apache.ofbiz.minilang.method.MethodOperation;
 import org.w3c.dom.Element;
@@ -207,6 +208,73 @@ public final class SetOperation extends MethodOperation {
         return true;
     }
 
+    @Override
+    public boolean compile(SimpleMethodCompiler compiler) throws MiniLangException {
+        if (this.scriptlet != null) {
+            return false;
+        }
+        String newValue = compiler.local();
+        boolean valueIsConstant = this.fromFma.isEmpty() && !this.valueFse.isEmpty();
+        if (!this.fromFma.isEmpty()) {
+            compiler.line("Object " + newValue + " = " + compiler.get(this.fromFma));
+        } else if (!this.valueFse.isEmpty()) {
+            compiler.line("Object " + newValue + " = " + compiler.expand(this.valueFse));
+        } else {
+            compiler.line("Object " + newValue + " = null");
+        }
+        boolean convert = !this.type.isEmpty() && !"NewMap".equals(this.type) && !"NewList".equals(this.type);
+        String isConstant = valueIsConstant ? "true" : "false";
+        if (!this.defaultFse.isEmpty()) {
+            if (convert && !valueIsConstant) {
+                isConstant = compiler.local();
+                compiler.line("boolean " + isConstant + " = false");
+            }
+            compiler.open("if (ObjectType.isEmpty(" + newValue + "))");
+            compiler.line(newValue + " = " + compiler.expand(this.defaultFse));
+            if (convert && !valueIsConstant) {
+                compiler.line(isConstant + " = true");
+            }
+            compiler.close();
+        }
+        int blocks = 0;
+        if (!setIfNull && !"NewMap".equals(this.type) && !"NewList".equals(this.type)) {
+            compiler.open("if (" + newValue + " != null)");
+            blocks++;
+        }
+        if (!setIfEmpty) {
+            compiler.open("if (!ObjectType.isEmpty(" + newValue + "))");
+            blocks++;
+        }
+        if ("NewMap".equals(this.type)) {
+            compiler.line(newValue + " = new HashMap<String, Object>()");
+        } else if ("NewList".equals(this.type)) {
+            compiler.line(newValue + " = new LinkedList<Object>()");
+        } else if (convert) {
+            String format = compiler.local();
+            String exception = compiler.local();
+            String errMsg = compiler.local();
+            compiler.open("try");
+            compiler.line("String " + format + " = " + (this.formatFse.isEmpty() ? "null" : compiler.expandString(this.formatFse)));
+            compiler.line(newValue + " = MiniLangUtil.convertType(" + newValue + ", "
+                    + (this.targetClass != null ? compiler.constant(this.targetClass, Class.class)
+                    : "MiniLangUtil.getObjectClassForConversion(" + newValue + ")")
+                    + ", " + isConstant + " ? Locale.ENGLISH : ctx.getLocale(), ctx.getTimeZone(), " + format + ")");
+            compiler.reopen("} catch (Exception " + exception + ")");
+            compiler.line("String " + errMsg + " = " + SimpleMethodCompiler.literal("Could not convert field value for the field: ["
+                    + this.fieldFma + "] to the [" + this.type + "] type for the value [") + " + " + newValue + " + ']: ' + "
+                    + exception + ".getMessage()");
+            compiler.line("Debug.logWarning(" + exception + ", " + errMsg + ", " + SimpleMethodCompiler.literal(MODULE) + ")");
+            compiler.line(compiler.simpleMethod() + ".addErrorMessage(ctx, " + errMsg + ")");
+            compiler.line("return false");
+            compiler.close();
+        }
+        compiler.put(this.fieldFma, newValue);
+        for (int i = 0; i < blocks; i++) {
+            compiler.close();
+        }
+        return true;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("<set ");
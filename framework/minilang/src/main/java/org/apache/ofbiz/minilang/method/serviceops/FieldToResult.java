@@ -23,6 +23,7 @@ import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
 import org.apache.ofbiz.minilang.MiniLangException;
 import org.apache.ofbiz.minilang.MiniLangValidate;
 import org.apache.ofbiz.minilang.SimpleMethod;
+import org.apache.ofbiz.minilang.SimpleMethodCompiler;
 import org.apache.ofbiz.minilang.method.MethodContext;
 import org.apache.ofbiz.minilang.method.MethodOperation;
 import org.w3c.dom.Element;
@@ -77,6 +78,19 @@ public final class FieldToResult extends MethodOperation {
         return true;
     }
 
+    @Override
+    public boolean compile(SimpleMethodCompiler compiler) throws MiniLangException {
+        if (this.resultFma.containsNestedExpression()) {
+            return false;
+        }
+        String fieldVal = compiler.local();
+        compiler.line("Object " + fieldVal + " = " + compiler.get(this.fieldFma));
+        compiler.open("if (" + fieldVal + " != null)");
+        compiler.put(this.resultFma, "ctx.getResults()", fieldVal);
+        compiler.close();
+        return true;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("<field-to-result ");
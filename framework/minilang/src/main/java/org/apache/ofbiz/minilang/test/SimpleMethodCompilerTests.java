@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.minilang.test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.apache.ofbiz.base.component.ComponentConfig;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.StringUtil;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.minilang.MiniLangException;
+import org.apache.ofbiz.minilang.SimpleMethod;
+import org.apache.ofbiz.minilang.method.MethodContext;
+import org.apache.ofbiz.service.testtools.OFBizTestCase;
+import org.w3c.dom.Element;
+
+/**
+ * Runs simple-methods with the interpreter and compiled, the results must be the same.
+ */
+public class SimpleMethodCompilerTests extends OFBizTestCase {
+
+    private static final String MODULE = SimpleMethodCompilerTests.class.getName();
+    private static final String COMPILED_LOCATION = MODULE + "#compiled";
+    /** The inventory services, given as example in the <code>compiler.locations</code> property */
+    private static final List<String> INVENTORY_LOCATIONS = UtilMisc.toList("component://product/minilang/product/inventory/InventoryServices.xml",
+            "component://product/minilang/product/inventory/InventoryReserveServices.xml");
+
+    private String compilerLocations;
+
+    public SimpleMethodCompilerTests(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        compilerLocations = UtilProperties.getPropertyValue("minilang", "compiler.locations");
+        UtilProperties.setPropertyValueInMemory("minilang", "compiler.locations", COMPILED_LOCATION);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        UtilProperties.setPropertyValueInMemory("minilang", "compiler.locations", compilerLocations);
+        super.tearDown();
+    }
+
+    private MethodContext createServiceMethodContext() {
+        Map<String, Object> context = UtilMisc.toMap("locale", Locale.US, "timeZone", TimeZone.getTimeZone("GMT"),
+                "userLoginId", "system", "amount", "12.50", "empty", "");
+        MethodContext methodContext = new MethodContext(getDispatcher().getDispatchContext(), context, null);
+        methodContext.setUserLogin(getDelegator().makeValidValue("UserLogin", UtilMisc.toMap("userLoginId", "system")), "userLogin");
+        return methodContext;
+    }
+
+    /**
+     * Runs the simple-method with the interpreter and compiled, and compares the responses, the environments and the results.
+     */
+    private void assertSameResults(String simpleMethodXml) throws Exception {
+        Element interpretedElement = UtilXml.readXmlDocument(simpleMethodXml).getDocumentElement();
+        Element compiledElement = UtilXml.readXmlDocument(simpleMethodXml).getDocumentElement();
+        SimpleMethod interpreted = new SimpleMethod(interpretedElement, MODULE);
+        SimpleMethod compiled = new SimpleMethod(compiledElement, COMPILED_LOCATION);
+        assertFalse("Method is interpreted", interpreted.isCompiled());
+        assertTrue("Method is compiled", compiled.isCompiled());
+
+        MethodContext interpretedContext = createServiceMethodContext();
+        String interpretedResponse = interpreted.exec(interpretedContext);
+        MethodContext compiledContext = createServiceMethodContext();
+        String compiledResponse = compiled.exec(compiledContext);
+
+        String methodName = interpreted.getMethodName();
+        assertEquals(methodName + " response", interpretedResponse, compiledResponse);
+        Map<String, Object> interpretedEnv = new HashMap<>(interpretedContext.getEnvMap());
+        Map<String, Object> compiledEnv = new HashMap<>(compiledContext.getEnvMap());
+        interpretedEnv.remove("simpleMethod");
+        compiledEnv.remove("simpleMethod");
+        assertEquals(methodName + " environment", interpretedEnv, compiledEnv);
+        assertEquals(methodName + " results", interpretedContext.getResults(), compiledContext.getResults());
+    }
+
+    /**
+     * Test the set and clear-field operations.
+     * @throws Exception the exception
+     */
+    public void testSetOperations() throws Exception {
+        assertSameResults("<simple-method method-name=\"testSet\">"
+                + "  <set field=\"constant\" value=\"it's a value\"/>"
+                + "  <set field=\"expanded\" value=\"${constant} and ${parameters.userLoginId}\"/>"
+                + "  <set field=\"copied\" from=\"parameters.userLoginId\"/>"
+                + "  <set field=\"missing\" from=\"parameters.missing\"/>"
+                + "  <set field=\"nullValue\" from=\"parameters.missing\" set-if-null=\"true\"/>"
+                + "  <set field=\"defaulted\" from=\"parameters.missing\" default=\"${constant}\"/>"
+                + "  <set field=\"empty\" from=\"parameters.empty\" set-if-empty=\"false\"/>"
+                + "  <set field=\"amount\" from=\"parameters.amount\" type=\"BigDecimal\"/>"
+                + "  <set field=\"count\" value=\"12\" type=\"Long\"/>"
+                + "  <set field=\"defaultCount\" from=\"parameters.missing\" default=\"7\" type=\"Integer\"/>"
+                + "  <set field=\"map\" type=\"NewMap\"/>"
+                + "  <set field=\"map.key\" from=\"copied\"/>"
+                + "  <set field=\"list\" type=\"NewList\"/>"
+                + "  <set field=\"list[]\" from=\"amount\"/>"
+                + "  <set field=\"formatted\" from=\"count\" type=\"String\" format=\"#,##0.00\"/>"
+                + "  <clear-field field=\"copied\"/>"
+                + "  <clear-field field=\"map.key\"/>"
+                + "</simple-method>");
+        assertSameResults("<simple-method method-name=\"testSetConversionError\">"
+                + "  <set field=\"amount\" value=\"not a number\" type=\"BigDecimal\"/>"
+                + "  <set field=\"notSet\" value=\"should not be set\"/>"
+                + "</simple-method>");
+    }
+
+    /**
+     * Test the conditional and loop operations, with the operations run by the interpreter nested in them.
+     * @throws Exception the exception
+     */
+    public void testControlOperations() throws Exception {
+        assertSameResults("<simple-method method-name=\"testControl\">"
+                + "  <set field=\"values\" type=\"NewList\"/>"
+                + "  <set field=\"values[]\" value=\"1\" type=\"Integer\"/>"
+                + "  <set field=\"values[]\" value=\"2\" type=\"Integer\"/>"
+                + "  <set field=\"values[]\" value=\"3\" type=\"Integer\"/>"
+                + "  <set field=\"values[]\" value=\"4\" type=\"Integer\"/>"
+                + "  <set field=\"total\" value=\"0\" type=\"Integer\"/>"
+                + "  <set field=\"value\" value=\"previous\"/>"
+                + "  <iterate list=\"values\" entry=\"value\">"
+                + "    <if-compare field=\"value\" operator=\"equals\" value=\"2\" type=\"Integer\"><continue/></if-compare>"
+                + "    <if-compare field=\"value\" operator=\"greater\" value=\"3\" type=\"Integer\"><break/></if-compare>"
+                + "    <calculate field=\"total\"><calcop operator=\"add\" field=\"total\"><calcop operator=\"get\" field=\"value\"/></calcop>"
+                + "    </calculate>"
+                + "  </iterate>"
+                + "  <iterate list=\"parameters.missing\" entry=\"missingEntry\"><set field=\"notSet\" value=\"x\"/></iterate>"
+                + "  <if-empty field=\"parameters.missing\"><set field=\"empty\" value=\"Y\"/><else><set field=\"empty\" value=\"N\"/></else>"
+                + "  </if-empty>"
+                + "  <if-not-empty field=\"values\"><set field=\"notEmpty\" value=\"Y\"/></if-not-empty>"
+                + "  <if-compare-field field=\"total\" operator=\"equals\" to-field=\"values[3]\" type=\"Integer\">"
+                + "    <set field=\"compared\" value=\"Y\"/>"
+                + "  </if-compare-field>"
+                + "  <if>"
+                + "    <condition><if-compare field=\"total\" operator=\"less\" value=\"4\" type=\"Integer\"/></condition>"
+                + "    <then><set field=\"branch\" value=\"then\"/></then>"
+                + "    <else-if><condition><if-compare field=\"total\" operator=\"equals\" value=\"4\" type=\"Integer\"/></condition>"
+                + "      <then><set field=\"branch\" value=\"else-if\"/></then></else-if>"
+                + "    <else><set field=\"branch\" value=\"else\"/></else>"
+                + "  </if>"
+                + "  <field-to-result field=\"total\"/>"
+                + "  <field-to-result field=\"branch\" result-name=\"resultBranch\"/>"
+                + "  <field-to-result field=\"parameters.missing\" result-name=\"notSet\"/>"
+                + "</simple-method>");
+        assertSameResults("<simple-method method-name=\"testReturn\">"
+                + "  <set field=\"values\" value=\"${groovy: [1, 2, 3]}\"/>"
+                + "  <iterate list=\"values\" entry=\"value\">"
+                + "    <if-compare field=\"value\" operator=\"equals\" value=\"2\" type=\"Integer\">"
+                + "      <add-error><fail-message message=\"Stopped at ${value}\"/></add-error>"
+                + "    </if-compare>"
+                + "    <check-errors/>"
+                + "    <set field=\"lastValue\" from=\"value\"/>"
+                + "  </iterate>"
+                + "  <set field=\"notSet\" value=\"x\"/>"
+                + "</simple-method>");
+    }
+
+    /**
+     * Test the entity operations, and the iteration on an entity list iterator.
+     * @throws Exception the exception
+     */
+    public void testEntityOperations() throws Exception {
+        assertSameResults("<simple-method method-name=\"testEntity\">"
+                + "  <entity-one entity-name=\"UserLogin\" value-field=\"fromParameters\"/>"
+                + "  <entity-one entity-name=\"UserLogin\" value-field=\"fromCache\" use-cache=\"true\">"
+                + "    <field-map field-name=\"userLoginId\" from-field=\"parameters.userLoginId\"/>"
+                + "  </entity-one>"
+                + "  <entity-one entity-name=\"UserLogin\" value-field=\"missing\" auto-field-map=\"false\">"
+                + "    <field-map field-name=\"userLoginId\" value=\"missing\"/>"
+                + "  </entity-one>"
+                + "  <set field=\"statusCount\" value=\"0\" type=\"Integer\"/>"
+                + "  <entity-and entity-name=\"StatusItem\" list=\"statusItems\">"
+                + "    <field-map field-name=\"statusTypeId\" value=\"ORDER_STATUS\"/><use-iterator/>"
+                + "  </entity-and>"
+                + "  <iterate list=\"statusItems\" entry=\"statusItem\">"
+                + "    <calculate field=\"statusCount\"><calcop operator=\"add\" field=\"statusCount\"><number value=\"1\"/></calcop></calculate>"
+                + "  </iterate>"
+                + "  <clear-field field=\"statusItems\"/>"
+                + "</simple-method>");
+    }
+
+    /**
+     * The inputs of the simple-methods of the test suites and of the inventory services, demo records used by the
+     * inventory services.
+     */
+    private Map<String, Object> createFileMethodInputs() {
+        Map<String, Object> context = UtilMisc.toMap("locale", Locale.US, "timeZone", TimeZone.getTimeZone("GMT"),
+                "productId", "GZ-2644", "facilityId", "WebStoreWarehouse", "inventoryItemId", "9024", "orderId", "DEMO10090",
+                "orderItemSeqId", "00001", "shipGroupSeqId", "00001", "quantity", BigDecimal.ONE, "varianceReasonId", "VAR_LOST");
+        context.put("userLogin", getDelegator().makeValidValue("UserLogin", UtilMisc.toMap("userLoginId", "system")));
+        return context;
+    }
+
+    /**
+     * Runs a simple-method in a transaction rolled back afterwards, so that the interpreted and compiled runs start from
+     * the same records.
+     * @return the response, the error messages and the results, or the exception thrown
+     */
+    private List<Object> runAndRollback(SimpleMethod simpleMethod) throws Exception {
+        MethodContext methodContext = new MethodContext(getDispatcher().getDispatchContext(), createFileMethodInputs(), null);
+        boolean beganTransaction = TransactionUtil.begin();
+        try {
+            String response = simpleMethod.exec(methodContext);
+            Map<String, Object> results = new HashMap<>();
+            for (Map.Entry<String, Object> result : methodContext.getResults().entrySet()) {
+                // the generated ids and the current time differ between the runs
+                boolean generated = result.getValue() instanceof Timestamp || result.getKey().endsWith("Id");
+                results.put(result.getKey(), generated ? result.getValue() != null : result.getValue());
+            }
+            return UtilMisc.<Object>toList(response, methodContext.getEnv(simpleMethod.getServiceErrorMessageListName()),
+                    methodContext.getEnv(simpleMethod.getServiceErrorMessageName()), results);
+        } catch (MiniLangException | RuntimeException e) {
+            return UtilMisc.<Object>toList(e.getClass().getName(), e.getMessage());
+        } finally {
+            TransactionUtil.rollback(beganTransaction, "Rolling back the run of " + simpleMethod.getLocationAndName(), null);
+        }
+    }
+
+    /**
+     * Compiles the simple-methods of the minilang test suites, of the inventory services and of the files listed in the
+     * <code>compiler.locations</code> property, then runs each one interpreted and compiled on the same inputs, the results
+     * must be the same.
+     * @throws Exception the exception
+     */
+    public void testRunTestSuitesAndCompiledFiles() throws Exception {
+        Set<String> locations = new LinkedHashSet<>(INVENTORY_LOCATIONS);
+        if (UtilValidate.isNotEmpty(compilerLocations)) {
+            for (String location : StringUtil.split(compilerLocations, ",")) {
+                if (!"*".equals(location.trim())) {
+                    locations.add(location.trim());
+                }
+            }
+        }
+        for (ComponentConfig.TestSuiteInfo testSuiteInfo : ComponentConfig.getAllTestSuiteInfos(null)) {
+            Element suiteElement = testSuiteInfo.createResourceHandler().getDocument().getDocumentElement();
+            for (Element testCaseElement : UtilXml.childElementList(suiteElement, "test-case")) {
+                for (Element testElement : UtilXml.childElementList(testCaseElement, "simple-method-test")) {
+                    locations.add(testElement.getAttribute("location"));
+                }
+            }
+        }
+        int methodCount = 0;
+        for (String location : locations) {
+            // the methods are read again for each property value, getSimpleMethodsList bypasses the cache
+            UtilProperties.setPropertyValueInMemory("minilang", "compiler.locations", "");
+            List<SimpleMethod> interpretedMethods = SimpleMethod.getSimpleMethodsList(location, null);
+            UtilProperties.setPropertyValueInMemory("minilang", "compiler.locations", "*");
+            List<SimpleMethod> compiledMethods = SimpleMethod.getSimpleMethodsList(location, null);
+            assertEquals(location + " methods", interpretedMethods.size(), compiledMethods.size());
+            for (int i = 0; i < compiledMethods.size(); i++) {
+                SimpleMethod interpreted = interpretedMethods.get(i);
+                SimpleMethod compiled = compiledMethods.get(i);
+                String methodName = compiled.getLocationAndName();
+                assertFalse(methodName + " is interpreted", interpreted.isCompiled());
+                assertTrue(methodName + " is compiled", compiled.isCompiled());
+                assertEquals(methodName + " results", runAndRollback(interpreted), runAndRollback(compiled));
+                methodCount++;
+            }
+        }
+        Debug.logInfo("Ran " + methodCount + " simple-methods from " + locations.size() + " files interpreted and compiled", MODULE);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.service.test
+
+import org.apache.ofbiz.base.util.GroovyUtil
+import org.apache.ofbiz.base.util.UtilProperties
+import org.apache.ofbiz.base.util.cache.UtilCache
+import org.apache.ofbiz.service.ModelService
+import org.apache.ofbiz.service.ServiceUtil
+import org.apache.ofbiz.service.engine.GroovyScriptInvoker
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+
+class GroovyEngineTests extends OFBizTestCase {
+
+    private static final String SCRIPT_LOCATION = 'component://service/src/test/groovy/org/apache/ofbizservice/test/TestServices.groovy'
+    private static final String STATIC_SCRIPT_LOCATION =
+            'component://service/src/test/groovy/org/apache/ofbizservice/test/TestStaticServices.groovy'
+
+    GroovyEngineTests(String name) {
+        super(name)
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        UtilProperties.setPropertyValueInMemory('groovy', 'compileStatic.locations', '')
+        UtilCache.clearCache('script.GroovyLocationParsedCache')
+        super.tearDown()
+    }
+
+    /**
+     * Runs a Groovy service several times, the script instance being reused each call must only see its own parameters,
+     * and the error of a service called with the DSL must still be returned as an error.
+     */
+    void testReusedScript() {
+        ['first', 'second', 'third'].each {
+            Map serviceResult = dispatcher.runSync('testGroovyPingSuccess', [ping: it])
+            assert ServiceUtil.isSuccess(serviceResult)
+            assert serviceResult.pong == it
+        }
+        Map serviceResult = dispatcher.runSync('testGroovyPingErrorWithDSLCall', [ping: 'error'], 60, true)
+        assert ServiceUtil.isError(serviceResult)
+        assert serviceResult[ModelService.ERROR_MESSAGE] == 'Service result error'
+    }
+
+    /**
+     * Lists a script written for the static compilation and a dynamic one in the compileStatic.locations property,
+     * the first one must be statically compiled and the second one compiled as usual, both services must run.
+     */
+    void testCompileStaticLocations() {
+        UtilProperties.setPropertyValueInMemory('groovy', 'compileStatic.locations', "${STATIC_SCRIPT_LOCATION}, ${SCRIPT_LOCATION}")
+        UtilCache.clearCache('script.GroovyLocationParsedCache')
+        assert GroovyUtil.isCompileStaticLocation(STATIC_SCRIPT_LOCATION)
+
+        Map serviceResult = dispatcher.runSync('testGroovyPingStatic', [ping: 'static'])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert serviceResult.pong == 'static'
+        serviceResult = dispatcher.runSync('testGroovyPingSuccess', [ping: 'dynamic'])
+        assert ServiceUtil.isSuccess(serviceResult)
+        assert serviceResult.pong == 'dynamic'
+    }
+
+    /**
+     * Calls the methods of a script through the script invoker: a script without instance field is reused by the next
+     * calls of the thread with their own binding, a nested call of the same script gets its own instance, and a script
+     * with an instance field gets a new instance each call.
+     */
+    void testScriptInstanceReuse() {
+        Class<?> scriptClass = GroovyUtil.parseClass('''
+            import org.apache.ofbiz.service.engine.GroovyScriptInvoker
+            def self() {
+                return [this, ping]
+            }
+            def nested() {
+                List inner = GroovyScriptInvoker.invoke(getClass(), 'self', new Binding(ping: 'inner')) as List
+                return [this, inner[0], inner[1], ping]
+            }
+            ''')
+        List first = GroovyScriptInvoker.invoke(scriptClass, 'self', GroovyUtil.getBinding([ping: 'first'])) as List
+        List second = GroovyScriptInvoker.invoke(scriptClass, 'self', GroovyUtil.getBinding([ping: 'second'])) as List
+        assert first[1] == 'first'
+        assert second[1] == 'second'
+        assert first[0].is(second[0])
+
+        List nested = GroovyScriptInvoker.invoke(scriptClass, 'nested', GroovyUtil.getBinding([ping: 'outer'])) as List
+        assert !nested[0].is(nested[1])
+        assert nested[2] == 'inner'
+        assert nested[3] == 'outer'
+
+        Class<?> fieldScriptClass = GroovyUtil.parseClass('''
+            import groovy.transform.Field
+            @Field int calls = 0
+            def count() {
+                calls++
+                return [this, calls]
+            }
+            ''')
+        List firstCount = GroovyScriptInvoker.invoke(fieldScriptClass, 'count', GroovyUtil.getBinding([:])) as List
+        List secondCount = GroovyScriptInvoker.invoke(fieldScriptClass, 'count', GroovyUtil.getBinding([:])) as List
+        assert firstCount[1] == 1
+        assert secondCount[1] == 1
+        assert !firstCount[0].is(secondCount[0])
+    }
+}
@@ -38,9 +38,6 @@ import org.apache.ofbiz.service.GenericServiceException;
 import org.apache.ofbiz.service.ModelService;
 import org.apache.ofbiz.service.ServiceDispatcher;
 import org.apache.ofbiz.service.ServiceUtil;
-import org.codehaus.groovy.runtime.InvokerHelper;
-
-import groovy.lang.Script;
 
 /**
  * Groovy Script Service Engine
@@ -48,7 +45,6 @@ import groovy.lang.Script;
 public final class GroovyEngine extends GenericAsyncEngine {
 
     private static final String MODULE = GroovyEngine.class.getName();
-    private static final Object[] EMPTY_ARGS = {};
     private static final Set<String> PROTECTED_KEYS = createProtectedKeys();
 
     private static Set<String> createProtectedKeys() {
@@ -81,11 +77,8 @@ public final class GroovyEngine extends GenericAsyncEngine {
         if (UtilValidate.isEmpty(modelService.getLocation())) {
             throw new GenericServiceException("Cannot run Groovy service with empty location");
         }
-        Map<String, Object> params = new HashMap<>();
-        params.putAll(context);
-
-        Map<String, Object> gContext = new HashMap<>();
-        gContext.putAll(context);
+        Map<String, Object> params = new HashMap<>(context);
+        Map<String, Object> gContext = new HashMap<>(context);
         gContext.put(ScriptUtil.PARAMETERS_KEY, params);
 
         DispatchContext dctx = getDispatcher().getLocalContext(localName);
@@ -100,14 +93,9 @@ public final class GroovyEngine extends GenericAsyncEngine {
                 gContext.put(ScriptUtil.SCRIPT_HELPER_KEY, scriptHelper);
             }
 
-            Script script = InvokerHelper.createScript(
-                    GroovyUtil.getScriptClassFromLocation(getLocation(modelService)),
-                    GroovyUtil.getBinding(gContext));
-
             // Groovy services can either be implemented as a stand-alone script or with a method inside a script.
-            Object resultObj = UtilValidate.isEmpty(modelService.getInvoke())
-                    ? script.run()
-                    : script.invokeMethod(modelService.getInvoke(), EMPTY_ARGS);
+            Object resultObj = GroovyScriptInvoker.invoke(GroovyUtil.getScriptClassFromLocation(getLocation(modelService)),
+                    modelService.getInvoke(), GroovyUtil.getBinding(gContext));
 
             if (resultObj == null) {
                 resultObj = scriptContext.getAttribute(ScriptUtil.RESULT_KEY);
@@ -123,8 +111,9 @@ public final class GroovyEngine extends GenericAsyncEngine {
         } catch (Exception e) {
             // When throwing ExecutionServiceException in Groovy DSL run Service method
             // since we are dependent on Groovy MetaClassImpl that throws InvokerInvocationException
-            // we need to check nested exception to return the embedded service error message.
-            Throwable nested = e.getCause();
+            // we need to check nested exception to return the embedded service error message, the methods called through
+            // their method handle throw it directly.
+            Throwable nested = e instanceof ExecutionServiceException ? e : e.getCause();
             if (nested instanceof ExecutionServiceException) {
                 return ServiceUtil.returnError(nested.getMessage());
             }
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.engine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import groovy.lang.Binding;
+import groovy.lang.Script;
+
+/**
+ * Runs the Groovy scripts of the services.
+ * <p>The methods of a script are called through a {@code MethodHandle} kept by script class, skipping the meta-class
+ * lookup of {@code Script.invokeMethod}. The script instances are kept by the thread running them and are reused by its
+ * next calls with the binding of the call, unless their class declares instance fields (e.g. with {@code @Field}) that
+ * would keep a state from one call to the next.</p>
+ */
+public final class GroovyScriptInvoker {
+
+    private static final String MODULE = GroovyScriptInvoker.class.getName();
+    private static final Object[] EMPTY_ARGS = {};
+    private static final MethodType INVOKE_TYPE = MethodType.methodType(Object.class, Script.class);
+    // keyed by class name rather than by class, so that the classes of the scripts reloaded after a cache clear replace
+    // the old ones instead of being kept forever
+    private static final Map<String, ScriptClassInfo> SCRIPT_CLASSES = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Map<String, Script>> IDLE_SCRIPTS = ThreadLocal.withInitial(HashMap::new);
+
+    private GroovyScriptInvoker() { }
+
+    /**
+     * Runs a Groovy script or a method of a Groovy script.
+     * @param scriptClass the class of the script
+     * @param methodName the name of the method without argument to run, if empty the script is run
+     * @param binding the binding of the call
+     * @return the value returned by the script or the method
+     * @throws Exception when the script throws an exception, it is not wrapped
+     */
+    public static Object invoke(Class<?> scriptClass, String methodName, Binding binding) throws Exception {
+        ScriptClassInfo classInfo = getScriptClassInfo(scriptClass);
+        Script script = classInfo.isReusable() ? acquire(scriptClass) : null;
+        if (script == null) {
+            script = InvokerHelper.createScript(scriptClass, binding);
+        } else {
+            script.setBinding(binding);
+        }
+        try {
+            if (UtilValidate.isEmpty(methodName)) {
+                return script.run();
+            }
+            MethodHandle handle = classInfo.getMethod(methodName);
+            if (handle == null) {
+                return script.invokeMethod(methodName, EMPTY_ARGS);
+            }
+            try {
+                return (Object) handle.invokeExact(script);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new UndeclaredThrowableException(t);
+            }
+        } finally {
+            if (classInfo.isReusable()) {
+                release(script);
+            }
+        }
+    }
+
+    private static ScriptClassInfo getScriptClassInfo(Class<?> scriptClass) {
+        ScriptClassInfo classInfo = SCRIPT_CLASSES.get(scriptClass.getName());
+        if (classInfo == null || classInfo.getScriptClass() != scriptClass) {
+            classInfo = new ScriptClassInfo(scriptClass);
+            SCRIPT_CLASSES.put(scriptClass.getName(), classInfo);
+        }
+        return classInfo;
+    }
+
+    // the instance is removed while it is used so that a nested call of the same script by the same thread creates its own
+    private static Script acquire(Class<?> scriptClass) {
+        Script script = IDLE_SCRIPTS.get().remove(scriptClass.getName());
+        return script != null && script.getClass() == scriptClass ? script : null;
+    }
+
+    private static void release(Script script) {
+        // drops the variables of the call, they must not be kept alive by the idle instance
+        script.setBinding(new Binding());
+        IDLE_SCRIPTS.get().put(script.getClass().getName(), script);
+    }
+
+    private static final class ScriptClassInfo {
+        private final Class<?> scriptClass;
+        private final boolean reusable;
+        private final Map<String, Optional<MethodHandle>> methods = new ConcurrentHashMap<>();
+
+        ScriptClassInfo(Class<?> scriptClass) {
+            this.scriptClass = scriptClass;
+            this.reusable = Script.class.isAssignableFrom(scriptClass) && !hasInstanceFields(scriptClass);
+        }
+
+        Class<?> getScriptClass() {
+            return scriptClass;
+        }
+
+        boolean isReusable() {
+            return reusable;
+        }
+
+        MethodHandle getMethod(String methodName) {
+            return methods.computeIfAbsent(methodName, this::findMethod).orElse(null);
+        }
+
+        private Optional<MethodHandle> findMethod(String methodName) {
+            try {
+                Method method = scriptClass.getMethod(methodName);
+                if (Modifier.isStatic(method.getModifiers())) {
+                    return Optional.empty();
+                }
+                return Optional.of(MethodHandles.publicLookup().unreflect(method).asType(INVOKE_TYPE));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                // e.g. a method with default arguments or a closure of the binding, left to Script.invokeMethod
+                if (Debug.verboseOn()) {
+                    Debug.logVerbose("No method handle for [" + methodName + "] in Groovy script " + scriptClass.getName()
+                            + ": " + e.getMessage(), MODULE);
+                }
+                return Optional.empty();
+            }
+        }
+
+        private static boolean hasInstanceFields(Class<?> scriptClass) {
+            for (Class<?> type = scriptClass; type != null && type != Script.class; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License") you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webapp.test
+
+import org.apache.ofbiz.base.util.UtilDateTime
+import org.apache.ofbiz.entity.GenericValue
+import org.apache.ofbiz.entity.condition.EntityCondition
+import org.apache.ofbiz.entity.condition.EntityOperator
+import org.apache.ofbiz.entity.util.EntityQuery
+import org.apache.ofbiz.service.testtools.OFBizTestCase
+import org.apache.ofbiz.webapp.stats.ServerHitWriter
+
+class ServerHitWriterTests extends OFBizTestCase {
+
+    ServerHitWriterTests(String name) {
+        super(name)
+    }
+
+    private GenericValue makeServerHitBin(String serverHitBinId) {
+        return delegator.makeValue('ServerHitBin', [serverHitBinId: serverHitBinId, contentId: 'testServerHitWriter',
+                hitTypeId: 'REQUEST', binStartDateTime: UtilDateTime.nowTimestamp(), numberHits: 1L])
+    }
+
+    void testWriteQueuedRecordsInBatch() {
+        List<String> ids = (1..5).collect { delegator.getNextSeqId('ServerHitBin') }
+        ids.each { assert ServerHitWriter.enqueue(makeServerHitBin(it)) }
+        long written = ServerHitWriter.getWrittenCount()
+
+        ServerHitWriter.flush()
+
+        assert ServerHitWriter.getPendingCount() == 0
+        assert ServerHitWriter.getWrittenCount() >= written + ids.size()
+        assert EntityQuery.use(delegator).from('ServerHitBin').where(EntityCondition.makeCondition('serverHitBinId',
+                EntityOperator.IN, ids)).queryCount() == ids.size()
+    }
+
+    void testBadRecordDoesNotDiscardTheBatch() {
+        String existingId = delegator.getNextSeqId('ServerHitBin')
+        makeServerHitBin(existingId).create()
+        List<String> ids = (1..3).collect { delegator.getNextSeqId('ServerHitBin') }
+        ServerHitWriter.enqueue(makeServerHitBin(ids[0]))
+        // a duplicated primary key fails the batch insert
+        ServerHitWriter.enqueue(makeServerHitBin(existingId))
+        ids[1..2].each { ServerHitWriter.enqueue(makeServerHitBin(it)) }
+
+        ServerHitWriter.flush()
+
+        assert EntityQuery.use(delegator).from('ServerHitBin').where(EntityCondition.makeCondition('serverHitBinId',
+                EntityOperator.IN, ids)).queryCount() == ids.size()
+    }
+}
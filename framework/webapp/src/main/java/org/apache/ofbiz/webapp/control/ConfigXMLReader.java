@@ -1044,6 +1044,7 @@ public final class ConfigXMLReader {
         private String strictTransportSecurity;
         private String description;
         private boolean noCache = false;
+        private String cache;
         private boolean secureContext = true;
         private boolean securityAuth = false;
 
@@ -1106,6 +1107,24 @@ public final class ConfigXMLReader {
             return noCache;
         }
 
+        /**
+         * Gets the cache scope, {@code private} or {@code public}, of a view declared as cacheable.
+         *
+         * @return the cache scope or {@code null} when the view is not cacheable
+         */
+        public String getCache() {
+            return cache;
+        }
+
+        /**
+         * Is cacheable boolean.
+         *
+         * @return the boolean
+         */
+        public boolean isCacheable() {
+            return cache != null && !noCache;
+        }
+
         /**
          * Is secureContext boolean.
          *
@@ -1154,6 +1173,8 @@ public final class ConfigXMLReader {
             this.info = viewMapElement.getAttribute("info");
             this.contentType = viewMapElement.getAttribute("content-type");
             this.noCache = "true".equals(viewMapElement.getAttribute("no-cache"));
+            String cacheAttr = viewMapElement.getAttribute("cache");
+            this.cache = ("private".equals(cacheAttr) || "public".equals(cacheAttr)) ? cacheAttr : null;
             this.secureContext = "true".equals(viewMapElement.getAttribute("secure-context"));
             this.securityAuth = "true".equals(viewMapElement.getAttribute("auth")) || !this.secureContext;
             this.encoding = viewMapElement.getAttribute("encoding");
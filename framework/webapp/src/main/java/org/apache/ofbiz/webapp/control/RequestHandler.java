@@ -1273,6 +1273,14 @@ public final class RequestHandler {
             if (Debug.verboseOn()) {
                 Debug.logVerbose("Sending no-cache headers for view [" + nextPage + "]", MODULE);
             }
+        } else if (viewMap.isCacheable()) {
+            // let the browser keep the rendered view but revalidate it each time using the ETag
+            // computed by the ResponseOptimizationFilter from the rendered output
+            resp.setHeader("Cache-Control", viewMap.getCache() + ", no-cache");
+            req.setAttribute(ResponseOptimizationFilter.CACHEABLE_VIEW, Boolean.TRUE);
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Sending revalidation cache headers for view [" + nextPage + "]", MODULE);
+            }
         } else {
             resp.setHeader("Cache-Control", "Set-Cookie");
         }
@@ -0,0 +1,510 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webapp.control;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilValidate;
+
+/**
+ * A Filter reducing the weight of the responses sent by the webapp.
+ *
+ * The responses having a compressible content type are buffered, then:
+ *   - when the view rendered has been declared cacheable in the controller (see the cache attribute of view-map),
+ *     a strong ETag is computed from the rendered output and a conditional request having a matching If-None-Match
+ *     header gets a 304 (Not Modified) response without body;
+ *   - the output is compressed with gzip when the browser accepts it and when it is big enough for the compression
+ *     to be worth it.
+ * Responses bigger than the buffer are streamed, compressed when possible, without ETag.
+ * All the responses having a compressible content type get a Vary: Accept-Encoding header.
+ * Brotli is not negotiated since no pure Java encoder is available.
+ * Requests supporting the asynchronous processing are not optimized: their output can be non blocking.
+ *
+ * Init parameters:
+ *   - compressionMinSize: the minimal size in bytes of a compressed response, defaults to 1024;
+ *     a negative value disables the compression
+ *   - compressibleTypes: a colon separated list of the content types which are compressed
+ *   - bufferMaxSize: the maximal size in bytes of a buffered response, defaults to 4194304
+ *   - staticMaxAge: when set, the responses to the versioned paths get public cache headers expiring after this
+ *     number of seconds; meant for the webapps serving static resources only, like the themes
+ *   - versionedPaths: the regular expression finding the versioned paths in the request URI and query string,
+ *     defaults to a version number or a hexadecimal fingerprint in a path segment, or a v or version parameter
+ *   - revalidateMaxAge: when set, the other responses get public cache headers expiring after this number of
+ *     seconds, then revalidated: the buffered responses get an ETag when the servlet did not set one,
+ *     the container default servlet sets the ETag and Last-Modified headers of the other static resources
+ *
+ * Interaction with the context:
+ *   - the RequestHandler sets the request attribute _CACHEABLE_VIEW_ when rendering a cacheable view
+ */
+@SuppressWarnings("serial")
+public class ResponseOptimizationFilter extends HttpFilter {
+    public static final String CACHEABLE_VIEW = "_CACHEABLE_VIEW_";
+    public static final int DEFAULT_COMPRESSION_MIN_SIZE = 1024;
+    public static final int DEFAULT_BUFFER_MAX_SIZE = 4 * 1024 * 1024;
+    public static final String DEFAULT_COMPRESSIBLE_TYPES = "text/html:text/plain:text/css:text/xml:text/csv:text/javascript"
+            + ":application/javascript:application/json:application/xml:image/svg+xml";
+    public static final String DEFAULT_VERSIONED_PATHS = "[-_.]v?\\d+(\\.\\d+)+[-_./]|[-_.][0-9a-fA-F]{8,}\\.[^/]*$|[?&]v(ersion)?=";
+    private static final String MODULE = ResponseOptimizationFilter.class.getName();
+
+    /** The minimal size of a compressed response, negative when compression is disabled. */
+    private int compressionMinSize;
+    /** The maximal size of a buffered response. */
+    private int bufferMaxSize;
+    /** The max age of the public cache headers of the versioned paths, negative when not set. */
+    private int staticMaxAge;
+    /** The paths getting the static max age. */
+    private Pattern versionedPaths;
+    /** The max age of the public cache headers of the other paths, negative when not set. */
+    private int revalidateMaxAge;
+    /** The content types which are compressed. */
+    private Set<String> compressibleTypes;
+
+    @Override
+    public void init(FilterConfig conf) throws ServletException {
+        compressionMinSize = readSize(conf.getInitParameter("compressionMinSize"), DEFAULT_COMPRESSION_MIN_SIZE);
+        bufferMaxSize = readSize(conf.getInitParameter("bufferMaxSize"), DEFAULT_BUFFER_MAX_SIZE);
+        staticMaxAge = readSize(conf.getInitParameter("staticMaxAge"), -1);
+        String paths = conf.getInitParameter("versionedPaths");
+        versionedPaths = Pattern.compile(UtilValidate.isEmpty(paths) ? DEFAULT_VERSIONED_PATHS : paths);
+        revalidateMaxAge = readSize(conf.getInitParameter("revalidateMaxAge"), -1);
+        String types = conf.getInitParameter("compressibleTypes");
+        compressibleTypes = Arrays.stream((types == null ? DEFAULT_COMPRESSIBLE_TYPES : types).split(":"))
+                .map(type -> type.trim().toLowerCase(Locale.ROOT))
+                .filter(UtilValidate::isNotEmpty)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Converts {@code size} string to an integer.  If conversion fails, Return {@code defaultSize} instead.
+     * @param size an arbitrary string which can be {@code null}
+     * @param defaultSize the value used when {@code size} is not set or is not a number
+     * @return the integer matching {@code size}
+     */
+    private static int readSize(String size, int defaultSize) {
+        if (UtilValidate.isEmpty(size)) {
+            return defaultSize;
+        }
+        try {
+            return Integer.parseInt(size.trim());
+        } catch (NumberFormatException err) {
+            Debug.logWarning(err, "Size specified would not parse to Integer: " + size + ", using " + defaultSize, MODULE);
+            return defaultSize;
+        }
+    }
+
+    @Override
+    public void doFilter(HttpServletRequest req, HttpServletResponse resp, FilterChain chain)
+            throws IOException, ServletException {
+        boolean revalidated = false;
+        if (staticMaxAge >= 0 && isVersioned(req.getRequestURI(), req.getQueryString())) {
+            resp.setHeader("Cache-Control", "public, max-age=" + staticMaxAge);
+            resp.setDateHeader("Expires", System.currentTimeMillis() + staticMaxAge * 1000L);
+        } else if (revalidateMaxAge >= 0) {
+            resp.setHeader("Cache-Control", "public, max-age=" + revalidateMaxAge + ", must-revalidate");
+            revalidated = true;
+        }
+        if (req.isAsyncSupported()) {
+            chain.doFilter(req, resp);
+            return;
+        }
+        boolean gzipAccepted = compressionMinSize >= 0 && acceptsGzip(req.getHeader("Accept-Encoding"));
+        OptimizedResponse optimizedResp = new OptimizedResponse(resp, gzipAccepted);
+        chain.doFilter(req, optimizedResp);
+        boolean tagged = Boolean.TRUE.equals(req.getAttribute(CACHEABLE_VIEW)) || (revalidated && resp.getHeader("ETag") == null);
+        optimizedResp.finish(tagged, req.getHeader("If-None-Match"));
+    }
+
+    /**
+     * Checks if a request targets a versioned path, which content never changes.
+     * @param uri the request URI
+     * @param queryString the query string of the request, can be {@code null}
+     * @return {@code true} if the versioned paths pattern is found in the URI or the query string
+     */
+    boolean isVersioned(String uri, String queryString) {
+        return versionedPaths.matcher(queryString == null ? uri : uri + "?" + queryString).find();
+    }
+
+    /**
+     * Checks if an Accept-Encoding header value allows gzip.
+     * @param acceptEncoding the Accept-Encoding header value, can be {@code null}
+     * @return {@code true} if gzip is listed with a non zero quality value
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            if (!"gzip".equalsIgnoreCase(parts[0].trim())) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if an If-None-Match header value matches an entity tag, using the weak comparison.
+     * @param ifNoneMatch the If-None-Match header value, can be {@code null}
+     * @param etag the entity tag of the current representation
+     * @return {@code true} if the browser already has the current representation
+     */
+    static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || etag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes a strong entity tag from the content of a response.
+     * The compressed and uncompressed representations of the same content get different tags.
+     * @param content the uncompressed content
+     * @param gzipped true if the representation sent is compressed
+     * @return the quoted entity tag
+     */
+    static String computeETag(byte[] content, boolean gzipped) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            String hash = Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 18));
+            return "\"" + hash + (gzipped ? "-gz" : "") + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int paramIndex = contentType.indexOf(';');
+        String mimeType = paramIndex < 0 ? contentType : contentType.substring(0, paramIndex);
+        return compressibleTypes.contains(mimeType.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * A response buffering the output of compressible content types until the end of the request processing.
+     */
+    final class OptimizedResponse extends HttpServletResponseWrapper {
+        private final boolean gzipAccepted;
+        /** The buffered output, {@code null} once the output is streamed. */
+        private ByteArrayOutputStream buffer;
+        /** Where the output is currently written. */
+        private OutputStream target;
+        private GZIPOutputStream gzipStream;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+        private long contentLength = -1;
+        private boolean discarded;
+
+        OptimizedResponse(HttpServletResponse response, boolean gzipAccepted) {
+            super(response);
+            this.gzipAccepted = gzipAccepted;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called for this response");
+            }
+            if (outputStream == null) {
+                openTarget();
+                outputStream = new TargetOutputStream();
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called for this response");
+                }
+                String encoding = getCharacterEncoding();
+                if (encoding == null) {
+                    encoding = StandardCharsets.ISO_8859_1.name();
+                }
+                // make the charset part of the content type as the servlet container does when opening its writer
+                setCharacterEncoding(encoding);
+                openTarget();
+                outputStream = new TargetOutputStream();
+                writer = new PrintWriter(new OutputStreamWriter(outputStream, encoding));
+            }
+            return writer;
+        }
+
+        private void openTarget() throws IOException {
+            if (target != null) {
+                return;
+            }
+            if (isCompressible(getContentType()) && getHeader("Content-Encoding") == null) {
+                varyOnAcceptEncoding();
+                buffer = new ByteArrayOutputStream();
+                target = buffer;
+            } else {
+                target = openResponseStream();
+            }
+        }
+
+        /**
+         * Opens the output stream of the wrapped response, compressing it when possible.
+         * @return the stream where to write the output
+         * @throws IOException if the output stream of the wrapped response can not be obtained
+         */
+        private OutputStream openResponseStream() throws IOException {
+            OutputStream out = getResponse().getOutputStream();
+            boolean compressible = compressionMinSize >= 0 && isCompressible(getContentType()) && getHeader("Content-Encoding") == null;
+            if (compressible) {
+                varyOnAcceptEncoding();
+            }
+            if (compressible && gzipAccepted && getStatus() == SC_OK) {
+                setHeader("Content-Encoding", "gzip");
+                gzipStream = new GZIPOutputStream(out, 8192);
+                return gzipStream;
+            }
+            if (contentLength >= 0) {
+                getResponse().setContentLengthLong(contentLength);
+            }
+            return out;
+        }
+
+        /** Tells the caches that the response can be compressed depending on the request. */
+        private void varyOnAcceptEncoding() {
+            if (compressionMinSize >= 0 && getHeaders("Vary").stream().noneMatch(vary -> vary.contains("Accept-Encoding"))) {
+                addHeader("Vary", "Accept-Encoding");
+            }
+        }
+
+        /** Streams the output when it does not fit in the buffer anymore. */
+        private void ensureCapacity(int len) throws IOException {
+            if (buffer != null && buffer.size() + len > bufferMaxSize) {
+                byte[] content = buffer.toByteArray();
+                buffer = null;
+                target = openResponseStream();
+                target.write(content);
+            }
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            contentLength = len;
+            if (buffer == null && target != null && gzipStream == null) {
+                getResponse().setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (buffer == null) {
+                if (target != null) {
+                    target.flush();
+                }
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (buffer != null) {
+                if (writer != null) {
+                    writer.flush();
+                }
+                buffer.reset();
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            contentLength = -1;
+            if (buffer != null) {
+                if (writer != null) {
+                    writer.flush();
+                }
+                buffer.reset();
+            }
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            discard();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            discard();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            discard();
+            super.sendRedirect(location);
+        }
+
+        private void discard() {
+            discarded = true;
+            buffer = null;
+            target = OutputStream.nullOutputStream();
+        }
+
+        /**
+         * Sends the buffered output, or terminates the compressed stream.
+         * @param tagged true if the response gets an ETag, the view rendered has been declared cacheable or the
+         * static resource is revalidated
+         * @param ifNoneMatch the If-None-Match header value of the request
+         * @throws IOException if the output can not be sent
+         */
+        void finish(boolean tagged, String ifNoneMatch) throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (discarded) {
+                return;
+            }
+            if (buffer == null) {
+                if (gzipStream != null) {
+                    gzipStream.finish();
+                }
+                return;
+            }
+            byte[] content = buffer.toByteArray();
+            buffer = null;
+            // the headers are cleared by a reset of the response
+            varyOnAcceptEncoding();
+            boolean compress = gzipAccepted && content.length >= compressionMinSize && getStatus() == SC_OK;
+            if (tagged && getStatus() == SC_OK) {
+                String etag = computeETag(content, compress);
+                setHeader("ETag", etag);
+                if (matchesETag(ifNoneMatch, etag)) {
+                    setStatus(SC_NOT_MODIFIED);
+                    return;
+                }
+            }
+            if (compress) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4 + 64);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(content);
+                }
+                content = compressed.toByteArray();
+                setHeader("Content-Encoding", "gzip");
+            }
+            getResponse().setContentLength(content.length);
+            getResponse().getOutputStream().write(content);
+        }
+
+        /** The stream handed to the servlets, writing to the current target. */
+        private final class TargetOutputStream extends ServletOutputStream {
+            @Override
+            public void write(int b) throws IOException {
+                ensureCapacity(1);
+                target.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ensureCapacity(len);
+                target.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (buffer == null) {
+                    target.flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                // the output is completed when the filter chain returns
+                flush();
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                // the asynchronous requests are not wrapped, the container rejects the listener of the other ones
+                try {
+                    getResponse().getOutputStream().setWriteListener(writeListener);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
@@ -23,6 +23,8 @@ import java.util.Deque;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -30,6 +32,7 @@ import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilHttp;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.DelegatorFactory;
 import org.apache.ofbiz.entity.GenericEntityException;
@@ -71,6 +74,9 @@ public final class ServerHitBin {
     private static final ConcurrentMap<String, ServerHitBin> ENTITY_SINCE_STARTED = new ConcurrentHashMap<>();
     private static final ConcurrentMap<String, ServerHitBin> SERVICE_SINCE_STARTED = new ConcurrentHashMap<>();
 
+    // the serverstats settings by delegator name, read again once the cache is cleared
+    private static final UtilCache<String, Settings> SETTINGS_CACHE = UtilCache.createUtilCache("webapp.ServerHitBinSettings", 0, 0);
+
     public static void countRequest(String id, HttpServletRequest request, long startTime, long runningTime, GenericValue userLogin) {
         countHit(id, REQUEST, request, startTime, runningTime, userLogin);
     }
@@ -92,9 +98,47 @@ public final class ServerHitBin {
     }
 
     private static void countHit(String id, int type, HttpServletRequest request, long startTime, long runningTime, GenericValue userLogin) {
+        Delegator delegator = (Delegator) request.getAttribute("delegator");
+        if (delegator == null) {
+            String delegatorName = (String) request.getSession().getAttribute("delegatorName");
+            delegator = DelegatorFactory.getDelegator(delegatorName);
+        }
+        if (delegator == null) {
+            throw new IllegalArgumentException("In countHit could not find a delegator or delegatorName to work from");
+        }
+        Settings settings = getSettings(delegator);
         // only count hits if enabled, if not specified defaults to false
-        if (!"true".equals(UtilProperties.getPropertyValue("serverstats", "stats.enable." + TYPE_IDS[type]))) return;
-        countHit(id, type, request, startTime, runningTime, userLogin, true);
+        if (!settings.enabled[type]) return;
+        countHit(id, type, request, startTime, runningTime, userLogin, true, delegator, settings);
+    }
+
+    private static Settings getSettings(Delegator delegator) {
+        Settings settings = SETTINGS_CACHE.get(delegator.getDelegatorName());
+        if (settings == null) {
+            settings = SETTINGS_CACHE.putIfAbsentAndGet(delegator.getDelegatorName(), new Settings(delegator));
+        }
+        return settings;
+    }
+
+    /**
+     * The serverstats.properties settings, resolved once instead of on each hit.
+     */
+    private static final class Settings {
+        private final boolean[] enabled = new boolean[TYPE_IDS.length];
+        private final boolean[] persistBin = new boolean[TYPE_IDS.length];
+        private final boolean[] persistHit = new boolean[TYPE_IDS.length];
+        private final long binLength;
+
+        private Settings(Delegator delegator) {
+            for (int type = REQUEST; type < TYPE_IDS.length; type++) {
+                enabled[type] = "true".equals(UtilProperties.getPropertyValue("serverstats", "stats.enable." + TYPE_IDS[type]));
+                persistBin[type] = EntityUtilProperties.propertyValueEqualsIgnoreCase("serverstats", "stats.persist." + TYPE_IDS[type]
+                        + ".bin", "true", delegator);
+                persistHit[type] = EntityUtilProperties.propertyValueEqualsIgnoreCase("serverstats", "stats.persist." + TYPE_IDS[type]
+                        + ".hit", "true", delegator);
+            }
+            binLength = getNewBinLength();
+        }
     }
 
     private static String makeIdTenantAware(String id, Delegator delegator) {
@@ -135,16 +179,7 @@ public final class ServerHitBin {
     }
 
     private static void countHit(String baseId, int type, HttpServletRequest request, long startTime, long runningTime, GenericValue userLogin,
-                                 boolean isOriginal) {
-        Delegator delegator = (Delegator) request.getAttribute("delegator");
-        if (delegator == null) {
-            String delegatorName = (String) request.getSession().getAttribute("delegatorName");
-            delegator = DelegatorFactory.getDelegator(delegatorName);
-        }
-        if (delegator == null) {
-            throw new IllegalArgumentException("In countHit could not find a delegator or delegatorName to work from");
-        }
-
+                                 boolean isOriginal, Delegator delegator, Settings settings) {
         String id = makeIdTenantAware(baseId, delegator);
 
         ServerHitBin bin = null;
@@ -202,7 +237,7 @@ public final class ServerHitBin {
         do {
             bin = binList.peek();
             if (bin == null) {
-                binList.addFirst(new ServerHitBin(id, type, true, delegator));
+                binList.addFirst(new ServerHitBin(id, type, true, delegator, settings.binLength));
             }
         } while (bin == null);
 
@@ -214,8 +249,7 @@ public final class ServerHitBin {
             // put the copy at the first of the list, then put this object back on
             if (bin.getNumberHits() > 0) {
                 // persist each bin when time ends if option turned on
-                if (EntityUtilProperties.propertyValueEqualsIgnoreCase("serverstats", "stats.persist." + ServerHitBin.TYPE_IDS[type]
-                        + ".bin", "true", delegator)) {
+                if (settings.persistBin[type]) {
                     GenericValue serverHitBin = delegator.makeValue("ServerHitBin");
                     serverHitBin.set("contentId", bin.id);
                     serverHitBin.set("hitTypeId", ServerHitBin.TYPE_IDS[bin.type]);
@@ -230,11 +264,8 @@ public final class ServerHitBin {
                         serverHitBin.set("serverIpAddress", VisitHandler.ADDRESS.getHostAddress());
                         serverHitBin.set("serverHostName", VisitHandler.ADDRESS.getHostName());
                     }
-                    try {
-                        delegator.createSetNextSeqId(serverHitBin);
-                    } catch (GenericEntityException e) {
-                        Debug.logError(e, "Could not save ServerHitBin:", MODULE);
-                    }
+                    serverHitBin.setNextSeqId();
+                    ServerHitWriter.enqueue(serverHitBin);
                 }
             } else {
                 binList.pollFirst();
@@ -244,33 +275,29 @@ public final class ServerHitBin {
         }
 
         bin.addHit(runningTime);
-        if (isOriginal) {
-            try {
-                bin.saveHit(request, startTime, runningTime, userLogin);
-            } catch (GenericEntityException e) {
-                Debug.logWarning("Error saving ServerHit: " + e.toString(), MODULE);
-            }
+        if (isOriginal && settings.persistHit[type]) {
+            bin.saveHit(request, startTime, runningTime, userLogin);
         }
 
         // count since start global and per id hits
         if (!id.startsWith("GLOBAL")) {
-            countHitSinceStart(id, type, runningTime, delegator);
+            countHitSinceStart(id, type, runningTime, delegator, settings);
             if (isOriginal) {
-                countHitSinceStart(makeIdTenantAware("GLOBAL", delegator), type, runningTime, delegator);
+                countHitSinceStart(makeIdTenantAware("GLOBAL", delegator), type, runningTime, delegator, settings);
             }
         }
 
         // also count hits up the hierarchy if the id contains a '.'
         if (id.indexOf('.') > 0) {
-            countHit(id.substring(0, id.lastIndexOf('.')), type, request, startTime, runningTime, userLogin, false);
+            countHit(id.substring(0, id.lastIndexOf('.')), type, request, startTime, runningTime, userLogin, false, delegator, settings);
         }
 
         if (isOriginal) {
-            countHit("GLOBAL", type, request, startTime, runningTime, userLogin, false);
+            countHit("GLOBAL", type, request, startTime, runningTime, userLogin, false, delegator, settings);
         }
     }
 
-    private static void countHitSinceStart(String id, int type, long runningTime, Delegator delegator) {
+    private static void countHitSinceStart(String id, int type, long runningTime, Delegator delegator, Settings settings) {
         ServerHitBin bin = null;
 
         switch (type) {
@@ -296,7 +323,7 @@ public final class ServerHitBin {
         }
 
         if (bin == null) {
-            bin = new ServerHitBin(id, type, false, delegator);
+            bin = new ServerHitBin(id, type, false, delegator, settings.binLength);
             ServerHitBin binFromMap = null;
             switch (type) {
             case REQUEST:
@@ -332,17 +359,18 @@ public final class ServerHitBin {
     private final long startTime;
     private final long endTime;
 
-    private long numberHits;
-    private long totalRunningTime;
-    private long minTime;
-    private long maxTime;
+    // lock free counters, hits are counted concurrently by the request threads
+    private final LongAdder numberHits = new LongAdder();
+    private final LongAdder totalRunningTime = new LongAdder();
+    private final LongAccumulator minTime = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator maxTime = new LongAccumulator(Math::max, 0);
 
-    private ServerHitBin(String id, int type, boolean limitLength, Delegator delegator) {
+    private ServerHitBin(String id, int type, boolean limitLength, Delegator delegator, long binLength) {
         this.id = id;
         this.type = type;
         this.limitLength = limitLength;
         this.delegator = delegator;
-        this.binLength = getNewBinLength();
+        this.binLength = binLength;
         this.startTime = getEvenStartingTime(this.binLength);
         if (this.limitLength) {
             // subtract 1 millisecond to keep bin starting times even
@@ -350,10 +378,6 @@ public final class ServerHitBin {
         } else {
             this.endTime = 0;
         }
-        this.numberHits = 0;
-        this.totalRunningTime = 0;
-        this.minTime = Long.MAX_VALUE;
-        this.maxTime = 0;
     }
 
     private ServerHitBin(ServerHitBin oldBin, long startTime) {
@@ -370,10 +394,6 @@ public final class ServerHitBin {
         } else {
             this.endTime = 0;
         }
-        this.numberHits = 0;
-        this.totalRunningTime = 0;
-        this.minTime = Long.MAX_VALUE;
-        this.maxTime = 0;
     }
 
     public Delegator getDelegator() {
@@ -419,20 +439,20 @@ public final class ServerHitBin {
         return (this.getBinLength()) / 60000.0;
     }
 
-    public synchronized long getNumberHits() {
-        return this.numberHits;
+    public long getNumberHits() {
+        return this.numberHits.sum();
     }
 
-    public synchronized long getMinTime() {
-        return this.minTime;
+    public long getMinTime() {
+        return this.minTime.get();
     }
 
-    public synchronized long getMaxTime() {
-        return this.maxTime;
+    public long getMaxTime() {
+        return this.maxTime.get();
     }
 
-    public synchronized long getTotalRunningTime() {
-        return this.totalRunningTime;
+    public long getTotalRunningTime() {
+        return this.totalRunningTime.sum();
     }
 
     public double getMinTimeSeconds() {
@@ -443,7 +463,7 @@ public final class ServerHitBin {
         return (this.getMaxTime()) / 1000.0;
     }
 
-    public synchronized double getAvgTime() {
+    public double getAvgTime() {
         return ((double) this.getTotalRunningTime()) / ((double) this.getNumberHits());
     }
 
@@ -456,32 +476,28 @@ public final class ServerHitBin {
         return this.getNumberHits() / this.getBinLengthMinutes();
     }
 
-    private synchronized void addHit(long runningTime) {
-        this.numberHits++;
-        this.totalRunningTime += runningTime;
-        if (runningTime < this.minTime) {
-            this.minTime = runningTime;
-        }
-        if (runningTime > this.maxTime) {
-            this.maxTime = runningTime;
-        }
+    private void addHit(long runningTime) {
+        this.numberHits.increment();
+        this.totalRunningTime.add(runningTime);
+        this.minTime.accumulate(runningTime);
+        this.maxTime.accumulate(runningTime);
     }
 
-    private void saveHit(HttpServletRequest request, long startTime, long runningTime, GenericValue userLogin) throws GenericEntityException {
-        // persist record of hit in ServerHit entity if option turned on
+    /** Queues the record of the hit in the ServerHit entity, it is created later by the ServerHitWriter */
+    private void saveHit(HttpServletRequest request, long startTime, long runningTime, GenericValue userLogin) {
+        // if the hit type is ENTITY and the name contains "ServerHit" don't
+        // persist; avoids the infinite loop and a bunch of annoying data
+        if (this.type == ENTITY && this.id.indexOf("ServerHit") > 0) {
+            return;
+        }
         Delegator delegator = (Delegator) request.getAttribute("delegator");
-        if (EntityUtilProperties.propertyValueEqualsIgnoreCase("serverstats", "stats.persist." + ServerHitBin.TYPE_IDS[type]
-                + ".hit", "true", delegator)) {
-            // if the hit type is ENTITY and the name contains "ServerHit" don't
-            // persist; avoids the infinite loop and a bunch of annoying data
-            if (this.type == ENTITY && this.id.indexOf("ServerHit") > 0) {
-                return;
-            }
-
+        if (delegator == null) {
+            delegator = this.delegator;
+        }
+        try {
             // check for type data before running.
-            GenericValue serverHitType = null;
-
-            serverHitType = EntityQuery.use(delegator).from("ServerHitType").where("hitTypeId", ServerHitBin.TYPE_IDS[this.type]).cache().queryOne();
+            GenericValue serverHitType = EntityQuery.use(delegator).from("ServerHitType").where("hitTypeId", ServerHitBin.TYPE_IDS[this.type])
+                    .cache().queryOne();
             if (serverHitType == null) {
                 // datamodel data not loaded; not storing hit.
                 Debug.logWarning("The datamodel data has not been loaded; cannot find hitTypeId '" + ServerHitBin.TYPE_IDS[this.type]
@@ -496,16 +512,8 @@ public final class ServerHitBin {
                         + " persistance of visits you should also turn off persistence of hits.", MODULE);
                 return;
             }
+            // a Visit stored in the client session which does not exist in database will only make the creation of the hit fail
             String visitId = visit.getString("visitId");
-            visit = EntityQuery.use(delegator).from("Visit").where("visitId", visitId).queryOne();
-            if (visit == null) {
-                // GenericValue stored in client session does not exist in database.
-                Debug.logInfo("The Visit GenericValue stored in the client session does not exist in the database, not storing server hit.", MODULE);
-                return;
-            }
-
-            Debug.logInfo("Visit delegatorName=" + visit.getDelegator().getDelegatorName() + ", ServerHitBin delegatorName="
-                    + this.delegator.getDelegatorName(), MODULE);
 
             GenericValue serverHit = delegator.makeValue("ServerHit");
 
@@ -535,7 +543,9 @@ public final class ServerHitBin {
                 serverHit.set("serverHostName", VisitHandler.ADDRESS.getHostName());
             }
 
-            serverHit.create();
+            ServerHitWriter.enqueue(serverHit);
+        } catch (GenericEntityException e) {
+            Debug.logWarning("Error saving ServerHit: " + e.toString(), MODULE);
         }
     }
 }
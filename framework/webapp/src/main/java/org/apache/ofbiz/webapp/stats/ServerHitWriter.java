@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webapp.stats;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+
+/**
+ * <p>Persists the server hit statistics (ServerHit and ServerHitBin records) outside of the request threads.
+ * <p>The records are queued in a bounded buffer and created by a single background thread,
+ *  in batches sharing one transaction. When the buffer is full the records are dropped
+ *  rather than slowing down the requests, and the number of dropped records is counted.
+ * <p>Settings are read from the serverstats.properties file: stats.writer.queue.size,
+ *  stats.writer.batch.size and stats.writer.flush.millis.
+ * <p>The {@link ServerHitWriterContainer} writes the queued records when the server shuts down,
+ *  the records of the requests still running are then created synchronously.
+ */
+public final class ServerHitWriter {
+    private static final String MODULE = ServerHitWriter.class.getName();
+
+    private static final int QUEUE_SIZE = UtilProperties.getPropertyAsInteger("serverstats", "stats.writer.queue.size", 10000);
+    private static final int BATCH_SIZE = UtilProperties.getPropertyAsInteger("serverstats", "stats.writer.batch.size", 200);
+    private static final long FLUSH_MILLIS = UtilProperties.getPropertyAsLong("serverstats", "stats.writer.flush.millis", 1000);
+
+    private static final BlockingQueue<GenericValue> QUEUE = new ArrayBlockingQueue<>(Math.max(QUEUE_SIZE, 1));
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final LongAdder WRITTEN = new LongAdder();
+    private static final ScheduledExecutorService EXECUTOR = ExecutionPool.getScheduledExecutor(null, "OFBiz-ServerHitWriter", 1, 0, true);
+
+    private static volatile boolean closed = false;
+    // only accessed by the writer thread
+    private static long droppedReported = 0;
+
+    static {
+        EXECUTOR.scheduleWithFixedDelay(ServerHitWriter::flush, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private ServerHitWriter() { }
+
+    /**
+     * Queues a record to be created in the background, the record is dropped if the queue is full.
+     * @param value the record to create, its primary key must be complete
+     * @return {@code true} if the record has been queued
+     */
+    public static boolean enqueue(GenericValue value) {
+        if (closed) {
+            write(List.of(value));
+            return true;
+        }
+        if (QUEUE.offer(value)) {
+            if (closed) {
+                // queued while shutting down, after the last flush
+                flush();
+            }
+            return true;
+        }
+        DROPPED.increment();
+        return false;
+    }
+
+    /** Returns the number of records dropped since the server started because the queue was full */
+    public static long getDroppedCount() {
+        return DROPPED.sum();
+    }
+
+    /** Returns the number of records created since the server started */
+    public static long getWrittenCount() {
+        return WRITTEN.sum();
+    }
+
+    /** Returns the number of records waiting to be created */
+    public static int getPendingCount() {
+        return QUEUE.size();
+    }
+
+    /**
+     * Stops the background writing and creates the queued records, the records queued afterward are created
+     * synchronously.
+     */
+    public static void shutdown() {
+        closed = true;
+        EXECUTOR.shutdown();
+        try {
+            EXECUTOR.awaitTermination(FLUSH_MILLIS * 10, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /** Creates all the queued records, batch after batch */
+    static synchronized void flush() {
+        try {
+            List<GenericValue> batch = new ArrayList<>(BATCH_SIZE);
+            while (QUEUE.drainTo(batch, BATCH_SIZE) > 0) {
+                // a batch only shares a transaction with records of the same delegator
+                Map<String, List<GenericValue>> batchByDelegator = new LinkedHashMap<>();
+                for (GenericValue value : batch) {
+                    batchByDelegator.computeIfAbsent(value.getDelegator().getDelegatorName(), k -> new ArrayList<>()).add(value);
+                }
+                batchByDelegator.values().forEach(ServerHitWriter::write);
+                batch.clear();
+            }
+            long dropped = DROPPED.sum();
+            if (dropped > droppedReported) {
+                Debug.logWarning("The server hit statistics queue was full, " + (dropped - droppedReported)
+                        + " records have been dropped; consider increasing stats.writer.queue.size in serverstats.properties", MODULE);
+                droppedReported = dropped;
+            }
+        } catch (RuntimeException e) {
+            // never let an exception cancel the scheduled flush
+            Debug.logError(e, "Error while writing the server hit statistics", MODULE);
+        }
+    }
+
+    private static void write(List<GenericValue> values) {
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin();
+            values.get(0).getDelegator().createAllByBatchProcess(values);
+            TransactionUtil.commit(beganTransaction);
+            WRITTEN.add(values.size());
+        } catch (GenericEntityException e) {
+            try {
+                TransactionUtil.rollback(beganTransaction, "Error creating server hit statistics in batch", e);
+            } catch (GenericTransactionException e2) {
+                Debug.logError(e2, "Unable to rollback the server hit statistics batch", MODULE);
+            }
+            // create the records one by one so that a single bad record does not discard the whole batch
+            for (GenericValue value : values) {
+                try {
+                    value.create();
+                    WRITTEN.increment();
+                } catch (GenericEntityException e3) {
+                    Debug.logWarning("Could not save " + value.getEntityName() + ": " + e3.toString(), MODULE);
+                }
+            }
+        }
+    }
+}
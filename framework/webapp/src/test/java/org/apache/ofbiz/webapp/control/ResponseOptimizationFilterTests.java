@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ofbiz.webapp.control;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResponseOptimizationFilterTests {
+
+    private static final String PAGE = "<html><body>" + "<tr><td>Row</td></tr>".repeat(200) + "</body></html>";
+
+    private FilterConfig config;
+    private ResponseOptimizationFilter filter;
+    private HttpServletRequest req;
+    private HttpServletResponse resp;
+    private FilterChain next;
+    private ByteArrayOutputStream sent;
+
+    @Before
+    public void setUp() throws Exception {
+        config = mock(FilterConfig.class);
+        when(config.getInitParameter(anyString())).thenReturn(null);
+        req = mock(HttpServletRequest.class);
+        resp = mock(HttpServletResponse.class);
+        when(resp.getContentType()).thenReturn("text/html; charset=UTF-8");
+        when(resp.getCharacterEncoding()).thenReturn("UTF-8");
+        when(resp.getStatus()).thenReturn(HttpServletResponse.SC_OK);
+        sent = new ByteArrayOutputStream();
+        when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                sent.write(b);
+            }
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        });
+        next = mock(FilterChain.class);
+        doAnswer(invocation -> {
+            ServletResponse response = invocation.getArgument(1);
+            response.getWriter().write(PAGE);
+            response.flushBuffer();
+            return null;
+        }).when(next).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+        filter = new ResponseOptimizationFilter();
+        filter.init(config);
+    }
+
+    private static String gunzip(byte[] content) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void compressesWhenGzipIsAccepted() throws Exception {
+        when(req.getHeader("Accept-Encoding")).thenReturn("gzip, deflate, br");
+        filter.doFilter(req, resp, next);
+        verify(resp).setHeader("Content-Encoding", "gzip");
+        assertTrue(sent.size() < PAGE.length());
+        assertEquals(PAGE, gunzip(sent.toByteArray()));
+    }
+
+    @Test
+    public void doesNotCompressWhenGzipIsNotAccepted() throws Exception {
+        when(req.getHeader("Accept-Encoding")).thenReturn("gzip;q=0, identity");
+        filter.doFilter(req, resp, next);
+        verify(resp, never()).setHeader("Content-Encoding", "gzip");
+        assertArrayEquals(PAGE.getBytes(StandardCharsets.UTF_8), sent.toByteArray());
+    }
+
+    @Test
+    public void doesNotCompressSmallResponses() throws Exception {
+        when(config.getInitParameter("compressionMinSize")).thenReturn(String.valueOf(PAGE.length() + 1));
+        when(req.getHeader("Accept-Encoding")).thenReturn("gzip");
+        filter.init(config);
+        filter.doFilter(req, resp, next);
+        verify(resp, never()).setHeader("Content-Encoding", "gzip");
+        assertEquals(PAGE, sent.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void doesNotBufferUncompressibleResponses() throws Exception {
+        when(resp.getContentType()).thenReturn("application/pdf");
+        when(req.getHeader("Accept-Encoding")).thenReturn("gzip");
+        filter.doFilter(req, resp, next);
+        verify(resp, never()).setHeader("Content-Encoding", "gzip");
+        verify(resp).flushBuffer();
+        assertEquals(PAGE, sent.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void streamsResponsesBiggerThanTheBuffer() throws Exception {
+        when(config.getInitParameter("bufferMaxSize")).thenReturn("100");
+        when(req.getHeader("Accept-Encoding")).thenReturn("gzip");
+        filter.init(config);
+        filter.doFilter(req, resp, next);
+        verify(resp).setHeader("Content-Encoding", "gzip");
+        assertEquals(PAGE, gunzip(sent.toByteArray()));
+    }
+
+    @Test
+    public void answersNotModifiedForCacheableViews() throws Exception {
+        when(req.getAttribute(ResponseOptimizationFilter.CACHEABLE_VIEW)).thenReturn(Boolean.TRUE);
+        String etag = ResponseOptimizationFilter.computeETag(PAGE.getBytes(StandardCharsets.UTF_8), false);
+        when(req.getHeader("If-None-Match")).thenReturn("\"other\", " + etag);
+        filter.doFilter(req, resp, next);
+        verify(resp).setHeader("ETag", etag);
+        verify(resp).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertEquals(0, sent.size());
+    }
+
+    @Test
+    public void sendsContentWhenETagDoesNotMatch() throws Exception {
+        when(req.getAttribute(ResponseOptimizationFilter.CACHEABLE_VIEW)).thenReturn(Boolean.TRUE);
+        when(req.getHeader("If-None-Match")).thenReturn("\"other\"");
+        filter.doFilter(req, resp, next);
+        verify(resp, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        assertEquals(PAGE, sent.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void addsFarFutureHeadersForVersionedResources() throws Exception {
+        when(config.getInitParameter("staticMaxAge")).thenReturn("31536000");
+        when(config.getInitParameter("revalidateMaxAge")).thenReturn("3600");
+        when(req.getRequestURI()).thenReturn("/common-theme/js/jquery/jquery-3.5.1.min.js");
+        filter.init(config);
+        filter.doFilter(req, resp, next);
+        verify(resp).setHeader("Cache-Control", "public, max-age=31536000");
+        verify(resp, never()).setHeader(eq("ETag"), anyString());
+    }
+
+    @Test
+    public void revalidatesUnversionedResources() throws Exception {
+        when(config.getInitParameter("staticMaxAge")).thenReturn("31536000");
+        when(config.getInitParameter("revalidateMaxAge")).thenReturn("300");
+        when(req.getRequestURI()).thenReturn("/images/products/10000/small.png");
+        filter.init(config);
+        filter.doFilter(req, resp, next);
+        verify(resp).setHeader("Cache-Control", "public, max-age=300, must-revalidate");
+        verify(resp, never()).setHeader("Cache-Control", "public, max-age=31536000");
+        verify(resp).setHeader("ETag", ResponseOptimizationFilter.computeETag(PAGE.getBytes(StandardCharsets.UTF_8), false));
+    }
+
+    @Test
+    public void findsVersionedPaths() throws Exception {
+        filter.init(config);
+        assertTrue(filter.isVersioned("/common-theme/js/jquery/ui/jquery-ui-1.13.2.min.js", null));
+        assertTrue(filter.isVersioned("/common-theme/js/plugins/select2-4.0.6/js/select2.min.js", null));
+        assertTrue(filter.isVersioned("/tomahawk/css/style.3f2a9c41d7.css", null));
+        assertTrue(filter.isVersioned("/tomahawk/css/style.css", "v=12"));
+        assertFalse(filter.isVersioned("/images/products/10000/small.png", null));
+        assertFalse(filter.isVersioned("/images/products/GZ-1000/large.jpg", null));
+    }
+
+    @Test
+    public void variesOnAcceptEncodingWhenNotCompressed() throws Exception {
+        when(config.getInitParameter("bufferMaxSize")).thenReturn("100");
+        filter.init(config);
+        filter.doFilter(req, resp, next);
+        verify(resp, never()).setHeader("Content-Encoding", "gzip");
+        verify(resp, atLeastOnce()).addHeader("Vary", "Accept-Encoding");
+        assertEquals(PAGE, sent.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void doesNotWrapAsynchronousRequests() throws Exception {
+        when(req.isAsyncSupported()).thenReturn(true);
+        when(req.getHeader("Accept-Encoding")).thenReturn("gzip");
+        filter.doFilter(req, resp, next);
+        verify(next).doFilter(req, resp);
+        verify(resp, never()).setHeader("Content-Encoding", "gzip");
+    }
+
+    @Test
+    public void delegatesWriteListener() throws Exception {
+        ServletOutputStream out = mock(ServletOutputStream.class);
+        when(resp.getOutputStream()).thenReturn(out);
+        WriteListener listener = mock(WriteListener.class);
+        doAnswer(invocation -> {
+            ServletResponse response = invocation.getArgument(1);
+            response.getOutputStream().setWriteListener(listener);
+            return null;
+        }).when(next).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+        filter.doFilter(req, resp, next);
+        verify(out).setWriteListener(listener);
+    }
+
+    @Test
+    public void parsesAcceptEncoding() {
+        assertTrue(ResponseOptimizationFilter.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertFalse(ResponseOptimizationFilter.acceptsGzip("gzip;q=0"));
+        assertFalse(ResponseOptimizationFilter.acceptsGzip("br"));
+        assertFalse(ResponseOptimizationFilter.acceptsGzip(null));
+    }
+
+    @Test
+    public void distinguishesCompressedRepresentations() {
+        byte[] content = PAGE.getBytes(StandardCharsets.UTF_8);
+        String etag = ResponseOptimizationFilter.computeETag(content, false);
+        assertNotEquals(etag, ResponseOptimizationFilter.computeETag(content, true));
+        assertTrue(ResponseOptimizationFilter.matchesETag("W/" + etag, etag));
+        assertTrue(ResponseOptimizationFilter.matchesETag("*", etag));
+        assertFalse(ResponseOptimizationFilter.matchesETag(null, etag));
+    }
+}
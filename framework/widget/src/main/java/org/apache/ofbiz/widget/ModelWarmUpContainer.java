@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.ofbiz.base.component.ComponentConfig;
+import org.apache.ofbiz.base.component.ComponentConfig.WebappInfo;
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.container.Container;
+import org.apache.ofbiz.base.container.ContainerConfig;
+import org.apache.ofbiz.base.container.ContainerException;
+import org.apache.ofbiz.base.start.StartupCommand;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.DelegatorFactory;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.ServiceContainer;
+import org.apache.ofbiz.webapp.control.ConfigXMLReader;
+import org.apache.ofbiz.widget.model.FormFactory;
+import org.apache.ofbiz.widget.model.MenuFactory;
+import org.apache.ofbiz.widget.model.ScreenFactory;
+import org.apache.ofbiz.widget.model.ThemeFactory;
+import org.apache.ofbiz.widget.renderer.VisualTheme;
+
+/**
+ * Reads the screen, form and menu definitions of all the components, the controllers of all the
+ * webapps and the service definitions when OFBiz starts, so that the first requests do not have to.
+ * <p>The files are read in parallel on the {@link ExecutionPool#GLOBAL_FORK_JOIN} pool, in the background
+ * unless the <code>wait-for-completion</code> property is <code>true</code>. The forms and menus are
+ * read for the default visual theme (<code>VISUAL_THEME</code> in general.properties).</p>
+ * <p>The container is declared without loader in the widget component, add <code>loaders="main"</code>
+ * to its declaration to enable it.</p>
+ */
+public class ModelWarmUpContainer implements Container {
+
+    private static final String MODULE = ModelWarmUpContainer.class.getName();
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private String name;
+    private String delegatorName;
+    private boolean waitForCompletion;
+    private final LongAdder filesRead = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    @Override
+    public void init(List<StartupCommand> ofbizCommands, String name, String configFile) throws ContainerException {
+        this.name = name;
+        ContainerConfig.Configuration cfg = ContainerConfig.getConfiguration(name);
+        this.delegatorName = ContainerConfig.getPropertyValue(cfg, "delegator-name", "default");
+        this.waitForCompletion = ContainerConfig.getPropertyValue(cfg, "wait-for-completion", false);
+    }
+
+    @Override
+    public boolean start() throws ContainerException {
+        long startTime = System.currentTimeMillis();
+        Delegator delegator = DelegatorFactory.getDelegator(delegatorName);
+        if (delegator == null) {
+            throw new ContainerException("Unable to warm up the models, delegator [" + delegatorName + "] not found");
+        }
+        VisualTheme visualTheme = ThemeFactory.getVisualThemeFromId(UtilProperties.getPropertyValue("general", "VISUAL_THEME", "COMMON"));
+        // getting the dispatcher reads the service definitions, the forms need its dispatch context
+        CompletableFuture<DispatchContext> dispatchContext = CompletableFuture.supplyAsync(
+                () -> ServiceContainer.getLocalDispatcher(delegator.getDelegatorName(), delegator).getDispatchContext(),
+                ExecutionPool.GLOBAL_FORK_JOIN);
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        futures.add(dispatchContext);
+        for (WebappInfo webappInfo : ComponentConfig.getAllWebappResourceInfos()) {
+            if (Files.exists(webappInfo.location().resolve(Paths.get("WEB-INF", "controller.xml")))) {
+                futures.add(CompletableFuture.runAsync(() -> read(webappInfo.getName() + " controller",
+                        () -> ConfigXMLReader.getControllerConfig(webappInfo)), ExecutionPool.GLOBAL_FORK_JOIN));
+            }
+        }
+        for (ComponentConfig component : ComponentConfig.getAllComponents()) {
+            for (Path file : getWidgetFiles(component)) {
+                String location = "component://" + component.getComponentName() + "/"
+                        + component.rootLocation().relativize(file).toString().replace('\\', '/');
+                futures.add(dispatchContext.thenAcceptAsync(dctx -> readWidgetFile(file, location, delegator, visualTheme, dctx),
+                        ExecutionPool.GLOBAL_FORK_JOIN));
+            }
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        Debug.logError(e, "Error while warming up the models", MODULE);
+                    }
+                    Debug.logInfo("Read " + filesRead.sum() + " definition files (" + errors.sum() + " errors) in "
+                            + (System.currentTimeMillis() - startTime) / 1000.0 + "s", MODULE);
+                });
+        if (waitForCompletion) {
+            all.exceptionally(e -> null).join();
+        }
+        return true;
+    }
+
+    private static List<Path> getWidgetFiles(ComponentConfig component) {
+        Path widgetDir = component.rootLocation().resolve("widget");
+        if (!Files.isDirectory(widgetDir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.walk(widgetDir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".xml")).collect(Collectors.toList());
+        } catch (IOException e) {
+            Debug.logWarning(e, "Unable to list the widget files of the component " + component.getComponentName(), MODULE);
+            return new ArrayList<>();
+        }
+    }
+
+    private void readWidgetFile(Path file, String location, Delegator delegator, VisualTheme visualTheme, DispatchContext dctx) {
+        String rootElementName = getRootElementName(file);
+        if ("screens".equals(rootElementName)) {
+            read(location, () -> ScreenFactory.getScreensFromLocation(location));
+        } else if ("forms".equals(rootElementName)) {
+            read(location, () -> FormFactory.cacheFormsFromLocation(location, delegator.getModelReader(), visualTheme, dctx));
+        } else if ("menus".equals(rootElementName)) {
+            read(location, () -> MenuFactory.getMenusFromLocation(location, visualTheme));
+        }
+    }
+
+    /** Reads only the beginning of the file to know which kind of definitions it contains */
+    private static String getRootElementName(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                        return reader.getLocalName();
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException e) {
+            Debug.logWarning("Unable to read the root element of " + file + ": " + e, MODULE);
+        }
+        return null;
+    }
+
+    private void read(String description, Reader reader) {
+        try {
+            reader.read();
+            filesRead.increment();
+        } catch (Exception e) {
+            errors.increment();
+            Debug.logWarning("Unable to read " + description + ": " + e, MODULE);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Reader {
+        void read() throws Exception;
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+}
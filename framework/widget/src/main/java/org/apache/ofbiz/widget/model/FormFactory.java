@@ -62,9 +62,7 @@ public class FormFactory {
     public static ModelForm getFormFromLocation(String resourceName, String formName, ModelReader entityModelReader,
                                                 VisualTheme visualTheme, DispatchContext dispatchContext)
             throws IOException, SAXException, ParserConfigurationException {
-        StringBuilder sb = new StringBuilder(dispatchContext.getDelegator().getDelegatorName());
-        sb.append(":").append(resourceName).append("#").append(formName).append(visualTheme.getVisualThemeId());
-        String cacheKey = sb.toString();
+        String cacheKey = getLocationCacheKey(resourceName, formName, visualTheme, dispatchContext);
         ModelForm modelForm = FORM_LOCATION_CACHE.get(cacheKey);
         if (modelForm == null) {
             URL formFileUrl = FlexibleLocation.resolveLocation(resourceName);
@@ -81,6 +79,41 @@ public class FormFactory {
         return modelForm;
     }
 
+    /**
+     * Reads all the forms of a file at once and caches them for {@link #getFormFromLocation}.
+     * @return the number of forms read
+     */
+    public static int cacheFormsFromLocation(String resourceName, ModelReader entityModelReader, VisualTheme visualTheme,
+                                             DispatchContext dispatchContext)
+            throws IOException, SAXException, ParserConfigurationException {
+        URL formFileUrl = FlexibleLocation.resolveLocation(resourceName);
+        Document formFileDoc = UtilXml.readXmlDocument(formFileUrl, true, true);
+        if (formFileDoc == null) {
+            throw new IllegalArgumentException("Could not find resource [" + resourceName + "]");
+        }
+        Element rootElement = formFileDoc.getDocumentElement();
+        if (!"forms".equalsIgnoreCase(rootElement.getTagName())) {
+            rootElement = UtilXml.firstChildElement(rootElement, "forms");
+        }
+        List<? extends Element> formElements = UtilXml.childElementList(rootElement, "form");
+        for (Element formElement : formElements) {
+            String formName = formElement.getAttribute("name");
+            String cacheKey = getLocationCacheKey(resourceName, formName, visualTheme, dispatchContext);
+            if (FORM_LOCATION_CACHE.get(cacheKey) == null) {
+                FORM_LOCATION_CACHE.putIfAbsent(cacheKey,
+                        createModelForm(formElement, entityModelReader, visualTheme, dispatchContext, resourceName, formName));
+            }
+        }
+        return formElements.size();
+    }
+
+    private static String getLocationCacheKey(String resourceName, String formName, VisualTheme visualTheme,
+                                              DispatchContext dispatchContext) {
+        StringBuilder sb = new StringBuilder(dispatchContext.getDelegator().getDelegatorName());
+        sb.append(":").append(resourceName).append("#").append(formName).append(visualTheme.getVisualThemeId());
+        return sb.toString();
+    }
+
     public static ModelForm getFormFromWebappContext(String resourceName, String formName, HttpServletRequest request)
             throws IOException, SAXException, ParserConfigurationException {
         String webappName = UtilHttp.getApplicationName(request);
@@ -101,7 +101,7 @@ public class MenuFactory {
         return modelMenuMap;
     }
 
-    public static ModelMenu getMenuFromLocation(String resourceName, String menuName, VisualTheme visualTheme)
+    public static Map<String, ModelMenu> getMenusFromLocation(String resourceName, VisualTheme visualTheme)
             throws IOException, SAXException, ParserConfigurationException {
         String keyName = resourceName + "::" + visualTheme.getVisualThemeId();
         Map<String, ModelMenu> modelMenuMap = MENU_LOCATION_CACHE.get(keyName);
@@ -116,7 +116,12 @@ public class MenuFactory {
         if (UtilValidate.isEmpty(modelMenuMap)) {
             throw new IllegalArgumentException("Could not find menu file in location [" + resourceName + "]");
         }
+        return modelMenuMap;
+    }
 
+    public static ModelMenu getMenuFromLocation(String resourceName, String menuName, VisualTheme visualTheme)
+            throws IOException, SAXException, ParserConfigurationException {
+        Map<String, ModelMenu> modelMenuMap = getMenusFromLocation(resourceName, visualTheme);
         ModelMenu modelMenu = modelMenuMap.get(menuName);
         if (modelMenu == null) {
             throw new IllegalArgumentException("Could not find menu with name [" + menuName + "] in location [" + resourceName + "]");
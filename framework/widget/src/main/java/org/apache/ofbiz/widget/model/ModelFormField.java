@@ -59,6 +59,7 @@ import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.base.util.collections.CopyOnWriteMapView;
 import org.apache.ofbiz.base.util.collections.FlexibleMapAccessor;
 import org.apache.ofbiz.base.util.collections.MapStack;
 import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
@@ -1541,9 +1542,8 @@ public final class ModelFormField {
                 // expanding ${} stuff, passing locale explicitly to expand value string because it won't be found in the Entity
                 MapStack<String> localContext = MapStack.create(context);
                 // Rendering code might try to modify the GenericEntity instance,
-                // so we make a copy of it.
-                Map<String, Object> genericEntityClone = UtilGenerics.cast(value.clone());
-                localContext.push(genericEntityClone);
+                // so we push a view which is copied on the first modification.
+                localContext.push(new CopyOnWriteMapView<>(value));
 
                 // expand with the new localContext, which is locale aware
                 retVal = this.getDescription().expandString(localContext, locale);
@@ -2449,14 +2449,16 @@ public final class ModelFormField {
                     }
                 }
 
+                // the same stack is reset for each value instead of being created again
+                MapStack<String> localContext = MapStack.create(context);
+                int localContextDepth = localContext.depth();
                 for (GenericValue value : values) {
                     // add key and description with string expansion, ie expanding ${} stuff, passing locale explicitly to
                     // expand value string because it won't be found in the Entity
-                    MapStack<String> localContext = MapStack.create(context);
+                    localContext.popTo(localContextDepth);
                     // Rendering code might try to modify the GenericEntity instance,
-                    // so we make a copy of it.
-                    Map<String, Object> genericEntityClone = UtilGenerics.cast(value.clone());
-                    localContext.push(genericEntityClone);
+                    // so we push a view which is copied on the first modification.
+                    localContext.push(new CopyOnWriteMapView<>(value));
 
                     // expand with the new localContext, which is locale aware
                     String optionDesc = this.description.expandString(localContext, locale);
@@ -709,13 +709,18 @@ public class ModelTree extends ModelWidget {
                     if (processChildren) {
                         List<Object[]> subNodeValues = getChildren(context);
                         int newDepth = depth + 1;
+                        // the same stack and top Map are reset for each child node instead of being created again
+                        MapStack<String> newContext = MapStack.create(context);
+                        int newContextDepth = newContext.depth();
+                        Map<String, Object> nodeFrame = new HashMap<>();
                         for (Object[] arr : subNodeValues) {
                             ModelNode node = (ModelNode) arr[0];
                             Map<String, Object> val = UtilGenerics.cast(arr[1]);
                             String thisPkName = node.getPkName(context);
                             String thisEntityId = (String) val.get(thisPkName);
-                            MapStack<String> newContext = MapStack.create(context);
-                            newContext.push();
+                            newContext.popTo(newContextDepth);
+                            nodeFrame.clear();
+                            newContext.push(nodeFrame);
                             String nodeEntryName = node.getEntryName();
                             if (!nodeEntryName.isEmpty()) {
                                 newContext.put(nodeEntryName, val);
@@ -115,23 +115,18 @@ public class ScreenFactory {
             throws IOException, SAXException, ParserConfigurationException {
         Map<String, ModelScreen> modelScreenMap = SCREEN_LOCATION_CACHE.get(resourceName);
         if (modelScreenMap == null) {
-            synchronized (ScreenFactory.class) {
-                modelScreenMap = SCREEN_LOCATION_CACHE.get(resourceName);
-                if (modelScreenMap == null) {
-                    long startTime = System.currentTimeMillis();
-                    URL screenFileUrl = null;
-                    screenFileUrl = FlexibleLocation.resolveLocation(resourceName);
-                    if (screenFileUrl == null || UtilValidate.isUrlInStringAndDoesNotStartByComponentProtocol(screenFileUrl.toString())) {
-                        throw new IllegalArgumentException("Could not resolve location to URL: " + resourceName);
-                    }
-                    Document screenFileDoc = UtilXml.readXmlDocument(screenFileUrl, true, true);
-                    modelScreenMap = readScreenDocument(screenFileDoc, resourceName);
-                    SCREEN_LOCATION_CACHE.put(resourceName, modelScreenMap);
-                    double totalSeconds = (System.currentTimeMillis() - startTime) / 1000.0;
-                    Debug.logInfo("Got " + modelScreenMap.size() + " screens in " + totalSeconds + "s from: "
-                            + screenFileUrl.toExternalForm(), MODULE);
-                }
+            // no lock here so that several files can be read concurrently, the first map cached wins
+            long startTime = System.currentTimeMillis();
+            URL screenFileUrl = null;
+            screenFileUrl = FlexibleLocation.resolveLocation(resourceName);
+            if (screenFileUrl == null || UtilValidate.isUrlInStringAndDoesNotStartByComponentProtocol(screenFileUrl.toString())) {
+                throw new IllegalArgumentException("Could not resolve location to URL: " + resourceName);
             }
+            Document screenFileDoc = UtilXml.readXmlDocument(screenFileUrl, true, true);
+            modelScreenMap = SCREEN_LOCATION_CACHE.putIfAbsentAndGet(resourceName, readScreenDocument(screenFileDoc, resourceName));
+            double totalSeconds = (System.currentTimeMillis() - startTime) / 1000.0;
+            Debug.logInfo("Got " + modelScreenMap.size() + " screens in " + totalSeconds + "s from: "
+                    + screenFileUrl.toExternalForm(), MODULE);
         }
 
         if (modelScreenMap.isEmpty()) {
@@ -45,6 +45,7 @@ import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.collections.CopyOnWriteMapView;
 import org.apache.ofbiz.base.util.collections.MapStack;
 import org.apache.ofbiz.base.util.string.FlexibleStringExpander;
 import org.apache.ofbiz.entity.GenericEntity;
@@ -744,6 +745,10 @@ public class FormRenderer {
             context.put("wholeFormContext", context);
             // Initialize previousItem with a sentry value since the first Item has no previous Item.
             Map<String, Object> previousItem = new HashMap<>();
+            // the same stack and top Map are reset for each row instead of being created again
+            MapStack<String> localContext = MapStack.create(context);
+            int localContextDepth = localContext.depth();
+            Map<String, Object> rowFrame = new HashMap<>();
             while ((item = safeNext(iter)) != null) {
                 itemIndex++;
                 if (itemIndex >= highIndex) {
@@ -756,21 +761,21 @@ public class FormRenderer {
                 }
 
                 Map<String, Object> itemMap = UtilGenerics.cast(item);
-                MapStack<String> localContext = MapStack.create(context);
+                localContext.popTo(localContextDepth);
                 if (UtilValidate.isNotEmpty(modelForm.getListEntryName())) {
                     localContext.put(modelForm.getListEntryName(), item);
                 } else {
                     if (itemMap instanceof GenericEntity) {
                         // Rendering code might try to modify the GenericEntity instance,
-                        // so we make a copy of it.
-                        Map<String, Object> genericEntityClone = UtilGenerics.cast(((GenericEntity) itemMap).clone());
-                        localContext.push(genericEntityClone);
+                        // so we push a view which is copied on the first modification.
+                        localContext.push(new CopyOnWriteMapView<>(itemMap));
                     } else {
                         localContext.push(itemMap);
                     }
                 }
 
-                localContext.push();
+                rowFrame.clear();
+                localContext.push(rowFrame);
                 localContext.put("previousItem", previousItem);
                 previousItem = new HashMap<>(itemMap);
 